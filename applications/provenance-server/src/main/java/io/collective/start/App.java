@@ -4,12 +4,22 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Slf4jReporter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.collective.articles.ArticleDataGateway;
+import io.collective.articles.ArticleLog;
 import io.collective.articles.ArticleRecord;
+import io.collective.articles.ArticleRetention;
+import io.collective.articles.ArticleStorage;
 import io.collective.articles.ArticlesController;
 import io.collective.endpoints.EndpointDataGateway;
+import io.collective.endpoints.EndpointMetrics;
+import io.collective.endpoints.EndpointRecord;
 import io.collective.endpoints.EndpointTask;
 import io.collective.endpoints.EndpointWorkFinder;
 import io.collective.endpoints.EndpointWorker;
+import io.collective.endpoints.FeedCache;
+import io.collective.endpoints.FileLeaseStore;
+import io.collective.endpoints.HostLimiter;
+import io.collective.endpoints.LeaseStore;
+import io.collective.endpoints.PollingPolicy;
 import io.collective.metrics.HealthCheck;
 import io.collective.metrics.MetricsController;
 import io.collective.restsupport.BasicApp;
@@ -19,13 +29,22 @@ import io.collective.workflow.WorkScheduler;
 import io.collective.workflow.Worker;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.dropwizard.DropwizardExports;
+import io.prometheus.client.dropwizard.samplebuilder.CustomMappingSampleBuilder;
+import io.prometheus.client.dropwizard.samplebuilder.MapperConfig;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -36,8 +55,8 @@ import java.util.concurrent.TimeUnit;
 public class App extends BasicApp {
     // Create a MetricRegistry to hold metrics
     MetricRegistry registry = new MetricRegistry();
-    // Create a ArticleDataGateway with a MetricRegistry to provide some metrics
-    ArticleDataGateway gateway = new ArticleDataGateway(registry);
+    // Create a ArticleDataGateway with a MetricRegistry to provide some metrics, recovering articles from disk if configured
+    ArticleDataGateway gateway = new ArticleDataGateway(registry, articleLog(), articleStorage(), articleRetention());
     // Create a Prometheus CollectorRegistry
     CollectorRegistry prometheus = CollectorRegistry.defaultRegistry;
 
@@ -59,27 +78,43 @@ public class App extends BasicApp {
      */
     @Override
     public void start() {
-        // Collect Dropwizard metrics from a MetricRegistry and register Dropwizard metrics with Prometheus
-        prometheus.register(new DropwizardExports(registry));
+        // Collect Dropwizard metrics from a MetricRegistry and register Dropwizard metrics with Prometheus, the
+        // per-endpoint metrics as metrics labelled by endpoint
+        prometheus.register(new DropwizardExports(registry, new CustomMappingSampleBuilder(endpointMappings())));
         // Start the Slf4jReporter to report metrics periodically
         reporter.start(5, TimeUnit.SECONDS);
-        // Call the start method of the superclass (BasicApp)
-        super.start();
 
-        // Initialize the articleDataGateway with some sample data
-        ArticleDataGateway.articles = new ArrayList<>();
-        ArticleDataGateway.articles.add(new ArticleRecord(10101, "Programming Languages InfoQ Trends Report - October 2019 4", true));
-        ArticleDataGateway.articles.add(new ArticleRecord(10106, "Ryan Kitchens on Learning from Incidents at Netflix, the Role of SRE, and Sociotechnical Systems", true));
+        // Create an EndpointWorker with a RestTemplate that times out, the ArticleDataGateway, and the feed cache, both
+        // recording per-endpoint metrics
+        EndpointMetrics metrics = new EndpointMetrics(registry);
+        String timeout = System.getenv("ENDPOINT_TIMEOUT");
+        RestTemplate template = new RestTemplate(timeout != null ? Duration.parse(timeout.trim()) : Duration.ofSeconds(30), metrics);
+        EndpointWorker worker = new EndpointWorker(template, gateway, feedCache(), metrics);
+        // Ingest the feeds cached on disk again, if configured, without fetching them
+        worker.replay();
+
+        // Initialize the articleDataGateway with some sample data unless articles were recovered from disk
+        if (gateway.findAll().isEmpty()) {
+            gateway.replaceAll(Arrays.asList(
+                    new ArticleRecord(10101, "Programming Languages InfoQ Trends Report - October 2019 4", true),
+                    new ArticleRecord(10106, "Ryan Kitchens on Learning from Incidents at Netflix, the Role of SRE, and Sociotechnical Systems", true)
+            ));
+        }
+        // Call the start method of the superclass (BasicApp), the gateway is warm before traffic is accepted
+        super.start();
 
         { // todo - start the endpoint worker
-            // Create an EndpointWorkFinder with an EndpointDataGateway
-            EndpointWorkFinder finder = new EndpointWorkFinder(new EndpointDataGateway());
-            // Create an EndpointWorker with a RestTemplate and the ArticleDataGateway
-            EndpointWorker worker = new EndpointWorker(new RestTemplate(), gateway);
+            // Create an EndpointWorkFinder with an EndpointDataGateway holding the InfoQ feed and any configured feeds,
+            // admitting fetches per host so a slow or failing host cannot hold all the worker threads, and leasing
+            // endpoints so instances sharing a lease directory do not fetch the same feed
+            String leaseTime = System.getenv("ENDPOINT_LEASE");
+            EndpointWorkFinder finder = new EndpointWorkFinder(endpoints(), hostLimiter(), leaseStore(),
+                    leaseTime != null ? Duration.parse(leaseTime.trim()) : Duration.ofMinutes(1));
             // Create a list of workers to do work when EndpointWorkFinder finds a work
             List<Worker<EndpointTask>> workers = Collections.singletonList(worker);
-            // Create a WorkScheduler with the finder, workers, and a delay of 300 seconds
-            WorkScheduler<EndpointTask> scheduler = new WorkScheduler<>(finder, workers, 300);
+            // Create a WorkScheduler with the finder, workers, and a delay of 5 seconds, the endpoint gateway decides
+            // which feeds are due in each check
+            WorkScheduler<EndpointTask> scheduler = new WorkScheduler<>(finder, workers, 5);
             // Start the work scheduler
             scheduler.start();
         }
@@ -117,6 +152,137 @@ public class App extends BasicApp {
         return list;
     }
 
+    /**
+     * Creates the ArticleLog for the directory named by the ARTICLE_LOG_DIR environment variable.
+     *
+     * @return The ArticleLog, or null to keep articles in memory only when the variable is not set.
+     */
+    private static ArticleLog articleLog() {
+        String directory = System.getenv("ARTICLE_LOG_DIR");
+        return directory != null ? new ArticleLog(Paths.get(directory)) : null;
+    }
+
+    /**
+     * Maps the per-endpoint metrics named "endpoint.{key}.{metric}" to Prometheus metrics named "endpoint_{metric}"
+     * with an endpoint label, whose values are bounded by EndpointMetrics.
+     *
+     * @return The mappings.
+     */
+    private static List<MapperConfig> endpointMappings() {
+        List<MapperConfig> mappings = new ArrayList<>();
+        for (String metric : EndpointMetrics.METRICS) {
+            mappings.add(new MapperConfig("endpoint.*." + metric, "endpoint_" + metric, Collections.singletonMap("endpoint", "${0}")));
+        }
+        return mappings;
+    }
+
+    /**
+     * Creates the FeedCache for the directory named by the FEED_CACHE_DIR environment variable.
+     *
+     * @return The FeedCache, or null to keep no copy of the feeds when the variable is not set.
+     */
+    private static FeedCache feedCache() {
+        String directory = System.getenv("FEED_CACHE_DIR");
+        return directory != null ? new FeedCache(Paths.get(directory)) : null;
+    }
+
+    /**
+     * Creates the LeaseStore for the directory named by the LEASE_DIR environment variable, shared by the instances
+     * polling the same feeds.
+     *
+     * @return The LeaseStore, or null to poll every feed from this instance when the variable is not set.
+     */
+    private static LeaseStore leaseStore() {
+        String directory = System.getenv("LEASE_DIR");
+        return directory != null ? new FileLeaseStore(Paths.get(directory)) : null;
+    }
+
+    /**
+     * Reads the memory layout for articles from the ARTICLE_STORAGE environment variable, e.g. "compact" or
+     * "compact-off-heap".
+     *
+     * @return The ArticleStorage, OBJECTS when the variable is not set.
+     */
+    private static ArticleStorage articleStorage() {
+        String storage = System.getenv("ARTICLE_STORAGE");
+        return storage != null ? ArticleStorage.valueOf(storage.trim().toUpperCase(Locale.ROOT).replace('-', '_')) : ArticleStorage.OBJECTS;
+    }
+
+    /**
+     * Reads the retention limits for articles from the ARTICLE_MAX_COUNT, ARTICLE_MAX_AGE (an ISO-8601 duration such
+     * as "P30D"), and ARTICLE_MAX_BYTES environment variables, and the eviction order from ARTICLE_EVICTION, either
+     * "oldest-first" or "least-recently-seen".
+     *
+     * @return The ArticleRetention, unlimited when none of the limits is set.
+     */
+    private static ArticleRetention articleRetention() {
+        String count = System.getenv("ARTICLE_MAX_COUNT");
+        String age = System.getenv("ARTICLE_MAX_AGE");
+        String bytes = System.getenv("ARTICLE_MAX_BYTES");
+        String eviction = System.getenv("ARTICLE_EVICTION");
+        return new ArticleRetention(
+                eviction != null ? ArticleRetention.Policy.valueOf(eviction.trim().toUpperCase(Locale.ROOT).replace('-', '_')) : ArticleRetention.Policy.OLDEST_FIRST,
+                count != null ? Integer.parseInt(count.trim()) : Integer.MAX_VALUE,
+                age != null ? Duration.parse(age.trim()) : null,
+                bytes != null ? Long.parseLong(bytes.trim()) : Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates the EndpointDataGateway with the InfoQ feed, registering the feeds listed one URL per line in the file
+     * named by the ENDPOINT_FEEDS environment variable. Feeds start out polled at the ENDPOINT_INTERVAL (an ISO-8601
+     * duration such as "PT15M") or every 5 minutes, and adapt to how often they change between ENDPOINT_MIN_INTERVAL
+     * and ENDPOINT_MAX_INTERVAL, 1 minute and 6 hours by default, spread by a jitter fraction of ENDPOINT_JITTER.
+     *
+     * @return The EndpointDataGateway.
+     */
+    private static EndpointDataGateway endpoints() {
+        String min = System.getenv("ENDPOINT_MIN_INTERVAL");
+        String max = System.getenv("ENDPOINT_MAX_INTERVAL");
+        String jitter = System.getenv("ENDPOINT_JITTER");
+        PollingPolicy policy = new PollingPolicy(
+                min != null ? Duration.parse(min.trim()) : PollingPolicy.DEFAULT.getMinInterval(),
+                max != null ? Duration.parse(max.trim()) : PollingPolicy.DEFAULT.getMaxInterval(),
+                jitter != null ? Double.parseDouble(jitter.trim()) : PollingPolicy.DEFAULT.getJitter());
+        EndpointDataGateway endpoints = new EndpointDataGateway(System::currentTimeMillis, policy);
+        String interval = System.getenv("ENDPOINT_INTERVAL");
+        Duration every = interval != null ? Duration.parse(interval.trim()) : EndpointRecord.DEFAULT_INTERVAL;
+        endpoints.register("https://feed.infoq.com/", every);
+        String feeds = System.getenv("ENDPOINT_FEEDS");
+        if (feeds == null) {
+            return endpoints;
+        }
+        try {
+            for (String line : Files.readAllLines(Paths.get(feeds))) {
+                if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                    endpoints.register(line.trim(), every);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return endpoints;
+    }
+
+    /**
+     * Creates the HostLimiter for endpoint fetches from the ENDPOINT_HOST_RATE (fetches per second),
+     * ENDPOINT_HOST_BURST, ENDPOINT_HOST_FAILURES (consecutive failures that open the circuit of a host), and
+     * ENDPOINT_HOST_OPEN (an ISO-8601 duration such as "PT1M") environment variables.
+     *
+     * @return The HostLimiter, with the defaults of HostLimiter for the variables that are not set.
+     */
+    private HostLimiter hostLimiter() {
+        String rate = System.getenv("ENDPOINT_HOST_RATE");
+        String burst = System.getenv("ENDPOINT_HOST_BURST");
+        String failures = System.getenv("ENDPOINT_HOST_FAILURES");
+        String open = System.getenv("ENDPOINT_HOST_OPEN");
+        return new HostLimiter(registry,
+                rate != null ? Double.parseDouble(rate.trim()) : HostLimiter.DEFAULT_RATE,
+                burst != null ? Integer.parseInt(burst.trim()) : HostLimiter.DEFAULT_BURST,
+                failures != null ? Integer.parseInt(failures.trim()) : HostLimiter.DEFAULT_FAILURE_THRESHOLD,
+                open != null ? Duration.parse(open.trim()) : HostLimiter.DEFAULT_OPEN_DURATION,
+                System::currentTimeMillis);
+    }
+
     /**
      * Start of the program
      * @param args Command-line arguments passed to the program
@@ -0,0 +1,86 @@
+package io.collective.articles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An opaque position within a list of articles, handed to clients to fetch the page after it.
+ * <p>
+ * A cursor remembers both the position it was issued at and the ID of the last article returned, so it stays valid
+ * when articles are appended and, when the catalog was rearranged, pagination resumes after that article.
+ */
+final class ArticleCursor {
+    private final int position;
+    private final int id;
+
+    /**
+     * Constructs an ArticleCursor pointing just after the given article.
+     *
+     * @param position The number of articles returned so far.
+     * @param id       The ID of the last article returned.
+     */
+    ArticleCursor(int position, int id) {
+        this.position = position;
+        this.id = id;
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @param value The encoded cursor, or null for the first page.
+     * @return The decoded cursor, or null when value is null.
+     * @throws IllegalArgumentException If the value is not a valid cursor.
+     */
+    static ArticleCursor decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.US_ASCII);
+            int separator = decoded.indexOf('.');
+            int position = Integer.parseInt(decoded.substring(0, separator));
+            int id = Integer.parseInt(decoded.substring(separator + 1));
+            if (position < 0) {
+                throw new IllegalArgumentException("invalid cursor " + value);
+            }
+            return new ArticleCursor(position, id);
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("invalid cursor " + value, e);
+        }
+    }
+
+    /**
+     * Encodes the cursor as an opaque, URL safe string.
+     *
+     * @return The encoded cursor.
+     */
+    String encode() {
+        byte[] bytes = (position + "." + id).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Returns the index in the given list at which the next page starts. Resolving costs no more than looking up the
+     * last returned article, however many articles before it were removed or evicted since the cursor was issued.
+     *
+     * @param records The list being paged through.
+     * @param indexOf Looks up the index of the record with a given ID in the list, -1 if it holds none, without
+     *                scanning the list.
+     * @return The index of the first record of the next page.
+     */
+    int resolve(List<ArticleRecord> records, IntUnaryOperator indexOf) {
+        // The common case, nothing before the cursor changed since it was issued
+        if (position > 0 && position <= records.size() && records.get(position - 1).getId() == id) {
+            return position;
+        }
+        // The catalog was rearranged, continue after the last returned article wherever it moved to
+        int index = indexOf.applyAsInt(id);
+        if (index >= 0) {
+            return index + 1;
+        }
+        // The article is gone, continue at the same position
+        return Math.min(position, records.size());
+    }
+}
@@ -1,27 +1,66 @@
 package io.collective.articles;
 
 import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * The ArticleDataGateway class provides data access methods for managing articles.
+ * <p>
+ * Articles are held in an immutable {@link ArticleSnapshot}. Writers build the next snapshot and publish it with a
+ * single atomic reference swap, so readers never lock, never copy, and never observe a partially applied change.
+ * When constructed with an {@link ArticleLog}, changes are made durable before they are published. When constructed
+ * with a bounded {@link ArticleRetention}, every change evicts what no longer fits before it is published.
+ * <p>
+ * Articles are partitioned by the source they were read from, and each source is written under a lock stripe of its
+ * own. Refreshing one feed builds its next partition without waiting for, or touching, any other feed; only the final
+ * swap, and the log write when there is a log, are serialized between sources. Retention limits on count and bytes
+ * apply to the articles of all sources together, see {@link ArticleRetention}.
  */
 public class ArticleDataGateway {
     /**
-     * Static list to store ArticleRecords
+     * The currently published snapshot of articles
      */
-    public static List<ArticleRecord> articles = new ArrayList<>();
+    private final AtomicReference<ArticleSnapshot> current = new AtomicReference<>(ArticleSnapshot.empty());
 
     /**
-     * Random object to generate sequence numbers
+     * The lock stripe of every source written so far
      */
-    private Random sequence = new Random();
+    private final Map<String, Stripe> stripes = new ConcurrentHashMap<>();
+
+    /**
+     * Durable log every change is written to before it is published, or null when articles only live in memory.
+     * Writers synchronize on it to log and publish a change.
+     */
+    private final ArticleLog log;
+
+    private final ArticleStorage storage;
+    private final ArticleRetention retention;
+
+    /**
+     * Counter of evicted articles, or null when the retention is unlimited
+     */
+    private final Counter evictions;
+
+    /**
+     * The articles of all stripes counted against the retention limits
+     */
+    private final ArticleEvictor.Budget budget = new ArticleEvictor.Budget();
 
     /**
      * Constructor that registers a metric for the number of articles in the MetricRegistry
@@ -29,43 +68,541 @@ public class ArticleDataGateway {
      * @param registry The MetricRegistry to register the metric in.
      */
     public ArticleDataGateway(MetricRegistry registry) {
+        this(registry, null);
+    }
+
+    /**
+     * Constructor that rebuilds the articles from the given log and writes every later change to it.
+     * Recovery happens before the constructor returns, so the gateway is warm before any request is served.
+     *
+     * @param registry The MetricRegistry to register the metric in.
+     * @param log      The ArticleLog to recover from and write to, or null to keep articles in memory only.
+     * @throws UncheckedIOException If the log cannot be recovered.
+     */
+    public ArticleDataGateway(MetricRegistry registry, ArticleLog log) {
+        this(registry, log, ArticleStorage.OBJECTS);
+    }
+
+    /**
+     * Constructor that keeps articles in the given memory layout, rebuilding them from the given log if any.
+     *
+     * @param registry The MetricRegistry to register the metric in.
+     * @param log      The ArticleLog to recover from and write to, or null to keep articles in memory only.
+     * @param storage  The memory layout to keep articles in.
+     * @throws UncheckedIOException If the log cannot be recovered.
+     */
+    public ArticleDataGateway(MetricRegistry registry, ArticleLog log, ArticleStorage storage) {
+        this(registry, log, storage, ArticleRetention.UNLIMITED);
+    }
+
+    /**
+     * Constructor that keeps articles in the given memory layout within the given retention limits, rebuilding them
+     * from the given log if any. Evicted articles are counted by the "articles-evicted" counter.
+     *
+     * @param registry  The MetricRegistry to register the metrics in.
+     * @param log       The ArticleLog to recover from and write to, or null to keep articles in memory only.
+     * @param storage   The memory layout to keep articles in.
+     * @param retention The limits to keep articles within.
+     * @throws UncheckedIOException If the log cannot be recovered.
+     */
+    public ArticleDataGateway(MetricRegistry registry, ArticleLog log, ArticleStorage storage, ArticleRetention retention) {
+        this.log = log;
+        this.storage = storage;
+        this.retention = retention;
+        this.evictions = retention.isBounded() ? registry.counter("articles-evicted") : null;
+        if (log != null) {
+            try {
+                for (Map.Entry<String, List<ArticleRecord>> recovered : log.recover().entrySet()) {
+                    Stripe stripe = stripe(recovered.getKey());
+                    synchronized (stripe) {
+                        ArticlePartition partition = stripe.partition.replace(recovered.getValue());
+                        if (stripe.evictor != null) {
+                            stripe.evictor.reset(partition);
+                        }
+                        // Limits may have been lowered since the log was written
+                        commit(stripe, partition, recovered.getValue(), entries -> {
+                        });
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("unable to recover articles", e);
+            }
+            trim();
+        }
         registry.register("articles",
                 new CachedGauge<Integer>(10, TimeUnit.MINUTES) {
-                    // Override the loadValue method to return the current size of the articles list
+                    // Override the loadValue method to return the size of the current snapshot
                     @Override
                     protected Integer loadValue() {
-                        return articles.size();
+                        return current.get().size();
                     }
                 });
     }
 
+    /**
+     * Returns the currently published snapshot.
+     *
+     * @return The current ArticleSnapshot.
+     */
+    public ArticleSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Returns the version of the currently published snapshot.
+     *
+     * @return The current version.
+     */
+    public long getVersion() {
+        return current.get().getVersion();
+    }
+
     /**
      * Returns all articles.
      *
      * @return The list of all ArticleRecord objects.
      */
     public List<ArticleRecord> findAll() {
-        return articles;
+        return current.get().getRecords();
     }
 
     /**
      * Returns available articles (articles with isAvailable = true).
+     * The list is the prebuilt available index of the current snapshot, so no filtering or copying happens per call.
      *
      * @return The list of available ArticleRecord objects.
      */
     public List<ArticleRecord> findAvailable() {
-        // Filter the articles based on availability and collect them into a new list
-        return articles.stream().filter(ArticleRecord::isAvailable).collect(Collectors.toList());
+        return current.get().getAvailable();
+    }
+
+    /**
+     * Returns a page of all articles.
+     *
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of articles in the page.
+     * @return The page of ArticleRecord objects.
+     * @throws IllegalArgumentException If the cursor is not valid.
+     */
+    public ArticlePage findAll(String after, int limit) {
+        return current.get().page(false, ArticleCursor.decode(after), limit);
+    }
+
+    /**
+     * Returns a page of available articles.
+     *
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of articles in the page.
+     * @return The page of available ArticleRecord objects.
+     * @throws IllegalArgumentException If the cursor is not valid.
+     */
+    public ArticlePage findAvailable(String after, int limit) {
+        return current.get().page(true, ArticleCursor.decode(after), limit);
+    }
+
+    /**
+     * Finds the article with the given ID in constant time.
+     *
+     * @param id The ID of the article.
+     * @return The ArticleRecord, or null if there is no article with the ID.
+     */
+    public ArticleRecord findById(int id) {
+        return current.get().find(id);
     }
 
     /**
-     * Saves a new article
-     * Generates a random sequence number, creates a new ArticleRecord, and adds it to the articles list.
+     * Finds the article with the given ID among the articles of the given source, in constant time.
      *
-     * @param info The new article.
+     * @param source The endpoint the articles were read from, or the empty string for articles saved directly.
+     * @param id     The ID of the article.
+     * @return The ArticleRecord, or null if the source has no article with the ID.
+     */
+    public ArticleRecord findById(String source, int id) {
+        ArticlePartition partition = current.get().partition(source);
+        return partition == null ? null : partition.find(id);
+    }
+
+    /**
+     * Finds articles whose titles contain every term of the query, best matches first.
+     *
+     * @param query The search query, split into terms on anything but letters and digits.
+     * @param limit The maximum number of articles to return.
+     * @return The matching ArticleRecord objects.
+     */
+    public List<ArticleRecord> search(String query, int limit) {
+        return current.get().search(query, limit);
+    }
+
+    /**
+     * Saves an article identified by its title.
+     * The ID is derived from the title, see {@link ArticleIds}, so saving the same title again changes nothing rather
+     * than adding a duplicate, and the article keeps its ID across restarts. Saved articles belong to no source, their
+     * source is the empty string.
+     *
+     * @param info The article, whose ID is ignored.
      */
     public void save(ArticleInfo info) {
-        // Generate a random ID and create a new ArticleRecord with the given title and availability set to true
-        articles.add(new ArticleRecord(sequence.nextInt(), info.getTitle(), true));
+        upsertAll("", Collections.singletonList(new ArticleInfo(ArticleIds.of(null, null, info.getTitle()), info.getTitle())));
+    }
+
+    /**
+     * Changes the availability of an article, updating the available index as part of the same change.
+     *
+     * @param id          The ID of the article.
+     * @param isAvailable The new availability status.
+     * @return true if an article changed, false if no article has the ID or its availability already matched.
+     */
+    public boolean updateAvailability(int id, boolean isAvailable) {
+        ArticlePartition holding = current.get().partitionOf(id);
+        if (holding == null) {
+            return false;
+        }
+        Stripe stripe = stripe(holding.getSource());
+        synchronized (stripe) {
+            ArticlePartition partition = stripe.partition;
+            ArticlePartition next = partition.withAvailability(id, isAvailable);
+            // Only publish when something actually changed
+            if (next == partition) {
+                return false;
+            }
+            commit(stripe, next, Collections.emptyList(), log -> log.availabilityChanged(stripe.source, id, isAvailable));
+            return true;
+        }
+    }
+
+    /**
+     * Inserts or updates an article identified by the stable ID of the given info.
+     *
+     * @param info The article, carrying a stable ID such as one from {@link ArticleIds}.
+     * @return true if the article was inserted or its title changed, false if nothing changed.
+     */
+    public boolean upsert(ArticleInfo info) {
+        return upsertAll(Collections.singletonList(info)) > 0;
+    }
+
+    /**
+     * Inserts or updates articles that belong to no source, see {@link #upsertAll(String, List)}.
+     *
+     * @param infos The articles, carrying stable IDs such as ones from {@link ArticleIds}.
+     * @return The number of articles inserted or updated.
+     */
+    public int upsertAll(List<ArticleInfo> infos) {
+        return upsertAll("", infos);
+    }
+
+    /**
+     * Inserts or updates the articles of the given source identified by the stable IDs of the given infos,
+     * publishing all changes as a single snapshot. Articles whose title is unchanged are neither logged nor
+     * published, so refreshing an unchanged feed writes nothing; they only count as seen for
+     * {@link ArticleRetention.Policy#LEAST_RECENTLY_SEEN}. Articles of other sources are neither read nor changed.
+     *
+     * @param source The endpoint the articles were read from.
+     * @param infos  The articles, carrying stable IDs such as ones from {@link ArticleIds}.
+     * @return The number of articles inserted or updated.
+     */
+    public int upsertAll(String source, List<ArticleInfo> infos) {
+        int changed = upsertAll(stripe(source), infos);
+        trim();
+        return changed;
+    }
+
+    /**
+     * Upserts the articles of the source of the given stripe, see {@link #upsertAll(String, List)}.
+     */
+    private int upsertAll(Stripe stripe, List<ArticleInfo> infos) {
+        synchronized (stripe) {
+            ArticlePartition partition = stripe.partition;
+            if (stripe.evictor != null) {
+                stripe.evictor.seen(partition, infos);
+                // Upserts are explicit, so they add evicted articles back, and the IDs evicted so far can be forgotten
+                stripe.evictor.clearEvicted();
+            }
+            List<ArticleRecord> changes = partition.changes(infos);
+            if (changes.isEmpty()) {
+                return 0;
+            }
+            if (stripe.evictor != null) {
+                stripe.evictor.upserted(partition, changes);
+            }
+            commit(stripe, partition.upsert(changes), changes, log -> {
+                for (ArticleRecord change : changes) {
+                    log.upserted(stripe.source, change);
+                }
+            });
+            return changes.size();
+        }
+    }
+
+    /**
+     * Brings the articles of the given source in line with the complete contents of its feed, publishing the diff as
+     * a single change: articles new to the source are added, articles whose title changed are updated, and articles
+     * no longer in the feed are removed. Articles matching the feed are neither logged nor published, so applying an
+     * unchanged feed writes nothing; they only count as seen for {@link ArticleRetention.Policy#LEAST_RECENTLY_SEEN}.
+     * Articles evicted from the source are not added back while the feed still carries them, so a feed larger than
+     * the retention limits is not written and evicted again on every refresh. Readers see either the previous
+     * articles of the source or the new ones, never a mix.
+     *
+     * @param source The endpoint the articles were read from.
+     * @param infos  Every article of the feed, carrying stable IDs such as ones from {@link ArticleIds}.
+     * @return The diff that was applied.
+     */
+    public ArticleDiff applyFeed(String source, List<ArticleInfo> infos) {
+        ArticleDiff diff = applyFeed(stripe(source), infos);
+        trim();
+        return diff;
+    }
+
+    /**
+     * Applies the feed of the source of the given stripe, see {@link #applyFeed(String, List)}.
+     */
+    private ArticleDiff applyFeed(Stripe stripe, List<ArticleInfo> infos) {
+        synchronized (stripe) {
+            ArticlePartition partition = stripe.partition;
+            Set<Integer> evicted = Collections.emptySet();
+            if (stripe.evictor != null) {
+                stripe.evictor.seen(partition, infos);
+                // Articles evicted while the feed carries them stay evicted, rather than being added back every refresh
+                Set<Integer> carried = new HashSet<>();
+                for (ArticleInfo info : infos) {
+                    carried.add(info.getId());
+                }
+                stripe.evictor.retainEvicted(carried);
+                evicted = stripe.evictor.evicted();
+            }
+            ArticleDiff diff = partition.diff(infos, evicted);
+            if (diff.isEmpty()) {
+                return diff;
+            }
+            // Remove first, so the upserts append after the records that are kept
+            Set<Integer> removed = new HashSet<>();
+            for (ArticleRecord record : diff.getRemoved()) {
+                removed.add(record.getId());
+            }
+            if (stripe.evictor != null && !removed.isEmpty()) {
+                stripe.evictor.removed(partition, removed);
+            }
+            ArticlePartition next = partition.without(removed);
+            if (stripe.evictor != null) {
+                stripe.evictor.upserted(next, diff.upserts());
+            }
+            commit(stripe, next.upsert(diff.upserts()), diff.upserts(), log -> {
+                for (ArticleRecord record : diff.getRemoved()) {
+                    log.removed(stripe.source, record.getId());
+                }
+                for (ArticleRecord change : diff.upserts()) {
+                    log.upserted(stripe.source, change);
+                }
+            });
+            return diff;
+        }
+    }
+
+    /**
+     * Replaces the articles that belong to no source with the given records, publishing them as a single change.
+     *
+     * @param records The new article records.
+     */
+    public void replaceAll(List<ArticleRecord> records) {
+        replaceAll("", records);
+    }
+
+    /**
+     * Replaces the articles of the given source with the given records, less what exceeds the retention limits,
+     * publishing them as a single change. Articles of other sources are left as they are. A replacement is logged as
+     * a new compacted snapshot rather than as individual entries.
+     *
+     * @param source  The endpoint the articles were read from.
+     * @param records The new article records.
+     */
+    public void replaceAll(String source, List<ArticleRecord> records) {
+        Stripe stripe = stripe(source);
+        synchronized (stripe) {
+            ArticlePartition next = stripe.partition.replace(records);
+            if (stripe.evictor != null) {
+                // The compacted log below covers the evictions
+                stripe.evictor.reset(next);
+                next = stripe.evictor.enforce(next, null, null);
+            }
+            stripe.partition = next;
+            if (log == null) {
+                publish(next, records);
+                return;
+            }
+            synchronized (log) {
+                log.compact(publish(next, records).recordsBySource());
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Publishes the next partition of the given stripe after evicting what exceeds the retention limits. The entries
+     * of the change and of the evictions are logged right before the partition is published, holding the log only for
+     * the writes and the swap, so other stripes keep building their changes in the meantime. The log is compacted
+     * when it has grown long enough. Callers must hold the stripe's lock.
+     *
+     * @param stripe  The stripe of the partition.
+     * @param next    The next partition.
+     * @param added   The records of the change whose IDs may be new to the partition.
+     * @param entries Writes the entries of the change to the log.
+     */
+    private void commit(Stripe stripe, ArticlePartition next, Collection<ArticleRecord> added, Consumer<ArticleLog> entries) {
+        commit(stripe, next, added, entries, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Publishes the next partition of the given stripe as {@link #commit(Stripe, ArticlePartition, Collection, Consumer)}
+     * does, also evicting while the articles are over a limit and the partition holds more than it keeps of it, see
+     * {@link ArticleEvictor#enforce(ArticlePartition, List, List, long, long)}.
+     */
+    private void commit(Stripe stripe, ArticlePartition next, Collection<ArticleRecord> added, Consumer<ArticleLog> entries,
+                        long keepCount, long keepBytes) {
+        List<ArticleRecord> removed = log != null && stripe.evictor != null ? new ArrayList<>() : null;
+        List<ArticleRecord> moved = removed != null ? new ArrayList<>() : null;
+        ArticlePartition enforced = stripe.evictor != null
+                ? stripe.evictor.enforce(next, removed, moved, keepCount, keepBytes) : next;
+        stripe.partition = enforced;
+        if (log == null) {
+            publish(enforced, added);
+            return;
+        }
+        synchronized (log) {
+            entries.accept(log);
+            if (removed != null) {
+                for (ArticleRecord record : removed) {
+                    log.removed(stripe.source, record.getId());
+                }
+                for (ArticleRecord record : moved) {
+                    log.appended(stripe.source, record);
+                }
+            }
+            ArticleSnapshot published = publish(enforced, added);
+            if (log.needsCompaction()) {
+                log.compact(published.recordsBySource());
+            }
+        }
+    }
+
+    /**
+     * Publishes a snapshot in which the given partition replaces the one of its source. Partitions of other sources
+     * are published concurrently, and building the next snapshot extends the indexes it shares with the current one
+     * in place, so publishing is serialized on the reference to the current snapshot. Building the next snapshot
+     * costs O(log n) in the number of sources plus O(1) per added record, so the lock is held briefly.
+     *
+     * @param partition The partition to publish.
+     * @param added     The records whose IDs the partition may hold for the first time.
+     * @return The published snapshot.
+     */
+    private ArticleSnapshot publish(ArticlePartition partition, Collection<ArticleRecord> added) {
+        synchronized (current) {
+            ArticleSnapshot next = current.get().with(partition, added);
+            current.set(next);
+            return next;
+        }
+    }
+
+    /**
+     * Returns the stripe of the given source, creating an empty one on first use.
+     */
+    private Stripe stripe(String source) {
+        return stripes.computeIfAbsent(source, key -> new Stripe(key, ArticlePartition.empty(key, storage),
+                evictions != null ? new ArticleEvictor(retention, evictions, budget) : null));
+    }
+
+    /**
+     * Gets the articles back within the count and bytes limits of the retention when a write left them over, because
+     * the stripe written did not hold more than its share. Every stripe over its share is evicted from in turn, each
+     * under its own lock and after the write released the lock of its stripe. Shares are rounded up, so the articles
+     * may still be over a limit once every stripe is within its share, and are then evicted from the stripes holding
+     * the most, see {@link #level(ArticleEvictor)}, until all articles are within the limits again. A write that kept
+     * within the limits, the common case, returns right away.
+     */
+    private void trim() {
+        if (evictions == null) {
+            return;
+        }
+        ArticleEvictor any = null;
+        for (Stripe stripe : stripes.values()) {
+            if (!stripe.evictor.isOverBudget()) {
+                return;
+            }
+            any = stripe.evictor;
+            synchronized (stripe) {
+                if (stripe.evictor.isOverShare(stripe.partition)) {
+                    commit(stripe, stripe.partition, Collections.emptyList(), log -> {
+                    });
+                }
+            }
+        }
+        while (any != null && any.isOverBudget() && level(any)) {
+            // Leveled the limit the articles were over, the other one may still be over
+        }
+    }
+
+    /**
+     * Evicts the stripes holding the most of the limit the articles are over down to a common level, the highest one
+     * at which all stripes fit within the limit, with the stripes holding less than the level left as they are. The
+     * capacity left over below the limit is kept by the stripes holding the most, one record or byte each, so the
+     * articles end up at the limit rather than below it. Sorts the stripes, so it only runs once the stripes are
+     * within their shares and the articles are still over a limit.
+     *
+     * @param any The evictor of any stripe, which the budget is read through.
+     * @return true if any article was evicted.
+     */
+    private boolean level(ArticleEvictor any) {
+        boolean count = any.isOverCount();
+        long limit = count ? retention.getMaxCount() : retention.getMaxBytes();
+        List<Stripe> all = new ArrayList<>(stripes.values());
+        long[] loads = new long[all.size()];
+        Integer[] order = new Integer[all.size()];
+        long total = 0;
+        for (int i = 0; i < all.size(); i++) {
+            Stripe stripe = all.get(i);
+            synchronized (stripe) {
+                loads[i] = count ? stripe.partition.size() : stripe.evictor.bytes();
+            }
+            total += loads[i];
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(loads[b], loads[a]));
+        long evicted = evictions.getCount();
+        // Find how many of the stripes holding the most are evicted from, and down to which level
+        long rest = total;
+        for (int k = 1; k <= order.length; k++) {
+            rest -= loads[order[k - 1]];
+            long room = limit - rest;
+            if (room < 0 || (k < order.length && room / k < loads[order[k]])) {
+                continue;
+            }
+            long level = room / k;
+            long extra = room - level * k;
+            for (int i = 0; i < k; i++) {
+                long keep = level + (i < extra ? 1 : 0);
+                if (loads[order[i]] > keep) {
+                    Stripe stripe = all.get(order[i]);
+                    synchronized (stripe) {
+                        commit(stripe, stripe.partition, Collections.emptyList(), log -> {
+                        }, count ? keep : Long.MAX_VALUE, count ? Long.MAX_VALUE : keep);
+                    }
+                }
+            }
+            break;
+        }
+        return evictions.getCount() != evicted;
+    }
+
+    /**
+     * The lock and writer side state of one source. The partition is only read and written while holding the stripe.
+     */
+    private static final class Stripe {
+        final String source;
+        final ArticleEvictor evictor;
+        ArticlePartition partition;
+
+        Stripe(String source, ArticlePartition partition, ArticleEvictor evictor) {
+            this.source = source;
+            this.partition = partition;
+            this.evictor = evictor;
+        }
     }
 }
@@ -0,0 +1,74 @@
+package io.collective.articles;
+
+import java.util.List;
+
+/**
+ * The difference between the articles a source held and the articles of a newer copy of its feed, as applied by
+ * {@link ArticleDataGateway#applyFeed(String, List)}.
+ */
+public final class ArticleDiff {
+    private final List<ArticleRecord> upserts;
+    private final List<ArticleRecord> added;
+    private final List<ArticleRecord> changed;
+    private final List<ArticleRecord> removed;
+
+    /**
+     * Constructs an ArticleDiff.
+     *
+     * @param upserts The added and changed records, in the order of the feed.
+     * @param added   The records of articles new to the source.
+     * @param changed The records of articles whose title changed, as they are after the change.
+     * @param removed The records of articles no longer in the feed, as they were before the change.
+     */
+    ArticleDiff(List<ArticleRecord> upserts, List<ArticleRecord> added, List<ArticleRecord> changed, List<ArticleRecord> removed) {
+        this.upserts = upserts;
+        this.added = added;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    /**
+     * Returns the records of articles new to the source.
+     *
+     * @return The added records.
+     */
+    public List<ArticleRecord> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the records of articles whose title changed.
+     *
+     * @return The changed records, as they are after the change.
+     */
+    public List<ArticleRecord> getChanged() {
+        return changed;
+    }
+
+    /**
+     * Returns the records of articles no longer in the feed.
+     *
+     * @return The removed records, as they were before the change.
+     */
+    public List<ArticleRecord> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Checks whether the feed matched the articles of the source.
+     *
+     * @return true if nothing was added, changed, or removed.
+     */
+    public boolean isEmpty() {
+        return upserts.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Returns the added and changed records, in the order of the feed.
+     *
+     * @return The records to upsert.
+     */
+    List<ArticleRecord> upserts() {
+        return upserts;
+    }
+}
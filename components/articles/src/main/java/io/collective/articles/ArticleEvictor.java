@@ -0,0 +1,367 @@
+package io.collective.articles;
+
+import com.codahale.metrics.Counter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the articles of one partition of an ArticleDataGateway within its {@link ArticleRetention}, one write at a
+ * time.
+ * <p>
+ * The count and bytes limits are shared by all partitions through a {@link Budget}. A partition is evicted from while
+ * the gateway as a whole is over a limit and the partition holds more than its share of it, the limit divided by the
+ * number of partitions rounded up, so a busy source never evicts a quiet source's articles and a new source is never
+ * evicted down to nothing by the ones before it. Shares rounded up add up to more than the limit, and to more than
+ * it by far when there are more partitions than the limit allows articles, so the gateway evicts whatever is still
+ * over from the partitions holding the most, see {@link #enforce(ArticlePartition, List, List, long, long)}. The age
+ * limit applies to every record by itself.
+ * <p>
+ * Live records form a queue in position order. Enforcing the limits evicts from the front of the queue until they
+ * hold again, which touches only the records that are actually evicted. Under
+ * {@link ArticleRetention.Policy#LEAST_RECENTLY_SEEN}, seeing a record only stamps it; a stamped record reaching the
+ * front is moved to the back instead of being evicted, which approximates LRU order like a second chance queue
+ * without reordering anything on the read or refresh path.
+ * <p>
+ * Stamps are kept in arrays indexed by position and are not logged, so they restart from the recovery time. The
+ * evictor is not thread safe, the ArticleDataGateway calls it while holding the lock of the partition's stripe.
+ */
+final class ArticleEvictor {
+    private final ArticleRetention retention;
+    private final Counter evictions;
+    private final Budget budget;
+
+    /**
+     * When the record at each position joined the queue, in milliseconds
+     */
+    private long[] queued = new long[16];
+
+    /**
+     * When the record at each position was last seen, in milliseconds
+     */
+    private long[] seen = new long[16];
+
+    /**
+     * The UTF-8 title bytes of all live records
+     */
+    private long bytes;
+
+    /**
+     * The IDs of the records evicted from the partition, until a feed no longer carries them, see
+     * {@link #retainEvicted(Set)}
+     */
+    private final Set<Integer> evicted = new HashSet<>();
+
+    /**
+     * The count and bytes of the partition as last added to the budget
+     */
+    private long budgetedCount;
+    private long budgetedBytes;
+
+    /**
+     * Constructs an ArticleEvictor for a new partition, counting the partition in the budget.
+     *
+     * @param retention The limits to enforce.
+     * @param evictions The counter to increment for every evicted article.
+     * @param budget    The budget shared by the partitions of the gateway.
+     */
+    ArticleEvictor(ArticleRetention retention, Counter evictions, Budget budget) {
+        this.retention = retention;
+        this.evictions = evictions;
+        this.budget = budget;
+        budget.partitions.incrementAndGet();
+    }
+
+    /**
+     * Starts tracking the live records of the given partition from scratch, as if they were all inserted now.
+     *
+     * @param partition The partition replacing all previous records.
+     */
+    void reset(ArticlePartition partition) {
+        long now = retention.now();
+        queued = new long[Math.max(16, partition.end())];
+        seen = new long[queued.length];
+        Arrays.fill(queued, partition.start(), partition.end(), now);
+        Arrays.fill(seen, partition.start(), partition.end(), now);
+        bytes = 0;
+        evicted.clear();
+        for (ArticleRecord record : partition.getRecords()) {
+            bytes += utf8Length(record.getTitle());
+        }
+    }
+
+    /**
+     * Tracks a record appended at the given position.
+     *
+     * @param position The position of the record.
+     * @param record   The record.
+     */
+    void appended(int position, ArticleRecord record) {
+        long now = retention.now();
+        stamp(position, now, now);
+        bytes += utf8Length(record.getTitle());
+    }
+
+    /**
+     * Tracks the records an upsert writes into the given partition, replacing the records with their IDs or being
+     * appended after its last record in order.
+     *
+     * @param before  The partition the upsert was applied to.
+     * @param changes The records the upsert wrote.
+     */
+    void upserted(ArticlePartition before, List<ArticleRecord> changes) {
+        long now = retention.now();
+        int next = before.end();
+        for (ArticleRecord change : changes) {
+            int position = before.position(change.getId());
+            if (position < 0) {
+                stamp(next++, now, now);
+                bytes += utf8Length(change.getTitle());
+            } else {
+                bytes += utf8Length(change.getTitle()) - utf8Length(before.record(position).getTitle());
+            }
+        }
+    }
+
+    /**
+     * Stops tracking the records with the given IDs, which are removed from the given partition by
+     * {@link ArticlePartition#without(java.util.Set)}. The stamps of the other records move down with their positions.
+     *
+     * @param before  The partition the records are removed from.
+     * @param removed The IDs of the removed records.
+     */
+    void removed(ArticlePartition before, Set<Integer> removed) {
+        int next = 0;
+        for (int position = before.start(); position < before.end(); position++) {
+            ArticleRecord record = before.record(position);
+            if (removed.contains(record.getId())) {
+                bytes -= utf8Length(record.getTitle());
+            } else {
+                // Never ahead of the position, so copying in place is safe
+                queued[next] = queued[position];
+                seen[next] = seen[position];
+                next++;
+            }
+        }
+    }
+
+    /**
+     * Stamps the records with the IDs of the given infos as seen now, whether their titles changed or not.
+     *
+     * @param partition The current partition.
+     * @param infos     The articles just seen in a feed.
+     */
+    void seen(ArticlePartition partition, List<ArticleInfo> infos) {
+        if (retention.getPolicy() != ArticleRetention.Policy.LEAST_RECENTLY_SEEN) {
+            return;
+        }
+        long now = retention.now();
+        for (ArticleInfo info : infos) {
+            int position = partition.position(info.getId());
+            if (position >= 0) {
+                seen[position] = now;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given partition is to be evicted from to get the gateway back within its count and bytes
+     * limits.
+     *
+     * @param partition The current partition.
+     * @return true if the gateway is over a limit and the partition holds more than its share of it.
+     */
+    boolean isOverShare(ArticlePartition partition) {
+        int partitions = budget.partitions.get();
+        return isOver(partition, share(retention.getMaxCount(), partitions), share(retention.getMaxBytes(), partitions));
+    }
+
+    // Whether the gateway is over a limit, counting the given partition, and the partition holds more than is kept of it
+    private boolean isOver(ArticlePartition partition, long keepCount, long keepBytes) {
+        long count = budget.count.get() + partition.size() - budgetedCount;
+        long total = budget.bytes.get() + bytes - budgetedBytes;
+        return (count > retention.getMaxCount() && partition.size() > keepCount)
+                || (total > retention.getMaxBytes() && bytes > keepBytes);
+    }
+
+    /**
+     * Evicts records from the front of the given partition until it is within every limit, see
+     * {@link #isOverShare(ArticlePartition)}, and compacts the partition once the evicted records outnumber the live
+     * ones. The changes to log are collected rather than written, so the
+     * caller can log them together with the change they follow.
+     *
+     * @param partition The partition about to be published.
+     * @param removed   Collects every record taken off the front, or null when nothing is logged.
+     * @param moved     Collects the records put back at the end in order, or null when nothing is logged.
+     * @return The partition to publish instead.
+     */
+    ArticlePartition enforce(ArticlePartition partition, List<ArticleRecord> removed, List<ArticleRecord> moved) {
+        return enforce(partition, removed, moved, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Evicts records from the front of the given partition as {@link #enforce(ArticlePartition, List, List)} does,
+     * and also while the gateway is over its count limit and the partition holds more than the given count of
+     * records, or over its bytes limit and the partition holds more than the given bytes. The gateway gets back within
+     * its limits this way once every partition is within its share and the shares add up to more than the limits.
+     *
+     * @param partition The partition about to be published.
+     * @param removed   Collects every record taken off the front, or null when nothing is logged.
+     * @param moved     Collects the records put back at the end in order, or null when nothing is logged.
+     * @param keepCount The number of records the partition keeps of the count limit, Long.MAX_VALUE for its share.
+     * @param keepBytes The number of bytes the partition keeps of the bytes limit, Long.MAX_VALUE for its share.
+     * @return The partition to publish instead.
+     */
+    ArticlePartition enforce(ArticlePartition partition, List<ArticleRecord> removed, List<ArticleRecord> moved,
+                             long keepCount, long keepBytes) {
+        Duration maxAge = retention.getMaxAge();
+        long cutoff = maxAge == null ? Long.MIN_VALUE : retention.now() - maxAge.toMillis();
+        boolean leastRecentlySeen = retention.getPolicy() == ArticleRetention.Policy.LEAST_RECENTLY_SEEN;
+        while (partition.size() > 0) {
+            int first = partition.start();
+            if (queued[first] >= cutoff && !isOverShare(partition) && !isOver(partition, keepCount, keepBytes)) {
+                break;
+            }
+            ArticleRecord record = partition.record(first);
+            if (leastRecentlySeen && seen[first] > queued[first] && seen[first] >= cutoff) {
+                // Seen since it was queued, so not the least recently seen; give it a second chance at the back
+                int position = partition.end();
+                partition = partition.moveFirstToBack();
+                stamp(position, seen[first], seen[first]);
+                if (removed != null) {
+                    removed.add(record);
+                    moved.add(record);
+                }
+                continue;
+            }
+            partition = partition.evictFirst();
+            bytes -= utf8Length(record.getTitle());
+            evicted.add(record.getId());
+            evictions.inc();
+            if (removed != null) {
+                removed.add(record);
+            }
+        }
+        if (partition.needsCompaction()) {
+            // Positions shift down by the number of evicted records, and so do their stamps
+            int shift = partition.start();
+            partition = partition.compacted();
+            System.arraycopy(queued, shift, queued, 0, partition.size());
+            System.arraycopy(seen, shift, seen, 0, partition.size());
+        }
+        budget.count.addAndGet(partition.size() - budgetedCount);
+        budget.bytes.addAndGet(bytes - budgetedBytes);
+        budgetedCount = partition.size();
+        budgetedBytes = bytes;
+        return partition;
+    }
+
+    /**
+     * Returns the IDs of the records evicted from the partition which the feed of the source still carried when it
+     * was last applied, or which were evicted since. A feed keeps carrying its articles long after they were evicted,
+     * so applying it must not add them back, only to evict them again.
+     *
+     * @return The evicted IDs.
+     */
+    Set<Integer> evicted() {
+        return evicted;
+    }
+
+    /**
+     * Forgets the evicted IDs a feed no longer carries, which may be added again should they ever come back.
+     *
+     * @param carried The IDs of every article of the feed.
+     */
+    void retainEvicted(Set<Integer> carried) {
+        evicted.retainAll(carried);
+    }
+
+    /**
+     * Forgets all evicted IDs, before a write which adds evicted articles back on purpose.
+     */
+    void clearEvicted() {
+        evicted.clear();
+    }
+
+    /**
+     * Checks whether the gateway is over its count or bytes limit, as of the partitions last enforced.
+     *
+     * @return true if a partition over its share is to be evicted from.
+     */
+    boolean isOverBudget() {
+        return isOverCount() || budget.bytes.get() > retention.getMaxBytes();
+    }
+
+    /**
+     * Checks whether the gateway is over its count limit, as of the partitions last enforced.
+     *
+     * @return true if the gateway holds more articles than the limit allows.
+     */
+    boolean isOverCount() {
+        return budget.count.get() > retention.getMaxCount();
+    }
+
+    /**
+     * Returns the UTF-8 title bytes of the live records of the partition.
+     *
+     * @return The bytes.
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    // The share of a limit each partition may hold, rounded up so the shares add up to at least the limit
+    private static long share(long limit, int partitions) {
+        return limit == Long.MAX_VALUE ? limit : (limit + partitions - 1) / Math.max(1, partitions);
+    }
+
+    private void stamp(int position, long queuedAt, long seenAt) {
+        if (position >= queued.length) {
+            int capacity = Math.max(position + 1, queued.length * 2);
+            queued = Arrays.copyOf(queued, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+        }
+        queued[position] = queuedAt;
+        seen[position] = seenAt;
+    }
+
+    /**
+     * Counts the bytes of the UTF-8 encoding of a title without encoding it.
+     */
+    static long utf8Length(String title) {
+        if (title == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < title.length() && Character.isLowSurrogate(title.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // Unpaired surrogates encode as a single replacement byte
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The count and UTF-8 title bytes of the live records of all partitions of a gateway, as of the last time each
+     * partition was enforced. Partitions are written under different locks, so the totals are updated atomically.
+     */
+    static final class Budget {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicInteger partitions = new AtomicInteger();
+    }
+}
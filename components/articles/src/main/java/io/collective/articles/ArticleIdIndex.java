@@ -0,0 +1,175 @@
+package io.collective.articles;
+
+import java.util.function.IntPredicate;
+
+/**
+ * An open addressing hash map from article IDs to record positions, kept in two int arrays without boxing.
+ * <p>
+ * Like {@link ArticleSearchIndex}, the index is shared by the partitions appended from one another and extended in
+ * place. A reader resolves a position against the records of its own partition and ignores positions outside of them,
+ * and a table that has to grow is rebuilt on the side and swapped in, so readers never lock.
+ * <p>
+ * An ID may be added more than once, e.g. when an evicted article comes back. Entries of evicted records stay in the
+ * table, where readers of older partitions still find them, until the partition is compacted and the index rebuilt.
+ * When several live records share an ID, the one at the lowest position is found.
+ * <p>
+ * A snapshot keeps an index of its own which maps IDs to the ordinals of the partitions holding them, see
+ * {@link #lowest(int, IntPredicate)}.
+ */
+final class ArticleIdIndex {
+    /**
+     * The index every partition starts from, it is shared and therefore never added to
+     */
+    static final ArticleIdIndex EMPTY = new ArticleIdIndex(0);
+
+    /**
+     * The keys and values of the table. A slot is free while its value is zero, values hold positions plus one.
+     */
+    private static final class Table {
+        final int[] keys;
+        final int[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table;
+    private int size;
+
+    /**
+     * Creates an index with room for the given number of IDs before it has to grow.
+     *
+     * @param expected The number of IDs to expect.
+     */
+    ArticleIdIndex(int expected) {
+        table = new Table(capacityFor(expected));
+    }
+
+    /**
+     * Builds an index over the IDs of the given records.
+     *
+     * @param records The records to index.
+     * @return The new index.
+     */
+    static ArticleIdIndex build(ArticleRecords records) {
+        ArticleIdIndex index = new ArticleIdIndex(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            index.add(records.id(i), i);
+        }
+        return index;
+    }
+
+    /**
+     * Indexes the record at the given position under its ID. Callers must hold the lock of the partition's stripe.
+     *
+     * @param id       The ID of the record.
+     * @param position The position of the record.
+     */
+    void add(int id, int position) {
+        Table current = table;
+        if ((size + 1) * 2 > current.keys.length) {
+            // Keep the load factor at one half, rebuilding on the side so readers keep probing a complete table
+            Table grown = new Table(current.keys.length * 2);
+            for (int slot = 0; slot < current.keys.length; slot++) {
+                if (current.values[slot] != 0) {
+                    insert(grown, current.keys[slot], current.values[slot]);
+                }
+            }
+            table = grown;
+            current = grown;
+        }
+        insert(current, id, position + 1);
+        size++;
+    }
+
+    /**
+     * Finds the position of the live record with the given ID among the given records.
+     *
+     * @param records The records of the partition this index belongs to.
+     * @param start   The position of the first live record, records before it were evicted.
+     * @param id      The ID to look up.
+     * @return The position of the record, or -1 if the records hold no live record with the ID.
+     */
+    int position(ArticleRecords records, int start, int id) {
+        Table current = table;
+        int found = -1;
+        // Walk the whole cluster, the ID may have been added more than once
+        for (int slot = hash(id) & current.mask; ; slot = (slot + 1) & current.mask) {
+            int value = current.values[slot];
+            if (value == 0) {
+                return found;
+            }
+            int position = value - 1;
+            // Positions beyond the partition were added for newer partitions, those before its start were evicted
+            if (current.keys[slot] == id && position >= start && position < records.size()
+                    && (found < 0 || position < found) && records.id(position) == id) {
+                found = position;
+            }
+        }
+    }
+
+    /**
+     * Finds the lowest value added under the given ID that the given test accepts. Values of an index over the
+     * records of a partition are positions, see {@link #position(ArticleRecords, int, int)}; other indexes decide
+     * what their values are, and which of them are still valid.
+     *
+     * @param id     The ID to look up.
+     * @param accept Tells whether a value added under the ID is still valid.
+     * @return The lowest accepted value, or -1 if no value is accepted.
+     */
+    int lowest(int id, IntPredicate accept) {
+        Table current = table;
+        int found = -1;
+        for (int slot = hash(id) & current.mask; ; slot = (slot + 1) & current.mask) {
+            int value = current.values[slot];
+            if (value == 0) {
+                return found;
+            }
+            if (current.keys[slot] == id && (found < 0 || value - 1 < found) && accept.test(value - 1)) {
+                found = value - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries added, counting entries of IDs added more than once and of evicted records.
+     *
+     * @return The number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Inserts an entry into a free slot, writing the key before the value that marks the slot as taken.
+     */
+    private static void insert(Table table, int key, int value) {
+        for (int slot = hash(key) & table.mask; ; slot = (slot + 1) & table.mask) {
+            if (table.values[slot] == 0) {
+                table.keys[slot] = key;
+                table.values[slot] = value;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Spreads sequential IDs across the table with a multiplicative hash.
+     */
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int capacityFor(int expected) {
+        int capacity = 8;
+        while (capacity < (long) expected * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,49 @@
+package io.collective.articles;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Derives stable article IDs from the identity of a feed item, so the same item keeps its ID across refreshes.
+ */
+public final class ArticleIds {
+    private ArticleIds() {
+    }
+
+    /**
+     * Returns the ID for a feed item, derived from its guid, falling back to its link and then to its title.
+     * IDs are positive 31 bit values taken from a SHA-256 digest of the chosen key.
+     *
+     * @param guid  The guid of the item, may be null.
+     * @param link  The link of the item, may be null.
+     * @param title The title of the item, may be null.
+     * @return The positive ID of the item.
+     */
+    public static int of(String guid, String link, String title) {
+        String key;
+        if (!isBlank(guid)) {
+            key = "guid:" + guid.trim();
+        } else if (!isBlank(link)) {
+            key = "link:" + link.trim();
+        } else {
+            key = "title:" + (title == null ? "" : title.trim());
+        }
+        byte[] hash = digest(key.getBytes(StandardCharsets.UTF_8));
+        int id = ((hash[0] & 0x7f) << 24) | ((hash[1] & 0xff) << 16) | ((hash[2] & 0xff) << 8) | (hash[3] & 0xff);
+        // Zero is not positive, and remapping it differently would change the ID an item has in existing logs
+        return id == 0 ? 1 : id;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
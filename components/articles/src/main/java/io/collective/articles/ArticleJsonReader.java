@@ -0,0 +1,111 @@
+package io.collective.articles;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads article infos from a stream of JSON tokens, without building a tree of the whole document.
+ * <p>
+ * Accepts either a JSON array of article objects or newline delimited JSON, one article object per line. Each object
+ * carries a "title" and either an "id" or the "guid" or "link" a stable ID is derived from, see {@link ArticleIds}.
+ * An "id" of 0 is an ID like any other. Articles with none of the three are rejected rather than identified by their
+ * title alone, which two different articles may share. Unknown fields are skipped.
+ */
+public final class ArticleJsonReader {
+    private ArticleJsonReader() {
+    }
+
+    /**
+     * Reads all article infos from the parser.
+     *
+     * @param parser   The parser positioned before the first token.
+     * @param maxItems The maximum number of articles to accept.
+     * @return The article infos, in document order.
+     * @throws IOException              If the input cannot be read or is not valid JSON.
+     * @throws IllegalArgumentException If an article is malformed or there are more than maxItems articles.
+     */
+    public static List<ArticleInfo> readArticles(JsonParser parser, int maxItems) throws IOException {
+        List<ArticleInfo> infos = new ArrayList<>();
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            // A single array of articles
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                add(infos, readArticle(parser, token), maxItems);
+            }
+            if (parser.nextToken() != null) {
+                throw new IllegalArgumentException("unexpected content after the array");
+            }
+        } else {
+            // A sequence of root level articles, as in newline delimited JSON
+            while (token != null) {
+                add(infos, readArticle(parser, token), maxItems);
+                token = parser.nextToken();
+            }
+        }
+        return infos;
+    }
+
+    private static void add(List<ArticleInfo> infos, ArticleInfo info, int maxItems) {
+        if (infos.size() >= maxItems) {
+            throw new IllegalArgumentException("more than " + maxItems + " articles");
+        }
+        infos.add(info);
+    }
+
+    /**
+     * Reads one article object, the parser must be positioned on its START_OBJECT token.
+     */
+    private static ArticleInfo readArticle(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("expected an article object but found " + token);
+        }
+        int id = 0;
+        boolean hasId = false;
+        String title = null;
+        String guid = null;
+        String link = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    if (value != JsonToken.VALUE_NUMBER_INT) {
+                        throw new IllegalArgumentException("id must be an integer");
+                    }
+                    id = parser.getIntValue();
+                    hasId = true;
+                    break;
+                case "title":
+                    title = parser.getValueAsString();
+                    break;
+                case "guid":
+                    guid = parser.getValueAsString();
+                    break;
+                case "link":
+                    link = parser.getValueAsString();
+                    break;
+                default:
+                    // Skip unknown fields, including nested objects and arrays
+                    parser.skipChildren();
+            }
+        }
+        if (title == null) {
+            throw new IllegalArgumentException("article without a title");
+        }
+        if (hasId) {
+            return new ArticleInfo(id, title);
+        }
+        if (isBlank(guid) && isBlank(link)) {
+            throw new IllegalArgumentException("article without an id, guid, or link");
+        }
+        return new ArticleInfo(ArticleIds.of(guid, link, title), title);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
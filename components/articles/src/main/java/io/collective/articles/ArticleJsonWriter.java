@@ -0,0 +1,45 @@
+package io.collective.articles;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes article records as JSON straight from the records, producing the same wire format as a list of ArticleInfo
+ * objects without allocating them.
+ */
+public final class ArticleJsonWriter {
+    private ArticleJsonWriter() {
+    }
+
+    /**
+     * Writes the records as a JSON array of objects with "id" and "title" fields.
+     *
+     * @param generator The generator to write the JSON tokens to.
+     * @param records   The records to write.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    public static void writeArticles(JsonGenerator generator, List<ArticleRecord> records) throws IOException {
+        generator.writeStartArray();
+        // Index based iteration, the record lists are random access and this avoids an iterator per request
+        for (int i = 0; i < records.size(); i++) {
+            writeArticle(generator, records.get(i));
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Writes a single record as a JSON object with "id" and "title" fields.
+     *
+     * @param generator The generator to write the JSON tokens to.
+     * @param record    The record to write.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    public static void writeArticle(JsonGenerator generator, ArticleRecord record) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", record.getId());
+        generator.writeStringField("title", record.getTitle());
+        generator.writeEndObject();
+    }
+}
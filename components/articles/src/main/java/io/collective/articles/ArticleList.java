@@ -0,0 +1,93 @@
+package io.collective.articles;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable list of article records that can be extended in amortized constant time, holding one ArticleRecord
+ * object per article.
+ * <p>
+ * Lists appended from one another share a backing array. A list only ever reads the slots below its own size, and a
+ * slot is claimed exactly once, so appending to a list never changes what an existing list contains.
+ */
+final class ArticleList extends ArticleRecords {
+    /**
+     * The empty list every snapshot starts from
+     */
+    static final ArticleList EMPTY = new ArticleList(new ArticleRecord[0], 0, new AtomicInteger());
+
+    private final ArticleRecord[] elements;
+    private final int size;
+
+    /**
+     * The number of slots of the shared backing array already claimed by some list
+     */
+    private final AtomicInteger claimed;
+
+    private ArticleList(ArticleRecord[] elements, int size, AtomicInteger claimed) {
+        this.elements = elements;
+        this.size = size;
+        this.claimed = claimed;
+    }
+
+    /**
+     * Returns a list containing the given records in order.
+     *
+     * @param records The records of the list.
+     * @return The new list.
+     */
+    static ArticleList of(List<ArticleRecord> records) {
+        ArticleRecord[] elements = records.toArray(new ArticleRecord[0]);
+        return new ArticleList(elements, elements.length, new AtomicInteger(elements.length));
+    }
+
+    /**
+     * Returns a list containing the records of this list followed by the given record.
+     * The backing array is reused when this list is the longest one built on it.
+     *
+     * @param record The record to append.
+     * @return The extended list.
+     */
+    @Override
+    ArticleList append(ArticleRecord record) {
+        // Claim the next free slot if nothing has been appended to this list yet
+        if (size < elements.length && claimed.compareAndSet(size, size + 1)) {
+            elements[size] = record;
+            return new ArticleList(elements, size + 1, claimed);
+        }
+        // Otherwise copy only the slots this list owns into a larger array
+        ArticleRecord[] grown = new ArticleRecord[Math.max(8, size * 2)];
+        System.arraycopy(elements, 0, grown, 0, size);
+        grown[size] = record;
+        return new ArticleList(grown, size + 1, new AtomicInteger(size + 1));
+    }
+
+    @Override
+    ArticleList replace(Map<Integer, ArticleRecord> replacements) {
+        ArticleRecord[] copy = new ArticleRecord[size];
+        System.arraycopy(elements, 0, copy, 0, size);
+        for (Map.Entry<Integer, ArticleRecord> replacement : replacements.entrySet()) {
+            copy[replacement.getKey()] = replacement.getValue();
+        }
+        return new ArticleList(copy, size, new AtomicInteger(size));
+    }
+
+    @Override
+    ArticleList copyOf(List<ArticleRecord> records) {
+        return of(records);
+    }
+
+    @Override
+    public ArticleRecord get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,442 @@
+package io.collective.articles;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A durable, append-only log of article changes backed by memory-mapped segment files, plus a compacted snapshot.
+ * <p>
+ * Every change is appended to the current segment as a length and checksum framed entry. Once enough segments have
+ * accumulated the full catalog is written to a new snapshot file, which is swapped in with an atomic rename, and the
+ * segments it covers are deleted. Recovery maps the snapshot and replays the remaining segments, stopping at the
+ * first torn or corrupt entry.
+ * <p>
+ * Records belong to the source they were read from. Entries are written for the source named by the last source
+ * entry of their segment, so a source entry is only written when consecutive changes come from different sources.
+ * Every segment starts out with the empty source of articles saved directly.
+ * <p>
+ * Entries are written to mapped memory, so they survive a process restart without an fsync; snapshots are forced to
+ * disk before they replace the previous one. The log is not thread safe, the ArticleDataGateway synchronizes on it.
+ */
+public class ArticleLog implements Closeable {
+    private static final int SNAPSHOT_MAGIC = 0x41525453;
+    private static final int FORMAT_VERSION = 2;
+    private static final String SNAPSHOT = "articles.snapshot";
+    private static final String SEGMENT_PREFIX = "articles-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte APPEND = 1;
+    private static final byte AVAILABILITY = 2;
+    private static final byte UPSERT = 3;
+    private static final byte REMOVE = 4;
+    private static final byte SOURCE = 5;
+
+    /**
+     * Bytes of framing in front of every entry, its length and its checksum
+     */
+    private static final int HEADER = 8;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Path directory;
+    private final int segmentSize;
+    private final int segmentsPerSnapshot;
+
+    private long segment;
+    private long firstSegment;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * The source the entries of the current segment belong to
+     */
+    private String source = "";
+
+    /**
+     * Constructs an ArticleLog in the given directory with 8 MB segments, compacting after 4 segments.
+     *
+     * @param directory The directory holding the snapshot and segment files.
+     */
+    public ArticleLog(Path directory) {
+        this(directory, 8 * 1024 * 1024, 4);
+    }
+
+    /**
+     * Constructs an ArticleLog in the given directory.
+     *
+     * @param directory           The directory holding the snapshot and segment files.
+     * @param segmentSize         The size in bytes of each memory-mapped segment.
+     * @param segmentsPerSnapshot The number of segments after which the log asks to be compacted.
+     */
+    public ArticleLog(Path directory, int segmentSize, int segmentsPerSnapshot) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segmentsPerSnapshot = segmentsPerSnapshot;
+    }
+
+    /**
+     * Rebuilds the article records from the snapshot and the segments written after it, then compacts them into a
+     * fresh snapshot and opens a new segment for appending.
+     *
+     * @return The recovered records by source, each in the order they were written.
+     * @throws IOException If the files cannot be read or written.
+     */
+    public Map<String, List<ArticleRecord>> recover() throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+
+        Map<String, Replayed> sources = new LinkedHashMap<>();
+        long next = readSnapshot(sources);
+        int replayed = 0;
+        for (long sequence : segments()) {
+            if (sequence >= next) {
+                replay(segmentPath(sequence), sources);
+                replayed++;
+            }
+            next = Math.max(next, sequence + 1);
+        }
+        Map<String, List<ArticleRecord>> records = new LinkedHashMap<>();
+        int count = 0;
+        for (Map.Entry<String, Replayed> source : sources.entrySet()) {
+            // Removed records were left as holes so positions stay valid while replaying
+            source.getValue().records.removeIf(Objects::isNull);
+            records.put(source.getKey(), source.getValue().records);
+            count += source.getValue().records.size();
+        }
+
+        // Start from a clean snapshot so the next recovery only has to map a single file
+        segment = next - 1;
+        compact(records);
+        logger.info("recovered {} articles of {} sources from {} segments in {} ms.", count, records.size(), replayed, (System.nanoTime() - start) / 1_000_000);
+        return records;
+    }
+
+    /**
+     * Appends a saved record to the log.
+     *
+     * @param source The source of the record.
+     * @param record The record that was saved.
+     */
+    void appended(String source, ArticleRecord record) {
+        byte[] title = record.getTitle() == null ? null : record.getTitle().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(1 + 4 + 1 + 4 + (title == null ? 0 : title.length));
+        entry.put(APPEND).putInt(record.getId()).put((byte) (record.isAvailable() ? 1 : 0));
+        putBytes(entry, title);
+        write(source, entry);
+    }
+
+    /**
+     * Appends an upserted record to the log, replacing the record with the same ID on replay.
+     *
+     * @param source The source of the record.
+     * @param record The record that was upserted.
+     */
+    void upserted(String source, ArticleRecord record) {
+        byte[] title = record.getTitle() == null ? null : record.getTitle().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(1 + 4 + 1 + 4 + (title == null ? 0 : title.length));
+        entry.put(UPSERT).putInt(record.getId()).put((byte) (record.isAvailable() ? 1 : 0));
+        putBytes(entry, title);
+        write(source, entry);
+    }
+
+    /**
+     * Appends an availability change to the log.
+     *
+     * @param source      The source of the record.
+     * @param id          The ID of the record.
+     * @param isAvailable The new availability status.
+     */
+    void availabilityChanged(String source, int id, boolean isAvailable) {
+        ByteBuffer entry = ByteBuffer.allocate(1 + 4 + 1);
+        entry.put(AVAILABILITY).putInt(id).put((byte) (isAvailable ? 1 : 0));
+        write(source, entry);
+    }
+
+    /**
+     * Appends the removal of an evicted record to the log.
+     *
+     * @param source The source of the record.
+     * @param id     The ID of the record.
+     */
+    void removed(String source, int id) {
+        ByteBuffer entry = ByteBuffer.allocate(1 + 4 + 1);
+        entry.put(REMOVE).putInt(id).put((byte) 0);
+        write(source, entry);
+    }
+
+    /**
+     * Checks whether enough segments have been written since the last snapshot to warrant a compaction.
+     *
+     * @return true if the log should be compacted.
+     */
+    boolean needsCompaction() {
+        return segment - firstSegment >= segmentsPerSnapshot;
+    }
+
+    /**
+     * Writes the given records as the new snapshot, deletes the segments it replaces, and opens a new segment.
+     *
+     * @param records The complete current records by source.
+     */
+    void compact(Map<String, List<ArticleRecord>> records) {
+        try {
+            closeSegment();
+            long next = segment + 1;
+            writeSnapshot(records, next);
+            // The snapshot covers every existing segment now
+            for (long sequence : segments()) {
+                if (sequence < next) {
+                    Files.deleteIfExists(segmentPath(sequence));
+                }
+            }
+            firstSegment = next;
+            openSegment(next, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to compact article log in " + directory, e);
+        }
+    }
+
+    /**
+     * Closes the current segment. The log may not be written to afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+
+    private void write(String source, ByteBuffer entry) {
+        entry.flip();
+        ByteBuffer switched = null;
+        if (!source.equals(this.source) || buffer.remaining() < HEADER + entry.remaining()) {
+            // Name the source up front, a new segment starts out with the empty source again
+            byte[] name = source.getBytes(StandardCharsets.UTF_8);
+            switched = ByteBuffer.allocate(1 + 4 + 1 + 4 + name.length);
+            switched.put(SOURCE).putInt(0).put((byte) 0);
+            putBytes(switched, name);
+            switched.flip();
+        }
+        int required = HEADER + entry.remaining() + (switched == null ? 0 : HEADER + switched.remaining());
+        try {
+            if (buffer.remaining() < required) {
+                // Roll over to a new segment, large enough even for an oversized entry
+                closeSegment();
+                openSegment(segment + 1, Math.max(segmentSize, required));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to roll article log segment in " + directory, e);
+        }
+        if (switched != null && !source.equals(this.source)) {
+            put(switched);
+            this.source = source;
+        }
+        put(entry);
+    }
+
+    private void put(ByteBuffer entry) {
+        CRC32 crc = new CRC32();
+        crc.update(entry.duplicate());
+        buffer.putInt(entry.remaining()).putInt((int) crc.getValue()).put(entry);
+    }
+
+    private void replay(Path path, Map<String, Replayed> sources) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Replayed replayed = sources.computeIfAbsent("", key -> new Replayed());
+            while (mapped.remaining() >= HEADER) {
+                int length = mapped.getInt();
+                int checksum = mapped.getInt();
+                // A zero length marks the unwritten tail, anything out of bounds is a torn write
+                if (length <= 0 || length > mapped.remaining()) {
+                    break;
+                }
+                ByteBuffer entry = mapped.slice();
+                entry.limit(length);
+                CRC32 crc = new CRC32();
+                crc.update(entry.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("ignoring corrupt entry in {}.", path);
+                    break;
+                }
+                mapped.position(mapped.position() + length);
+
+                byte type = entry.get();
+                int id = entry.getInt();
+                boolean isAvailable = entry.get() == 1;
+                List<ArticleRecord> records = replayed.records;
+                Map<Integer, Integer> positions = replayed.positions;
+                if (type == SOURCE) {
+                    replayed = sources.computeIfAbsent(getString(entry), key -> new Replayed());
+                } else if (type == APPEND) {
+                    positions.putIfAbsent(id, records.size());
+                    records.add(new ArticleRecord(id, getString(entry), isAvailable));
+                } else if (type == UPSERT) {
+                    ArticleRecord record = new ArticleRecord(id, getString(entry), isAvailable);
+                    Integer position = positions.putIfAbsent(id, records.size());
+                    if (position == null) {
+                        records.add(record);
+                    } else {
+                        records.set(position, record);
+                    }
+                } else if (type == REMOVE) {
+                    Integer position = positions.remove(id);
+                    if (position != null) {
+                        records.set(position, null);
+                    }
+                } else if (type == AVAILABILITY) {
+                    Integer position = positions.get(id);
+                    if (position != null) {
+                        ArticleRecord record = records.get(position);
+                        records.set(position, new ArticleRecord(id, record.getTitle(), isAvailable));
+                    }
+                }
+            }
+        }
+    }
+
+    private long readSnapshot(Map<String, Replayed> sources) throws IOException {
+        Path path = directory.resolve(SNAPSHOT);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < 28) {
+                throw new IOException("truncated article snapshot " + path);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer content = mapped.duplicate();
+            content.limit(mapped.limit() - 8);
+            CRC32 crc = new CRC32();
+            crc.update(content.duplicate());
+            int magic = mapped.getInt();
+            int format = mapped.getInt();
+            if (magic != SNAPSHOT_MAGIC || format < 1 || format > FORMAT_VERSION || mapped.getLong(mapped.limit() - 8) != crc.getValue()) {
+                throw new IOException("corrupt article snapshot " + path);
+            }
+            long next = mapped.getLong();
+            // The first format held a single list of records without sources
+            int partitions = format == 1 ? 1 : mapped.getInt();
+            for (int p = 0; p < partitions; p++) {
+                Replayed replayed = sources.computeIfAbsent(format == 1 ? "" : getString(mapped), key -> new Replayed());
+                int count = mapped.getInt();
+                replayed.records.ensureCapacity(count);
+                for (int i = 0; i < count; i++) {
+                    int id = mapped.getInt();
+                    boolean isAvailable = mapped.get() == 1;
+                    // Remember where each ID first appears so later entries replay without a scan
+                    replayed.positions.putIfAbsent(id, replayed.records.size());
+                    replayed.records.add(new ArticleRecord(id, getString(mapped), isAvailable));
+                }
+            }
+            return next;
+        }
+    }
+
+    private void writeSnapshot(Map<String, List<ArticleRecord>> sources, long next) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(next);
+            out.writeInt(sources.size());
+            for (Map.Entry<String, List<ArticleRecord>> source : sources.entrySet()) {
+                byte[] name = source.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeInt(source.getValue().size());
+                for (ArticleRecord record : source.getValue()) {
+                    out.writeInt(record.getId());
+                    out.writeByte(record.isAvailable() ? 1 : 0);
+                    byte[] title = record.getTitle() == null ? null : record.getTitle().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(title == null ? -1 : title.length);
+                    if (title != null) {
+                        out.write(title);
+                    }
+                }
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        // Readers either see the previous snapshot or the complete new one
+        Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void openSegment(long sequence, int size) throws IOException {
+        segment = sequence;
+        source = "";
+        channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * The records of one source being replayed, and where each ID first appears so changes replay without a scan.
+     */
+    private static final class Replayed {
+        final ArrayList<ArticleRecord> records = new ArrayList<>();
+        final Map<Integer, Integer> positions = new HashMap<>();
+    }
+
+    private static void putBytes(ByteBuffer entry, byte[] bytes) {
+        entry.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            entry.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer source) {
+        int length = source.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
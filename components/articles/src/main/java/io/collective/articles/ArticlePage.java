@@ -0,0 +1,40 @@
+package io.collective.articles;
+
+import java.util.List;
+
+/**
+ * Represents one page of article records along with the cursor of the page that follows it.
+ */
+public final class ArticlePage {
+    private final List<ArticleRecord> records;
+    private final String next;
+
+    /**
+     * Constructs an ArticlePage with the specified records and next cursor.
+     *
+     * @param records The records of the page.
+     * @param next    The cursor of the next page, or null if this is the last page.
+     */
+    ArticlePage(List<ArticleRecord> records, String next) {
+        this.records = records;
+        this.next = next;
+    }
+
+    /**
+     * Returns the records of the page.
+     *
+     * @return The unmodifiable list of ArticleRecord objects.
+     */
+    public List<ArticleRecord> getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the opaque cursor of the next page.
+     *
+     * @return The cursor of the next page, or null if this is the last page.
+     */
+    public String getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,424 @@
+package io.collective.articles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable view of the articles of one source, one of the partitions making up an {@link ArticleSnapshot}.
+ * <p>
+ * Besides all records, a partition carries a prebuilt index of the available records which is maintained
+ * incrementally as records are appended or change availability, an inverted index over the titles, and a hash index
+ * from IDs to records.
+ * <p>
+ * Evicting the oldest records only advances the position the partition starts at, so it costs O(1) and shares
+ * everything with the previous partition. The records before the start are dropped for good once they outnumber the
+ * live ones, by {@link #compacted()}, which keeps the copying amortized constant per eviction.
+ */
+final class ArticlePartition {
+    /**
+     * The endpoint the articles were read from, or the empty string for articles saved directly
+     */
+    private final String source;
+
+    private final ArticleRecords records;
+
+    /**
+     * The position of the first live record, the records before it were evicted
+     */
+    private final int start;
+
+    /**
+     * The live records, the records themselves unless some were evicted
+     */
+    private final List<ArticleRecord> live;
+
+    private final AvailableList available;
+    private final ArticleSearchIndex search;
+    private final ArticleIdIndex ids;
+
+    /**
+     * Constructs an ArticlePartition with the specified source, records, and available records.
+     *
+     * @param source    The source of the records.
+     * @param records   The article records contained in the partition.
+     * @param start     The position of the first live record.
+     * @param available The available live records, in the same order as they appear in records.
+     * @param search    The title index over the records.
+     * @param ids       The ID index over the records.
+     */
+    private ArticlePartition(String source, ArticleRecords records, int start, AvailableList available, ArticleSearchIndex search, ArticleIdIndex ids) {
+        this.source = source;
+        this.records = records;
+        this.start = start;
+        this.live = start == 0 ? records : records.subList(start, records.size());
+        this.available = available;
+        this.search = search;
+        this.ids = ids;
+    }
+
+    /**
+     * Returns the partition a source starts from, holding no records.
+     *
+     * @param source  The source of the records.
+     * @param storage The layout to keep records in.
+     * @return The empty partition.
+     */
+    static ArticlePartition empty(String source, ArticleStorage storage) {
+        return new ArticlePartition(source, storage.empty(), 0, AvailableList.of(storage.empty(), 0), ArticleSearchIndex.EMPTY, ArticleIdIndex.EMPTY);
+    }
+
+    /**
+     * Returns the source of the records.
+     *
+     * @return The endpoint the articles were read from, or the empty string for articles saved directly.
+     */
+    String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the article records contained in the partition.
+     *
+     * @return The unmodifiable list of ArticleRecord objects.
+     */
+    List<ArticleRecord> getRecords() {
+        return live;
+    }
+
+    /**
+     * Returns the available article records contained in the partition.
+     *
+     * @return The unmodifiable list of available ArticleRecord objects.
+     */
+    List<ArticleRecord> getAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns the number of article records contained in the partition.
+     *
+     * @return The number of records.
+     */
+    int size() {
+        return records.size() - start;
+    }
+
+    /**
+     * Finds the record with the given ID with a single probe of the ID index.
+     *
+     * @param id The ID of the record.
+     * @return The record, or null if the partition holds no record with the ID.
+     */
+    ArticleRecord find(int id) {
+        int position = position(id);
+        return position < 0 ? null : records.get(position);
+    }
+
+    /**
+     * Returns the title index over the records, for searches across partitions.
+     *
+     * @return The title index.
+     */
+    ArticleSearchIndex searchIndex() {
+        return search;
+    }
+
+    /**
+     * Returns all records of the partition, including evicted ones before {@link #start()}.
+     *
+     * @return The records.
+     */
+    ArticleRecords records() {
+        return records;
+    }
+
+    /**
+     * Returns the position of the live record with the given ID.
+     *
+     * @param id The ID of the record.
+     * @return The position among all records, or -1 if the partition holds no live record with the ID.
+     */
+    int position(int id) {
+        return ids.position(records, start, id);
+    }
+
+    /**
+     * Returns the index of the live record with the given ID in {@link #getRecords()}, or in {@link #getAvailable()}.
+     *
+     * @param id        The ID of the record.
+     * @param available Whether to find the index among the available records.
+     * @return The index, or -1 if the partition holds no live record, or no available record, with the ID.
+     */
+    int indexOf(int id, boolean available) {
+        int position = position(id);
+        if (position < 0) {
+            return -1;
+        }
+        return available ? this.available.indexOf(position) : position - start;
+    }
+
+    /**
+     * Returns the record at the given position.
+     *
+     * @param position A position among all records, from {@link #start()} up to {@link #end()}.
+     * @return The record.
+     */
+    ArticleRecord record(int position) {
+        return records.get(position);
+    }
+
+    /**
+     * Returns the position of the first live record.
+     *
+     * @return The position among all records.
+     */
+    int start() {
+        return start;
+    }
+
+    /**
+     * Returns the position after the last record.
+     *
+     * @return The position among all records.
+     */
+    int end() {
+        return records.size();
+    }
+
+    /**
+     * Returns the next partition with the given record appended.
+     * Must only be called on the current partition while holding the lock of its stripe, as the title and ID indexes
+     * are extended in place.
+     *
+     * @param record The record to append.
+     * @return The next partition.
+     */
+    ArticlePartition append(ArticleRecord record) {
+        ArticleRecords nextRecords = records.append(record);
+        // Append to the available index only when the new record is available
+        AvailableList nextAvailable = record.isAvailable() ? available.append(nextRecords, records.size()) : available;
+        // The shared empty index must stay empty, start a new one instead
+        ArticleSearchIndex nextSearch = search == ArticleSearchIndex.EMPTY ? new ArticleSearchIndex() : search;
+        nextSearch.add(records.size(), record.getTitle());
+        ArticleIdIndex nextIds = ids == ArticleIdIndex.EMPTY ? new ArticleIdIndex(0) : ids;
+        nextIds.add(record.getId(), records.size());
+        return new ArticlePartition(source, nextRecords, start, nextAvailable, nextSearch, nextIds);
+    }
+
+    /**
+     * Returns the records the given infos would write: new records for unknown IDs and updated records for known IDs
+     * whose title differs. Infos matching their record are left out, so an unchanged refresh yields no changes.
+     * When several infos share an ID the last one wins.
+     *
+     * @param infos The infos, carrying stable IDs.
+     * @return The changed records, in the order of the infos.
+     */
+    List<ArticleRecord> changes(List<ArticleInfo> infos) {
+        Map<Integer, ArticleInfo> pending = new LinkedHashMap<>();
+        for (ArticleInfo info : infos) {
+            pending.remove(info.getId());
+            pending.put(info.getId(), info);
+        }
+        List<ArticleRecord> changes = new ArrayList<>();
+        for (ArticleInfo info : pending.values()) {
+            ArticleRecord record = find(info.getId());
+            if (record == null) {
+                changes.add(new ArticleRecord(info.getId(), info.getTitle(), true));
+            } else if (!Objects.equals(record.getTitle(), info.getTitle())) {
+                // Keep the availability of the existing record
+                changes.add(new ArticleRecord(info.getId(), info.getTitle(), record.isAvailable()));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Returns the difference between the live records and the given infos, the complete contents of a feed: the
+     * records {@link #changes(List)} would write, split into added and changed ones, and the live records whose IDs
+     * are not among the infos. Infos with the ID of an evicted record are not added back.
+     *
+     * @param infos   The infos, carrying stable IDs.
+     * @param evicted The IDs of records evicted from the partition.
+     * @return The diff.
+     */
+    ArticleDiff diff(List<ArticleInfo> infos, Set<Integer> evicted) {
+        List<ArticleRecord> changes = changes(infos);
+        List<ArticleRecord> upserts = new ArrayList<>(changes.size());
+        List<ArticleRecord> added = new ArrayList<>();
+        List<ArticleRecord> changed = new ArrayList<>();
+        for (ArticleRecord change : changes) {
+            if (position(change.getId()) >= 0) {
+                changed.add(change);
+                upserts.add(change);
+            } else if (!evicted.contains(change.getId())) {
+                added.add(change);
+                upserts.add(change);
+            }
+        }
+        Set<Integer> kept = new HashSet<>();
+        for (ArticleInfo info : infos) {
+            kept.add(info.getId());
+        }
+        List<ArticleRecord> removed = new ArrayList<>();
+        for (ArticleRecord record : live) {
+            if (!kept.contains(record.getId())) {
+                removed.add(record);
+            }
+        }
+        return new ArticleDiff(upserts, added, changed, removed);
+    }
+
+    /**
+     * Returns the next partition without the live records with the given IDs, holding the others in the same order
+     * with fresh indexes. Positions shift down by {@link #start()} and by the number of removed records before them.
+     *
+     * @param removed The IDs of the records to remove.
+     * @return The next partition, or this partition when no ID was given.
+     */
+    ArticlePartition without(Set<Integer> removed) {
+        if (removed.isEmpty()) {
+            return this;
+        }
+        List<ArticleRecord> kept = new ArrayList<>(Math.max(0, size() - removed.size()));
+        for (ArticleRecord record : live) {
+            if (!removed.contains(record.getId())) {
+                kept.add(record);
+            }
+        }
+        ArticleRecords nextRecords = records.copyOf(kept);
+        return new ArticlePartition(source, nextRecords, 0, AvailableList.of(nextRecords, 0),
+                ArticleSearchIndex.build(nextRecords), ArticleIdIndex.build(nextRecords));
+    }
+
+    /**
+     * Returns the next partition in which each given record replaces the record with its ID, or is appended when
+     * there is none. Must only be called on the current partition while holding the lock of its stripe, as the
+     * title and ID indexes are extended in place.
+     *
+     * @param changes The records to write, with distinct IDs.
+     * @return The next partition.
+     */
+    ArticlePartition upsert(List<ArticleRecord> changes) {
+        // The shared empty indexes must stay empty, start new ones instead
+        ArticleSearchIndex nextSearch = search == ArticleSearchIndex.EMPTY ? new ArticleSearchIndex() : search;
+        ArticleIdIndex nextIds = ids == ArticleIdIndex.EMPTY ? new ArticleIdIndex(changes.size()) : ids;
+
+        // Replace existing records in place, copying the records only if there is something to replace
+        Map<Integer, ArticleRecord> replacements = new HashMap<>();
+        List<ArticleRecord> appended = new ArrayList<>();
+        for (ArticleRecord change : changes) {
+            int position = position(change.getId());
+            if (position < 0) {
+                appended.add(change);
+            } else {
+                replacements.put(position, change);
+                // Readers of older partitions check titles, so stale postings of the old title are harmless
+                nextSearch.add(position, change.getTitle());
+            }
+        }
+        ArticleRecords nextRecords = records;
+        AvailableList nextAvailable = available;
+        if (!replacements.isEmpty()) {
+            nextRecords = records.replace(replacements);
+            nextAvailable = AvailableList.of(nextRecords, start);
+        }
+
+        // Append the records that did not exist yet
+        for (ArticleRecord change : appended) {
+            int position = nextRecords.size();
+            nextSearch.add(position, change.getTitle());
+            nextIds.add(change.getId(), position);
+            nextRecords = nextRecords.append(change);
+            if (change.isAvailable()) {
+                nextAvailable = nextAvailable.append(nextRecords, position);
+            }
+        }
+        return new ArticlePartition(source, nextRecords, start, nextAvailable, nextSearch, nextIds);
+    }
+
+    /**
+     * Returns the next partition containing exactly the given records.
+     *
+     * @param replacement The records of the next partition.
+     * @return The next partition.
+     */
+    ArticlePartition replace(List<ArticleRecord> replacement) {
+        // Keep the layout of the current records
+        ArticleRecords nextRecords = records.copyOf(replacement);
+        return new ArticlePartition(source, nextRecords, 0, AvailableList.of(nextRecords, 0),
+                ArticleSearchIndex.build(nextRecords), ArticleIdIndex.build(nextRecords));
+    }
+
+    /**
+     * Returns the next partition in which the record with the given ID has the given availability.
+     * Returns this partition when no record has the ID or its availability already matches.
+     *
+     * @param id           The ID of the record.
+     * @param isAvailable  The new availability status.
+     * @return The next partition, or this partition when nothing changed.
+     */
+    ArticlePartition withAvailability(int id, boolean isAvailable) {
+        int position = position(id);
+        if (position < 0 || records.isAvailable(position) == isAvailable) {
+            return this;
+        }
+        // Swap in the changed record and rebuild the available index
+        ArticleRecord record = records.get(position);
+        ArticleRecords nextRecords = records.replace(
+                Collections.singletonMap(position, new ArticleRecord(id, record.getTitle(), isAvailable)));
+        // Positions, IDs and titles are unchanged, so the title and ID indexes are shared
+        return new ArticlePartition(source, nextRecords, start, AvailableList.of(nextRecords, start), search, ids);
+    }
+
+    /**
+     * Returns a partition without its first live record.
+     * Nothing is copied; the record stays in memory until the partition is compacted.
+     *
+     * @return The partition starting after the first live record.
+     */
+    ArticlePartition evictFirst() {
+        return new ArticlePartition(source, records, start + 1, available.evict(start), search, ids);
+    }
+
+    /**
+     * Returns a partition in which the first live record is moved behind the last one. Must only be called on a
+     * partition derived from the current one while holding the lock of its stripe, as the title and ID indexes are
+     * extended in place.
+     *
+     * @return The partition with the record moved.
+     */
+    ArticlePartition moveFirstToBack() {
+        return evictFirst().append(records.get(start));
+    }
+
+    /**
+     * Checks whether the evicted records still held outnumber the live ones.
+     *
+     * @return true if the partition should be compacted.
+     */
+    boolean needsCompaction() {
+        return start > size();
+    }
+
+    /**
+     * Returns a partition holding only the live records, with fresh indexes. Positions shift down by
+     * {@link #start()}.
+     *
+     * @return The compacted partition, or this partition when nothing was evicted.
+     */
+    ArticlePartition compacted() {
+        if (start == 0) {
+            return this;
+        }
+        ArticleRecords nextRecords = records.copyOf(live);
+        return new ArticlePartition(source, nextRecords, 0, AvailableList.of(nextRecords, 0),
+                ArticleSearchIndex.build(nextRecords), ArticleIdIndex.build(nextRecords));
+    }
+}
@@ -0,0 +1,100 @@
+package io.collective.articles;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of partitions indexed by ordinal, from which a list with one partition replaced or appended is
+ * derived in O(log n) rather than by copying the whole list.
+ * <p>
+ * The partitions are the leaves of a tree of 32 wide nodes. Deriving a list copies only the nodes on the path to the
+ * changed leaf and shares every other node, so publishing a change to one of thousands of sources copies at most a
+ * few dozen references.
+ */
+final class ArticlePartitions extends AbstractList<ArticlePartition> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * The list holding no partitions
+     */
+    static final ArticlePartitions EMPTY = new ArticlePartitions(0, 0, new Object[WIDTH]);
+
+    private final int size;
+
+    /**
+     * The number of bits of an ordinal consumed below the root, zero while the root holds the partitions themselves
+     */
+    private final int shift;
+
+    private final Object[] root;
+
+    private ArticlePartitions(int size, int shift, Object[] root) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ArticlePartition get(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Index: " + ordinal + ", Size: " + size);
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(ordinal >>> level) & MASK];
+        }
+        return (ArticlePartition) node[ordinal & MASK];
+    }
+
+    /**
+     * Returns the list in which the given partition replaces the one at the given ordinal.
+     *
+     * @param ordinal   The ordinal of the partition to replace.
+     * @param partition The new partition.
+     * @return The next list.
+     */
+    ArticlePartitions with(int ordinal, ArticlePartition partition) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Index: " + ordinal + ", Size: " + size);
+        }
+        return new ArticlePartitions(size, shift, set(root, shift, ordinal, partition));
+    }
+
+    /**
+     * Returns the list with the given partition appended, at the ordinal {@link #size()}.
+     *
+     * @param partition The new partition.
+     * @return The next list.
+     */
+    ArticlePartitions append(ArticlePartition partition) {
+        if (size == 1 << (shift + BITS)) {
+            // The tree is full, grow a level on top of it
+            Object[] grown = new Object[WIDTH];
+            grown[0] = root;
+            return new ArticlePartitions(size + 1, shift + BITS, set(grown, shift + BITS, size, partition));
+        }
+        return new ArticlePartitions(size + 1, shift, set(root, shift, size, partition));
+    }
+
+    /**
+     * Copies the path from the given node down to the leaf of the ordinal, setting the leaf on the way.
+     */
+    private static Object[] set(Object[] node, int level, int ordinal, ArticlePartition partition) {
+        Object[] copy = node.clone();
+        int slot = (ordinal >>> level) & MASK;
+        if (level == 0) {
+            copy[slot] = partition;
+        } else {
+            Object[] child = (Object[]) copy[slot];
+            copy[slot] = set(child == null ? new Object[WIDTH] : child, level - BITS, ordinal, partition);
+        }
+        return copy;
+    }
+}
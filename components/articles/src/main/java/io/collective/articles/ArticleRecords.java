@@ -0,0 +1,59 @@
+package io.collective.articles;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The records of a partition: an immutable list that can be extended in amortized constant time.
+ * <p>
+ * Implementations differ in how the records are laid out in memory, see {@link ArticleStorage}. Lists appended from
+ * one another may share storage, but appending to a list never changes what an existing list contains.
+ */
+abstract class ArticleRecords extends AbstractList<ArticleRecord> implements RandomAccess {
+
+    /**
+     * Returns a list containing the records of this list followed by the given record.
+     *
+     * @param record The record to append.
+     * @return The extended list.
+     */
+    abstract ArticleRecords append(ArticleRecord record);
+
+    /**
+     * Returns a list in which the records at the given positions are swapped for the given records.
+     *
+     * @param replacements The replacement records by position, every position must lie within the list.
+     * @return The new list, laid out like this one.
+     */
+    abstract ArticleRecords replace(Map<Integer, ArticleRecord> replacements);
+
+    /**
+     * Returns a list containing exactly the given records, laid out like this one.
+     *
+     * @param records The records of the new list.
+     * @return The new list.
+     */
+    abstract ArticleRecords copyOf(List<ArticleRecord> records);
+
+    /**
+     * Returns the ID of the record at the given position without materializing the record.
+     *
+     * @param position The position of the record.
+     * @return The ID of the record.
+     */
+    int id(int position) {
+        return get(position).getId();
+    }
+
+    /**
+     * Returns the availability of the record at the given position without materializing the record.
+     *
+     * @param position The position of the record.
+     * @return The availability of the record.
+     */
+    boolean isAvailable(int position) {
+        return get(position).isAvailable();
+    }
+}
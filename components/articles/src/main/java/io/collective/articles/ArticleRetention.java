@@ -0,0 +1,135 @@
+package io.collective.articles;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * The limits an ArticleDataGateway keeps its articles within, and the order it evicts them in once a limit is hit.
+ * <p>
+ * Limits are enforced on the write path: every change evicts just enough articles to get back within them before it
+ * is published, so there are no periodic sweeps. Age is only checked when something is written.
+ * <p>
+ * The count and bytes limits cap the articles of all sources together. Each source has an equal share of them: a
+ * write evicts from the source written while the articles are over a limit and the source holds more than its share,
+ * and then evicts from the other sources over their share, so a busy feed cannot push a quiet feed's articles out and
+ * a new feed is not pushed out by the ones before it. Shares are rounded up, so should the articles still be over a
+ * limit once every source is within its share, as they are when there are more sources than the count limit allows
+ * articles, the sources holding the most are evicted from down to an equal level until the articles are within the
+ * limit. The age limit applies to every article by itself.
+ */
+public final class ArticleRetention {
+    /**
+     * Retention that never evicts anything
+     */
+    public static final ArticleRetention UNLIMITED =
+            new ArticleRetention(Policy.OLDEST_FIRST, Integer.MAX_VALUE, null, Long.MAX_VALUE);
+
+    /**
+     * The orders articles are evicted in.
+     */
+    public enum Policy {
+        /**
+         * The article inserted first is evicted first, however often it has been seen since.
+         */
+        OLDEST_FIRST,
+
+        /**
+         * The article that has not been seen in a feed for the longest time is evicted first, and age is measured
+         * from when an article was last seen.
+         */
+        LEAST_RECENTLY_SEEN
+    }
+
+    private final Policy policy;
+    private final int maxCount;
+    private final Duration maxAge;
+    private final long maxBytes;
+    private final LongSupplier clock;
+
+    /**
+     * Constructs an ArticleRetention measuring age against the system clock.
+     *
+     * @param policy   The order to evict articles in.
+     * @param maxCount The maximum number of articles of all sources, Integer.MAX_VALUE for no limit.
+     * @param maxAge   The maximum age of an article, or null for no limit.
+     * @param maxBytes The maximum number of UTF-8 title bytes of all articles, Long.MAX_VALUE for no limit.
+     */
+    public ArticleRetention(Policy policy, int maxCount, Duration maxAge, long maxBytes) {
+        this(policy, maxCount, maxAge, maxBytes, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs an ArticleRetention measuring age against the given clock.
+     *
+     * @param policy   The order to evict articles in.
+     * @param maxCount The maximum number of articles of all sources, Integer.MAX_VALUE for no limit.
+     * @param maxAge   The maximum age of an article, or null for no limit.
+     * @param maxBytes The maximum number of UTF-8 title bytes of all articles, Long.MAX_VALUE for no limit.
+     * @param clock    The clock, returning milliseconds.
+     * @throws IllegalArgumentException If a limit is negative.
+     */
+    public ArticleRetention(Policy policy, int maxCount, Duration maxAge, long maxBytes, LongSupplier clock) {
+        if (maxCount < 0 || maxBytes < 0 || (maxAge != null && maxAge.isNegative())) {
+            throw new IllegalArgumentException("retention limits must not be negative");
+        }
+        this.policy = policy;
+        this.maxCount = maxCount;
+        this.maxAge = maxAge;
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the order articles are evicted in.
+     *
+     * @return The policy.
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the maximum number of articles.
+     *
+     * @return The maximum count, Integer.MAX_VALUE for no limit.
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Returns the maximum age of an article.
+     *
+     * @return The maximum age, or null for no limit.
+     */
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Returns the maximum number of UTF-8 title bytes of all articles.
+     *
+     * @return The maximum bytes, Long.MAX_VALUE for no limit.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Checks whether any limit is set.
+     *
+     * @return true if articles may be evicted.
+     */
+    public boolean isBounded() {
+        return maxCount != Integer.MAX_VALUE || maxAge != null || maxBytes != Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the current time of the clock age is measured against.
+     *
+     * @return The time in milliseconds.
+     */
+    long now() {
+        return clock.getAsLong();
+    }
+}
@@ -0,0 +1,216 @@
+package io.collective.articles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An inverted index from lower case title terms to the positions of the records containing them.
+ * <p>
+ * Each {@link ArticlePartition} has an index of its own. The index stores positions rather than records, so a reader
+ * resolves matches against the records of its own partition. Appends add postings in place, which readers of older
+ * partitions ignore because the new positions lie beyond the end of their records, and every candidate is checked
+ * against the title of the reader's own record. Postings of evicted records are skipped until the partition is
+ * compacted. Partitions that move records around build a new index.
+ * <p>
+ * A query walks the postings of its rarest term only and checks the remaining terms against each candidate's
+ * title, so its cost depends on how selective the query is rather than on the size of the catalog.
+ */
+final class ArticleSearchIndex {
+    /**
+     * The index every gateway starts from, it is shared and therefore never appended to
+     */
+    static final ArticleSearchIndex EMPTY = new ArticleSearchIndex();
+
+    private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Builds an index over the titles of the given records.
+     *
+     * @param records The records to index.
+     * @return The new index.
+     */
+    static ArticleSearchIndex build(List<ArticleRecord> records) {
+        ArticleSearchIndex index = new ArticleSearchIndex();
+        for (int i = 0; i < records.size(); i++) {
+            index.add(i, records.get(i).getTitle());
+        }
+        return index;
+    }
+
+    /**
+     * Adds the terms of a title for the record at the given position. Callers must hold the lock of the partition's stripe.
+     * A position may be added again when its record's title changes; the terms of the old title are left behind
+     * and filtered out at query time.
+     *
+     * @param position The position of the record.
+     * @param title    The title of the record.
+     */
+    void add(int position, String title) {
+        for (String term : frequencies(title).keySet()) {
+            postings.compute(term, (key, list) -> list == null ? PostingList.of(position) : list.append(position));
+        }
+    }
+
+    /**
+     * Finds the records of the given partitions whose titles contain every term of the query, best matches first.
+     * Matches are ranked by the sum of each term's frequency weighted by its inverse document frequency across all
+     * partitions, normalized by title length, with newer records first on ties.
+     *
+     * @param partitions The partitions to search.
+     * @param query      The query, split into terms the same way titles are.
+     * @param limit      The maximum number of records to return.
+     * @return The matching records.
+     */
+    static List<ArticleRecord> search(List<ArticlePartition> partitions, String query, int limit) {
+        Set<String> terms = frequencies(query).keySet();
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Weigh each term by its rarity across all partitions, so that scores compare between partitions
+        int documents = 0;
+        Map<String, Integer> counts = new HashMap<>();
+        for (ArticlePartition partition : partitions) {
+            documents += partition.size();
+            for (String term : terms) {
+                PostingList list = partition.searchIndex().postings.get(term);
+                counts.merge(term, list == null ? 0 : list.size(), Integer::sum);
+            }
+        }
+        Map<String, Double> weights = new HashMap<>();
+        for (String term : terms) {
+            if (counts.get(term) == 0) {
+                return Collections.emptyList();
+            }
+            weights.put(term, Math.log(1 + (double) documents / counts.get(term)));
+        }
+
+        // Keep the best matches of all partitions in a min heap of at most limit entries
+        PriorityQueue<Match> best = new PriorityQueue<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            ArticlePartition partition = partitions.get(i);
+            partition.searchIndex().collect(partition.records(), partition.start(), i, weights, limit, best);
+        }
+
+        List<ArticleRecord> matches = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            matches.add(best.poll().record);
+        }
+        Collections.reverse(matches);
+        return matches;
+    }
+
+    /**
+     * Adds the records of one partition matching every weighted term to the given heap, keeping at most limit entries.
+     *
+     * @param records   The records of the partition this index belongs to.
+     * @param start     The position of the first live record, records before it were evicted.
+     * @param partition The index of the partition, to order ties between partitions.
+     * @param weights   The terms of the query and their inverse document frequencies.
+     * @param limit     The maximum number of matches to keep.
+     * @param best      The best matches so far, worst first.
+     */
+    private void collect(ArticleRecords records, int start, int partition, Map<String, Double> weights, int limit,
+                         PriorityQueue<Match> best) {
+        // Start from the rarest term, every match has to be in its postings
+        PostingList rarest = null;
+        for (String term : weights.keySet()) {
+            PostingList list = postings.get(term);
+            if (list == null) {
+                return;
+            }
+            if (rarest == null || list.size() < rarest.size()) {
+                rarest = list;
+            }
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < rarest.size(); i++) {
+            int position = rarest.get(i);
+            // Positions beyond the partition were added for newer partitions, those before its start were evicted
+            if (position >= records.size() || position < start || !seen.add(position)) {
+                continue;
+            }
+            ArticleRecord record = records.get(position);
+            Map<String, Integer> title = frequencies(record.getTitle());
+            if (!title.keySet().containsAll(weights.keySet())) {
+                continue;
+            }
+            best.add(new Match(record, partition, position, score(weights, title)));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+    }
+
+    private static double score(Map<String, Double> weights, Map<String, Integer> title) {
+        int length = 0;
+        for (int frequency : title.values()) {
+            length += frequency;
+        }
+        double score = 0;
+        for (Map.Entry<String, Double> weight : weights.entrySet()) {
+            score += title.get(weight.getKey()) * weight.getValue();
+        }
+        return score / Math.sqrt(length);
+    }
+
+    /**
+     * Splits text into lower case terms of letters and digits and counts how often each occurs.
+     *
+     * @param text The text to split, may be null.
+     * @return The terms and their frequencies, in order of first occurrence.
+     */
+    static Map<String, Integer> frequencies(String text) {
+        Map<String, Integer> terms = new LinkedHashMap<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                terms.merge(text.substring(start, i).toLowerCase(Locale.ROOT), 1, Integer::sum);
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * A candidate record and its score, ordered worst first.
+     */
+    private static final class Match implements Comparable<Match> {
+        private final ArticleRecord record;
+        private final int partition;
+        private final int position;
+        private final double score;
+
+        private Match(ArticleRecord record, int partition, int position, double score) {
+            this.record = record;
+            this.partition = partition;
+            this.position = position;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            int byScore = Double.compare(score, other.score);
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byPartition = Integer.compare(partition, other.partition);
+            return byPartition != 0 ? byPartition : Integer.compare(position, other.position);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package io.collective.articles;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, versioned view of the article catalog.
+ * Readers obtain a snapshot from the ArticleDataGateway and may iterate it freely while writers publish newer ones.
+ * <p>
+ * The catalog is partitioned by source: a snapshot holds one {@link ArticlePartition} per endpoint plus one for
+ * articles saved directly, in the order the sources first appeared. Publishing a change to one partition shares all
+ * others, copying only O(log n) of the references to them, see {@link ArticlePartitions}. The lists of all records
+ * and all available records concatenate the partitions' lists, and are only merged, as views, when first asked for.
+ * <p>
+ * Finding the partition of a source, or the partition holding an ID, costs O(1) however many sources there are. Each
+ * source keeps the ordinal of its partition for good, so the map from sources to ordinals is shared by all snapshots
+ * and only ever added to. The index from IDs to ordinals is shared and extended in place the same way as the ID index
+ * of a partition, see {@link ArticleIdIndex}: a snapshot ignores the ordinals of partitions added after it, and checks
+ * the partition found still holds the ID. The index is rebuilt for the next snapshot once entries of removed and
+ * evicted records make up more than half of it.
+ */
+public final class ArticleSnapshot {
+    /**
+     * The number of stale entries the ID index may hold however few records there are, so small snapshots are not
+     * rebuilt over and over
+     */
+    private static final int STALE_ENTRIES = 1024;
+
+    private final long version;
+    private final ArticlePartitions partitions;
+
+    /**
+     * The ordinal of the partition of every source, shared by every snapshot of a gateway and only ever added to
+     */
+    private final Map<String, Integer> ordinals;
+
+    /**
+     * The ordinals of the partitions that held each ID when it was added, callers must hold the publishing lock to add
+     */
+    private final ArticleIdIndex ids;
+
+    /**
+     * The number of records of all partitions
+     */
+    private final int size;
+
+    /**
+     * The merged lists, built on first use. Racing readers may both build them, which is harmless.
+     */
+    private volatile List<ArticleRecord> records;
+    private volatile List<ArticleRecord> available;
+
+    /**
+     * The index in the merged list of all records, and of available records, at which each partition starts, built on
+     * first use like the lists
+     */
+    private volatile int[] recordOffsets;
+    private volatile int[] availableOffsets;
+
+    /**
+     * Constructs an ArticleSnapshot with the specified version and partitions.
+     *
+     * @param version    The version of the snapshot.
+     * @param partitions The partitions of the snapshot, with distinct sources.
+     * @param ordinals   The ordinal of the partition of every source, possibly of sources added after the snapshot.
+     * @param ids        The ordinals of the partitions holding each ID.
+     * @param size       The number of records of all partitions.
+     */
+    private ArticleSnapshot(long version, ArticlePartitions partitions, Map<String, Integer> ordinals, ArticleIdIndex ids, int size) {
+        this.version = version;
+        this.partitions = partitions;
+        this.ordinals = ordinals;
+        this.ids = ids;
+        this.size = size;
+    }
+
+    /**
+     * Returns the snapshot a gateway starts from, holding no partitions.
+     *
+     * @return The empty snapshot.
+     */
+    static ArticleSnapshot empty() {
+        return new ArticleSnapshot(0, ArticlePartitions.EMPTY, new ConcurrentHashMap<>(), new ArticleIdIndex(0), 0);
+    }
+
+    /**
+     * Returns the version of the snapshot. Versions increase by one with every published change.
+     *
+     * @return The version of the snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the article records contained in the snapshot, partition by partition.
+     *
+     * @return The unmodifiable list of ArticleRecord objects.
+     */
+    public List<ArticleRecord> getRecords() {
+        List<ArticleRecord> merged = records;
+        if (merged == null) {
+            List<List<ArticleRecord>> lists = new ArrayList<>(partitions.size());
+            for (ArticlePartition partition : partitions) {
+                lists.add(partition.getRecords());
+            }
+            merged = MergedList.of(lists);
+            records = merged;
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the available article records contained in the snapshot, partition by partition.
+     *
+     * @return The unmodifiable list of available ArticleRecord objects.
+     */
+    public List<ArticleRecord> getAvailable() {
+        List<ArticleRecord> merged = available;
+        if (merged == null) {
+            List<List<ArticleRecord>> lists = new ArrayList<>(partitions.size());
+            for (ArticlePartition partition : partitions) {
+                lists.add(partition.getAvailable());
+            }
+            merged = MergedList.of(lists);
+            available = merged;
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the number of article records contained in the snapshot.
+     *
+     * @return The number of records.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the sources of the articles, in the order they first appeared.
+     *
+     * @return The endpoints articles were read from, and the empty string for articles saved directly.
+     */
+    public List<String> getSources() {
+        List<String> sources = new ArrayList<>(partitions.size());
+        for (ArticlePartition partition : partitions) {
+            sources.add(partition.getSource());
+        }
+        return sources;
+    }
+
+    /**
+     * Returns the article records read from the given source.
+     *
+     * @param source The endpoint, or the empty string for articles saved directly.
+     * @return The unmodifiable list of ArticleRecord objects, empty for an unknown source.
+     */
+    public List<ArticleRecord> getRecords(String source) {
+        ArticlePartition partition = partition(source);
+        return partition == null ? Collections.emptyList() : partition.getRecords();
+    }
+
+    /**
+     * Finds the record with the given ID with a probe of the ID index of the snapshot and one of the partition found.
+     *
+     * @param id The ID of the record.
+     * @return The record, or null if the snapshot holds no record with the ID.
+     */
+    public ArticleRecord find(int id) {
+        ArticlePartition partition = partitionOf(id);
+        return partition == null ? null : partition.find(id);
+    }
+
+    /**
+     * Finds the records whose titles contain every term of the query, best matches first.
+     *
+     * @param query The search query.
+     * @param limit The maximum number of records to return.
+     * @return The matching records.
+     */
+    public List<ArticleRecord> search(String query, int limit) {
+        return ArticleSearchIndex.search(partitions, query, limit);
+    }
+
+    /**
+     * Returns a page of the list of all records, or of available records. The page is a view of the list, and a cursor
+     * whose article moved is resolved through the ID index, so building the page costs O(limit) at most.
+     *
+     * @param available Whether to page through the available records.
+     * @param after     The cursor returned with the previous page, or null for the first page.
+     * @param limit     The maximum number of records in the page.
+     * @return The page.
+     */
+    ArticlePage page(boolean available, ArticleCursor after, int limit) {
+        List<ArticleRecord> source = available ? getAvailable() : getRecords();
+        int start = after == null ? 0 : after.resolve(source, id -> indexOf(id, available));
+        int end = (int) Math.min(source.size(), (long) start + limit);
+        // Only hand out a cursor when there are records left
+        String next = end < source.size() ? new ArticleCursor(end, source.get(end - 1).getId()).encode() : null;
+        return new ArticlePage(source.subList(start, end), next);
+    }
+
+    /**
+     * Returns the index of the record with the given ID in the list of all records, or of available records, with a
+     * probe of the ID index, one of the partition found, and a binary search of its available records.
+     */
+    private int indexOf(int id, boolean available) {
+        ArticlePartition partition = partitionOf(id);
+        if (partition == null) {
+            return -1;
+        }
+        int index = partition.indexOf(id, available);
+        return index < 0 ? -1 : offsets(available)[ordinals.get(partition.getSource())] + index;
+    }
+
+    // The index at which each partition starts in the list of all records, or of available records
+    private int[] offsets(boolean available) {
+        int[] offsets = available ? availableOffsets : recordOffsets;
+        if (offsets == null) {
+            offsets = new int[partitions.size()];
+            int offset = 0;
+            for (int ordinal = 0; ordinal < partitions.size(); ordinal++) {
+                offsets[ordinal] = offset;
+                ArticlePartition partition = partitions.get(ordinal);
+                offset += available ? partition.getAvailable().size() : partition.size();
+            }
+            if (available) {
+                availableOffsets = offsets;
+            } else {
+                recordOffsets = offsets;
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns the partition of the given source.
+     *
+     * @param source The source of the partition.
+     * @return The partition, or null when the snapshot holds none for the source.
+     */
+    ArticlePartition partition(String source) {
+        Integer ordinal = ordinals.get(source);
+        // The ordinal may belong to a partition added after this snapshot
+        return ordinal == null || ordinal >= partitions.size() ? null : partitions.get(ordinal);
+    }
+
+    /**
+     * Returns the first partition holding a live record with the given ID.
+     *
+     * @param id The ID of the record.
+     * @return The partition, or null when no partition holds the ID.
+     */
+    ArticlePartition partitionOf(int id) {
+        int ordinal = ids.lowest(id, candidate -> candidate < partitions.size() && partitions.get(candidate).position(id) >= 0);
+        return ordinal < 0 ? null : partitions.get(ordinal);
+    }
+
+    /**
+     * Returns the live records of every partition by source, for compacting the log.
+     *
+     * @return The records by source, in partition order.
+     */
+    Map<String, List<ArticleRecord>> recordsBySource() {
+        Map<String, List<ArticleRecord>> records = new LinkedHashMap<>();
+        for (ArticlePartition partition : partitions) {
+            records.put(partition.getSource(), partition.getRecords());
+        }
+        return records;
+    }
+
+    /**
+     * Returns the next snapshot, in which the given partition replaces the partition of its source or is added after
+     * the last partition. Every other partition is shared. Callers must hold the publishing lock of the gateway, as
+     * the shared ordinals and ID index are extended in place.
+     *
+     * @param partition The new partition.
+     * @param added     The records whose IDs the partition may hold for the first time.
+     * @return The next snapshot.
+     */
+    ArticleSnapshot with(ArticlePartition partition, Collection<ArticleRecord> added) {
+        Integer ordinal = ordinals.get(partition.getSource());
+        ArticlePartitions next;
+        int nextSize;
+        if (ordinal == null) {
+            ordinal = partitions.size();
+            ordinals.put(partition.getSource(), ordinal);
+            next = partitions.append(partition);
+            nextSize = size + partition.size();
+        } else {
+            next = partitions.with(ordinal, partition);
+            nextSize = size - partitions.get(ordinal).size() + partition.size();
+        }
+        ArticleIdIndex nextIds = ids;
+        if (ids.size() + added.size() > 2 * nextSize + STALE_ENTRIES) {
+            nextIds = index(next, nextSize);
+        } else {
+            for (ArticleRecord record : added) {
+                ids.add(record.getId(), ordinal);
+            }
+        }
+        return new ArticleSnapshot(version + 1, next, ordinals, nextIds, nextSize);
+    }
+
+    /**
+     * Builds an index from the IDs of the live records of the given partitions to their ordinals.
+     */
+    private static ArticleIdIndex index(ArticlePartitions partitions, int size) {
+        ArticleIdIndex index = new ArticleIdIndex(size);
+        for (int ordinal = 0; ordinal < partitions.size(); ordinal++) {
+            for (ArticleRecord record : partitions.get(ordinal).getRecords()) {
+                index.add(record.getId(), ordinal);
+            }
+        }
+        return index;
+    }
+}
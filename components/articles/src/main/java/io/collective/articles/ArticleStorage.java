@@ -0,0 +1,38 @@
+package io.collective.articles;
+
+/**
+ * The memory layouts an ArticleDataGateway can keep its records in.
+ */
+public enum ArticleStorage {
+    /**
+     * One ArticleRecord object per article, the fastest to read.
+     */
+    OBJECTS(ArticleList.EMPTY),
+
+    /**
+     * IDs in an int array, availability in a bitset, and titles as UTF-8 in one contiguous heap arena.
+     * Needs about half the heap per record of {@link #OBJECTS} and leaves the garbage collector a handful of objects to trace,
+     * at the cost of materializing a short-lived ArticleRecord on every read.
+     */
+    COMPACT(CompactArticleList.EMPTY),
+
+    /**
+     * Like {@link #COMPACT}, with the title arena held in a direct buffer outside the heap.
+     */
+    COMPACT_OFF_HEAP(CompactArticleList.EMPTY_OFF_HEAP);
+
+    private final ArticleRecords empty;
+
+    ArticleStorage(ArticleRecords empty) {
+        this.empty = empty;
+    }
+
+    /**
+     * Returns the empty list of this layout. It is shared, appending to it always allocates new storage.
+     *
+     * @return The empty list.
+     */
+    ArticleRecords empty() {
+        return empty;
+    }
+}
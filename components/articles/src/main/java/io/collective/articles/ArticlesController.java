@@ -2,23 +2,53 @@ package io.collective.articles;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.collective.restsupport.BasicHandler;
+import io.collective.restsupport.CachedBody;
+import io.collective.restsupport.ResponseCompression;
 import org.eclipse.jetty.server.Request;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 
 /**
  * Controller for handling article-related endpoints.
+ * <p>
+ * Responses are serialized once per gateway snapshot version and served from the cached bytes with a strong ETag,
+ * so repeated polls cost a byte copy, or a bodiless 304 when the client sends a matching "If-None-Match".
+ * Clients may instead page through the articles with the "limit" and opaque "after" cursor parameters, or search
+ * titles through "/articles/search?q=".
  */
 public class ArticlesController extends BasicHandler {
+    /**
+     * Page size used when only a cursor is given
+     */
+    static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * Largest page size a client may request
+     */
+    static final int MAX_LIMIT = 1000;
+
+    /**
+     * Largest number of articles a single batch may carry
+     */
+    static final int MAX_BATCH = 250_000;
+
     private ArticleDataGateway gateway;
+    private final AtomicReference<CachedBody> allArticles = new AtomicReference<>();
+    private final AtomicReference<CachedBody> availableArticles = new AtomicReference<>();
     Meter articleRequests;
     Meter articleAvailableRequests;
+    Meter articleSearchRequests;
+    Meter articleBatchRequests;
+    Meter articleLookupRequests;
 
     /**
      * Constructs an ArticlesController with the specified ObjectMapper and ArticleDataGateway.
@@ -28,14 +58,32 @@ public class ArticlesController extends BasicHandler {
      * @param registry The MetricRegistry for collecting metrics.
      */
     public ArticlesController(ObjectMapper mapper, ArticleDataGateway gateway, MetricRegistry registry) {
-        // Call the constructor of the superclass (BasicHandler) passing the provided ObjectMapper
-        super(mapper);
+        this(mapper, gateway, registry, new ResponseCompression());
+    }
+
+    /**
+     * Constructs an ArticlesController that compresses its responses with the given settings.
+     *
+     * @param mapper      The ObjectMapper for serialization.
+     * @param gateway     The ArticleDataGateway for retrieving article records.
+     * @param registry    The MetricRegistry for collecting metrics.
+     * @param compression The compression applied to response bodies, or ResponseCompression.DISABLED.
+     */
+    public ArticlesController(ObjectMapper mapper, ArticleDataGateway gateway, MetricRegistry registry, ResponseCompression compression) {
+        // Call the constructor of the superclass (BasicHandler) passing the provided ObjectMapper and compression
+        super(mapper, compression);
         // Set the ArticleDataGateway instance
         this.gateway = gateway;
         // Create a meter named "article-requests" in the MetricRegistry
         this.articleRequests = registry.meter("article-requests");
         // Create a meter named "article-available-requests" in the MetricRegistry
         this.articleAvailableRequests = registry.meter("article-available-requests");
+        // Create a meter named "article-search-requests" in the MetricRegistry
+        this.articleSearchRequests = registry.meter("article-search-requests");
+        // Create a meter named "article-batch-requests" in the MetricRegistry
+        this.articleBatchRequests = registry.meter("article-batch-requests");
+        // Create a meter named "article-lookup-requests" in the MetricRegistry
+        this.articleLookupRequests = registry.meter("article-lookup-requests");
     }
 
     /**
@@ -51,17 +99,16 @@ public class ArticlesController extends BasicHandler {
         // Handle GET request for "/articles"
         get("/articles", Arrays.asList("application/json", "text/html"), request, servletResponse, () -> {
             { // todo - query the articles gateway for *all* articles, map record to infos, and send back a collection of article infos
-                // Create an ArrayList to store the ArticleInfo objects
-                ArrayList<ArticleInfo> articles = new ArrayList<>();
-                // Retrieve all ArticleRecord objects from the gateway
-                List<ArticleRecord> all = gateway.findAll();
-                // Iterate over each ArticleRecord object
-                for (ArticleRecord record : all) {
-                    // Create a new ArticleInfo object using the record's ID and title, and add it to the articles list
-                    articles.add(new ArticleInfo(record.getId(), record.getTitle()));
+                // Serve a single page when the client asked for one
+                if (isPaged(servletRequest)) {
+                    writePage(servletRequest, servletResponse, gateway::findAll);
+                    articleRequests.mark();
+                    return;
                 }
-                // Write the articles list as a JSON response body
-                writeJsonBody(servletResponse, articles);
+                // Take the current snapshot so the version and the records always belong together
+                ArticleSnapshot snapshot = gateway.snapshot();
+                // Write the cached JSON for this snapshot, or a 304 if the client already has it
+                writeCachedBody(request, servletResponse, cachedBody(allArticles, snapshot, snapshot.getRecords()));
             }
             // Increment the meter for article requests
             articleRequests.mark();
@@ -71,20 +118,171 @@ public class ArticlesController extends BasicHandler {
         get("/available", Arrays.asList("application/json", "text/html"), request, servletResponse, () -> {
 
             { // todo - query the articles gateway for *available* articles, map records to infos, and send back a collection of article infos
-                // Create an ArrayList to store the ArticleInfo objects
-                ArrayList<ArticleInfo> articles = new ArrayList<>();
-                // Retrieve the available ArticleRecord objects from the gateway
-                List<ArticleRecord> all = gateway.findAvailable();
-                // Iterate over each available ArticleRecord object
-                for (ArticleRecord record : all) {
-                    // Create a new ArticleInfo object using the record's ID and title, and add it to the articles list
-                    articles.add(new ArticleInfo(record.getId(), record.getTitle()));
+                // Serve a single page when the client asked for one
+                if (isPaged(servletRequest)) {
+                    writePage(servletRequest, servletResponse, gateway::findAvailable);
+                    articleAvailableRequests.mark();
+                    return;
                 }
-                // Write the articles list as a JSON response body
-                writeJsonBody(servletResponse, articles);
+                // Take the current snapshot so the version and the records always belong together
+                ArticleSnapshot snapshot = gateway.snapshot();
+                // Write the cached JSON for this snapshot, or a 304 if the client already has it
+                writeCachedBody(request, servletResponse, cachedBody(availableArticles, snapshot, snapshot.getAvailable()));
             }
             // Increment the meter for available article requests
             articleAvailableRequests.mark();
         });
+
+        // Handle GET request for "/articles/search"
+        get("/articles/search", Arrays.asList("application/json", "text/html"), request, servletResponse, () -> {
+            String query = servletRequest.getParameter("q");
+            int limit;
+            try {
+                limit = parseLimit(servletRequest.getParameter("limit"));
+            } catch (IllegalArgumentException e) {
+                limit = -1;
+            }
+            if (query == null || query.trim().isEmpty() || limit < 0) {
+                // Set the response status to 400 (Bad Request) when there is nothing to search for
+                servletResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            // Query the title index and stream the ranked matches
+            List<ArticleRecord> matches = gateway.search(query, limit);
+            writeJsonBody(servletRequest, servletResponse, generator -> ArticleJsonWriter.writeArticles(generator, matches));
+            // Increment the meter for article search requests
+            articleSearchRequests.mark();
+        });
+
+        // Handle GET request for "/articles/{id}", registered after the fixed "/articles/..." routes it would shadow
+        get("/articles/{id}", Arrays.asList("application/json", "text/html"), request, servletResponse, () -> {
+            int id;
+            try {
+                id = Integer.parseInt(pathParameter(servletRequest, "id"));
+            } catch (NumberFormatException e) {
+                // Set the response status to 404 (Not Found), no article lives at a path that is not an ID
+                servletResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            // A single probe of the gateway's ID index
+            ArticleRecord record = gateway.findById(id);
+            if (record == null) {
+                // Set the response status to 404 (Not Found) for unknown IDs
+                servletResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            writeJsonBody(servletRequest, servletResponse, generator -> ArticleJsonWriter.writeArticle(generator, record));
+            // Increment the meter for article lookup requests
+            articleLookupRequests.mark();
+        });
+
+        // Handle POST request for "/articles/batch"
+        post("/articles/batch", Arrays.asList("application/json"), request, servletResponse, () -> {
+            List<ArticleInfo> infos;
+            try {
+                // Parse the array or newline delimited articles token by token, without a tree of the whole body
+                infos = readJsonBody(servletRequest, parser -> ArticleJsonReader.readArticles(parser, MAX_BATCH));
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                // Set the response status to 400 (Bad Request) for malformed or oversized batches
+                servletResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            } catch (IOException e) {
+                // Set the response status to 500 (Internal Server Error) when the body cannot be read
+                servletResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                return;
+            }
+            // Publish the whole batch as a single snapshot, readers see all of it or none of it
+            int changed = gateway.upsertAll(infos);
+            writeJsonBody(servletResponse, generator -> {
+                generator.writeStartObject();
+                generator.writeNumberField("received", infos.size());
+                generator.writeNumberField("changed", changed);
+                generator.writeEndObject();
+            });
+            // Increment the meter for article batch requests
+            articleBatchRequests.mark();
+        });
+    }
+
+    /**
+     * Checks whether the request asks for a single page through the "limit" or "after" parameters.
+     *
+     * @param servletRequest The HttpServletRequest to check.
+     * @return true if a page was requested.
+     */
+    private boolean isPaged(HttpServletRequest servletRequest) {
+        return servletRequest.getParameter("limit") != null || servletRequest.getParameter("after") != null;
+    }
+
+    /**
+     * Writes the page of article infos selected by the request's "limit" and "after" parameters.
+     * A "Link" header with rel="next" points to the following page unless this is the last one.
+     * Invalid parameters result in a 400 (Bad Request).
+     *
+     * @param servletRequest  The HttpServletRequest carrying the paging parameters.
+     * @param servletResponse The HttpServletResponse to write the page to.
+     * @param query           The gateway query returning a page for a cursor and a limit.
+     */
+    private void writePage(HttpServletRequest servletRequest, HttpServletResponse servletResponse, BiFunction<String, Integer, ArticlePage> query) {
+        int limit;
+        ArticlePage page;
+        try {
+            limit = parseLimit(servletRequest.getParameter("limit"));
+            page = query.apply(servletRequest.getParameter("after"), limit);
+        } catch (IllegalArgumentException e) {
+            // Set the response status to 400 (Bad Request) for malformed limits and cursors
+            servletResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (page.getNext() != null) {
+            // Point the client to the next page
+            servletResponse.setHeader("Link", "<" + servletRequest.getRequestURI() + "?limit=" + limit + "&after=" + page.getNext() + ">; rel=\"next\"");
+        }
+        // Stream the records of the page, and only those, straight to the response
+        writeJsonBody(servletRequest, servletResponse, generator -> ArticleJsonWriter.writeArticles(generator, page.getRecords()));
+    }
+
+    /**
+     * Parses the "limit" parameter, defaulting to DEFAULT_LIMIT and capping at MAX_LIMIT.
+     *
+     * @param value The parameter value, or null.
+     * @return The page size.
+     * @throws IllegalArgumentException If the value is not a positive number.
+     */
+    private int parseLimit(String value) {
+        if (value == null) {
+            return DEFAULT_LIMIT;
+        }
+        int limit = Integer.parseInt(value);
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * Returns the serialized article infos for the given snapshot, serializing them only when the cache holds a body
+     * built from a different snapshot version.
+     *
+     * @param cache    The cache holding the most recently serialized body.
+     * @param snapshot The snapshot the records belong to.
+     * @param records  The records to serialize.
+     * @return The cached body for the snapshot.
+     */
+    private CachedBody cachedBody(AtomicReference<CachedBody> cache, ArticleSnapshot snapshot, List<ArticleRecord> records) {
+        CachedBody cached = cache.get();
+        if (cached != null && cached.getVersion() == snapshot.getVersion()) {
+            return cached;
+        }
+        // Serialize the records straight into the body, without mapping them to article infos first
+        CachedBody body = new CachedBody(snapshot.getVersion(), toJsonBytes(generator -> ArticleJsonWriter.writeArticles(generator, records)));
+        // Keep the newest body, a request holding an older snapshot must not replace it
+        while (cached == null || cached.getVersion() < body.getVersion()) {
+            if (cache.compareAndSet(cached, body)) {
+                break;
+            }
+            cached = cache.get();
+        }
+        return body;
     }
 }
@@ -0,0 +1,102 @@
+package io.collective.articles;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The available records of a partition, a view holding the positions of the available records rather than the
+ * records themselves, so it costs four bytes per available record whatever the layout of the records.
+ */
+final class AvailableList extends AbstractList<ArticleRecord> implements RandomAccess {
+    private final ArticleRecords records;
+    private final PostingList positions;
+
+    /**
+     * The index of the first position that belongs to the list, those before it are of evicted records
+     */
+    private final int from;
+
+    private AvailableList(ArticleRecords records, PostingList positions, int from) {
+        this.records = records;
+        this.positions = positions;
+        this.from = from;
+    }
+
+    /**
+     * Builds the list of the available records among the given records.
+     *
+     * @param records The records to scan.
+     * @param start   The position of the first live record, records before it were evicted.
+     * @return The new list.
+     */
+    static AvailableList of(ArticleRecords records, int start) {
+        PostingList positions = PostingList.EMPTY;
+        for (int i = start; i < records.size(); i++) {
+            if (records.isAvailable(i)) {
+                positions = positions.append(i);
+            }
+        }
+        return new AvailableList(records, positions, 0);
+    }
+
+    /**
+     * Returns a list extended by the record at the given position, which must be the last record of the given
+     * records and available.
+     *
+     * @param nextRecords The records the new list refers to, extending the records of this list.
+     * @param position    The position of the new record.
+     * @return The extended list.
+     */
+    AvailableList append(ArticleRecords nextRecords, int position) {
+        return new AvailableList(nextRecords, positions.append(position), from);
+    }
+
+    /**
+     * Returns a list without the record at the given position, which must be the first live record.
+     *
+     * @param position The position of the evicted record.
+     * @return This list if the record was not available, otherwise a list starting after it.
+     */
+    AvailableList evict(int position) {
+        if (from < positions.size() && positions.get(from) == position) {
+            return new AvailableList(records, positions, from + 1);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the index of the record at the given position with a binary search, positions are held in order.
+     *
+     * @param position The position of a record.
+     * @return The index of the record in the list, or -1 if the record is not in the list.
+     */
+    int indexOf(int position) {
+        int low = from;
+        int high = positions.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int found = positions.get(middle);
+            if (found < position) {
+                low = middle + 1;
+            } else if (found > position) {
+                high = middle - 1;
+            } else {
+                return middle - from;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public ArticleRecord get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return records.get(positions.get(from + index));
+    }
+
+    @Override
+    public int size() {
+        return positions.size() - from;
+    }
+}
@@ -0,0 +1,240 @@
+package io.collective.articles;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable list of article records laid out in primitive arrays rather than one object per article.
+ * <p>
+ * IDs live in an int array, availability in a bitset, and titles as UTF-8 bytes in one contiguous arena, optionally
+ * outside the heap. A list of millions of articles is a handful of objects to the garbage collector. Reading a
+ * record materializes a short-lived ArticleRecord, which {@link #id(int)} and {@link #isAvailable(int)} avoid.
+ * <p>
+ * Like {@link ArticleList}, lists appended from one another share their arrays and arena. A list only ever reads the
+ * slots and arena bytes below its own size, and a slot is claimed exactly once. Titles are limited to an arena of
+ * 2 GB in total.
+ */
+final class CompactArticleList extends ArticleRecords {
+    /**
+     * The empty list with a heap arena
+     */
+    static final CompactArticleList EMPTY = empty(0, false);
+
+    /**
+     * The empty list with an arena outside the heap
+     */
+    static final CompactArticleList EMPTY_OFF_HEAP = empty(0, true);
+
+    private final int[] ids;
+
+    /**
+     * One bit per record, set when the record is available
+     */
+    private final long[] availability;
+
+    /**
+     * One bit per record, set when the record has no title
+     */
+    private final long[] untitled;
+
+    /**
+     * The title of record i occupies the arena bytes from offsets[i] up to offsets[i + 1]
+     */
+    private final int[] offsets;
+
+    private final ByteBuffer arena;
+    private final int size;
+
+    /**
+     * The number of slots of the shared arrays already claimed by some list
+     */
+    private final AtomicInteger claimed;
+
+    private CompactArticleList(int[] ids, long[] availability, long[] untitled, int[] offsets, ByteBuffer arena,
+                               int size, AtomicInteger claimed) {
+        this.ids = ids;
+        this.availability = availability;
+        this.untitled = untitled;
+        this.offsets = offsets;
+        this.arena = arena;
+        this.size = size;
+        this.claimed = claimed;
+    }
+
+    /**
+     * Returns an empty list with room for the given number of records.
+     *
+     * @param capacity The number of records to make room for.
+     * @param direct   Whether to hold the arena outside the heap.
+     * @return The new list.
+     */
+    private static CompactArticleList empty(int capacity, boolean direct) {
+        // Guess the arena size from typical title lengths, it grows like the arrays when the guess is short
+        return allocate(capacity, (int) Math.min(Integer.MAX_VALUE, capacity * 64L), direct);
+    }
+
+    private static CompactArticleList allocate(int capacity, int arenaCapacity, boolean direct) {
+        long[] bits = new long[(capacity + 63) >> 6];
+        ByteBuffer arena = direct ? ByteBuffer.allocateDirect(arenaCapacity) : ByteBuffer.allocate(arenaCapacity);
+        return new CompactArticleList(new int[capacity], bits, bits.clone(), new int[capacity + 1], arena, 0,
+                new AtomicInteger());
+    }
+
+    @Override
+    CompactArticleList append(ArticleRecord record) {
+        byte[] title = encode(record.getTitle());
+        int start = offsets[size];
+        // Claim the next free slot if there is room and nothing has been appended to this list yet
+        if (size < ids.length && (long) start + title.length <= arena.capacity()
+                && claimed.compareAndSet(size, size + 1)) {
+            write(size, record, title);
+            return new CompactArticleList(ids, availability, untitled, offsets, arena, size + 1, claimed);
+        }
+        // Otherwise copy only the slots and bytes this list owns into larger storage
+        int capacity = Math.max(8, size * 2);
+        long arenaCapacity = Math.max((long) start + title.length, Math.max(512L, start * 2L));
+        CompactArticleList grown = allocate(capacity, (int) Math.min(Integer.MAX_VALUE, arenaCapacity), arena.isDirect());
+        System.arraycopy(ids, 0, grown.ids, 0, size);
+        System.arraycopy(availability, 0, grown.availability, 0, (size + 63) >> 6);
+        System.arraycopy(untitled, 0, grown.untitled, 0, (size + 63) >> 6);
+        System.arraycopy(offsets, 0, grown.offsets, 0, size + 1);
+        copyBytes(arena, grown.arena, start);
+        grown.claimed.set(size + 1);
+        grown.write(size, record, title);
+        return new CompactArticleList(grown.ids, grown.availability, grown.untitled, grown.offsets, grown.arena,
+                size + 1, grown.claimed);
+    }
+
+    @Override
+    CompactArticleList replace(Map<Integer, ArticleRecord> replacements) {
+        boolean availabilityOnly = true;
+        for (Map.Entry<Integer, ArticleRecord> replacement : replacements.entrySet()) {
+            int position = replacement.getKey();
+            ArticleRecord record = replacement.getValue();
+            if (record.getId() != ids[position] || !titleEquals(position, record.getTitle())) {
+                availabilityOnly = false;
+                break;
+            }
+        }
+        if (availabilityOnly) {
+            // Copy only the bitset and share everything else; appends to either list still claim slots exactly once
+            long[] nextAvailability = availability.clone();
+            for (Map.Entry<Integer, ArticleRecord> replacement : replacements.entrySet()) {
+                setBit(nextAvailability, replacement.getKey(), replacement.getValue().isAvailable());
+            }
+            return new CompactArticleList(ids, nextAvailability, untitled, offsets, arena, size, claimed);
+        }
+        // Titles changed, rebuild the arena
+        CompactArticleList next = allocate(size, offsets[size], arena.isDirect());
+        for (int i = 0; i < size; i++) {
+            ArticleRecord replacement = replacements.get(i);
+            next = next.append(replacement != null ? replacement : get(i));
+        }
+        return next;
+    }
+
+    @Override
+    CompactArticleList copyOf(List<ArticleRecord> records) {
+        CompactArticleList next = empty(records.size(), arena.isDirect());
+        for (ArticleRecord record : records) {
+            next = next.append(record);
+        }
+        return next;
+    }
+
+    @Override
+    public ArticleRecord get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return new ArticleRecord(ids[index], title(index), isAvailable(index));
+    }
+
+    @Override
+    int id(int position) {
+        return ids[position];
+    }
+
+    @Override
+    boolean isAvailable(int position) {
+        return getBit(availability, position);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes a record into a claimed slot.
+     */
+    private void write(int position, ArticleRecord record, byte[] title) {
+        int start = offsets[position];
+        if (arena.hasArray()) {
+            System.arraycopy(title, 0, arena.array(), arena.arrayOffset() + start, title.length);
+        } else {
+            for (int i = 0; i < title.length; i++) {
+                arena.put(start + i, title[i]);
+            }
+        }
+        ids[position] = record.getId();
+        setBit(availability, position, record.isAvailable());
+        setBit(untitled, position, record.getTitle() == null);
+        offsets[position + 1] = start + title.length;
+    }
+
+    private String title(int position) {
+        if (getBit(untitled, position)) {
+            return null;
+        }
+        int start = offsets[position];
+        int length = offsets[position + 1] - start;
+        if (arena.hasArray()) {
+            return new String(arena.array(), arena.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = arena.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean titleEquals(int position, String title) {
+        if (title == null || getBit(untitled, position)) {
+            return title == null && getBit(untitled, position);
+        }
+        return title.equals(title(position));
+    }
+
+    private static byte[] encode(String title) {
+        return title == null ? new byte[0] : title.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the first bytes of one arena into another using absolute access only, so the shared source is untouched.
+     */
+    private static void copyBytes(ByteBuffer source, ByteBuffer target, int length) {
+        if (source.hasArray() && target.hasArray()) {
+            System.arraycopy(source.array(), source.arrayOffset(), target.array(), target.arrayOffset(), length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            target.put(i, source.get(i));
+        }
+    }
+
+    private static boolean getBit(long[] bits, int position) {
+        return (bits[position >> 6] & (1L << position)) != 0;
+    }
+
+    private static void setBit(long[] bits, int position, boolean value) {
+        if (value) {
+            bits[position >> 6] |= 1L << position;
+        } else {
+            bits[position >> 6] &= ~(1L << position);
+        }
+    }
+}
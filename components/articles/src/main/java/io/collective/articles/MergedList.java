@@ -0,0 +1,78 @@
+package io.collective.articles;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable view concatenating the lists of several partitions without copying them.
+ * Reading a record finds its partition with a binary search over the partition boundaries.
+ */
+final class MergedList extends AbstractList<ArticleRecord> implements RandomAccess {
+    private final List<List<ArticleRecord>> parts;
+
+    /**
+     * The index after the last record of each part
+     */
+    private final int[] ends;
+
+    private MergedList(List<List<ArticleRecord>> parts, int[] ends) {
+        this.parts = parts;
+        this.ends = ends;
+    }
+
+    /**
+     * Returns a list of the records of the given lists, one after another.
+     *
+     * @param lists The lists to concatenate.
+     * @return The only non-empty list if there is one, otherwise a view of all of them.
+     */
+    static List<ArticleRecord> of(List<List<ArticleRecord>> lists) {
+        List<List<ArticleRecord>> parts = new ArrayList<>(lists.size());
+        for (List<ArticleRecord> list : lists) {
+            if (!list.isEmpty()) {
+                parts.add(list);
+            }
+        }
+        if (parts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int[] ends = new int[parts.size()];
+        int end = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            end += parts.get(i).size();
+            ends[i] = end;
+        }
+        return new MergedList(parts, ends);
+    }
+
+    @Override
+    public ArticleRecord get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        // Find the first part ending after the index
+        int low = 0;
+        int high = ends.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] > index) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        int offset = low == 0 ? 0 : ends[low - 1];
+        return parts.get(low).get(index - offset);
+    }
+
+    @Override
+    public int size() {
+        return ends[ends.length - 1];
+    }
+}
@@ -0,0 +1,72 @@
+package io.collective.articles;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable list of record positions that can be extended in amortized constant time.
+ * Works like {@link ArticleList}: lists appended from one another share a backing array, and each list only reads
+ * the slots below its own size.
+ */
+final class PostingList {
+    private final int[] positions;
+    private final int size;
+    private final AtomicInteger claimed;
+
+    /**
+     * The empty list, it is shared, appending to it always allocates a new backing array
+     */
+    static final PostingList EMPTY = new PostingList(new int[0], 0, new AtomicInteger());
+
+    private PostingList(int[] positions, int size, AtomicInteger claimed) {
+        this.positions = positions;
+        this.size = size;
+        this.claimed = claimed;
+    }
+
+    /**
+     * Returns a list holding a single position.
+     *
+     * @param position The position.
+     * @return The new list.
+     */
+    static PostingList of(int position) {
+        return new PostingList(new int[]{position, 0}, 1, new AtomicInteger(1));
+    }
+
+    /**
+     * Returns a list containing the positions of this list followed by the given position.
+     *
+     * @param position The position to append.
+     * @return The extended list.
+     */
+    PostingList append(int position) {
+        // Claim the next free slot if nothing has been appended to this list yet
+        if (size < positions.length && claimed.compareAndSet(size, size + 1)) {
+            positions[size] = position;
+            return new PostingList(positions, size + 1, claimed);
+        }
+        int[] grown = new int[Math.max(2, size * 2)];
+        System.arraycopy(positions, 0, grown, 0, size);
+        grown[size] = position;
+        return new PostingList(grown, size + 1, new AtomicInteger(size + 1));
+    }
+
+    /**
+     * Returns the position at the given index.
+     *
+     * @param index The index.
+     * @return The position.
+     */
+    int get(int index) {
+        return positions[index];
+    }
+
+    /**
+     * Returns the number of positions in the list.
+     *
+     * @return The size of the list.
+     */
+    int size() {
+        return size;
+    }
+}
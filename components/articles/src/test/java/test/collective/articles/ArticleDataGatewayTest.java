@@ -2,37 +2,417 @@ package test.collective.articles;
 
 import com.codahale.metrics.MetricRegistry;
 import io.collective.articles.ArticleDataGateway;
+import io.collective.articles.ArticleDiff;
+import io.collective.articles.ArticleIds;
+import io.collective.articles.ArticleInfo;
+import io.collective.articles.ArticlePage;
 import io.collective.articles.ArticleRecord;
+import io.collective.articles.ArticleSnapshot;
+import io.collective.articles.ArticleStorage;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class ArticleDataGatewayTest {
+    ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry());
+
     @Before
     public void before() {
 
-        ArticleDataGateway.articles = Arrays.asList(
+        gateway.replaceAll(Arrays.asList(
                 new ArticleRecord(10101, "Programming Languages InfoQ Trends Report - October 2019 4", true),
                 new ArticleRecord(10102, "Single Page Applications and ASP.NET Core 3.0 2", false),
                 new ArticleRecord(10103, "Google Open-Sources ALBERT Natural Language Model", true),
                 new ArticleRecord(10104, "Ahead of re:Invent, Amazon Updates AWS Lambda", false),
                 new ArticleRecord(10105, "Electron Desktop JavaScript Framework Finds a New Home", true),
                 new ArticleRecord(10106, "Ryan Kitchens on Learning from Incidents at Netflix, the Role of SRE, and Sociotechnical Systems", true)
-        );
+        ));
     }
 
     @Test
     public void findAll() {
-        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry());
-
         List<ArticleRecord> all = gateway.findAll();
         assertEquals(6, all.size());
 
         List<ArticleRecord> available = gateway.findAvailable();
         assertEquals(4, available.size());
     }
+
+    @Test
+    public void save() {
+        long version = gateway.getVersion();
+        List<ArticleRecord> before = gateway.findAll();
+
+        gateway.save(new ArticleInfo(0, "Presentation: InfraCoding with Terraform"));
+
+        assertEquals(7, gateway.findAll().size());
+        assertEquals(6, before.size());
+        assertEquals(version + 1, gateway.getVersion());
+
+        // The same title is the same article
+        gateway.save(new ArticleInfo(0, "Presentation: InfraCoding with Terraform"));
+        assertEquals(7, gateway.findAll().size());
+        assertEquals(version + 1, gateway.getVersion());
+        int id = ArticleIds.of(null, null, "Presentation: InfraCoding with Terraform");
+        assertEquals("Presentation: InfraCoding with Terraform", gateway.findById(id).getTitle());
+    }
+
+    @Test
+    public void availableIndex() {
+        List<ArticleRecord> available = gateway.findAvailable();
+        assertSame(available, gateway.findAvailable());
+
+        gateway.save(new ArticleInfo(0, "Presentation: InfraCoding with Terraform"));
+        assertEquals(5, gateway.findAvailable().size());
+        assertEquals("Presentation: InfraCoding with Terraform", gateway.findAvailable().get(4).getTitle());
+
+        assertTrue(gateway.updateAvailability(10103, false));
+        assertFalse(gateway.updateAvailability(10103, false));
+        assertFalse(gateway.updateAvailability(99999, false));
+        assertEquals(4, gateway.findAvailable().size());
+        assertEquals(10105, gateway.findAvailable().get(1).getId());
+
+        assertTrue(gateway.updateAvailability(10102, true));
+        assertEquals(10101, gateway.findAvailable().get(0).getId());
+        assertEquals(10102, gateway.findAvailable().get(1).getId());
+        assertEquals(7, gateway.findAll().size());
+        assertEquals(4, available.size());
+    }
+
+    @Test
+    public void pages() {
+        ArticlePage first = gateway.findAll(null, 4);
+        assertEquals(4, first.getRecords().size());
+        assertEquals(10101, first.getRecords().get(0).getId());
+        assertNotNull(first.getNext());
+
+        gateway.save(new ArticleInfo(0, "Presentation: InfraCoding with Terraform"));
+
+        ArticlePage second = gateway.findAll(first.getNext(), 4);
+        assertEquals(3, second.getRecords().size());
+        assertEquals(10105, second.getRecords().get(0).getId());
+        assertNull(second.getNext());
+
+        ArticlePage available = gateway.findAvailable(null, 2);
+        assertEquals(10103, available.getRecords().get(1).getId());
+        assertEquals(10105, gateway.findAvailable(available.getNext(), 2).getRecords().get(0).getId());
+    }
+
+    @Test
+    public void pagesAcrossRearrangement() {
+        ArticlePage first = gateway.findAll(null, 3);
+
+        List<ArticleRecord> rearranged = new ArrayList<>(gateway.findAll());
+        rearranged.add(0, rearranged.remove(5));
+        gateway.replaceAll(rearranged);
+
+        ArticlePage second = gateway.findAll(first.getNext(), 3);
+        assertEquals(10104, second.getRecords().get(0).getId());
+        assertEquals(2, second.getRecords().size());
+    }
+
+    @Test
+    public void pagesWhileRemovingAhead() {
+        ArticleDataGateway compact = new ArticleDataGateway(new MetricRegistry(), null, ArticleStorage.COMPACT);
+        compact.applyFeed("first", infos(0, 20));
+        compact.applyFeed("second", infos(1000, 50000));
+        ArticlePage deep = compact.findAll(null, 40000);
+        ArticlePage deepAvailable = compact.findAvailable(null, 40000);
+
+        // Removing articles ahead of the cursors shifts the positions they were issued at
+        compact.applyFeed("first", infos(5, 15));
+        long allocated = allocatedBytes();
+        ArticlePage next = compact.findAll(deep.getNext(), 10);
+        ArticlePage nextAvailable = compact.findAvailable(deepAvailable.getNext(), 10);
+        allocated = allocatedBytes() - allocated;
+
+        assertEquals(1000 + 40000 - 20, next.getRecords().get(0).getId());
+        assertEquals(1000 + 40000 - 20, nextAvailable.getRecords().get(0).getId());
+        // Looked up through the ID index rather than found by reading the 40000 records before them
+        assertTrue("allocated " + allocated, allocated < 256 * 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCursor() {
+        gateway.findAll("not a cursor", 3);
+    }
+
+    @Test
+    public void search() {
+        assertEquals(Arrays.asList(10103), ids(gateway.search("google language", 10)));
+        assertEquals(Arrays.asList(10103), ids(gateway.search("LANGUAGE, Google!", 10)));
+        assertEquals(Arrays.asList(10102, 10106), sorted(ids(gateway.search("and", 10))));
+        assertEquals(0, gateway.search("google lambda", 10).size());
+        assertEquals(0, gateway.search("kubernetes", 10).size());
+        assertEquals(0, gateway.search("  ", 10).size());
+
+        gateway.save(new ArticleInfo(0, "Google Cloud Run"));
+        List<ArticleRecord> google = gateway.search("google", 10);
+        assertEquals(2, google.size());
+        assertEquals("Google Cloud Run", google.get(0).getTitle());
+        assertEquals(1, gateway.search("google", 1).size());
+
+        gateway.updateAvailability(10103, false);
+        assertFalse(gateway.search("albert", 10).get(0).isAvailable());
+    }
+
+    @Test
+    public void upsert() {
+        long version = gateway.getVersion();
+        assertFalse(gateway.upsert(new ArticleInfo(10103, "Google Open-Sources ALBERT Natural Language Model")));
+        assertEquals(version, gateway.getVersion());
+
+        assertTrue(gateway.upsert(new ArticleInfo(10104, "Amazon Updates AWS Lambda")));
+        assertEquals(version + 1, gateway.getVersion());
+        assertEquals(6, gateway.findAll().size());
+        assertEquals("Amazon Updates AWS Lambda", gateway.findAll().get(3).getTitle());
+        assertFalse(gateway.findAll().get(3).isAvailable());
+        assertEquals(Arrays.asList(10104), ids(gateway.search("lambda", 10)));
+        assertEquals(0, gateway.search("invent", 10).size());
+
+        assertEquals(2, gateway.upsertAll(Arrays.asList(
+                new ArticleInfo(10105, "Electron Desktop JavaScript Framework Finds a New Home"),
+                new ArticleInfo(20001, "Presentation: InfraCoding with Terraform"),
+                new ArticleInfo(10101, "Programming Languages InfoQ Trends Report"))));
+        assertEquals(version + 2, gateway.getVersion());
+        assertEquals(Arrays.asList(10101, 10102, 10103, 10104, 10105, 10106, 20001), ids(gateway.findAll()));
+        assertEquals(Arrays.asList(10101, 10103, 10105, 10106, 20001), ids(gateway.findAvailable()));
+    }
+
+    @Test
+    public void findById() {
+        assertEquals("Google Open-Sources ALBERT Natural Language Model", gateway.findById(10103).getTitle());
+        assertNull(gateway.findById(99999));
+
+        gateway.updateAvailability(10103, false);
+        assertFalse(gateway.findById(10103).isAvailable());
+
+        for (int i = 0; i < 1000; i++) {
+            gateway.upsert(new ArticleInfo(20000 + i, "title " + i));
+        }
+        ArticleSnapshot before = gateway.snapshot();
+        gateway.upsert(new ArticleInfo(30000, "Presentation: InfraCoding with Terraform"));
+        assertEquals("title 999", gateway.findById(20999).getTitle());
+        assertEquals("Presentation: InfraCoding with Terraform", gateway.findById(30000).getTitle());
+        assertNull(before.find(30000));
+
+        gateway.replaceAll(Arrays.asList(new ArticleRecord(1, "one", true), new ArticleRecord(1, "duplicate", true)));
+        assertEquals("one", gateway.findById(1).getTitle());
+        assertNull(gateway.findById(10103));
+    }
+
+    @Test
+    public void refreshWhileReading() throws Exception {
+        int items = 500;
+        List<ArticleRecord> records = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            records.add(new ArticleRecord(i + 1, "title " + i, true));
+        }
+        gateway.replaceAll(records);
+
+        int readers = 8;
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(readers);
+        ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+
+        List<Future<Integer>> reads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            reads.add(executor.submit(() -> {
+                started.countDown();
+                int count = 0;
+                while (running.get()) {
+                    int seen = 0;
+                    for (ArticleRecord record : gateway.findAll()) {
+                        if (record.isAvailable()) {
+                            seen++;
+                        }
+                    }
+                    assertEquals(items, seen);
+                    assertEquals(items, gateway.findAvailable().size());
+                    count++;
+                }
+                return count;
+            }));
+        }
+
+        Future<Long> writes = executor.submit(() -> {
+            started.await();
+            long refreshes = 0;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+            while (System.nanoTime() < deadline) {
+                gateway.replaceAll(records);
+                refreshes++;
+            }
+            running.set(false);
+            return refreshes;
+        });
+
+        long refreshes = writes.get(10, TimeUnit.SECONDS);
+        for (Future<Integer> read : reads) {
+            assertTrue(read.get(10, TimeUnit.SECONDS) > 0);
+        }
+        executor.shutdown();
+
+        assertTrue(refreshes > 0);
+        assertEquals(items, gateway.findAll().size());
+    }
+
+    @Test
+    public void partitions() {
+        gateway.upsertAll("https://feed.one/rss", Arrays.asList(new ArticleInfo(1, "Google Cloud Run"), new ArticleInfo(2, "one")));
+        gateway.upsertAll("https://feed.two/rss", Arrays.asList(new ArticleInfo(3, "Google Kubernetes Engine")));
+        long version = gateway.getVersion();
+
+        // Replacing one feed leaves every other feed and the directly saved articles alone
+        gateway.replaceAll("https://feed.two/rss", Collections.singletonList(new ArticleRecord(4, "two", true)));
+        assertEquals(version + 1, gateway.getVersion());
+        assertEquals(Arrays.asList(10101, 10102, 10103, 10104, 10105, 10106, 1, 2, 4), ids(gateway.findAll()));
+        assertEquals(Arrays.asList(10101, 10103, 10105, 10106, 1, 2, 4), ids(gateway.findAvailable()));
+        assertEquals(Arrays.asList("", "https://feed.one/rss", "https://feed.two/rss"), gateway.snapshot().getSources());
+        assertEquals(Arrays.asList(1, 2), ids(gateway.snapshot().getRecords("https://feed.one/rss")));
+        assertEquals(Collections.emptyList(), gateway.snapshot().getRecords("https://unknown"));
+
+        // Reads span all partitions
+        assertEquals(Arrays.asList(1, 10103), sorted(ids(gateway.search("google", 10))));
+        assertEquals("two", gateway.findById(4).getTitle());
+        assertTrue(gateway.updateAvailability(2, false));
+        assertFalse(gateway.snapshot().getRecords("https://feed.one/rss").get(1).isAvailable());
+        ArticlePage first = gateway.findAll(null, 5);
+        assertEquals(Arrays.asList(10101, 10102, 10103, 10104, 10105), ids(first.getRecords()));
+        assertEquals(Arrays.asList(10106, 1, 2, 4), ids(gateway.findAll(first.getNext(), 5).getRecords()));
+    }
+
+    @Test
+    public void manySources() {
+        // Enough sources for the partitions to span several levels of the tree they are kept in
+        int sources = 2_000;
+        for (int i = 0; i < sources; i++) {
+            gateway.applyFeed("https://feed" + i + "/rss", Arrays.asList(new ArticleInfo(i, "article " + i), new ArticleInfo(100_000 + i, "shared")));
+        }
+        ArticleSnapshot before = gateway.snapshot();
+        assertEquals(6 + 2 * sources, before.size());
+        assertEquals(sources + 1, before.getSources().size());
+
+        // Replace every feed a few times over, so removed articles leave stale entries behind in the ID index
+        for (int round = 1; round <= 3; round++) {
+            for (int i = 0; i < sources; i++) {
+                gateway.applyFeed("https://feed" + i + "/rss", Collections.singletonList(new ArticleInfo(round * sources + i, "article " + i)));
+            }
+        }
+        ArticleSnapshot after = gateway.snapshot();
+        assertEquals(6 + sources, after.size());
+        for (int i = 0; i < sources; i++) {
+            assertEquals(Arrays.asList(3 * sources + i), ids(after.getRecords("https://feed" + i + "/rss")));
+            assertEquals("article " + i, gateway.findById(3 * sources + i).getTitle());
+            assertNull(gateway.findById(i));
+            assertNull(gateway.findById(100_000 + i));
+            // Older snapshots keep finding what they held
+            assertEquals("article " + i, before.find(i).getTitle());
+            assertEquals(Arrays.asList(i, 100_000 + i), ids(before.getRecords("https://feed" + i + "/rss")));
+        }
+        assertEquals(10103, gateway.findById(10103).getId());
+        assertTrue(gateway.updateAvailability(3 * sources + 1_234, false));
+        assertFalse(gateway.snapshot().getRecords("https://feed1234/rss").get(0).isAvailable());
+    }
+
+    @Test
+    public void applyFeed() {
+        String feed = "https://feed.one/rss";
+        gateway.applyFeed(feed, Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(2, "two"), new ArticleInfo(3, "three")));
+        gateway.updateAvailability(3, false);
+        ArticleSnapshot before = gateway.snapshot();
+
+        ArticleDiff diff = gateway.applyFeed(feed, Arrays.asList(new ArticleInfo(4, "four"), new ArticleInfo(3, "three again"), new ArticleInfo(1, "one")));
+        assertEquals(Arrays.asList(4), ids(diff.getAdded()));
+        assertEquals(Arrays.asList(3), ids(diff.getChanged()));
+        assertEquals(Arrays.asList(2), ids(diff.getRemoved()));
+
+        // The whole diff is published as one change, leaving other sources and older snapshots alone
+        assertEquals(before.getVersion() + 1, gateway.getVersion());
+        assertEquals(Arrays.asList(1, 3, 4), ids(gateway.snapshot().getRecords(feed)));
+        assertEquals(Arrays.asList(1, 2, 3), ids(before.getRecords(feed)));
+        assertEquals(6 + 3, gateway.findAll().size());
+        assertNull(gateway.findById(2));
+        assertEquals(0, gateway.search("two", 10).size());
+        // A changed article keeps its availability
+        assertFalse(gateway.findById(3).isAvailable());
+        assertEquals("three again", gateway.findById(3).getTitle());
+        assertEquals(Arrays.asList(10101, 10103, 10105, 10106, 1, 4), ids(gateway.findAvailable()));
+
+        // An unchanged feed writes nothing
+        assertTrue(gateway.applyFeed(feed, Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(3, "three again"), new ArticleInfo(4, "four"))).isEmpty());
+        assertEquals(before.getVersion() + 1, gateway.getVersion());
+    }
+
+    @Test
+    public void concurrentSources() throws Exception {
+        int sources = 8;
+        int items = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(sources);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int s = 0; s < sources; s++) {
+            String source = "https://feed" + s + "/rss";
+            int offset = s * items;
+            writes.add(executor.submit(() -> {
+                for (int i = 0; i < items; i++) {
+                    gateway.upsertAll(source, Collections.singletonList(new ArticleInfo(offset + i + 1, "title " + i)));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // No write of one source was lost to a concurrent write of another
+        assertEquals(6 + sources * items, gateway.findAll().size());
+        for (int s = 0; s < sources; s++) {
+            assertEquals(items, gateway.snapshot().getRecords("https://feed" + s + "/rss").size());
+        }
+        assertNotNull(gateway.findById(sources * items));
+    }
+
+    private List<Integer> ids(List<ArticleRecord> records) {
+        List<Integer> ids = new ArrayList<>();
+        for (ArticleRecord record : records) {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+
+    private List<Integer> sorted(List<Integer> ids) {
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private List<ArticleInfo> infos(int first, int count) {
+        List<ArticleInfo> infos = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            infos.add(new ArticleInfo(i, "title " + i));
+        }
+        return infos;
+    }
+
+    private long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
 }
@@ -0,0 +1,101 @@
+package test.collective.articles;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import io.collective.articles.ArticleIds;
+import io.collective.articles.ArticleInfo;
+import io.collective.articles.ArticleJsonReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ArticleJsonReaderTest {
+    private final JsonFactory factory = new JsonFactory();
+
+    @Test
+    public void array() throws IOException {
+        List<ArticleInfo> infos = read("[{\"id\": 10101, \"title\": \"Programming Languages\", \"tags\": [\"java\"]},"
+                + " {\"guid\": \"urn:article:2\", \"title\": \"Google Cloud Run\"}]");
+
+        assertEquals(2, infos.size());
+        assertEquals(10101, infos.get(0).getId());
+        assertEquals("Programming Languages", infos.get(0).getTitle());
+        assertEquals(ArticleIds.of("urn:article:2", null, "Google Cloud Run"), infos.get(1).getId());
+    }
+
+    @Test
+    public void newlineDelimited() throws IOException {
+        List<ArticleInfo> infos = read("{\"id\": 1, \"title\": \"one\"}\n{\"link\": \"https://www.infoq.com/two\", \"title\": \"two\"}\n");
+
+        assertEquals(2, infos.size());
+        assertEquals(ArticleIds.of(null, "https://www.infoq.com/two", "two"), infos.get(1).getId());
+    }
+
+    @Test
+    public void malformed() throws IOException {
+        for (String json : new String[]{"[{\"id\": 1}]", "[1, 2]", "{\"id\": \"one\", \"title\": \"one\"}", "[] {}",
+                "{\"title\": \"no id\"}", "{\"guid\": \" \", \"link\": \"\", \"title\": \"blank ids\"}"}) {
+            try {
+                read(json);
+                fail("accepted " + json);
+            } catch (IllegalArgumentException expected) {
+                // Rejected as expected
+            }
+        }
+    }
+
+    @Test
+    public void zeroId() throws IOException {
+        List<ArticleInfo> infos = read("{\"id\": 0, \"guid\": \"urn:article:0\", \"title\": \"zero\"}");
+
+        assertEquals(0, infos.get(0).getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooMany() throws IOException {
+        try (JsonParser parser = factory.createParser("{\"id\": 1, \"title\": \"one\"} {\"id\": 2, \"title\": \"two\"}")) {
+            ArticleJsonReader.readArticles(parser, 1);
+        }
+    }
+
+    @Test
+    public void largeBatch() throws IOException {
+        int articles = 100_000;
+        // Generate the lines lazily so the whole body never exists in memory
+        InputStream body = new SequenceInputStream(new Enumeration<InputStream>() {
+            int line = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return line < articles;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                line++;
+                String json = "{\"guid\": \"urn:article:" + line + "\", \"title\": \"Article number " + line + "\"}\n";
+                return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        try (JsonParser parser = factory.createParser(body)) {
+            List<ArticleInfo> infos = ArticleJsonReader.readArticles(parser, articles);
+            assertEquals(articles, infos.size());
+            assertEquals("Article number 100000", infos.get(articles - 1).getTitle());
+        }
+    }
+
+    private List<ArticleInfo> read(String json) throws IOException {
+        try (JsonParser parser = factory.createParser(json)) {
+            return ArticleJsonReader.readArticles(parser, 1000);
+        }
+    }
+}
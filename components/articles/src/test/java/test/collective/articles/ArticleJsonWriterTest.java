@@ -0,0 +1,101 @@
+package test.collective.articles;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.collective.articles.ArticleInfo;
+import io.collective.articles.ArticleJsonWriter;
+import io.collective.articles.ArticleRecord;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleJsonWriterTest {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void sameWireFormat() throws IOException {
+        List<ArticleRecord> records = Arrays.asList(
+                new ArticleRecord(10101, "Programming Languages InfoQ Trends Report - October 2019 4", true),
+                new ArticleRecord(10102, "Single Page Applications and \"ASP.NET\" Core 3.0 2", false),
+                new ArticleRecord(10103, null, true)
+        );
+
+        assertArrayEquals(mapper.writeValueAsBytes(infos(records)), streamed(records, new ByteArrayOutputStream()).toByteArray());
+    }
+
+    @Test
+    @Ignore
+    public void allocationBenchmark() throws IOException {
+        List<ArticleRecord> records = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            records.add(new ArticleRecord(i, "Presentation: InfraCoding with Terraform, Writing Tests for Infrastructure-as-Code " + i, true));
+        }
+        OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        int iterations = 200;
+
+        for (int i = 0; i < iterations; i++) {
+            mapper.writeValue(discard, infos(records));
+            streamed(records, discard);
+        }
+
+        long mapped = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            mapper.writeValue(discard, infos(records));
+        }
+        long mappedNanos = System.nanoTime() - start;
+        mapped = allocatedBytes() - mapped;
+
+        long streamed = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            streamed(records, discard);
+        }
+        long streamedNanos = System.nanoTime() - start;
+        streamed = allocatedBytes() - streamed;
+
+        logger.info("mapped infos: {} bytes/request, {} us/request", mapped / iterations, mappedNanos / iterations / 1000);
+        logger.info("streamed records: {} bytes/request, {} us/request", streamed / iterations, streamedNanos / iterations / 1000);
+        assertTrue(streamed < mapped);
+    }
+
+    private List<ArticleInfo> infos(List<ArticleRecord> records) {
+        ArrayList<ArticleInfo> articles = new ArrayList<>();
+        for (ArticleRecord record : records) {
+            articles.add(new ArticleInfo(record.getId(), record.getTitle()));
+        }
+        return articles;
+    }
+
+    private <T extends OutputStream> T streamed(List<ArticleRecord> records, T out) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            ArticleJsonWriter.writeArticles(generator, records);
+        }
+        return out;
+    }
+
+    private long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,189 @@
+package test.collective.articles;
+
+import com.codahale.metrics.MetricRegistry;
+import io.collective.articles.ArticleDataGateway;
+import io.collective.articles.ArticleInfo;
+import io.collective.articles.ArticleLog;
+import io.collective.articles.ArticleRecord;
+import io.collective.articles.ArticleRetention;
+import io.collective.articles.ArticleStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleLogTest {
+    Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("articles");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void recover() throws IOException {
+        ArticleLog log = new ArticleLog(directory);
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), log);
+        gateway.replaceAll(Arrays.asList(
+                new ArticleRecord(10101, "Programming Languages InfoQ Trends Report - October 2019 4", true),
+                new ArticleRecord(10102, "Single Page Applications and ASP.NET Core 3.0 2", false)
+        ));
+        gateway.save(new ArticleInfo(0, "Presentation: InfraCoding with Terraform"));
+        gateway.updateAvailability(10102, true);
+        gateway.updateAvailability(10101, false);
+        log.close();
+
+        ArticleDataGateway recovered = new ArticleDataGateway(new MetricRegistry(), new ArticleLog(directory));
+        assertEquals(titles(gateway.findAll()), titles(recovered.findAll()));
+        assertEquals(titles(gateway.findAvailable()), titles(recovered.findAvailable()));
+        assertEquals(gateway.findAll().get(2).getId(), recovered.findAll().get(2).getId());
+        assertFalse(recovered.findAll().get(0).isAvailable());
+    }
+
+    @Test
+    public void upsert() throws IOException {
+        ArticleLog log = new ArticleLog(directory);
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), log);
+        gateway.upsertAll(Arrays.asList(
+                new ArticleInfo(10101, "Programming Languages InfoQ Trends Report"),
+                new ArticleInfo(10102, "Single Page Applications and ASP.NET Core 3.0")
+        ));
+        gateway.updateAvailability(10101, false);
+        gateway.upsert(new ArticleInfo(10101, "Programming Languages InfoQ Trends Report - October 2019"));
+        log.close();
+
+        ArticleDataGateway recovered = new ArticleDataGateway(new MetricRegistry(), new ArticleLog(directory));
+        assertEquals(titles(gateway.findAll()), titles(recovered.findAll()));
+        assertEquals(10101, recovered.findAll().get(0).getId());
+        assertFalse(recovered.findAll().get(0).isAvailable());
+    }
+
+    @Test
+    public void partitions() throws IOException {
+        ArticleLog log = new ArticleLog(directory, 256, 100);
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), log);
+        gateway.save(new ArticleInfo(0, "saved"));
+        // Alternate sources across several segments
+        for (int i = 0; i < 20; i++) {
+            gateway.upsertAll("https://feed.one/rss", Arrays.asList(new ArticleInfo(100 + i, "one " + i)));
+            gateway.upsertAll("https://feed.two/rss", Arrays.asList(new ArticleInfo(200 + i, "two " + i)));
+        }
+        gateway.updateAvailability(105, false);
+        log.close();
+        assertTrue(segments().size() > 1);
+
+        ArticleDataGateway recovered = new ArticleDataGateway(new MetricRegistry(), new ArticleLog(directory));
+        assertEquals(gateway.snapshot().getSources(), recovered.snapshot().getSources());
+        for (String source : gateway.snapshot().getSources()) {
+            assertEquals(titles(gateway.snapshot().getRecords(source)), titles(recovered.snapshot().getRecords(source)));
+        }
+        assertFalse(recovered.findById(105).isAvailable());
+
+        // A second recovery reads the compacted snapshot
+        ArticleDataGateway again = new ArticleDataGateway(new MetricRegistry(), new ArticleLog(directory));
+        assertEquals(titles(gateway.findAll()), titles(again.findAll()));
+    }
+
+    @Test
+    public void applyFeed() throws IOException {
+        ArticleLog log = new ArticleLog(directory);
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), log);
+        gateway.applyFeed("https://feed.one/rss", Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(2, "two"), new ArticleInfo(3, "three")));
+        gateway.applyFeed("https://feed.one/rss", Arrays.asList(new ArticleInfo(3, "three again"), new ArticleInfo(4, "four")));
+        gateway.applyFeed("https://feed.one/rss", Arrays.asList(new ArticleInfo(4, "four"), new ArticleInfo(1, "one is back")));
+        log.close();
+
+        assertEquals(Arrays.asList("four", "one is back"), titles(gateway.findAll()));
+        ArticleDataGateway recovered = new ArticleDataGateway(new MetricRegistry(), new ArticleLog(directory));
+        assertEquals(titles(gateway.findAll()), titles(recovered.findAll()));
+    }
+
+    @Test
+    public void eviction() throws IOException {
+        AtomicLong clock = new AtomicLong();
+        ArticleRetention retention = new ArticleRetention(ArticleRetention.Policy.LEAST_RECENTLY_SEEN, 2, null, Long.MAX_VALUE, clock::get);
+        ArticleLog log = new ArticleLog(directory);
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), log, ArticleStorage.OBJECTS, retention);
+        gateway.upsertAll(Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(2, "two")));
+        clock.addAndGet(1000);
+        // Seeing 1 moves it behind 2, then 3 evicts 2, and 2 coming back evicts 3
+        gateway.upsert(new ArticleInfo(1, "one"));
+        gateway.upsert(new ArticleInfo(3, "three"));
+        gateway.upsert(new ArticleInfo(2, "two again"));
+        log.close();
+
+        assertEquals(Arrays.asList("one", "two again"), titles(gateway.findAll()));
+        ArticleDataGateway recovered = new ArticleDataGateway(new MetricRegistry(), new ArticleLog(directory));
+        assertEquals(titles(gateway.findAll()), titles(recovered.findAll()));
+    }
+
+    @Test
+    public void compaction() throws IOException {
+        ArticleLog log = new ArticleLog(directory, 256, 2);
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), log);
+        for (int i = 0; i < 100; i++) {
+            gateway.save(new ArticleInfo(0, "title " + i));
+        }
+        log.close();
+
+        assertTrue(segments().size() <= 3);
+
+        ArticleDataGateway recovered = new ArticleDataGateway(new MetricRegistry(), new ArticleLog(directory, 256, 2));
+        assertEquals(100, recovered.findAll().size());
+        assertEquals("title 99", recovered.findAll().get(99).getTitle());
+    }
+
+    @Test
+    public void tornWrite() throws IOException {
+        ArticleLog log = new ArticleLog(directory);
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), log);
+        gateway.save(new ArticleInfo(0, "first"));
+        gateway.save(new ArticleInfo(0, "second"));
+        log.close();
+
+        // Corrupt the last byte of the second entry, as if the process died half way through writing it
+        Path segment = segments().get(segments().size() - 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            int second = 8 + header.getInt(0);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xff}), second + 8 + 10);
+        }
+
+        ArticleDataGateway recovered = new ArticleDataGateway(new MetricRegistry(), new ArticleLog(directory));
+        assertEquals(Arrays.asList("first"), titles(recovered.findAll()));
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<String> titles(List<ArticleRecord> records) {
+        return records.stream().map(ArticleRecord::getTitle).collect(Collectors.toList());
+    }
+}
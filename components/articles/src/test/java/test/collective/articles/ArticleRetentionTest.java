@@ -0,0 +1,243 @@
+package test.collective.articles;
+
+import com.codahale.metrics.MetricRegistry;
+import io.collective.articles.ArticleDataGateway;
+import io.collective.articles.ArticleDiff;
+import io.collective.articles.ArticleInfo;
+import io.collective.articles.ArticleRecord;
+import io.collective.articles.ArticleRetention;
+import io.collective.articles.ArticleSnapshot;
+import io.collective.articles.ArticleStorage;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleRetentionTest {
+    private final AtomicLong clock = new AtomicLong();
+    private MetricRegistry registry;
+
+    @Test
+    public void maxCountOldestFirst() {
+        for (ArticleStorage storage : ArticleStorage.values()) {
+            ArticleDataGateway gateway = gateway(storage, ArticleRetention.Policy.OLDEST_FIRST, 3, null, Long.MAX_VALUE);
+            for (int i = 1; i <= 10; i++) {
+                gateway.upsert(new ArticleInfo(i, "title " + i));
+                clock.addAndGet(1000);
+                // Seeing an article does not save it from being evicted first
+                gateway.upsert(new ArticleInfo(Math.max(1, i - 2), "title " + Math.max(1, i - 2)));
+            }
+
+            assertEquals(Arrays.asList(8, 9, 10), ids(gateway.findAll()));
+            assertEquals(Arrays.asList(8, 9, 10), ids(gateway.findAvailable()));
+            assertNull(gateway.findById(7));
+            assertEquals(10, gateway.findById(10).getId());
+            assertEquals(Arrays.asList(9), ids(gateway.search("title 9", 10)));
+            assertEquals(0, gateway.search("title 7", 10).size());
+            assertEquals(Arrays.asList(8, 9), ids(gateway.findAll(null, 2).getRecords()));
+            assertEquals(Arrays.asList(10), ids(gateway.findAll(gateway.findAll(null, 2).getNext(), 2).getRecords()));
+        }
+    }
+
+    @Test
+    public void leastRecentlySeen() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.OBJECTS, ArticleRetention.Policy.LEAST_RECENTLY_SEEN, 3, null, Long.MAX_VALUE);
+        gateway.upsertAll(Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(2, "two"), new ArticleInfo(3, "three")));
+        clock.addAndGet(1000);
+        gateway.upsert(new ArticleInfo(1, "one"));
+        gateway.upsert(new ArticleInfo(4, "four"));
+
+        assertNull(gateway.findById(2));
+        assertEquals(Arrays.asList(3, 4, 1), ids(gateway.findAll()));
+        assertEquals(1, registry.counter("articles-evicted").getCount());
+    }
+
+    @Test
+    public void maxAge() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.COMPACT, ArticleRetention.Policy.OLDEST_FIRST, Integer.MAX_VALUE, Duration.ofHours(1), Long.MAX_VALUE);
+        gateway.upsert(new ArticleInfo(1, "one"));
+        clock.addAndGet(Duration.ofMinutes(40).toMillis());
+        gateway.upsert(new ArticleInfo(2, "two"));
+        clock.addAndGet(Duration.ofMinutes(40).toMillis());
+        gateway.upsert(new ArticleInfo(3, "three"));
+
+        assertEquals(Arrays.asList(2, 3), ids(gateway.findAll()));
+        assertEquals(1, registry.counter("articles-evicted").getCount());
+    }
+
+    @Test
+    public void maxBytes() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.COMPACT_OFF_HEAP, ArticleRetention.Policy.OLDEST_FIRST, Integer.MAX_VALUE, null, 10);
+        gateway.upsert(new ArticleInfo(1, "1234"));
+        gateway.upsert(new ArticleInfo(2, "\u00e9\u00e9"));
+        gateway.upsert(new ArticleInfo(3, "12"));
+        assertEquals(Arrays.asList(1, 2, 3), ids(gateway.findAll()));
+
+        // Growing a title counts too
+        gateway.upsert(new ArticleInfo(3, "12345"));
+        assertEquals(Arrays.asList(2, 3), ids(gateway.findAll()));
+    }
+
+    @Test
+    public void evictedArticleComesBack() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.OBJECTS, ArticleRetention.Policy.OLDEST_FIRST, 2, null, Long.MAX_VALUE);
+        gateway.upsertAll(Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(2, "two")));
+        ArticleSnapshot before = gateway.snapshot();
+        gateway.upsert(new ArticleInfo(3, "three"));
+        gateway.upsert(new ArticleInfo(1, "one again"));
+
+        assertEquals(Arrays.asList(3, 1), ids(gateway.findAll()));
+        assertEquals("one again", gateway.findById(1).getTitle());
+        assertNull(gateway.findById(2));
+        // Snapshots taken before the evictions still hold the evicted articles
+        assertEquals("one", before.find(1).getTitle());
+        assertNotNull(before.find(2));
+    }
+
+    @Test
+    public void compaction() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.COMPACT, ArticleRetention.Policy.OLDEST_FIRST, 100, null, Long.MAX_VALUE);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            gateway.upsert(new ArticleInfo(i, "title " + i));
+            if (i > 900) {
+                expected.add(i);
+            }
+        }
+
+        assertEquals(expected, ids(gateway.findAll()));
+        assertEquals(900, registry.counter("articles-evicted").getCount());
+        for (int id : Arrays.asList(901, 950, 1000)) {
+            assertEquals("title " + id, gateway.findById(id).getTitle());
+            assertEquals(Arrays.asList(id), ids(gateway.search("title " + id, 1)));
+        }
+    }
+
+    @Test
+    public void applyFeed() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.COMPACT, ArticleRetention.Policy.OLDEST_FIRST, Integer.MAX_VALUE, Duration.ofHours(1), Long.MAX_VALUE);
+        gateway.applyFeed("feed", Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(2, "two"), new ArticleInfo(3, "three")));
+        clock.addAndGet(Duration.ofMinutes(40).toMillis());
+        gateway.applyFeed("feed", Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(3, "three"), new ArticleInfo(4, "four")));
+        clock.addAndGet(Duration.ofMinutes(40).toMillis());
+        // Removing 2 kept the age of 3, which now expires along with 1
+        gateway.applyFeed("feed", Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(3, "three"), new ArticleInfo(4, "four"), new ArticleInfo(5, "fifty")));
+
+        assertEquals(Arrays.asList(4, 5), ids(gateway.findAll()));
+        assertEquals(2, registry.counter("articles-evicted").getCount());
+    }
+
+    @Test
+    public void feedLargerThanLimit() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.OBJECTS, ArticleRetention.Policy.OLDEST_FIRST, 3, null, Long.MAX_VALUE);
+        List<ArticleInfo> feed = Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(2, "two"), new ArticleInfo(3, "three"),
+                new ArticleInfo(4, "four"), new ArticleInfo(5, "five"));
+        gateway.applyFeed("feed", feed);
+        assertEquals(Arrays.asList(3, 4, 5), ids(gateway.findAll()));
+        assertEquals(2, registry.counter("articles-evicted").getCount());
+        long version = gateway.getVersion();
+
+        // Refreshing the same feed neither adds the evicted articles back nor evicts them again
+        ArticleDiff diff = gateway.applyFeed("feed", feed);
+        assertTrue(diff.isEmpty());
+        assertEquals(version, gateway.getVersion());
+        assertEquals(2, registry.counter("articles-evicted").getCount());
+
+        // An evicted article that dropped out of the feed is new again when it comes back
+        gateway.applyFeed("feed", feed.subList(1, 5));
+        gateway.applyFeed("feed", feed);
+        assertEquals(Arrays.asList(4, 5, 1), ids(gateway.findAll()));
+    }
+
+    @Test
+    public void limitsAcrossSources() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.OBJECTS, ArticleRetention.Policy.OLDEST_FIRST, 4, null, Long.MAX_VALUE);
+        gateway.applyFeed("busy", Arrays.asList(new ArticleInfo(1, "one"), new ArticleInfo(2, "two"), new ArticleInfo(3, "three"), new ArticleInfo(4, "four")));
+        assertEquals(Arrays.asList(1, 2, 3, 4), ids(gateway.findAll()));
+
+        // The new source keeps its share of the limit, the busy one gives up what is over its own
+        gateway.applyFeed("quiet", Arrays.asList(new ArticleInfo(10, "ten"), new ArticleInfo(11, "eleven")));
+        assertEquals(Arrays.asList(3, 4, 10, 11), ids(gateway.findAll()));
+        assertEquals(2, registry.counter("articles-evicted").getCount());
+
+        // A source over its share evicts from itself
+        gateway.applyFeed("busy", Arrays.asList(new ArticleInfo(3, "three"), new ArticleInfo(4, "four"), new ArticleInfo(5, "five")));
+        assertEquals(Arrays.asList(4, 5, 10, 11), ids(gateway.findAll()));
+        assertEquals(3, registry.counter("articles-evicted").getCount());
+    }
+
+    @Test
+    public void moreSourcesThanCount() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.OBJECTS, ArticleRetention.Policy.OLDEST_FIRST, 10, null, Long.MAX_VALUE);
+        for (int source = 0; source < 50; source++) {
+            gateway.applyFeed("source " + source, Arrays.asList(new ArticleInfo(source * 2, "even"), new ArticleInfo(source * 2 + 1, "odd")));
+            assertTrue(gateway.findAll().size() <= 10);
+        }
+        assertEquals(10, gateway.findAll().size());
+        assertEquals(90, registry.counter("articles-evicted").getCount());
+
+        // Evicted articles the feeds still carry stay evicted
+        for (int source = 0; source < 50; source++) {
+            gateway.applyFeed("source " + source, Arrays.asList(new ArticleInfo(source * 2, "even"), new ArticleInfo(source * 2 + 1, "odd")));
+        }
+        assertEquals(10, gateway.findAll().size());
+    }
+
+    @Test
+    public void limitNotDividingEvenly() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.OBJECTS, ArticleRetention.Policy.OLDEST_FIRST, 10, null, Long.MAX_VALUE);
+        for (int source = 0; source < 3; source++) {
+            List<ArticleInfo> infos = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                infos.add(new ArticleInfo(source * 10 + i, "title " + i));
+            }
+            gateway.applyFeed("source " + source, infos);
+        }
+        // Every source is within its share of 4, and the sources holding the most give up the 2 articles over
+        assertEquals(10, gateway.findAll().size());
+        for (int source = 0; source < 3; source++) {
+            int first = source * 10;
+            long kept = gateway.findAll().stream().filter(record -> record.getId() >= first && record.getId() < first + 10).count();
+            assertTrue(kept == 3 || kept == 4);
+        }
+
+        ArticleDataGateway bytes = gateway(ArticleStorage.OBJECTS, ArticleRetention.Policy.OLDEST_FIRST, Integer.MAX_VALUE, null, 10);
+        for (int source = 0; source < 3; source++) {
+            bytes.applyFeed("source " + source, Arrays.asList(new ArticleInfo(source * 10, "ab"), new ArticleInfo(source * 10 + 1, "cd")));
+        }
+        // Shares of 4 bytes each add up to 12, the 12 bytes are evicted down to 10
+        assertEquals(5, bytes.findAll().size());
+    }
+
+    @Test
+    public void replaceAll() {
+        ArticleDataGateway gateway = gateway(ArticleStorage.OBJECTS, ArticleRetention.Policy.OLDEST_FIRST, 2, null, Long.MAX_VALUE);
+        gateway.replaceAll(Arrays.asList(
+                new ArticleRecord(1, "one", true),
+                new ArticleRecord(2, "two", false),
+                new ArticleRecord(3, "three", true)
+        ));
+
+        assertEquals(Arrays.asList(2, 3), ids(gateway.findAll()));
+        assertEquals(Arrays.asList(3), ids(gateway.findAvailable()));
+    }
+
+    private ArticleDataGateway gateway(ArticleStorage storage, ArticleRetention.Policy policy, int maxCount, Duration maxAge, long maxBytes) {
+        ArticleRetention retention = new ArticleRetention(policy, maxCount, maxAge, maxBytes, clock::get);
+        registry = new MetricRegistry();
+        return new ArticleDataGateway(registry, null, storage, retention);
+    }
+
+    private List<Integer> ids(List<ArticleRecord> records) {
+        return records.stream().map(ArticleRecord::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,125 @@
+package test.collective.articles;
+
+import com.codahale.metrics.MetricRegistry;
+import io.collective.articles.ArticleDataGateway;
+import io.collective.articles.ArticleInfo;
+import io.collective.articles.ArticleRecord;
+import io.collective.articles.ArticleStorage;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleStorageTest {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void sameRecords() {
+        for (ArticleStorage storage : Arrays.asList(ArticleStorage.COMPACT, ArticleStorage.COMPACT_OFF_HEAP)) {
+            ArticleDataGateway expected = exercise(ArticleStorage.OBJECTS);
+            ArticleDataGateway actual = exercise(storage);
+
+            assertEquals(describe(expected.findAll()), describe(actual.findAll()));
+            assertEquals(describe(expected.findAvailable()), describe(actual.findAvailable()));
+            assertEquals(describe(expected.search("google", 10)), describe(actual.search("google", 10)));
+            assertEquals(describe(expected.findAll(null, 3).getRecords()), describe(actual.findAll(null, 3).getRecords()));
+            assertEquals(expected.getVersion(), actual.getVersion());
+        }
+    }
+
+    @Test
+    public void untitled() {
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), null, ArticleStorage.COMPACT);
+        gateway.upsertAll(Arrays.asList(new ArticleInfo(1, null), new ArticleInfo(2, ""), new ArticleInfo(3, "\u00dcn\u00efcode \u2713")));
+
+        assertNull(gateway.findAll().get(0).getTitle());
+        assertEquals("", gateway.findAll().get(1).getTitle());
+        assertEquals("\u00dcn\u00efcode \u2713", gateway.findAll().get(2).getTitle());
+        assertTrue(gateway.upsert(new ArticleInfo(1, "titled")));
+        assertFalse(gateway.upsert(new ArticleInfo(2, "")));
+        assertEquals("titled", gateway.findAll().get(0).getTitle());
+    }
+
+    @Test
+    public void heapFootprint() {
+        int articles = 200_000;
+        long objects = footprint(ArticleStorage.OBJECTS, articles);
+        long compact = footprint(ArticleStorage.COMPACT, articles);
+        long offHeap = footprint(ArticleStorage.COMPACT_OFF_HEAP, articles);
+        logger.info("heap per article: objects {} bytes, compact {} bytes, compact off heap {} bytes.",
+                objects / articles, compact / articles, offHeap / articles);
+
+        assertTrue(compact < objects * 3 / 4);
+        assertTrue(offHeap < compact);
+    }
+
+    private ArticleDataGateway exercise(ArticleStorage storage) {
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), null, storage);
+        gateway.replaceAll(Arrays.asList(
+                new ArticleRecord(10101, "Programming Languages InfoQ Trends Report - October 2019 4", true),
+                new ArticleRecord(10102, "Single Page Applications and ASP.NET Core 3.0 2", false),
+                new ArticleRecord(10103, "Google Open-Sources ALBERT Natural Language Model", true)
+        ));
+        gateway.upsertAll(Arrays.asList(
+                new ArticleInfo(10102, "Single Page Applications and ASP.NET Core 3.0"),
+                new ArticleInfo(10104, "Google Cloud Run")
+        ));
+        for (int i = 0; i < 20; i++) {
+            gateway.upsert(new ArticleInfo(20000 + i, "title " + i));
+        }
+        gateway.updateAvailability(10101, false);
+        gateway.updateAvailability(10102, true);
+        gateway.upsert(new ArticleInfo(20003, "Google Kubernetes Engine"));
+        return gateway;
+    }
+
+    /**
+     * Returns the heap retained by a gateway holding the given number of articles with realistic titles.
+     */
+    private long footprint(ArticleStorage storage, int articles) {
+        long before = usedHeap();
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry(), null, storage);
+        List<ArticleRecord> records = new ArrayList<>(articles);
+        Random random = new Random(42);
+        String[] words = {"Java", "Kotlin", "Cloud", "Native", "Release", "Performance", "Security", "Report",
+                "Google", "Amazon", "Microsoft", "Kubernetes", "Serverless", "Data", "Presentation", "Architecture"};
+        for (int i = 0; i < articles; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < 7; w++) {
+                title.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            records.add(new ArticleRecord(i + 1, title.toString().trim(), random.nextBoolean()));
+        }
+        gateway.replaceAll(records);
+        records = null;
+
+        long retained = usedHeap() - before;
+        assertEquals(articles, gateway.findAll().size());
+        return retained;
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private List<String> describe(List<ArticleRecord> records) {
+        List<String> described = new ArrayList<>();
+        for (ArticleRecord record : records) {
+            described.add(record.getId() + " " + record.getTitle() + " " + record.isAvailable());
+        }
+        return described;
+    }
+}
@@ -9,16 +9,28 @@ import io.collective.articles.ArticleRecord;
 import io.collective.articles.ArticlesController;
 import io.collective.restsupport.BasicApp;
 import io.collective.restsupport.RestTemplate;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.*;
 
 public class ArticlesControllerTest {
@@ -29,14 +41,14 @@ public class ArticlesControllerTest {
     @Before
     public void before() {
 
-        ArticleDataGateway.articles = Arrays.asList(
+        gateway.replaceAll(Arrays.asList(
                 new ArticleRecord(10101, "Programming Languages InfoQ Trends Report - October 2019 4", true),
                 new ArticleRecord(10102, "Single Page Applications and ASP.NET Core 3.0 2", false),
                 new ArticleRecord(10103, "Google Open-Sources ALBERT Natural Language Model", true),
                 new ArticleRecord(10104, "Ahead of re:Invent, Amazon Updates AWS Lambda", false),
                 new ArticleRecord(10105, "Electron Desktop JavaScript Framework Finds a New Home", true),
                 new ArticleRecord(10106, "Ryan Kitchens on Learning from Incidents at Netflix, the Role of SRE, and Sociotechnical Systems", true)
-        );
+        ));
     }
 
     BasicApp app = new BasicApp(8888) {
@@ -78,4 +90,148 @@ public class ArticlesControllerTest {
 
         verify(spy, atMostOnce()).findAll();
     }
+
+    @Test
+    public void paged() throws IOException {
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            HttpGet first = new HttpGet("http://localhost:8888/articles?limit=4");
+            first.addHeader("Accept", "application/json");
+            String link;
+            try (CloseableHttpResponse response = client.execute(first)) {
+                List<ArticleInfo> entries = new ObjectMapper().readValue(EntityUtils.toString(response.getEntity()), new TypeReference<List<ArticleInfo>>() {
+                });
+                assertEquals(4, entries.size());
+                link = response.getFirstHeader("Link").getValue();
+            }
+
+            HttpGet second = new HttpGet("http://localhost:8888" + link.substring(1, link.indexOf('>')));
+            second.addHeader("Accept", "application/json");
+            try (CloseableHttpResponse response = client.execute(second)) {
+                List<ArticleInfo> entries = new ObjectMapper().readValue(EntityUtils.toString(response.getEntity()), new TypeReference<List<ArticleInfo>>() {
+                });
+                assertEquals(2, entries.size());
+                assertEquals(10105, entries.get(0).getId());
+                assertNull(response.getFirstHeader("Link"));
+            }
+
+            HttpGet invalid = new HttpGet("http://localhost:8888/available?limit=0");
+            invalid.addHeader("Accept", "application/json");
+            try (CloseableHttpResponse response = client.execute(invalid)) {
+                assertEquals(400, response.getStatusLine().getStatusCode());
+            }
+        }
+    }
+
+    @Test
+    public void search() throws IOException {
+        RestTemplate template = new RestTemplate();
+        String response = template.get("http://localhost:8888/articles/search", "application/json", new BasicNameValuePair("q", "google language"));
+        List<ArticleInfo> entries = new ObjectMapper().readValue(response, new TypeReference<List<ArticleInfo>>() {
+        });
+        assertEquals(1, entries.size());
+        assertEquals(10103, entries.get(0).getId());
+    }
+
+    @Test
+    public void findById() throws IOException {
+        RestTemplate template = new RestTemplate();
+        ArticleInfo info = new ObjectMapper().readValue(template.get("http://localhost:8888/articles/10103", "application/json"), ArticleInfo.class);
+        assertEquals(10103, info.getId());
+        assertEquals("Google Open-Sources ALBERT Natural Language Model", info.getTitle());
+
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            for (String uri : Arrays.asList("/articles/99999", "/articles/not-an-id", "/articles/10103/extra")) {
+                HttpGet get = new HttpGet("http://localhost:8888" + uri);
+                get.addHeader("Accept", "application/json");
+                try (CloseableHttpResponse response = client.execute(get)) {
+                    assertEquals(404, response.getStatusLine().getStatusCode());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void notModified() throws IOException {
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            HttpGet first = new HttpGet("http://localhost:8888/articles");
+            first.addHeader("Accept", "application/json");
+            String etag;
+            try (CloseableHttpResponse response = client.execute(first)) {
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                etag = response.getFirstHeader("ETag").getValue();
+                EntityUtils.consume(response.getEntity());
+            }
+
+            HttpGet second = new HttpGet("http://localhost:8888/articles");
+            second.addHeader("Accept", "application/json");
+            second.addHeader("If-None-Match", etag);
+            try (CloseableHttpResponse response = client.execute(second)) {
+                assertEquals(304, response.getStatusLine().getStatusCode());
+                assertNull(response.getEntity());
+            }
+
+            gateway.save(new ArticleInfo(0, "Presentation: InfraCoding with Terraform"));
+
+            try (CloseableHttpResponse response = client.execute(second)) {
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                assertNotEquals(etag, response.getFirstHeader("ETag").getValue());
+                List<ArticleInfo> entries = new ObjectMapper().readValue(EntityUtils.toString(response.getEntity()), new TypeReference<List<ArticleInfo>>() {
+                });
+                assertEquals(7, entries.size());
+            }
+        }
+    }
+
+    @Test
+    public void batch() throws IOException {
+        RestTemplate template = new RestTemplate();
+        String response = template.post("http://localhost:8888/articles/batch", "application/json",
+                "{\"id\": 10103, \"title\": \"Google Open-Sources ALBERT Natural Language Model\"}\n"
+                        + "{\"id\": 20001, \"title\": \"Presentation: InfraCoding with Terraform\"}\n"
+                        + "{\"guid\": \"urn:article:20002\", \"title\": \"Google Cloud Run\"}\n");
+        assertEquals("{\"received\":3,\"changed\":2}", response);
+        assertEquals(8, gateway.findAll().size());
+        assertEquals(2, gateway.search("google", 10).size());
+
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            HttpPost malformed = new HttpPost("http://localhost:8888/articles/batch");
+            malformed.addHeader("Accept", "application/json");
+            malformed.setEntity(new StringEntity("[{\"id\": 1}]"));
+            try (CloseableHttpResponse result = client.execute(malformed)) {
+                assertEquals(400, result.getStatusLine().getStatusCode());
+            }
+        }
+        assertEquals(8, gateway.findAll().size());
+    }
+
+    @Test
+    public void compressed() throws IOException {
+        for (int i = 0; i < 30; i++) {
+            gateway.save(new ArticleInfo(0, "Presentation: InfraCoding with Terraform " + i));
+        }
+        try (CloseableHttpClient client = HttpClients.custom().disableContentCompression().build()) {
+            for (String uri : Arrays.asList("/articles", "/articles?limit=50")) {
+                HttpGet get = new HttpGet("http://localhost:8888" + uri);
+                get.addHeader("Accept", "application/json");
+                get.addHeader("Accept-Encoding", "deflate;q=0.5, gzip");
+                try (CloseableHttpResponse response = client.execute(get)) {
+                    assertEquals("gzip", response.getFirstHeader("Content-Encoding").getValue());
+                    assertEquals("Accept-Encoding", response.getFirstHeader("Vary").getValue());
+                    try (InputStream body = new GZIPInputStream(response.getEntity().getContent())) {
+                        List<ArticleInfo> entries = new ObjectMapper().readValue(body, new TypeReference<List<ArticleInfo>>() {
+                        });
+                        assertEquals(36, entries.size());
+                    }
+                }
+            }
+
+            HttpGet identity = new HttpGet("http://localhost:8888/articles/search?q=google");
+            identity.addHeader("Accept", "application/json");
+            identity.addHeader("Accept-Encoding", "gzip");
+            try (CloseableHttpResponse response = client.execute(identity)) {
+                assertNull(response.getFirstHeader("Content-Encoding"));
+                assertEquals(1, new ObjectMapper().readValue(EntityUtils.toString(response.getEntity()), List.class).size());
+            }
+        }
+    }
 }
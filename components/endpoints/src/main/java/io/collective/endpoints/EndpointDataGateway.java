@@ -1,28 +1,332 @@
 package io.collective.endpoints;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.LongSupplier;
 
 /**
- * Gateway class for retrieving ready EndpointRecords based on a provided name.
+ * Gateway class for the registry of endpoints to poll and the schedule they are polled on.
+ * <p>
+ * Every endpoint has an interval, the time it was last fetched, and the time it is next due. Due times are kept in a
+ * min-heap, so finding the k endpoints due in a poll cycle costs O(k log n) however many endpoints are registered,
+ * and a cycle with nothing due costs a single peek. Rescheduling an endpoint pushes a new entry rather than searching
+ * the heap for the old one, which is skipped once it reaches the top.
+ * <p>
+ * Under an adaptive {@link PollingPolicy} the interval of each endpoint follows how often its feed is seen to change,
+ * and endpoints that fail back off.
+ * <p>
+ * The gateway is thread safe; the scheduler thread finds ready endpoints while workers mark them fetched.
  */
 public class EndpointDataGateway {
+    private static final Comparator<Due> BY_DUE_TIME = Comparator.<Due>comparingLong(due -> due.at).thenComparingInt(due -> due.schedule.id);
+
+    private final LongSupplier clock;
+    private final PollingPolicy policy;
+    private final Random random = new Random();
+    private final Map<String, Schedule> schedules = new HashMap<>();
+    private final PriorityQueue<Due> queue = new PriorityQueue<>(BY_DUE_TIME);
+    private int nextId = 10101;
+
+    /**
+     * Constructs an EndpointDataGateway measuring time against the system clock and adapting intervals with the
+     * default policy, with the InfoQ feed registered.
+     */
+    public EndpointDataGateway() {
+        this(System::currentTimeMillis, PollingPolicy.DEFAULT);
+        register("https://feed.infoq.com/", EndpointRecord.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Constructs an empty EndpointDataGateway measuring time against the given clock, polling endpoints at fixed
+     * intervals.
+     *
+     * @param clock The clock, returning milliseconds.
+     */
+    public EndpointDataGateway(LongSupplier clock) {
+        this(clock, PollingPolicy.FIXED);
+    }
+
+    /**
+     * Constructs an empty EndpointDataGateway measuring time against the given clock and adapting intervals with the
+     * given policy.
+     *
+     * @param clock  The clock, returning milliseconds.
+     * @param policy The policy adapting the intervals.
+     */
+    public EndpointDataGateway(LongSupplier clock, PollingPolicy policy) {
+        this.clock = clock;
+        this.policy = policy;
+    }
+
+    /**
+     * Registers an endpoint to be polled at the given interval, due right away. Registering an endpoint again only
+     * changes its interval, which takes effect from its next fetch. Under an adaptive policy the interval is where
+     * adapting starts from.
+     *
+     * @param name     The URL of the endpoint.
+     * @param interval How often to poll the endpoint.
+     * @return The EndpointRecord of the endpoint.
+     * @throws IllegalArgumentException If the interval is not positive.
+     */
+    public synchronized EndpointRecord register(String name, Duration interval) {
+        if (interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        Schedule schedule = schedules.get(name);
+        if (schedule != null) {
+            schedule.interval = policy.bound(interval.toMillis());
+            return schedule.record();
+        }
+        schedule = new Schedule(nextId++, name, policy.bound(interval.toMillis()));
+        schedule.nextDue = clock.getAsLong();
+        schedules.put(name, schedule);
+        push(schedule);
+        return schedule.record();
+    }
+
     /**
-     * Finds ready EndpointRecords based on the provided name.
+     * Removes an endpoint from the registry, so it is no longer polled.
      *
-     * @param name The name to match for readiness.
+     * @param name The URL of the endpoint.
+     * @return true if the endpoint was registered.
+     */
+    public synchronized boolean unregister(String name) {
+        Schedule schedule = schedules.remove(name);
+        if (schedule == null) {
+            return false;
+        }
+        // Its entries in the heap are skipped once they reach the top
+        schedule.version++;
+        return true;
+    }
+
+    /**
+     * Finds the endpoint with the given URL.
+     *
+     * @param name The URL of the endpoint.
+     * @return The EndpointRecord, or null if the endpoint is not registered.
+     */
+    public synchronized EndpointRecord find(String name) {
+        Schedule schedule = schedules.get(name);
+        return schedule == null ? null : schedule.record();
+    }
+
+    /**
+     * Returns the number of registered endpoints.
+     *
+     * @return The number of endpoints.
+     */
+    public synchronized int size() {
+        return schedules.size();
+    }
+
+    /**
+     * Finds the endpoints due to be polled by the worker with the provided name, earliest due first.
+     * <p>
+     * Every endpoint returned is pushed back one interval later, so it is retried then if its fetch is never marked
+     * fetched or failed.
+     *
+     * @param name The name of the worker, only "ready" polls endpoints.
      * @return A list of ready EndpointRecords.
      */
-    public List<EndpointRecord> findReady(String name) {
+    public synchronized List<EndpointRecord> findReady(String name) {
         // Check if the name is not equal to "ready"
         if (!name.equals("ready")) {
             // If not ready, return an empty list
             return Collections.emptyList();
         }
 
-        // If the name is "ready", return a singleton list with a predefined EndpointRecord
-        return Collections.singletonList(
-                new EndpointRecord(10101, "https://feed.infoq.com/") // always ready to collect data
-        );
+        long now = clock.getAsLong();
+        List<EndpointRecord> ready = new ArrayList<>();
+        // Pop entries until the top one is not due yet, only the due ones and the stale ones are touched
+        while (!queue.isEmpty() && queue.peek().at <= now) {
+            Due due = queue.poll();
+            if (due.version != due.schedule.version) {
+                continue;
+            }
+            ready.add(due.schedule.record());
+            due.schedule.nextDue = now + due.schedule.interval;
+            push(due.schedule);
+        }
+        return ready;
+    }
+
+    /**
+     * Records that an endpoint was fetched now and schedules its next poll. Under an adaptive policy, a fetch that
+     * found changes updates the average time between changes and sets the interval to half of it, and a fetch that
+     * found nothing new stretches the interval.
+     *
+     * @param name    The URL of the endpoint.
+     * @param changed Whether the fetch found the feed changed.
+     * @return true if the endpoint is registered.
+     */
+    public synchronized boolean markFetched(String name, boolean changed) {
+        Schedule schedule = schedules.get(name);
+        if (schedule == null) {
+            return false;
+        }
+        long now = clock.getAsLong();
+        schedule.lastFetched = now;
+        schedule.failures = 0;
+        if (policy.isAdaptive()) {
+            if (!changed) {
+                schedule.interval = policy.bound((long) (schedule.interval * PollingPolicy.UNCHANGED_BACKOFF));
+            } else if (schedule.lastChanged > 0) {
+                // The first change only marks where the first time between changes starts
+                long gap = now - schedule.lastChanged;
+                schedule.changeGap = schedule.changeGap == 0 ? gap : PollingPolicy.ALPHA * gap + (1 - PollingPolicy.ALPHA) * schedule.changeGap;
+                schedule.interval = policy.bound((long) (schedule.changeGap / 2));
+            }
+        }
+        if (changed) {
+            schedule.lastChanged = now;
+        }
+        schedule.nextDue = now + jittered(schedule.interval);
+        push(schedule);
+        return true;
+    }
+
+    /**
+     * Records that fetching an endpoint failed and schedules the next attempt. Under an adaptive policy, the delay
+     * doubles with every consecutive failure, up to the maximum interval; the learned interval itself is kept.
+     *
+     * @param name The URL of the endpoint.
+     * @return true if the endpoint is registered.
+     */
+    public synchronized boolean markFailed(String name) {
+        Schedule schedule = schedules.get(name);
+        if (schedule == null) {
+            return false;
+        }
+        long delay = schedule.interval;
+        if (policy.isAdaptive()) {
+            schedule.failures++;
+            // Saturates at Long.MAX_VALUE long before the failures could overflow, and is bounded anyway
+            delay = policy.bound((long) (schedule.interval * Math.pow(2, schedule.failures)));
+        }
+        schedule.nextDue = clock.getAsLong() + jittered(delay);
+        push(schedule);
+        return true;
+    }
+
+    /**
+     * Puts off the next poll of an endpoint that was found ready but not fetched, without counting it as fetched or
+     * failed, so its interval is left as it is.
+     *
+     * @param name  The URL of the endpoint.
+     * @param delay How long to put the poll off by.
+     * @return true if the endpoint is registered.
+     */
+    public synchronized boolean defer(String name, Duration delay) {
+        Schedule schedule = schedules.get(name);
+        if (schedule == null) {
+            return false;
+        }
+        schedule.nextDue = clock.getAsLong() + jittered(delay.toMillis());
+        push(schedule);
+        return true;
+    }
+
+    /**
+     * Returns the time on the clock endpoints are scheduled by.
+     *
+     * @return The time in milliseconds.
+     */
+    long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Spreads a delay by the jitter of the policy, so endpoints scheduled together drift apart.
+     */
+    private long jittered(long delay) {
+        if (policy.getJitter() == 0) {
+            return delay;
+        }
+        return (long) (delay * (1 + policy.getJitter() * (2 * random.nextDouble() - 1)));
+    }
+
+    private void push(Schedule schedule) {
+        schedule.version++;
+        queue.add(new Due(schedule.nextDue, schedule, schedule.version));
+        if (queue.size() > 2 * schedules.size() + 16) {
+            // Mostly stale entries, rebuild the heap from the current ones
+            List<Due> live = new ArrayList<>(schedules.size());
+            for (Due due : queue) {
+                if (due.version == due.schedule.version) {
+                    live.add(due);
+                }
+            }
+            queue.clear();
+            queue.addAll(live);
+        }
+    }
+
+    /**
+     * The mutable schedule state of a registered endpoint.
+     */
+    private static final class Schedule {
+        private final int id;
+        private final String name;
+
+        /**
+         * How often the endpoint is polled, in milliseconds
+         */
+        private long interval;
+
+        private long lastFetched;
+        private long nextDue;
+
+        /**
+         * When a fetch last found the feed changed, or 0 if none did yet
+         */
+        private long lastChanged;
+
+        /**
+         * The moving average of the time between changes in milliseconds, or 0 until two changes were seen
+         */
+        private double changeGap;
+
+        /**
+         * The number of consecutive failed fetches
+         */
+        private int failures;
+
+        /**
+         * Incremented whenever the endpoint is rescheduled or unregistered, so older heap entries can be told apart
+         */
+        private long version;
+
+        private Schedule(int id, String name, long interval) {
+            this.id = id;
+            this.name = name;
+            this.interval = interval;
+        }
+
+        private EndpointRecord record() {
+            return new EndpointRecord(id, name, Duration.ofMillis(interval), lastFetched, nextDue);
+        }
+    }
+
+    /**
+     * An entry of the heap, current while its version matches the version of its schedule.
+     */
+    private static final class Due {
+        private final long at;
+        private final Schedule schedule;
+        private final long version;
+
+        private Due(long at, Schedule schedule, long version) {
+            this.at = at;
+            this.schedule = schedule;
+            this.version = version;
+        }
     }
 }
@@ -0,0 +1,213 @@
+package io.collective.endpoints;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.collective.restsupport.RequestObserver;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-endpoint metrics of fetching and ingesting feeds, named "endpoint.{key}.{metric}".
+ * <p>
+ * The key of an endpoint is its host and path with everything but letters and digits replaced by underscores, so a
+ * key is a single component of a metric name, and can be exported as a label. Only the first endpoints seen get a key
+ * of their own, every endpoint after those shares the key "other", so the number of metrics stays bounded however
+ * many feeds are registered.
+ * <p>
+ * The metrics of every key are:
+ * <ul>
+ *     <li>response, a timer of the time until the response headers arrived: resolving the host, connecting, and the
+ *     server preparing its answer</li>
+ *     <li>fetch, a timer of the time until the body was read</li>
+ *     <li>bytes, a histogram of the bytes of each body</li>
+ *     <li>parse, a timer of the time spent reading the items of each feed, not counting waiting for its bytes</li>
+ *     <li>items, a histogram of the items of each feed</li>
+ *     <li>added, changed, unchanged, and removed, meters of the articles by how a feed changed them</li>
+ *     <li>failures, a meter of the fetches that failed, feeds that could not be parsed or had no items included</li>
+ *     <li>staleness, a gauge of the milliseconds since a feed was last known to be up to date, or since it was first
+ *     tried when it never was; the stalest endpoint counts for "other"</li>
+ * </ul>
+ * The metrics are thread safe.
+ */
+public class EndpointMetrics implements RequestObserver {
+    public static final int DEFAULT_MAX_ENDPOINTS = 100;
+
+    /**
+     * The metric of every key, for exporters that turn the key into a label
+     */
+    public static final List<String> METRICS = Collections.unmodifiableList(Arrays.asList(
+            "response", "fetch", "bytes", "parse", "items", "added", "changed", "unchanged", "removed", "failures", "staleness"));
+
+    static final String OTHER = "other";
+
+    /**
+     * Keys are cut to this length to keep metric names manageable
+     */
+    private static final int MAX_KEY_LENGTH = 80;
+
+    private final MetricRegistry registry;
+    private final int maxEndpoints;
+    private final LongSupplier clock;
+    private final Map<String, Metrics> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, Metrics> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs EndpointMetrics giving the first 100 endpoints seen metrics of their own, measuring staleness against
+     * the system clock.
+     *
+     * @param registry The MetricRegistry to register the metrics with.
+     */
+    public EndpointMetrics(MetricRegistry registry) {
+        this(registry, DEFAULT_MAX_ENDPOINTS, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs EndpointMetrics.
+     *
+     * @param registry     The MetricRegistry to register the metrics with.
+     * @param maxEndpoints The number of endpoints with metrics of their own, the rest share the metrics of "other".
+     * @param clock        The clock staleness is measured against, returning milliseconds.
+     */
+    public EndpointMetrics(MetricRegistry registry, int maxEndpoints, LongSupplier clock) {
+        this.registry = registry;
+        this.maxEndpoints = maxEndpoints;
+        this.clock = clock;
+    }
+
+    @Override
+    public void completed(String endpoint, int status, long responseNanos, long totalNanos, long bytes) {
+        Metrics metrics = metrics(endpoint);
+        metrics.response.update(responseNanos, TimeUnit.NANOSECONDS);
+        metrics.fetch.update(totalNanos, TimeUnit.NANOSECONDS);
+        metrics.bytes.update(bytes);
+    }
+
+    /**
+     * Records a feed that was read and applied.
+     *
+     * @param endpoint   The URL of the endpoint.
+     * @param parseNanos The time spent reading the items of the feed, not counting waiting for its bytes.
+     * @param items      The number of items of the feed.
+     * @param added      The number of articles the feed added.
+     * @param changed    The number of articles the feed changed.
+     * @param removed    The number of articles the feed removed.
+     */
+    public void ingested(String endpoint, long parseNanos, int items, int added, int changed, int removed) {
+        Metrics metrics = metrics(endpoint);
+        metrics.parse.update(parseNanos, TimeUnit.NANOSECONDS);
+        metrics.items.update(items);
+        metrics.added.mark(added);
+        metrics.changed.mark(changed);
+        metrics.unchanged.mark(Math.max(0, items - added - changed));
+        metrics.removed.mark(removed);
+    }
+
+    /**
+     * Records that the feed of an endpoint is up to date, because it was read or reported unchanged.
+     *
+     * @param endpoint The URL of the endpoint.
+     */
+    public void fresh(String endpoint) {
+        metrics(endpoint).freshAt.put(endpoint, clock.getAsLong());
+    }
+
+    /**
+     * Records that fetching the feed of an endpoint failed.
+     *
+     * @param endpoint The URL of the endpoint.
+     */
+    public void failed(String endpoint) {
+        metrics(endpoint).failures.mark();
+    }
+
+    private Metrics metrics(String endpoint) {
+        Metrics metrics = endpoints.get(endpoint);
+        if (metrics != null) {
+            return metrics;
+        }
+        synchronized (this) {
+            metrics = endpoints.get(endpoint);
+            if (metrics == null) {
+                String key = keys.size() < maxEndpoints ? keyOf(endpoint) : OTHER;
+                metrics = keys.computeIfAbsent(key, Metrics::new);
+                // Stale since it was first tried until it is read
+                metrics.freshAt.putIfAbsent(endpoint, clock.getAsLong());
+                endpoints.put(endpoint, metrics);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * Returns the host and path of an endpoint as a single component of a metric name.
+     */
+    static String keyOf(String endpoint) {
+        String key = endpoint;
+        try {
+            URI uri = URI.create(endpoint);
+            if (uri.getHost() != null) {
+                key = uri.getHost() + (uri.getPath() == null ? "" : uri.getPath());
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a URL, named as it is
+        }
+        key = key.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", "");
+        if (key.isEmpty() || key.equals(OTHER)) {
+            key = "_" + key;
+        }
+        return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+    }
+
+    /**
+     * The metrics of a key, shared by the endpoints with that key.
+     */
+    private final class Metrics {
+        private final Timer response;
+        private final Timer fetch;
+        private final Histogram bytes;
+        private final Timer parse;
+        private final Histogram items;
+        private final Meter added;
+        private final Meter changed;
+        private final Meter unchanged;
+        private final Meter removed;
+        private final Meter failures;
+
+        /**
+         * When the feed of each endpoint with this key was last known to be up to date
+         */
+        private final Map<String, Long> freshAt = new ConcurrentHashMap<>();
+
+        private Metrics(String key) {
+            response = registry.timer(name(key, "response"));
+            fetch = registry.timer(name(key, "fetch"));
+            bytes = registry.histogram(name(key, "bytes"));
+            parse = registry.timer(name(key, "parse"));
+            items = registry.histogram(name(key, "items"));
+            added = registry.meter(name(key, "added"));
+            changed = registry.meter(name(key, "changed"));
+            unchanged = registry.meter(name(key, "unchanged"));
+            removed = registry.meter(name(key, "removed"));
+            failures = registry.meter(name(key, "failures"));
+            registry.register(name(key, "staleness"), (Gauge<Long>) () -> {
+                long now = clock.getAsLong();
+                return freshAt.values().stream().mapToLong(at -> now - at).max().orElse(0);
+            });
+        }
+
+        private String name(String key, String metric) {
+            return MetricRegistry.name("endpoint", key, metric);
+        }
+    }
+}
@@ -1,21 +1,47 @@
 package io.collective.endpoints;
 
+import java.time.Duration;
+
 /**
- * Represents an endpoint record with an ID and a name.
+ * Represents an endpoint record with an ID, a name, and the state of its polling schedule.
  */
 public class EndpointRecord {
+    /**
+     * How often an endpoint is polled unless registered with another interval
+     */
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(5);
+
     private int id;
     private String name;
+    private Duration interval;
+    private long lastFetched;
+    private long nextDue;
 
     /**
-     * Constructs an EndpointRecord with the specified ID and name.
+     * Constructs an EndpointRecord with the specified ID and name, polled at the default interval and due right away.
      *
      * @param id   The ID of the endpoint record.
      * @param name The name of the endpoint record.
      */
     public EndpointRecord(int id, String name) {
+        this(id, name, DEFAULT_INTERVAL, 0, 0);
+    }
+
+    /**
+     * Constructs an EndpointRecord with the specified ID, name, and schedule state.
+     *
+     * @param id          The ID of the endpoint record.
+     * @param name        The name of the endpoint record.
+     * @param interval    How often the endpoint is polled.
+     * @param lastFetched When the endpoint was last fetched, in milliseconds, or 0 if it never was.
+     * @param nextDue     When the endpoint is next due to be polled, in milliseconds.
+     */
+    public EndpointRecord(int id, String name, Duration interval, long lastFetched, long nextDue) {
         this.id = id;
         this.name = name;
+        this.interval = interval;
+        this.lastFetched = lastFetched;
+        this.nextDue = nextDue;
     }
 
     /**
@@ -35,4 +61,31 @@ public class EndpointRecord {
     public String getName() {
         return name;
     }
+
+    /**
+     * Retrieves how often the endpoint is polled.
+     *
+     * @return The interval.
+     */
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * Retrieves when the endpoint was last fetched.
+     *
+     * @return The time in milliseconds, or 0 if it never was.
+     */
+    public long getLastFetched() {
+        return lastFetched;
+    }
+
+    /**
+     * Retrieves when the endpoint is next due to be polled.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getNextDue() {
+        return nextDue;
+    }
 }
@@ -1,11 +1,18 @@
 package io.collective.endpoints;
 
+import io.collective.rss.FeedFormats;
+
 /**
  * Represents an endpoint task containing an endpoint URL.
  */
 public class EndpointTask {
     private String endpoint;
 
+    /**
+     * Whether executing the task found the feed changed, set by the worker for the work finder
+     */
+    private volatile boolean changed;
+
     /**
      * Constructs an EndpointTask with the specified endpoint URL.
      *
@@ -25,11 +32,29 @@ public class EndpointTask {
     }
 
     /**
-     * Retrieves the value of the "Accept" header.
+     * Checks whether executing the task found the feed changed.
+     *
+     * @return true if articles were added, changed, or removed.
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Records whether executing the task found the feed changed.
+     *
+     * @param changed true if articles were added, changed, or removed.
+     */
+    public void setChanged(boolean changed) {
+        this.changed = changed;
+    }
+
+    /**
+     * Retrieves the value of the "Accept" header, asking for a feed of any format the worker reads.
      *
      * @return The "Accept" header value.
      */
     public String getAccept() {
-        return "application/xml";
+        return FeedFormats.DEFAULT.getAccept();
     }
 }
@@ -1,32 +1,83 @@
 package io.collective.endpoints;
 
 import io.collective.workflow.WorkFinder;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of the WorkFinder interface for finding and marking endpoint tasks.
+ * <p>
+ * With a LeaseStore shared by several instances, an endpoint is only handed to a worker once this instance holds its
+ * lease. Leases are renewed on every check for work while their fetch is running, so the lease time must span several
+ * scheduler delays, and released once the fetch completed or failed, held back from other instances until the
+ * endpoint is next due here.
  */
 public class EndpointWorkFinder implements WorkFinder<EndpointTask> {
     private Logger logger = LoggerFactory.getLogger(this.getClass());
     private EndpointDataGateway gateway;
+    private HostLimiter limiter;
+    private LeaseStore leases;
+    private Duration leaseTime;
 
     /**
-     * Constructor that takes an EndpointDataGateway as a parameter.
+     * Identifies the leases of this finder among the instances sharing the lease store
+     */
+    private final String owner = UUID.randomUUID().toString();
+
+    /**
+     * The endpoints whose lease this finder holds, and when each lease is next renewed
+     */
+    private final Map<String, Long> held = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor that takes an EndpointDataGateway as a parameter, fetching every ready endpoint.
      *
      * @param gateway The EndpointDataGateway used to retrieve endpoint records.
      */
     public EndpointWorkFinder(EndpointDataGateway gateway) {
+        this(gateway, null);
+    }
+
+    /**
+     * Constructor that takes an EndpointDataGateway and a HostLimiter as parameters.
+     *
+     * @param gateway The EndpointDataGateway used to retrieve endpoint records.
+     * @param limiter The HostLimiter admitting fetches per host, or null to fetch every ready endpoint.
+     */
+    public EndpointWorkFinder(EndpointDataGateway gateway, HostLimiter limiter) {
+        this(gateway, limiter, null, null);
+    }
+
+    /**
+     * Constructor that takes an EndpointDataGateway, a HostLimiter, and a LeaseStore as parameters.
+     *
+     * @param gateway   The EndpointDataGateway used to retrieve endpoint records.
+     * @param limiter   The HostLimiter admitting fetches per host, or null to fetch every ready endpoint.
+     * @param leases    The LeaseStore shared with the other instances, or null if this instance polls alone.
+     * @param leaseTime How long a lease is taken for, several times the delay between checks for work.
+     */
+    public EndpointWorkFinder(EndpointDataGateway gateway, HostLimiter limiter, LeaseStore leases, Duration leaseTime) {
         this.gateway = gateway;
+        this.limiter = limiter;
+        this.leases = leases;
+        this.leaseTime = leaseTime;
     }
 
     /**
      * Implementation of the findRequested() method from the WorkFinder interface.
-     * Retrieves a list of requested endpoint tasks.
+     * Retrieves a list of requested endpoint tasks. Endpoints whose host is throttled or whose host circuit is open
+     * are put off here, before any thread is spent on them, and endpoints leased by another instance are left to it.
      *
      * @param name The name of the requested tasks.
      * @return The list of requested endpoint tasks.
@@ -34,15 +85,30 @@ public class EndpointWorkFinder implements WorkFinder<EndpointTask> {
     @NotNull
     @Override
     public List<EndpointTask> findRequested(@NotNull String name) {
+        renew();
+        List<EndpointTask> tasks = new ArrayList<>();
         // Call the findReady() method on the gateway to retrieve a list of ready EndpointRecords
-        return gateway.findReady(name).stream()
-                // Map each EndpointRecord to an EndpointTask with the name extracted from the record
-                .map(record -> new EndpointTask(record.getName())).collect(Collectors.toList());
+        for (EndpointRecord record : gateway.findReady(name)) {
+            if (!claim(record.getName())) {
+                logger.debug("{} is leased by another instance.", record.getName());
+                continue;
+            }
+            long wait = limiter == null ? 0 : limiter.tryAcquire(record.getName());
+            if (wait > 0) {
+                logger.info("putting off {} for {} ms.", record.getName(), wait);
+                gateway.defer(record.getName(), Duration.ofMillis(wait));
+                release(record.getName(), 0);
+                continue;
+            }
+            // Map each EndpointRecord to an EndpointTask with the name extracted from the record
+            tasks.add(new EndpointTask(record.getName()));
+        }
+        return tasks;
     }
 
     /**
      * Implementation of the markCompleted() method from the WorkFinder interface.
-     * Marks the specified endpoint task as completed.
+     * Marks the specified endpoint task as completed, rescheduling its endpoint by whether the feed changed.
      *
      * @param info The endpoint task to mark as completed.
      */
@@ -50,5 +116,107 @@ public class EndpointWorkFinder implements WorkFinder<EndpointTask> {
     public void markCompleted(EndpointTask info) {
         // Log a message indicating that the work is marked complete
         logger.info("marking work complete.");
+        // Record the fetch and reschedule the endpoint
+        gateway.markFetched(info.getEndpoint(), info.isChanged());
+        if (limiter != null) {
+            limiter.succeeded(info.getEndpoint());
+        }
+        releaseUntilDue(info.getEndpoint());
+    }
+
+    /**
+     * Implementation of the markFailed() method from the WorkFinder interface.
+     * Marks the specified endpoint task as failed, so its endpoint backs off. Only failures of the host count
+     * against its circuit, a feed that is missing or refused still means the host is answering.
+     *
+     * @param info  The endpoint task that failed.
+     * @param cause The error the task failed with.
+     */
+    @Override
+    public void markFailed(@NotNull EndpointTask info, @NotNull Throwable cause) {
+        gateway.markFailed(info.getEndpoint());
+        if (limiter != null && isHostFailure(cause)) {
+            limiter.failed(info.getEndpoint());
+        } else if (limiter != null) {
+            limiter.succeeded(info.getEndpoint());
+        }
+        // Other instances wait out the backoff too
+        releaseUntilDue(info.getEndpoint());
+    }
+
+    /**
+     * Takes the lease on an endpoint, if leases are shared.
+     *
+     * @return true if the endpoint may be fetched.
+     */
+    private boolean claim(String endpoint) {
+        if (leases == null) {
+            return true;
+        }
+        try {
+            if (!leases.tryAcquire(endpoint, owner, leaseTime)) {
+                return false;
+            }
+            held.put(endpoint, gateway.now() + leaseTime.toMillis() / 2);
+            return true;
+        } catch (IOException e) {
+            // Better to skip a fetch than to risk fetching it twice
+            logger.error("unable to lease {}", endpoint, e);
+            return false;
+        }
+    }
+
+    /**
+     * Renews the leases held for fetches still running once they are halfway to expiring.
+     */
+    private void renew() {
+        long now = gateway.now();
+        held.forEach((endpoint, renewAt) -> {
+            if (renewAt > now) {
+                return;
+            }
+            try {
+                if (leases.tryAcquire(endpoint, owner, leaseTime)) {
+                    held.replace(endpoint, renewAt, now + leaseTime.toMillis() / 2);
+                } else {
+                    logger.warn("lost the lease on {} to another instance.", endpoint);
+                    held.remove(endpoint, renewAt);
+                }
+            } catch (IOException e) {
+                logger.error("unable to renew the lease on {}", endpoint, e);
+            }
+        });
+    }
+
+    /**
+     * Releases the lease on an endpoint, holding it back from other instances until it is next due here.
+     */
+    private void releaseUntilDue(String endpoint) {
+        EndpointRecord record = gateway.find(endpoint);
+        release(endpoint, record == null ? 0 : record.getNextDue() - gateway.now());
+    }
+
+    private void release(String endpoint, long holdBack) {
+        if (leases == null || held.remove(endpoint) == null) {
+            return;
+        }
+        try {
+            leases.release(endpoint, owner, Duration.ofMillis(Math.max(0, holdBack)));
+        } catch (IOException e) {
+            // The lease expires on its own
+            logger.error("unable to release the lease on {}", endpoint, e);
+        }
+    }
+
+    /**
+     * Checks whether a fetch failed because of its host: the host could not be reached, timed out, answered with a
+     * server error, or asked for fewer requests.
+     */
+    private static boolean isHostFailure(Throwable cause) {
+        if (cause instanceof HttpResponseException) {
+            int status = ((HttpResponseException) cause).getStatusCode();
+            return status >= HttpStatus.SC_INTERNAL_SERVER_ERROR || status == 429;
+        }
+        return cause instanceof IOException;
     }
 }
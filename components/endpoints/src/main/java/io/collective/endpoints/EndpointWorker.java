@@ -1,17 +1,31 @@
 package io.collective.endpoints;
 
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import io.collective.articles.ArticleDataGateway;
+import io.collective.articles.ArticleDiff;
+import io.collective.articles.ArticleIds;
 import io.collective.articles.ArticleInfo;
+import io.collective.articles.ArticleRecord;
+import io.collective.restsupport.ConditionalResponse;
 import io.collective.restsupport.RestTemplate;
+import io.collective.restsupport.Validators;
+import io.collective.rss.FeedFormats;
+import io.collective.rss.FeedReader;
+import io.collective.rss.IndexedItem;
 import io.collective.rss.Item;
-import io.collective.rss.RSS;
+import io.collective.rss.RSSIndex;
 import io.collective.workflow.Worker;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of the Worker interface for executing endpoint tasks.
@@ -21,6 +35,21 @@ public class EndpointWorker implements Worker<EndpointTask> {
     private RestTemplate template;
     private ArticleDataGateway gateway;
 
+    /**
+     * The validators of the last feed read from each endpoint, sent back so unchanged feeds are not downloaded again
+     */
+    private final Map<String, Validators> validators = new ConcurrentHashMap<>();
+
+    /**
+     * The cache feeds are written through to, or null
+     */
+    private final FeedCache cache;
+
+    /**
+     * The metrics of ingesting feeds, or null
+     */
+    private final EndpointMetrics metrics;
+
     /**
      * Constructor that takes a RestTemplate and an ArticleDataGateway as parameters.
      *
@@ -28,8 +57,33 @@ public class EndpointWorker implements Worker<EndpointTask> {
      * @param gateway  The ArticleDataGateway used to save article information.
      */
     public EndpointWorker(RestTemplate template, ArticleDataGateway gateway) {
+        this(template, gateway, null);
+    }
+
+    /**
+     * Constructor that takes a RestTemplate, an ArticleDataGateway, and a FeedCache as parameters.
+     *
+     * @param template The RestTemplate used to perform HTTP requests.
+     * @param gateway  The ArticleDataGateway used to save article information.
+     * @param cache    The FeedCache every feed read is written through to, or null to keep no copy.
+     */
+    public EndpointWorker(RestTemplate template, ArticleDataGateway gateway, FeedCache cache) {
+        this(template, gateway, cache, null);
+    }
+
+    /**
+     * Constructor that takes a RestTemplate, an ArticleDataGateway, a FeedCache, and EndpointMetrics as parameters.
+     *
+     * @param template The RestTemplate used to perform HTTP requests.
+     * @param gateway  The ArticleDataGateway used to save article information.
+     * @param cache    The FeedCache every feed read is written through to, or null to keep no copy.
+     * @param metrics  The EndpointMetrics recording how feeds are ingested, or null.
+     */
+    public EndpointWorker(RestTemplate template, ArticleDataGateway gateway, FeedCache cache, EndpointMetrics metrics) {
         this.template = template;
         this.gateway = gateway;
+        this.cache = cache;
+        this.metrics = metrics;
     }
 
     /**
@@ -44,26 +98,224 @@ public class EndpointWorker implements Worker<EndpointTask> {
     }
 
     /**
-     * Executes the endpoint task.
+     * Executes the endpoint task. The feed is read item by item while it streams in, in the format its content type
+     * and first bytes name, and a feed the endpoint reports unchanged since it was last read is neither parsed nor
+     * written to the gateway. A feed without items fails the task like a malformed feed does, so the endpoint backs
+     * off rather than being polled less often as if it were unchanged.
      *
      * @param task The endpoint task to execute.
      */
     @Override
     public void execute(EndpointTask task) throws IOException {
-        // Perform a GET request to the endpoint specified in the task using the RestTemplate
-        String response = template.get(task.getEndpoint(), task.getAccept());
-        // Clear the articles collection in the ArticleDataGateway
-        ArticleDataGateway.articles.clear();
-
-        { // todo - map rss results to an article infos collection and save articles infos to the article gateway
-            // Map RSS results to an article infos collection and save article infos to the article gateway
-            RSS rss = new XmlMapper().readValue(response, RSS.class);
-            // Iterate over each item in the RSS channel
-            for (Item item : rss.getChannel().getItem()) {
-                // Log the title of the item
-                logger.info("found title {}.", item.getTitle());
-                // Create an ArticleInfo object with the title and save it to the ArticleDataGateway
-                gateway.save(new ArticleInfo(0, item.getTitle()));
+        try {
+            fetch(task);
+        } catch (IOException | RuntimeException e) {
+            if (metrics != null) {
+                metrics.failed(task.getEndpoint());
+            }
+            throw e;
+        }
+        if (metrics != null) {
+            metrics.fresh(task.getEndpoint());
+        }
+    }
+
+    private void fetch(EndpointTask task) throws IOException {
+        // Perform a GET request to the endpoint specified in the task using the RestTemplate, conditional on the feed
+        // having changed since it was last read, and save the feed as it is read, writing it through to the cache
+        try (FeedCache.Write write = cache != null ? cache.write(task.getEndpoint()) : null) {
+            ConditionalResponse<Integer> conditional = template.getTypedIfChanged(task.getEndpoint(), task.getAccept(),
+                    validators.get(task.getEndpoint()), (body, contentType) -> save(task.getEndpoint(), body, contentType, write));
+            if (conditional.isNotModified()) {
+                logger.info("{} not modified.", task.getEndpoint());
+                task.setChanged(false);
+                return;
+            }
+            task.setChanged(conditional.getBody() > 0);
+            // Only cache the feed once it is saved, so a feed that failed to parse or was rejected is never replayed, and
+            // is read again in full rather than reported unchanged since
+            if (write != null) {
+                write.commit(conditional.getValidators());
+            }
+            remember(task.getEndpoint(), conditional.getValidators());
+        }
+    }
+
+    /**
+     * Ingests the feeds cached for every endpoint again, without fetching them. The validators they were sent with
+     * are remembered, so the next fetch of an endpoint whose feed has not changed since is answered "304 Not Modified".
+     * The format of a cached feed is told by its first bytes. A cached feed is read into memory as a whole, so an RSS
+     * feed is indexed rather than parsed, see {@link #saveIndexed(String, byte[])}.
+     *
+     * @return The number of feeds ingested.
+     */
+    public int replay() {
+        if (cache == null) {
+            return 0;
+        }
+        int replayed = 0;
+        for (FeedCache.Entry entry : cache.entries()) {
+            try (InputStream body = cache.open(entry)) {
+                if (body == null) {
+                    continue;
+                }
+                byte[] feed = body.readAllBytes();
+                if (FeedFormats.DEFAULT.select(null, feed, feed.length) != FeedFormats.RSS) {
+                    save(entry.getEndpoint(), new ByteArrayInputStream(feed), null);
+                } else {
+                    try {
+                        saveIndexed(entry.getEndpoint(), feed);
+                    } catch (IOException e) {
+                        // The index reads fewer encodings than the XML parser, which has the final say
+                        save(entry.getEndpoint(), new ByteArrayInputStream(feed), null);
+                    }
+                }
+                remember(entry.getEndpoint(), entry.getValidators());
+                replayed++;
+            } catch (IOException e) {
+                logger.warn("unable to replay the feed of {}.", entry.getEndpoint(), e);
+            }
+        }
+        logger.info("replayed {} cached feeds.", replayed);
+        return replayed;
+    }
+
+    /**
+     * Remembers the validators of the feed saved last, so the next request for it can be conditional.
+     */
+    private void remember(String endpoint, Validators sent) {
+        // Only remember the validators once the feed is saved, so a feed that failed to parse is read again in full
+        if (sent.isEmpty()) {
+            validators.remove(endpoint);
+        } else {
+            validators.put(endpoint, sent);
+        }
+    }
+
+    /**
+     * Reads a feed as it is written to the cache, down to its last byte so the cached body is the body as it was sent.
+     */
+    private int save(String endpoint, InputStream body, String contentType, FeedCache.Write write) throws IOException {
+        if (write == null) {
+            return save(endpoint, body, contentType);
+        }
+        InputStream tee = write.tee(body);
+        int saved = save(endpoint, tee, contentType);
+        byte[] rest = new byte[8192];
+        while (tee.read(rest) != -1) {
+            // Whatever follows the end of the document
+        }
+        return saved;
+    }
+
+    /**
+     * Reads the items of a feed and applies them to the articles previously read from the endpoint.
+     *
+     * @param endpoint    The endpoint the feed was read from.
+     * @param body        The stream of the feed.
+     * @param contentType The content type the feed was sent with, or null if it is not known.
+     * @return The number of articles added, changed, or removed.
+     * @throws IOException If the feed is malformed, has no items, or cannot be read.
+     */
+    private int save(String endpoint, InputStream body, String contentType) throws IOException {
+        // Map feed items to an article infos collection, only the small infos are kept while the feed streams past
+        List<ArticleInfo> infos = new ArrayList<>();
+        WaitingInputStream waiting = new WaitingInputStream(body);
+        long start = System.nanoTime();
+        try (FeedReader reader = FeedFormats.DEFAULT.open(waiting, contentType)) {
+            for (Item item = reader.next(); item != null; item = reader.next()) {
+                // Log the title of the item, the metrics give the overall picture
+                logger.debug("found title {}.", item.getTitle());
+                // Create an ArticleInfo object with an ID derived from the item's identity, so it survives refreshes
+                int id = ArticleIds.of(item.getGuid(), item.getLink(), item.getTitle());
+                infos.add(new ArticleInfo(id, item.getTitle()));
+            }
+        }
+        return apply(endpoint, infos, System.nanoTime() - start - waiting.waited);
+    }
+
+    /**
+     * Reads the items of an RSS feed held in memory, and applies them to the articles previously read from the
+     * endpoint. Items are indexed by byte offset, and an item whose guid names an article the endpoint already has
+     * is taken as that article without decoding its other fields, so replaying a feed the articles were recovered
+     * from decodes little more than the guids.
+     *
+     * @param endpoint The endpoint the feed was read from.
+     * @param feed     The bytes of the feed.
+     * @return The number of articles added, changed, or removed.
+     * @throws IOException If the feed cannot be indexed or has no items, before anything is applied.
+     */
+    private int saveIndexed(String endpoint, byte[] feed) throws IOException {
+        List<ArticleInfo> infos = new ArrayList<>();
+        long start = System.nanoTime();
+        for (IndexedItem item : RSSIndex.index(feed)) {
+            String guid = item.getGuid();
+            if (guid != null && !guid.trim().isEmpty()) {
+                // The ID of an item with a guid is derived from the guid alone
+                int id = ArticleIds.of(guid, null, null);
+                ArticleRecord live = gateway.findById(endpoint, id);
+                if (live != null) {
+                    infos.add(new ArticleInfo(id, live.getTitle()));
+                    continue;
+                }
+            }
+            infos.add(new ArticleInfo(ArticleIds.of(guid, item.getLink(), item.getTitle()), item.getTitle()));
+        }
+        return apply(endpoint, infos, System.nanoTime() - start);
+    }
+
+    /**
+     * Applies the infos read from a feed to the articles previously read from the endpoint.
+     *
+     * @param endpoint   The endpoint the feed was read from.
+     * @param infos      The infos of every item of the feed.
+     * @param parseNanos The time spent reading the feed, less the time spent waiting for it.
+     * @return The number of articles added, changed, or removed.
+     * @throws IOException If the feed has no items, which is far more likely broken than emptied, so it is rejected
+     *                     like a malformed feed and the articles read from it before are kept.
+     */
+    private int apply(String endpoint, List<ArticleInfo> infos, long parseNanos) throws IOException {
+        if (infos.isEmpty()) {
+            throw new IOException("malformed feed: no items in " + endpoint);
+        }
+        // Apply the difference to the articles previously read from the endpoint in a single swap, unchanged items
+        // are not written again, items gone from the feed are removed, and other feeds are left alone
+        ArticleDiff diff = gateway.applyFeed(endpoint, infos);
+        logger.info("{} added, {} changed, {} removed of {} articles.",
+                diff.getAdded().size(), diff.getChanged().size(), diff.getRemoved().size(), infos.size());
+        if (metrics != null) {
+            metrics.ingested(endpoint, parseNanos, infos.size(), diff.getAdded().size(), diff.getChanged().size(), diff.getRemoved().size());
+        }
+        return diff.getAdded().size() + diff.getChanged().size() + diff.getRemoved().size();
+    }
+
+    /**
+     * A stream measuring the time spent waiting for its bytes, so parsing a feed can be told apart from receiving it.
+     */
+    private static final class WaitingInputStream extends FilterInputStream {
+        private long waited;
+
+        private WaitingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                waited += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(bytes, offset, length);
+            } finally {
+                waited += System.nanoTime() - start;
             }
         }
     }
@@ -0,0 +1,443 @@
+package io.collective.endpoints;
+
+import io.collective.restsupport.Validators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed cache of the raw feeds read from each endpoint, so they can be ingested again from disk.
+ * <p>
+ * Bodies are stored under the SHA-256 of their bytes in the bodies directory, so a feed that did not change, or that
+ * several endpoints share, is stored once. Every endpoint has a small entry in the endpoints directory, named after
+ * the SHA-256 of its URL, naming its latest body along with the validators it was sent with. A body is deleted once
+ * no entry names it anymore.
+ * <p>
+ * Bodies are written through file channels while the feed streams in, into a temporary file that is renamed into
+ * place once the feed was read in full. Files are forced to disk by a background thread, so a fetch never waits on
+ * an fsync; a crash may lose the latest feeds, but as bodies are checked against their name before they are read,
+ * never yields a torn one.
+ * <p>
+ * The cache is thread safe.
+ */
+public class FeedCache implements Closeable {
+    private static final String BODIES = "bodies";
+    private static final String ENDPOINTS = "endpoints";
+    private static final String TEMPORARY = "tmp";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Path directory;
+
+    /**
+     * The latest entry of every endpoint, and how many entries name each body
+     */
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Integer> references = new HashMap<>();
+
+    /**
+     * The single thread files are forced to disk on, off the fetch threads
+     */
+    private final ExecutorService syncer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "feed-cache-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a FeedCache in the given directory, loading the entries cached before.
+     *
+     * @param directory The directory of the cache, created if it does not exist.
+     * @throws UncheckedIOException If the directory cannot be read or created.
+     */
+    public FeedCache(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory.resolve(BODIES));
+            Files.createDirectories(directory.resolve(ENDPOINTS));
+            Files.createDirectories(directory.resolve(TEMPORARY));
+            // Feeds that were being written when the process stopped
+            try (Stream<Path> temporary = Files.list(directory.resolve(TEMPORARY))) {
+                for (Path path : temporary.collect(Collectors.toList())) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            try (Stream<Path> paths = Files.list(directory.resolve(ENDPOINTS))) {
+                for (Path path : paths.collect(Collectors.toList())) {
+                    Entry entry = readEntry(path);
+                    if (entry != null) {
+                        entries.put(entry.endpoint, entry);
+                        references.merge(entry.hash, 1, Integer::sum);
+                    }
+                }
+            }
+            // Bodies left behind when the process stopped before their previous entry was dropped
+            try (Stream<Path> bodies = Files.list(directory.resolve(BODIES))) {
+                for (Path path : bodies.collect(Collectors.toList())) {
+                    if (!references.containsKey(path.getFileName().toString())) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts writing a feed of the given endpoint. Nothing is written until the feed is read through the stream
+     * returned by {@link Write#tee(InputStream)}, and nothing replaces the cached feed until it is committed.
+     *
+     * @param endpoint The URL of the endpoint.
+     * @return The write, to be closed whether or not it was committed.
+     */
+    public Write write(String endpoint) {
+        return new Write(endpoint);
+    }
+
+    /**
+     * Returns the latest entries of all the endpoints, ordered by endpoint.
+     *
+     * @return The entries.
+     */
+    public synchronized List<Entry> entries() {
+        List<Entry> list = new ArrayList<>(entries.values());
+        list.sort(Comparator.comparing(Entry::getEndpoint));
+        return list;
+    }
+
+    /**
+     * Finds the latest entry of the given endpoint.
+     *
+     * @param endpoint The URL of the endpoint.
+     * @return The entry, or null if no feed of the endpoint is cached.
+     */
+    public synchronized Entry find(String endpoint) {
+        return entries.get(endpoint);
+    }
+
+    /**
+     * Opens the cached body of an entry, after checking that it is intact.
+     *
+     * @param entry The entry.
+     * @return The stream of the body, to be closed by the caller, or null if the body is missing or torn.
+     * @throws IOException If the body cannot be read.
+     */
+    public InputStream open(Entry entry) throws IOException {
+        Path path = directory.resolve(BODIES).resolve(entry.hash);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        if (!hex(digest.digest()).equals(entry.hash)) {
+            logger.warn("discarding torn feed {} of {}.", entry.hash, entry.endpoint);
+            return null;
+        }
+        return Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Waits for the files written so far to be forced to disk, and stops the thread forcing them.
+     */
+    @Override
+    public void close() {
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes a written body the latest feed of its endpoint.
+     */
+    private void commit(String endpoint, Path temporary, String hash, Validators validators) throws IOException {
+        Path body = directory.resolve(BODIES).resolve(hash);
+        Path path = directory.resolve(ENDPOINTS).resolve(hex(sha256().digest(endpoint.getBytes(StandardCharsets.UTF_8))));
+        Entry entry = new Entry(endpoint, hash, validators, System.currentTimeMillis());
+        synchronized (this) {
+            // The same feed may have been cached before, by this endpoint or another, but possibly torn by a crash
+            // before it was forced to disk, so it is replaced rather than trusted
+            Files.move(temporary, body, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            writeEntry(path, entry);
+
+            Entry previous = entries.put(endpoint, entry);
+            references.merge(hash, 1, Integer::sum);
+            if (previous != null && references.merge(previous.hash, -1, Integer::sum) == 0) {
+                references.remove(previous.hash);
+                Files.deleteIfExists(directory.resolve(BODIES).resolve(previous.hash));
+            }
+        }
+        sync(body, path);
+    }
+
+    private void writeEntry(Path path, Entry entry) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("endpoint", entry.endpoint);
+        properties.setProperty("body", entry.hash);
+        properties.setProperty("fetched", Long.toString(entry.fetched));
+        if (entry.validators.getEtag() != null) {
+            properties.setProperty("etag", entry.validators.getEtag());
+        }
+        if (entry.validators.getLastModified() != null) {
+            properties.setProperty("lastModified", entry.validators.getLastModified());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        properties.store(bytes, null);
+
+        Path temporary = Files.createTempFile(directory.resolve(TEMPORARY), "endpoint", ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Entry readEntry(Path path) {
+        Properties properties = new Properties();
+        try (InputStream in = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ))) {
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("skipping unreadable feed cache entry {}.", path, e);
+            return null;
+        }
+        String endpoint = properties.getProperty("endpoint");
+        String hash = properties.getProperty("body");
+        String fetched = properties.getProperty("fetched");
+        if (endpoint == null || hash == null || fetched == null) {
+            // Torn by a crash before it was forced to disk
+            logger.warn("skipping incomplete feed cache entry {}.", path);
+            return null;
+        }
+        Validators validators = new Validators(properties.getProperty("etag"), properties.getProperty("lastModified"));
+        return new Entry(endpoint, hash, validators, Long.parseLong(fetched));
+    }
+
+    /**
+     * Forces the given files and their directories to disk on the background thread.
+     */
+    private void sync(Path... paths) {
+        try {
+            syncer.execute(() -> {
+                for (Path path : paths) {
+                    force(path);
+                    force(path.getParent());
+                }
+            });
+        } catch (RuntimeException e) {
+            // Closed, the files are left to the operating system
+            logger.debug("not forcing feed cache files to disk.", e);
+        }
+    }
+
+    private void force(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Gone in the meantime, or a directory on a platform that cannot open them
+            logger.debug("unable to force {} to disk.", path, e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The latest cached feed of an endpoint.
+     */
+    public static final class Entry {
+        private final String endpoint;
+        private final String hash;
+        private final Validators validators;
+        private final long fetched;
+
+        private Entry(String endpoint, String hash, Validators validators, long fetched) {
+            this.endpoint = endpoint;
+            this.hash = hash;
+            this.validators = validators;
+            this.fetched = fetched;
+        }
+
+        /**
+         * Returns the URL of the endpoint.
+         *
+         * @return The endpoint.
+         */
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * Returns the SHA-256 of the body, in hex, which names the body in the cache.
+         *
+         * @return The hash.
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Returns the validators the body was sent with.
+         *
+         * @return The validators.
+         */
+        public Validators getValidators() {
+            return validators;
+        }
+
+        /**
+         * Returns when the body was cached.
+         *
+         * @return The time in milliseconds.
+         */
+        public long getFetched() {
+            return fetched;
+        }
+    }
+
+    /**
+     * A feed being written to the cache.
+     */
+    public final class Write implements Closeable {
+        private final String endpoint;
+        private final MessageDigest digest = sha256();
+        private Path temporary;
+        private FileChannel channel;
+        private boolean committed;
+
+        private Write(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * Wraps the stream of a feed, writing the feed to the cache as it is read.
+         *
+         * @param in The stream of the feed.
+         * @return The stream to read the feed from.
+         * @throws IOException If the feed cannot be written.
+         */
+        public InputStream tee(InputStream in) throws IOException {
+            temporary = Files.createTempFile(directory.resolve(TEMPORARY), "feed", ".tmp");
+            channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        written(new byte[]{(byte) b}, 0, 1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    int read = super.read(bytes, offset, length);
+                    if (read > 0) {
+                        written(bytes, offset, read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    // Skipped bytes are read, so they are cached too
+                    byte[] skipped = new byte[(int) Math.min(n, 8192)];
+                    int read = read(skipped, 0, skipped.length);
+                    return Math.max(read, 0);
+                }
+
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Makes the feed read through the stream the latest cached feed of the endpoint. The feed must have been read
+         * to its end.
+         *
+         * @param validators The validators the feed was sent with.
+         * @throws IOException If the feed cannot be stored.
+         */
+        public void commit(Validators validators) throws IOException {
+            if (channel == null) {
+                throw new IllegalStateException("nothing was read");
+            }
+            channel.close();
+            FeedCache.this.commit(endpoint, temporary, hex(digest.digest()), validators);
+            committed = true;
+        }
+
+        /**
+         * Discards the feed unless it was committed.
+         *
+         * @throws IOException If the feed cannot be discarded.
+         */
+        @Override
+        public void close() throws IOException {
+            if (channel != null && !committed) {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        private void written(byte[] bytes, int offset, int length) throws IOException {
+            digest.update(bytes, offset, length);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.collective.endpoints;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * A LeaseStore of small files in a directory shared by the processes on one machine, or on a file system that
+ * supports file locks.
+ * <p>
+ * Every key has a file named after a hash of the key, holding the owner of its lease and when the lease expires.
+ * Files are read and written under an exclusive file lock, so a lease is taken by one process at a time, and under the
+ * monitor of the store, as file locks are held by the whole process rather than by a thread. Leases are not forced to
+ * disk, they only need to outlive the processes holding them.
+ */
+public class FileLeaseStore implements LeaseStore {
+    private final Path directory;
+    private final LongSupplier clock;
+
+    /**
+     * Constructs a FileLeaseStore in the given directory, measuring time against the system clock.
+     *
+     * @param directory The directory of the leases, created if it does not exist.
+     * @throws UncheckedIOException If the directory cannot be created.
+     */
+    public FileLeaseStore(Path directory) {
+        this(directory, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs a FileLeaseStore in the given directory, measuring time against the given clock, which every process
+     * sharing the directory must agree on.
+     *
+     * @param directory The directory of the leases, created if it does not exist.
+     * @param clock     The clock, returning milliseconds.
+     * @throws UncheckedIOException If the directory cannot be created.
+     */
+    public FileLeaseStore(Path directory, LongSupplier clock) {
+        this.directory = directory;
+        this.clock = clock;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean tryAcquire(String key, String owner, Duration ttl) throws IOException {
+        try (FileChannel channel = open(key); FileLock ignored = channel.lock()) {
+            Lease lease = read(channel);
+            long now = clock.getAsLong();
+            if (lease != null && !lease.owner.equals(owner) && lease.expires > now) {
+                return false;
+            }
+            write(channel, new Lease(owner, now + ttl.toMillis()));
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized boolean release(String key, String owner, Duration holdBack) throws IOException {
+        try (FileChannel channel = open(key); FileLock ignored = channel.lock()) {
+            Lease lease = read(channel);
+            if (lease == null || !lease.owner.equals(owner)) {
+                // Expired and taken by another owner in the meantime, or never taken
+                return false;
+            }
+            // Still named as the owner, which only keeps others out until the lease expires
+            write(channel, new Lease(owner, clock.getAsLong() + holdBack.toMillis()));
+            return true;
+        }
+    }
+
+    private FileChannel open(String key) throws IOException {
+        Path path = directory.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".lease");
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // Read the lease of a locked file, or null if it holds none
+    private Lease read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 4096));
+        channel.read(buffer, 0);
+        String[] lines = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 2) {
+            return null;
+        }
+        try {
+            return new Lease(lines[0], Long.parseLong(lines[1].trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void write(FileChannel channel, Lease lease) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((lease.owner + "\n" + lease.expires + "\n").getBytes(StandardCharsets.UTF_8));
+        channel.truncate(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, channel.size());
+        }
+    }
+
+    /**
+     * The owner of a lease and when it expires.
+     */
+    private static final class Lease {
+        private final String owner;
+        private final long expires;
+
+        private Lease(String owner, long expires) {
+            this.owner = owner;
+            this.expires = expires;
+        }
+    }
+}
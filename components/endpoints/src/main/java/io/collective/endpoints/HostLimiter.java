@@ -0,0 +1,255 @@
+package io.collective.endpoints;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how often the endpoints of each host are fetched, and stops fetching from hosts that keep failing.
+ * <p>
+ * Every host has a token bucket refilled at a steady rate up to a burst, and a fetch takes a token. Every host also has
+ * a circuit breaker, which opens after a number of consecutive failed fetches. While it is open no endpoint of the host
+ * is fetched; once it has been open for a while a single trial fetch is let through, closing the circuit again if it
+ * succeeds and reopening it if it fails.
+ * <p>
+ * Fetches are admitted before they are handed to a thread, so an endpoint that is throttled or whose host is down is
+ * put off by the time {@link #tryAcquire(String)} returns instead of holding a thread.
+ * <p>
+ * The number of open and half open circuits is exposed as the endpoint-circuits-open and endpoint-circuits-half-open
+ * gauges, with counters of the circuits opened and the fetches put off. Hosts are not metric names of their own, so the
+ * number of metrics does not grow with the number of feeds.
+ * <p>
+ * The limiter is thread safe.
+ */
+public class HostLimiter {
+    public static final double DEFAULT_RATE = 1;
+    public static final int DEFAULT_BURST = 4;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofMinutes(1);
+
+    /**
+     * The state of the circuit breaker of a host.
+     */
+    public enum Circuit {
+        /**
+         * Fetches are admitted as the token bucket allows
+         */
+        CLOSED,
+
+        /**
+         * Fetches fail fast until the circuit has been open long enough
+         */
+        OPEN,
+
+        /**
+         * A single trial fetch decides whether the circuit closes or opens again
+         */
+        HALF_OPEN
+    }
+
+    private final LongSupplier clock;
+    private final double rate;
+    private final int burst;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    private final Counter opened;
+    private final Counter throttled;
+    private final Counter rejected;
+
+    /**
+     * Constructs a HostLimiter with the default limits, measuring time against the system clock.
+     *
+     * @param registry The MetricRegistry the breaker state is registered with.
+     */
+    public HostLimiter(MetricRegistry registry) {
+        this(registry, DEFAULT_RATE, DEFAULT_BURST, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs a HostLimiter.
+     *
+     * @param registry         The MetricRegistry the breaker state is registered with.
+     * @param rate             The number of fetches per second each host is allowed in the long run.
+     * @param burst            The number of fetches each host is allowed at once after being idle.
+     * @param failureThreshold The number of consecutive failed fetches that open the circuit of a host.
+     * @param openDuration     How long a circuit stays open before a trial fetch is let through.
+     * @param clock            The clock, returning milliseconds.
+     * @throws IllegalArgumentException If any of the limits is not positive.
+     */
+    public HostLimiter(MetricRegistry registry, double rate, int burst, int failureThreshold, Duration openDuration, LongSupplier clock) {
+        if (rate <= 0 || burst < 1 || failureThreshold < 1 || openDuration.isZero() || openDuration.isNegative()) {
+            throw new IllegalArgumentException("limits must be positive");
+        }
+        this.clock = clock;
+        this.rate = rate;
+        this.burst = burst;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.toMillis();
+
+        this.opened = registry.counter("endpoint-circuits-opened");
+        this.throttled = registry.counter("endpoint-fetches-throttled");
+        this.rejected = registry.counter("endpoint-fetches-rejected");
+        registry.register("endpoint-circuits-open", (Gauge<Long>) () -> count(Circuit.OPEN));
+        registry.register("endpoint-circuits-half-open", (Gauge<Long>) () -> count(Circuit.HALF_OPEN));
+    }
+
+    /**
+     * Tries to admit a fetch of the given endpoint, taking a token of its host.
+     *
+     * @param endpoint The URL of the endpoint.
+     * @return 0 if the fetch is admitted, otherwise how many milliseconds to put it off by.
+     */
+    public long tryAcquire(String endpoint) {
+        Host host = host(endpoint);
+        long now = clock.getAsLong();
+        synchronized (host) {
+            if (host.circuit == Circuit.OPEN) {
+                if (now < host.openedAt + openMillis) {
+                    rejected.inc();
+                    return host.openedAt + openMillis - now;
+                }
+                host.circuit = Circuit.HALF_OPEN;
+                host.trial = false;
+            }
+            if (host.circuit == Circuit.HALF_OPEN) {
+                // A trial that never reported back, say because the scheduler shut down, is given up on after a while
+                if (host.trial && now < host.trialAt + openMillis) {
+                    rejected.inc();
+                    return Math.min(tokenMillis(), host.trialAt + openMillis - now);
+                }
+                host.trial = true;
+                host.trialAt = now;
+            }
+
+            // Refill the bucket for the time since it was last looked at
+            host.tokens = Math.min(burst, host.tokens + (now - host.refilledAt) * rate / 1000);
+            host.refilledAt = now;
+            if (host.tokens < 1) {
+                if (host.circuit == Circuit.HALF_OPEN) {
+                    // Not a trial after all
+                    host.trial = false;
+                }
+                throttled.inc();
+                return Math.max(1, (long) Math.ceil((1 - host.tokens) * 1000 / rate));
+            }
+            host.tokens--;
+            return 0;
+        }
+    }
+
+    /**
+     * Records that an admitted fetch of the given endpoint succeeded, closing the circuit of its host.
+     *
+     * @param endpoint The URL of the endpoint.
+     */
+    public void succeeded(String endpoint) {
+        Host host = host(endpoint);
+        synchronized (host) {
+            host.failures = 0;
+            host.circuit = Circuit.CLOSED;
+        }
+    }
+
+    /**
+     * Records that an admitted fetch of the given endpoint failed, opening the circuit of its host once enough fetches
+     * failed in a row, or right away after a failed trial.
+     *
+     * @param endpoint The URL of the endpoint.
+     */
+    public void failed(String endpoint) {
+        Host host = host(endpoint);
+        synchronized (host) {
+            host.failures++;
+            if (host.circuit == Circuit.HALF_OPEN || (host.circuit == Circuit.CLOSED && host.failures >= failureThreshold)) {
+                host.circuit = Circuit.OPEN;
+                host.openedAt = clock.getAsLong();
+                opened.inc();
+            }
+        }
+    }
+
+    /**
+     * Returns the state of the circuit of the host of the given endpoint.
+     *
+     * @param endpoint The URL of the endpoint.
+     * @return The state of the circuit, CLOSED for hosts not seen yet.
+     */
+    public Circuit circuit(String endpoint) {
+        Host host = hosts.get(hostOf(endpoint));
+        if (host == null) {
+            return Circuit.CLOSED;
+        }
+        synchronized (host) {
+            return host.circuit;
+        }
+    }
+
+    private long tokenMillis() {
+        return Math.max(1, (long) Math.ceil(1000 / rate));
+    }
+
+    private long count(Circuit circuit) {
+        return hosts.values().stream().filter(host -> {
+            synchronized (host) {
+                return host.circuit == circuit;
+            }
+        }).count();
+    }
+
+    private Host host(String endpoint) {
+        return hosts.computeIfAbsent(hostOf(endpoint), key -> new Host(burst, clock.getAsLong()));
+    }
+
+    /**
+     * Returns the host and port of an endpoint, or the endpoint itself if it is not a URL with a host.
+     */
+    static String hostOf(String endpoint) {
+        try {
+            URI uri = URI.create(endpoint);
+            if (uri.getHost() == null) {
+                return endpoint;
+            }
+            String host = uri.getHost().toLowerCase(Locale.ROOT);
+            return uri.getPort() == -1 ? host : host + ":" + uri.getPort();
+        } catch (IllegalArgumentException e) {
+            return endpoint;
+        }
+    }
+
+    /**
+     * The token bucket and circuit breaker of a host, guarded by its own monitor.
+     */
+    private static final class Host {
+        private double tokens;
+        private long refilledAt;
+
+        private Circuit circuit = Circuit.CLOSED;
+
+        /**
+         * The number of consecutive failed fetches
+         */
+        private int failures;
+
+        private long openedAt;
+
+        /**
+         * Whether the trial fetch of a half open circuit is in flight, and since when
+         */
+        private boolean trial;
+        private long trialAt;
+
+        private Host(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.collective.endpoints;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Shared, time-limited leases on endpoints, so that several instances polling the same endpoints fetch each feed once.
+ * <p>
+ * A lease is held by one owner until it expires or is released. Its owner may take it again at any time to renew it;
+ * any other owner may only take it once it has expired. Releasing a lease may hold it back from other owners for a
+ * while, so an endpoint just fetched by one instance is not fetched again by another before it is due.
+ * <p>
+ * Implementations must be safe to use from several threads and, when shared, several processes.
+ */
+public interface LeaseStore {
+    /**
+     * Takes or renews the lease on a key, if it is free, expired, or already held by the owner.
+     *
+     * @param key   The key, the URL of an endpoint.
+     * @param owner The owner taking the lease.
+     * @param ttl   How long the lease is held for unless renewed or released.
+     * @return true if the owner holds the lease.
+     * @throws IOException If the store cannot be read or written.
+     */
+    boolean tryAcquire(String key, String owner, Duration ttl) throws IOException;
+
+    /**
+     * Releases the lease on a key held by the owner, keeping other owners from taking it for the given time.
+     *
+     * @param key      The key, the URL of an endpoint.
+     * @param owner    The owner releasing the lease.
+     * @param holdBack How long other owners cannot take the lease for, zero to free it right away.
+     * @return true if the owner held the lease.
+     * @throws IOException If the store cannot be read or written.
+     */
+    boolean release(String key, String owner, Duration holdBack) throws IOException;
+}
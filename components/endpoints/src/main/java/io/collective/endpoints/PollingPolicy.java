@@ -0,0 +1,108 @@
+package io.collective.endpoints;
+
+import java.time.Duration;
+
+/**
+ * How the EndpointDataGateway adapts the polling interval of each endpoint to how often its feed changes.
+ * <p>
+ * The time between observed changes is averaged with an exponentially weighted moving average, and an endpoint that
+ * changed is next polled at half that average, so changes are picked up about halfway between two of them on average.
+ * A fetch that found nothing new stretches the interval by half, and every consecutive failure doubles the delay
+ * before the next attempt. Intervals stay within the bounds, and every delay is spread by a random jitter so that
+ * endpoints registered together do not stay in lockstep.
+ */
+public final class PollingPolicy {
+    /**
+     * Endpoints are polled at the interval they were registered with, without jitter or backoff
+     */
+    public static final PollingPolicy FIXED = new PollingPolicy(null, null, 0);
+
+    /**
+     * Adaptive polling between 1 minute and 6 hours, with 10% jitter
+     */
+    public static final PollingPolicy DEFAULT = new PollingPolicy(Duration.ofMinutes(1), Duration.ofHours(6), 0.1);
+
+    /**
+     * The weight of the latest time between changes in the moving average
+     */
+    static final double ALPHA = 0.3;
+
+    /**
+     * The factor the interval grows by when a fetch finds nothing new
+     */
+    static final double UNCHANGED_BACKOFF = 1.5;
+
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final double jitter;
+
+    /**
+     * Constructs an adaptive PollingPolicy.
+     *
+     * @param minInterval The shortest interval an endpoint is polled at.
+     * @param maxInterval The longest interval an endpoint is polled at, also bounding the backoff after failures.
+     * @param jitter      The fraction every delay is randomly shortened or lengthened by, from 0 up to 1.
+     * @throws IllegalArgumentException If the bounds are not positive and ordered, or the jitter is out of range.
+     */
+    public PollingPolicy(Duration minInterval, Duration maxInterval, double jitter) {
+        boolean unordered = minInterval != null && (maxInterval == null || maxInterval.compareTo(minInterval) < 0);
+        if (unordered || (minInterval != null && (minInterval.isZero() || minInterval.isNegative()))) {
+            throw new IllegalArgumentException("intervals must be positive and the minimum must not exceed the maximum");
+        }
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("jitter must be at least 0 and less than 1");
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Returns the shortest interval an endpoint is polled at.
+     *
+     * @return The minimum interval, or null when intervals are fixed.
+     */
+    public Duration getMinInterval() {
+        return minInterval;
+    }
+
+    /**
+     * Returns the longest interval an endpoint is polled at.
+     *
+     * @return The maximum interval, or null when intervals are fixed.
+     */
+    public Duration getMaxInterval() {
+        return maxInterval;
+    }
+
+    /**
+     * Returns the fraction every delay is randomly shortened or lengthened by.
+     *
+     * @return The jitter.
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Checks whether intervals adapt to the endpoints.
+     *
+     * @return false if endpoints are polled at the interval they were registered with.
+     */
+    public boolean isAdaptive() {
+        return minInterval != null;
+    }
+
+    /**
+     * Returns the given interval within the bounds.
+     *
+     * @param millis The interval in milliseconds.
+     * @return The bounded interval in milliseconds, or the interval itself when intervals are fixed.
+     */
+    long bound(long millis) {
+        if (!isAdaptive()) {
+            return millis;
+        }
+        return Math.max(minInterval.toMillis(), Math.min(maxInterval.toMillis(), millis));
+    }
+}
@@ -1,11 +1,25 @@
 package test.collective.endpoints;
 
 import io.collective.endpoints.EndpointDataGateway;
+import io.collective.endpoints.EndpointRecord;
+import io.collective.endpoints.PollingPolicy;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class EndpointDataGatewayTest {
+    private final AtomicLong clock = new AtomicLong();
 
     @Test
     public void readdy() {
@@ -14,4 +28,137 @@ public class EndpointDataGatewayTest {
         assertEquals(1, gateway.findReady("ready").size());
         assertEquals(0, gateway.findReady("not-ready").size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void schedule() {
+        EndpointDataGateway gateway = new EndpointDataGateway(clock::get);
+        gateway.register("https://a/", Duration.ofSeconds(60));
+        gateway.register("https://b/", Duration.ofSeconds(10));
+
+        assertEquals(Arrays.asList("https://a/", "https://b/"), names(gateway.findReady("ready")));
+        assertEquals(0, gateway.findReady("ready").size());
+
+        clock.addAndGet(5000);
+        assertTrue(gateway.markFetched("https://b/", true));
+        EndpointRecord b = gateway.find("https://b/");
+        assertEquals(5000, b.getLastFetched());
+        assertEquals(15000, b.getNextDue());
+
+        // Claimed at 0 and not fetched since, so due again at 10 seconds, but rescheduled to 15 by the fetch
+        clock.set(10000);
+        assertEquals(0, gateway.findReady("ready").size());
+        clock.set(15000);
+        assertEquals(Arrays.asList("https://b/"), names(gateway.findReady("ready")));
+
+        // A fetch that failed is retried one interval after it was claimed, earliest due first
+        clock.set(60000);
+        assertEquals(Arrays.asList("https://b/", "https://a/"), names(gateway.findReady("ready")));
+        assertEquals(0, gateway.find("https://a/").getLastFetched());
+    }
+
+    @Test
+    public void unregister() {
+        EndpointDataGateway gateway = new EndpointDataGateway(clock::get);
+        gateway.register("https://a/", Duration.ofSeconds(10));
+        gateway.register("https://b/", Duration.ofSeconds(10));
+
+        assertTrue(gateway.unregister("https://a/"));
+        assertFalse(gateway.unregister("https://a/"));
+        assertFalse(gateway.markFetched("https://a/", true));
+        assertNull(gateway.find("https://a/"));
+        assertEquals(1, gateway.size());
+        assertEquals(Arrays.asList("https://b/"), names(gateway.findReady("ready")));
+    }
+
+    @Test
+    public void thousandsOfFeeds() {
+        EndpointDataGateway gateway = new EndpointDataGateway(clock::get);
+        for (int i = 0; i < 5000; i++) {
+            // Spread the feeds over intervals of 1 to 10 minutes
+            gateway.register("https://feed" + i + "/", Duration.ofMinutes(1 + i % 10));
+        }
+        assertEquals(5000, gateway.findReady("ready").size());
+
+        int polled = 0;
+        for (int minute = 1; minute <= 60; minute++) {
+            clock.set(Duration.ofMinutes(minute).toMillis());
+            List<EndpointRecord> ready = gateway.findReady("ready");
+            for (EndpointRecord record : ready) {
+                assertTrue(record.getNextDue() <= clock.get());
+                gateway.markFetched(record.getName(), true);
+            }
+            polled += ready.size();
+        }
+        // Every feed is polled 60 / interval times within the hour
+        int expected = 0;
+        for (int i = 0; i < 5000; i++) {
+            expected += 60 / (1 + i % 10);
+        }
+        assertEquals(expected, polled);
+    }
+
+    @Test
+    public void adaptsToChangeRate() {
+        PollingPolicy policy = new PollingPolicy(Duration.ofMinutes(1), Duration.ofHours(6), 0);
+        EndpointDataGateway gateway = new EndpointDataGateway(clock::get, policy);
+        gateway.register("https://hot/", Duration.ofMinutes(10));
+        gateway.register("https://dormant/", Duration.ofMinutes(10));
+
+        // The hot feed changes every 4 minutes, the dormant one never after its first fetch
+        long lastHotFetch = -1;
+        for (long minute = 0; minute < 24 * 60; minute++) {
+            clock.set(Duration.ofMinutes(minute).toMillis());
+            for (EndpointRecord record : gateway.findReady("ready")) {
+                if (record.getName().equals("https://hot/")) {
+                    boolean changed = lastHotFetch < 0 || minute / 4 != lastHotFetch / 4;
+                    lastHotFetch = minute;
+                    gateway.markFetched(record.getName(), changed);
+                } else {
+                    gateway.markFetched(record.getName(), record.getLastFetched() == 0);
+                }
+            }
+        }
+
+        Duration hot = gateway.find("https://hot/").getInterval();
+        assertTrue(hot.toMinutes() >= 1 && hot.toMinutes() <= 4);
+        assertEquals(Duration.ofHours(6), gateway.find("https://dormant/").getInterval());
+    }
+
+    @Test
+    public void backoff() {
+        PollingPolicy policy = new PollingPolicy(Duration.ofMinutes(1), Duration.ofHours(1), 0);
+        EndpointDataGateway gateway = new EndpointDataGateway(clock::get, policy);
+        gateway.register("https://failing/", Duration.ofMinutes(10));
+        gateway.findReady("ready");
+
+        gateway.markFailed("https://failing/");
+        assertEquals(Duration.ofMinutes(20).toMillis(), gateway.find("https://failing/").getNextDue());
+        gateway.markFailed("https://failing/");
+        assertEquals(Duration.ofMinutes(40).toMillis(), gateway.find("https://failing/").getNextDue());
+        gateway.markFailed("https://failing/");
+        assertEquals(Duration.ofHours(1).toMillis(), gateway.find("https://failing/").getNextDue());
+        // The learned interval is kept, and a success resets the backoff
+        assertEquals(Duration.ofMinutes(10), gateway.find("https://failing/").getInterval());
+        gateway.markFetched("https://failing/", true);
+        assertEquals(Duration.ofMinutes(10).toMillis(), gateway.find("https://failing/").getNextDue());
+    }
+
+    @Test
+    public void jitter() {
+        PollingPolicy policy = new PollingPolicy(Duration.ofMinutes(1), Duration.ofHours(1), 0.1);
+        EndpointDataGateway gateway = new EndpointDataGateway(clock::get, policy);
+        Set<Long> dues = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            gateway.register("https://feed" + i + "/", Duration.ofMinutes(10));
+            gateway.markFetched("https://feed" + i + "/", true);
+            long due = gateway.find("https://feed" + i + "/").getNextDue();
+            assertTrue(due >= Duration.ofMinutes(9).toMillis() && due <= Duration.ofMinutes(11).toMillis());
+            dues.add(due);
+        }
+        assertTrue(dues.size() > 1);
+    }
+
+    private List<String> names(List<EndpointRecord> records) {
+        return records.stream().map(EndpointRecord::getName).collect(Collectors.toList());
+    }
+}
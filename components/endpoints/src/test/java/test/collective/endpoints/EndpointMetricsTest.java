@@ -0,0 +1,69 @@
+package test.collective.endpoints;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.collective.endpoints.EndpointMetrics;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EndpointMetricsTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void perEndpoint() {
+        EndpointMetrics metrics = new EndpointMetrics(registry, 100, clock::get);
+        metrics.completed("https://feed.infoq.com/", 200, 30_000_000, 90_000_000, 4096);
+        metrics.ingested("https://feed.infoq.com/", 5_000_000, 15, 3, 1, 2);
+        metrics.completed("https://feed.infoq.com/", 304, 20_000_000, 20_000_000, 0);
+
+        assertEquals(2, registry.timer("endpoint.feed_infoq_com.response").getCount());
+        assertEquals(2, registry.histogram("endpoint.feed_infoq_com.bytes").getCount());
+        assertEquals(1, registry.timer("endpoint.feed_infoq_com.parse").getCount());
+        assertEquals(3, registry.meter("endpoint.feed_infoq_com.added").getCount());
+        assertEquals(1, registry.meter("endpoint.feed_infoq_com.changed").getCount());
+        assertEquals(11, registry.meter("endpoint.feed_infoq_com.unchanged").getCount());
+        assertEquals(2, registry.meter("endpoint.feed_infoq_com.removed").getCount());
+    }
+
+    @Test
+    public void staleness() {
+        EndpointMetrics metrics = new EndpointMetrics(registry, 100, clock::get);
+        metrics.failed("https://a/feed");
+        clock.set(60_000);
+        assertEquals(60_000L, gauge("endpoint.a_feed.staleness"));
+
+        metrics.fresh("https://a/feed");
+        clock.set(90_000);
+        assertEquals(30_000L, gauge("endpoint.a_feed.staleness"));
+        assertEquals(1, registry.meter("endpoint.a_feed.failures").getCount());
+    }
+
+    @Test
+    public void boundedNames() {
+        EndpointMetrics metrics = new EndpointMetrics(registry, 2, clock::get);
+        for (int i = 0; i < 1000; i++) {
+            metrics.completed("https://feeds.example.com/" + i + ".xml", 200, 1, 1, 1);
+        }
+
+        // Two endpoints of their own and the rest as other
+        assertEquals(1, registry.timer("endpoint.feeds_example_com_0_xml.fetch").getCount());
+        assertEquals(1, registry.timer("endpoint.feeds_example_com_1_xml.fetch").getCount());
+        assertEquals(998, registry.timer("endpoint.other.fetch").getCount());
+        assertTrue(registry.getMetrics().size() <= 3 * EndpointMetrics.METRICS.size());
+
+        // The stalest of the others
+        metrics.fresh("https://feeds.example.com/5.xml");
+        clock.set(1000);
+        metrics.fresh("https://feeds.example.com/6.xml");
+        assertEquals(1000L, gauge("endpoint.other.staleness"));
+    }
+
+    private Object gauge(String name) {
+        return ((Gauge<?>) registry.getGauges().get(name)).getValue();
+    }
+}
@@ -1,15 +1,32 @@
 package test.collective.endpoints;
 
+import com.codahale.metrics.MetricRegistry;
 import io.collective.endpoints.EndpointDataGateway;
 import io.collective.endpoints.EndpointTask;
 import io.collective.endpoints.EndpointWorkFinder;
+import io.collective.endpoints.FileLeaseStore;
+import io.collective.endpoints.HostLimiter;
+import org.apache.http.client.HttpResponseException;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class EndpointWorkFinderTest {
+    private final AtomicLong clock = new AtomicLong();
+
     @Test
     public void finder() {
         EndpointWorkFinder finder = new EndpointWorkFinder(new EndpointDataGateway());
@@ -20,4 +37,65 @@ public class EndpointWorkFinderTest {
         List<EndpointTask> other = finder.findRequested("not-ready");
         assertEquals(0, other.size());
     }
+
+    @Test
+    public void limited() {
+        EndpointDataGateway gateway = new EndpointDataGateway(clock::get);
+        HostLimiter limiter = new HostLimiter(new MetricRegistry(), 1, 2, 1, Duration.ofMinutes(1), clock::get);
+        EndpointWorkFinder finder = new EndpointWorkFinder(gateway, limiter);
+        for (String name : Arrays.asList("https://a/one", "https://a/two", "https://a/three", "https://b/one")) {
+            gateway.register(name, Duration.ofMinutes(5));
+        }
+
+        // The third feed of the host waits for a token instead of its interval
+        assertEquals(Arrays.asList("https://a/one", "https://a/two", "https://b/one"), endpoints(finder.findRequested("ready")));
+        assertEquals(1000, gateway.find("https://a/three").getNextDue());
+
+        // A missing feed does not count against its host, a host that cannot be reached does
+        finder.markFailed(new EndpointTask("https://a/one"), new HttpResponseException(404, "Not Found"));
+        assertEquals(HostLimiter.Circuit.CLOSED, limiter.circuit("https://a/"));
+        finder.markFailed(new EndpointTask("https://a/two"), new ConnectException("Connection refused"));
+        assertEquals(HostLimiter.Circuit.OPEN, limiter.circuit("https://a/"));
+
+        // So its feeds are put off until the circuit may be tried again, without being handed to a worker
+        clock.set(1000);
+        assertEquals(0, finder.findRequested("ready").size());
+        assertEquals(60_000, gateway.find("https://a/three").getNextDue());
+    }
+
+    @Test
+    public void leased() throws IOException {
+        Path directory = Files.createTempDirectory("leases");
+        FileLeaseStore store = new FileLeaseStore(directory, clock::get);
+        EndpointDataGateway one = new EndpointDataGateway(clock::get);
+        EndpointDataGateway two = new EndpointDataGateway(clock::get);
+        one.register("https://a/", Duration.ofMinutes(5));
+        two.register("https://a/", Duration.ofMinutes(5));
+        EndpointWorkFinder first = new EndpointWorkFinder(one, null, store, Duration.ofSeconds(30));
+        EndpointWorkFinder second = new EndpointWorkFinder(two, null, store, Duration.ofSeconds(30));
+
+        // Only one instance fetches the feed, and keeps its lease while the fetch runs past the lease time
+        List<EndpointTask> tasks = first.findRequested("ready");
+        assertEquals(1, tasks.size());
+        assertEquals(0, second.findRequested("ready").size());
+        clock.set(20_000);
+        first.findRequested("ready");
+        clock.set(40_000);
+        assertFalse(store.tryAcquire("https://a/", "another", Duration.ofSeconds(30)));
+
+        // Once fetched, the other instance leaves the feed alone until it is due again on the first
+        first.markCompleted(tasks.get(0));
+        clock.set(5 * 60_000);
+        assertEquals(0, second.findRequested("ready").size());
+        clock.set(10 * 60_000);
+        assertEquals(1, second.findRequested("ready").size());
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private List<String> endpoints(List<EndpointTask> tasks) {
+        return tasks.stream().map(EndpointTask::getEndpoint).collect(Collectors.toList());
+    }
 }
@@ -3,26 +3,48 @@ package test.collective.endpoints;
 import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import io.collective.articles.ArticleDataGateway;
+import io.collective.endpoints.EndpointMetrics;
 import io.collective.endpoints.EndpointTask;
 import io.collective.endpoints.EndpointWorker;
+import io.collective.endpoints.FeedCache;
+import io.collective.restsupport.ConditionalResponse;
 import io.collective.restsupport.RestTemplate;
+import io.collective.restsupport.TypedBodyReader;
+import io.collective.restsupport.Validators;
+import io.collective.rss.FeedFormats;
 import io.collective.rss.Item;
 import io.collective.rss.RSS;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class EndpointWorkerTest {
+    private static final String ACCEPT = FeedFormats.DEFAULT.getAccept();
+
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Test
@@ -30,13 +52,145 @@ public class EndpointWorkerTest {
         String xml = new String(getClass().getResourceAsStream("/infoq.xml").readAllBytes());
 
         RestTemplate mock = mock(RestTemplate.class);
-        when(mock.get("https://feed.infoq./", "application/xml")).thenReturn(xml);
+        when(mock.getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), isNull(), any())).thenAnswer(streamed(xml, new Validators(null, null)));
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry());
+
+        EndpointWorker worker = new EndpointWorker(mock, gateway);
+        worker.execute(new EndpointTask("https://feed.infoq./"));
+
+        assertEquals(15, gateway.findAll().size());
+
+        long version = gateway.getVersion();
+        int id = gateway.findAll().get(0).getId();
+        worker.execute(new EndpointTask("https://feed.infoq./"));
+
+        assertEquals(15, gateway.findAll().size());
+        assertEquals(version, gateway.getVersion());
+        assertEquals(id, gateway.findAll().get(0).getId());
+    }
+
+    @Test
+    public void notModified() throws IOException {
+        String xml = new String(getClass().getResourceAsStream("/infoq.xml").readAllBytes());
+        Validators validators = new Validators("\"v1\"", "Tue, 15 Oct 2019 12:00:00 GMT");
+
+        RestTemplate mock = mock(RestTemplate.class);
+        when(mock.getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), isNull(), any())).thenAnswer(streamed(xml, validators));
+        when(mock.getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), eq(validators), any())).thenReturn(new ConditionalResponse<>(null, validators));
         ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry());
 
         EndpointWorker worker = new EndpointWorker(mock, gateway);
         worker.execute(new EndpointTask("https://feed.infoq./"));
+        long version = gateway.getVersion();
+        worker.execute(new EndpointTask("https://feed.infoq./"));
+
+        // The second fetch sent the validators of the first and wrote nothing
+        verify(mock).getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), eq(validators), any());
+        assertEquals(15, gateway.findAll().size());
+        assertEquals(version, gateway.getVersion());
+    }
+
+    @Test
+    public void replay() throws IOException {
+        String xml = new String(getClass().getResourceAsStream("/infoq.xml").readAllBytes());
+        Validators validators = new Validators("\"v1\"", "Tue, 15 Oct 2019 12:00:00 GMT");
+        Path directory = Files.createTempDirectory("feeds");
+
+        RestTemplate mock = mock(RestTemplate.class);
+        when(mock.getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), isNull(), any())).thenAnswer(streamed(xml, validators));
+        FeedCache cache = new FeedCache(directory);
+        new EndpointWorker(mock, new ArticleDataGateway(new MetricRegistry()), cache).execute(new EndpointTask("https://feed.infoq./"));
+        cache.close();
+
+        // After a restart the cached feed is ingested without fetching it, and the next fetch is conditional
+        RestTemplate restarted = mock(RestTemplate.class);
+        when(restarted.getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), eq(validators), any())).thenReturn(new ConditionalResponse<>(null, validators));
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry());
+        EndpointWorker worker = new EndpointWorker(restarted, gateway, new FeedCache(directory));
+        assertEquals(1, worker.replay());
+        assertEquals(15, gateway.findAll().size());
+
+        // Replaying a feed whose articles are already live writes nothing
+        long version = gateway.getVersion();
+        assertEquals(1, worker.replay());
+        assertEquals(version, gateway.getVersion());
+
+        worker.execute(new EndpointTask("https://feed.infoq./"));
+        verify(restarted).getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), eq(validators), any());
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void emptyFeed() throws IOException {
+        String xml = new String(getClass().getResourceAsStream("/infoq.xml").readAllBytes());
+        String empty = "<?xml version=\"1.0\"?><rss version=\"2.0\"><channel><title>InfoQ</title></channel></rss>";
+        Validators broken = new Validators("\"broken\"", null);
+        Validators good = new Validators("\"good\"", null);
+        Path directory = Files.createTempDirectory("feeds");
+
+        RestTemplate mock = mock(RestTemplate.class);
+        when(mock.getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), isNull(), any()))
+                .thenAnswer(streamed(xml, new Validators(null, null)))
+                .thenAnswer(streamed(empty, broken))
+                .thenAnswer(streamed(xml, good));
+        ArticleDataGateway gateway = new ArticleDataGateway(new MetricRegistry());
+        FeedCache cache = new FeedCache(directory);
+        EndpointWorker worker = new EndpointWorker(mock, gateway, cache);
+        worker.execute(new EndpointTask("https://feed.infoq./"));
+        long version = gateway.getVersion();
 
+        // A feed without items is rejected, keeping the articles, and neither cached nor its validators remembered
+        try {
+            worker.execute(new EndpointTask("https://feed.infoq./"));
+            fail("applied a feed without items");
+        } catch (IOException expected) {
+            assertEquals(version, gateway.getVersion());
+        }
+        assertEquals(new Validators(null, null), cache.find("https://feed.infoq./").getValidators());
+
+        // So the next fetch reads the good feed again rather than being answered "304 Not Modified"
+        worker.execute(new EndpointTask("https://feed.infoq./"));
+        verify(mock, times(3)).getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), isNull(), any());
+        verify(mock, never()).getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), eq(broken), any());
         assertEquals(15, gateway.findAll().size());
+        assertEquals(good, cache.find("https://feed.infoq./").getValidators());
+        cache.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void emptyFeedFails() throws IOException {
+        String empty = "<?xml version=\"1.0\"?><rss version=\"2.0\"><channel><title>InfoQ</title></channel></rss>";
+
+        RestTemplate mock = mock(RestTemplate.class);
+        when(mock.getTypedIfChanged(eq("https://feed.infoq./"), eq(ACCEPT), isNull(), any())).thenAnswer(streamed(empty, new Validators(null, null)));
+        MetricRegistry registry = new MetricRegistry();
+        EndpointWorker worker = new EndpointWorker(mock, new ArticleDataGateway(new MetricRegistry()), null, new EndpointMetrics(registry));
+        EndpointTask task = new EndpointTask("https://feed.infoq./");
+
+        // Counted as a failure rather than as a feed that did not change
+        try {
+            worker.execute(task);
+            fail("applied a feed without items");
+        } catch (IOException expected) {
+            assertEquals(1, registry.meter("endpoint.feed_infoq.failures").getCount());
+        }
+    }
+
+    /**
+     * Answers a conditional GET by streaming the given feed to the reader passed in.
+     */
+    private Answer<ConditionalResponse<Object>> streamed(String xml, Validators validators) {
+        return invocation -> {
+            TypedBodyReader<Object> reader = invocation.getArgument(3);
+            return new ConditionalResponse<>(reader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "text/xml"), validators);
+        };
     }
 
     @Ignore
@@ -0,0 +1,132 @@
+package test.collective.endpoints;
+
+import io.collective.endpoints.FeedCache;
+import io.collective.restsupport.Validators;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeedCacheTest {
+    Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("feeds");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void writeThrough() throws IOException {
+        Validators validators = new Validators("\"v1\"", "Tue, 15 Oct 2019 12:00:00 GMT");
+        FeedCache cache = new FeedCache(directory);
+        write(cache, "https://a/", "<rss>one</rss>", validators);
+        write(cache, "https://b/", "<rss>two</rss>", new Validators(null, null));
+        cache.close();
+
+        // Recovered from disk
+        FeedCache recovered = new FeedCache(directory);
+        assertEquals(2, recovered.entries().size());
+        FeedCache.Entry a = recovered.find("https://a/");
+        assertEquals("https://a/", a.getEndpoint());
+        assertEquals(validators, a.getValidators());
+        assertEquals("<rss>one</rss>", read(recovered, a));
+        assertEquals(new Validators(null, null), recovered.find("https://b/").getValidators());
+        assertEquals("<rss>two</rss>", read(recovered, recovered.find("https://b/")));
+        recovered.close();
+    }
+
+    @Test
+    public void contentAddressed() throws IOException {
+        FeedCache cache = new FeedCache(directory);
+        write(cache, "https://a/", "<rss>same</rss>", new Validators(null, null));
+        write(cache, "https://b/", "<rss>same</rss>", new Validators(null, null));
+        assertEquals(cache.find("https://a/").getHash(), cache.find("https://b/").getHash());
+        assertEquals(1, bodies());
+
+        // A body is kept while any endpoint names it
+        write(cache, "https://a/", "<rss>newer</rss>", new Validators(null, null));
+        assertEquals(2, bodies());
+        write(cache, "https://b/", "<rss>newer</rss>", new Validators(null, null));
+        assertEquals(1, bodies());
+        cache.close();
+    }
+
+    @Test
+    public void uncommitted() throws IOException {
+        FeedCache cache = new FeedCache(directory);
+        write(cache, "https://a/", "<rss>one</rss>", new Validators(null, null));
+        try (FeedCache.Write write = cache.write("https://a/")) {
+            InputStream in = write.tee(stream("<rss>broken"));
+            in.read(new byte[4]);
+        }
+
+        assertEquals("<rss>one</rss>", read(cache, cache.find("https://a/")));
+        try (Stream<Path> temporary = Files.list(directory.resolve("tmp"))) {
+            assertEquals(0, temporary.count());
+        }
+        cache.close();
+    }
+
+    @Test
+    public void torn() throws IOException {
+        FeedCache cache = new FeedCache(directory);
+        write(cache, "https://a/", "<rss>one</rss>", new Validators(null, null));
+        cache.close();
+
+        // As if the process stopped before the body was forced to disk
+        Path body = directory.resolve("bodies").resolve(cache.find("https://a/").getHash());
+        Files.write(body, "<rss>o".getBytes(StandardCharsets.UTF_8));
+
+        FeedCache recovered = new FeedCache(directory);
+        assertNull(recovered.open(recovered.find("https://a/")));
+        recovered.close();
+    }
+
+    private void write(FeedCache cache, String endpoint, String body, Validators validators) throws IOException {
+        try (FeedCache.Write write = cache.write(endpoint)) {
+            InputStream in = write.tee(stream(body));
+            byte[] buffer = new byte[3];
+            while (in.read(buffer) != -1) {
+                // Read in small chunks, as a parser would
+            }
+            write.commit(validators);
+        }
+    }
+
+    private String read(FeedCache cache, FeedCache.Entry entry) throws IOException {
+        try (InputStream in = cache.open(entry)) {
+            assertTrue(in != null);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private long bodies() throws IOException {
+        try (Stream<Path> bodies = Files.list(directory.resolve("bodies"))) {
+            return bodies.collect(Collectors.toList()).size();
+        }
+    }
+
+    private InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,111 @@
+package test.collective.endpoints;
+
+import io.collective.endpoints.FileLeaseStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileLeaseStoreTest {
+    private final AtomicLong clock = new AtomicLong();
+    Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("leases");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void leases() throws IOException {
+        FileLeaseStore store = new FileLeaseStore(directory, clock::get);
+        Duration ttl = Duration.ofSeconds(30);
+
+        assertTrue(store.tryAcquire("https://a/", "one", ttl));
+        assertFalse(store.tryAcquire("https://a/", "two", ttl));
+        assertTrue(store.tryAcquire("https://b/", "two", ttl));
+
+        // Renewed by its owner, taken by anyone once it expired
+        clock.set(20_000);
+        assertTrue(store.tryAcquire("https://a/", "one", ttl));
+        clock.set(40_000);
+        assertFalse(store.tryAcquire("https://a/", "two", ttl));
+        assertTrue(store.tryAcquire("https://b/", "one", ttl));
+        assertFalse(store.release("https://b/", "two", Duration.ZERO));
+
+        // Released right away, or held back from other owners for a while
+        assertTrue(store.release("https://a/", "one", Duration.ZERO));
+        assertTrue(store.tryAcquire("https://a/", "two", ttl));
+        assertTrue(store.release("https://a/", "two", Duration.ofSeconds(60)));
+        assertFalse(store.tryAcquire("https://a/", "one", ttl));
+        assertTrue(store.tryAcquire("https://a/", "two", ttl));
+        clock.set(100_000);
+        assertTrue(store.tryAcquire("https://a/", "one", ttl));
+    }
+
+    @Test
+    public void processes() throws Exception {
+        // Several processes race for the same leases, each lease is taken by exactly one of them
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Contender.class.getName(),
+                    directory.toString(), "process-" + i).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+        }
+
+        Map<String, String> owners = new HashMap<>();
+        for (Process process : processes) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] leased = line.split(" ");
+                    String previous = owners.put(leased[0], leased[1]);
+                    assertEquals(null, previous);
+                }
+            }
+            assertEquals(0, process.waitFor());
+        }
+        assertEquals(Contender.KEYS, owners.size());
+    }
+
+    /**
+     * Takes whichever of the leases it can, printing the key and its name for every lease taken.
+     */
+    public static class Contender {
+        static final int KEYS = 200;
+
+        public static void main(String[] args) throws IOException {
+            FileLeaseStore store = new FileLeaseStore(new File(args[0]).toPath());
+            for (int i = 0; i < KEYS; i++) {
+                if (store.tryAcquire("https://feed/" + i, args[1], Duration.ofMinutes(1))) {
+                    System.out.println("https://feed/" + i + " " + args[1]);
+                }
+            }
+        }
+    }
+}
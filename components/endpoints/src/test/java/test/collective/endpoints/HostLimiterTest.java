@@ -0,0 +1,104 @@
+package test.collective.endpoints;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.collective.endpoints.HostLimiter;
+import io.collective.endpoints.HostLimiter.Circuit;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HostLimiterTest {
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void tokenBucket() {
+        HostLimiter limiter = new HostLimiter(registry, 2, 3, 5, Duration.ofMinutes(1), clock::get);
+
+        // A burst of three, then one every half second, per host
+        assertEquals(0, limiter.tryAcquire("https://a/one"));
+        assertEquals(0, limiter.tryAcquire("https://a/two"));
+        assertEquals(0, limiter.tryAcquire("https://a/three"));
+        assertEquals(500, limiter.tryAcquire("https://a/four"));
+        assertEquals(0, limiter.tryAcquire("https://b/one"));
+        assertEquals(0, limiter.tryAcquire("https://a:8443/one"));
+
+        clock.addAndGet(250);
+        assertEquals(250, limiter.tryAcquire("https://a/four"));
+        clock.addAndGet(250);
+        assertEquals(0, limiter.tryAcquire("https://a/four"));
+        assertEquals(2, registry.counter("endpoint-fetches-throttled").getCount());
+
+        // Idle hosts refill up to the burst only
+        clock.addAndGet(60_000);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("https://A/" + i));
+        }
+        assertTrue(limiter.tryAcquire("https://a/") > 0);
+    }
+
+    @Test
+    public void circuitBreaker() {
+        HostLimiter limiter = new HostLimiter(registry, 100, 100, 3, Duration.ofSeconds(30), clock::get);
+
+        limiter.failed("https://a/one");
+        limiter.failed("https://a/two");
+        limiter.succeeded("https://a/three");
+        limiter.failed("https://a/one");
+        limiter.failed("https://a/two");
+        assertEquals(Circuit.CLOSED, limiter.circuit("https://a/"));
+
+        // Three failures in a row open the circuit, every endpoint of the host fails fast until it may be tried again
+        limiter.failed("https://a/three");
+        assertEquals(Circuit.OPEN, limiter.circuit("https://a/"));
+        assertEquals(30_000, limiter.tryAcquire("https://a/one"));
+        clock.addAndGet(10_000);
+        assertEquals(20_000, limiter.tryAcquire("https://a/two"));
+        assertEquals(0, limiter.tryAcquire("https://b/one"));
+        assertEquals(1L, gauge("endpoint-circuits-open"));
+
+        // A single trial once the circuit has been open long enough, which fails and opens it again
+        clock.addAndGet(20_000);
+        assertEquals(0, limiter.tryAcquire("https://a/one"));
+        assertEquals(Circuit.HALF_OPEN, limiter.circuit("https://a/"));
+        assertEquals(1L, gauge("endpoint-circuits-half-open"));
+        assertTrue(limiter.tryAcquire("https://a/two") > 0);
+        limiter.failed("https://a/one");
+        assertEquals(Circuit.OPEN, limiter.circuit("https://a/"));
+        assertEquals(30_000, limiter.tryAcquire("https://a/two"));
+
+        // Another trial, which succeeds and closes it
+        clock.addAndGet(30_000);
+        assertEquals(0, limiter.tryAcquire("https://a/two"));
+        limiter.succeeded("https://a/two");
+        assertEquals(Circuit.CLOSED, limiter.circuit("https://a/"));
+        assertEquals(0, limiter.tryAcquire("https://a/three"));
+
+        assertEquals(2, registry.counter("endpoint-circuits-opened").getCount());
+        assertEquals(0L, gauge("endpoint-circuits-open"));
+        assertEquals(0L, gauge("endpoint-circuits-half-open"));
+    }
+
+    @Test
+    public void abandonedTrial() {
+        HostLimiter limiter = new HostLimiter(registry, 100, 100, 1, Duration.ofSeconds(30), clock::get);
+        limiter.failed("https://a/");
+
+        clock.addAndGet(30_000);
+        assertEquals(0, limiter.tryAcquire("https://a/"));
+        assertTrue(limiter.tryAcquire("https://a/") > 0);
+
+        // The trial never reported back
+        clock.addAndGet(30_000);
+        assertEquals(0, limiter.tryAcquire("https://a/"));
+    }
+
+    private Object gauge(String name) {
+        return ((Gauge<?>) registry.getGauges().get(name)).getValue();
+    }
+}
@@ -4,20 +4,29 @@ import com.fasterxml.jackson.databind.ObjectMapper
 import org.eclipse.jetty.http.HttpMethod
 import org.eclipse.jetty.server.Request
 import org.eclipse.jetty.server.handler.AbstractHandler
+import java.io.ByteArrayOutputStream
 import java.io.IOException
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.InflaterInputStream
+import javax.servlet.http.HttpServletRequest
 import javax.servlet.http.HttpServletResponse
 
 /**
  * An abstract class representing a basic handler for HTTP requests.
  *
  * @property mapper The object mapper used for JSON serialization and deserialization.
+ * @property compression The compression applied to bodies written with the request at hand.
  */
-abstract class BasicHandler(private val mapper: ObjectMapper = ObjectMapper()) : AbstractHandler() {
+abstract class BasicHandler @JvmOverloads constructor(
+    private val mapper: ObjectMapper = ObjectMapper(),
+    private val compression: ResponseCompression = ResponseCompression()
+) : AbstractHandler() {
 
     /**
      * Handles HTTP POST requests for the specified URI and supported media types.
      *
-     * @param uri The URI to handle the request for.
+     * @param uri The URI to handle the request for, may contain "{name}" path parameters, see [pathParameter].
      * @param supportedMediaTypes The list of supported media types.
      * @param request The request object.
      * @param httpServletResponse The HTTP servlet response object.
@@ -26,8 +35,11 @@ abstract class BasicHandler(private val mapper: ObjectMapper = ObjectMapper()) :
     fun post(uri: String, supportedMediaTypes: List<String>, request: Request, httpServletResponse: HttpServletResponse, block: Runnable) {
         // Check if the request method is POST
         if (request.method == HttpMethod.POST.toString()) {
-            // Check if the requested URI matches the provided URI
-            if (uri == request.requestURI) {
+            // Check if the requested URI matches the provided URI or template, unless another route handled it already
+            val parameters = match(uri, request.requestURI)
+            if (parameters != null && !request.isHandled) {
+                // Expose the values of the template's path parameters to the block
+                request.setAttribute(PATH_PARAMETERS, parameters)
                 // Get the accepted media type from the request header
                 val acceptedMediaType = request.getHeader("Accept")
 
@@ -57,7 +69,7 @@ abstract class BasicHandler(private val mapper: ObjectMapper = ObjectMapper()) :
     /**
      * Handles HTTP GET requests for the specified URI and supported media types.
      *
-     * @param uri The URI to handle the request for.
+     * @param uri The URI to handle the request for, may contain "{name}" path parameters, see [pathParameter].
      * @param supportedMediaTypes The list of supported media types.
      * @param request The request object.
      * @param httpServletResponse The HTTP servlet response object.
@@ -66,8 +78,11 @@ abstract class BasicHandler(private val mapper: ObjectMapper = ObjectMapper()) :
     fun get(uri: String, supportedMediaTypes: List<String>, request: Request, httpServletResponse: HttpServletResponse, block: Runnable) {
         // Check if the request method is GET
         if (request.method == HttpMethod.GET.toString()) {
-            // Check if the requested URI matches the provided URI
-            if (uri == request.requestURI) {
+            // Check if the requested URI matches the provided URI or template, unless another route handled it already
+            val parameters = match(uri, request.requestURI)
+            if (parameters != null && !request.isHandled) {
+                // Expose the values of the template's path parameters to the block
+                request.setAttribute(PATH_PARAMETERS, parameters)
                 // Get the accepted media type from the request header
                 val acceptedMediaType = request.getHeader("Accept")
 
@@ -78,10 +93,10 @@ abstract class BasicHandler(private val mapper: ObjectMapper = ObjectMapper()) :
                         // Set the response content type to the supported media type
                         httpServletResponse.contentType = supportedMediaType
                         try {
+                            // Set the response status to 200 (OK), the block may replace it (e.g. with 304)
+                            httpServletResponse.status = HttpServletResponse.SC_OK
                             // Execute the provided block of code
                             block.run()
-                            // Set the response status to 200 (OK)
-                            httpServletResponse.status = HttpServletResponse.SC_OK
                         } catch (e: IOException) {
                             // Set the response status to 500 (Internal Server Error) if an exception occurs
                             httpServletResponse.status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR
@@ -94,6 +109,19 @@ abstract class BasicHandler(private val mapper: ObjectMapper = ObjectMapper()) :
         }
     }
 
+    /**
+     * Returns the value of a path parameter of the route handling the request.
+     *
+     * @param servletRequest The HttpServletRequest being handled.
+     * @param name The name of the parameter, as in "{name}" in the route's URI.
+     * @return The value of the parameter, or null if the route has no such parameter.
+     */
+    protected fun pathParameter(servletRequest: HttpServletRequest, name: String): String? {
+        @Suppress("UNCHECKED_CAST")
+        val parameters = servletRequest.getAttribute(PATH_PARAMETERS) as Map<String, String>?
+        return parameters?.get(name)
+    }
+
     /**
      * Writes the given subject as a JSON response body to the provided HttpServletResponse.
      *
@@ -104,4 +132,155 @@ abstract class BasicHandler(private val mapper: ObjectMapper = ObjectMapper()) :
         // Use the ObjectMapper to serialize the subject as JSON and write it to the response output stream
         mapper.writeValue(servletResponse.outputStream, subject);
     }
-}
\ No newline at end of file
+
+    /**
+     * Streams a JSON response body to the provided HttpServletResponse through a JsonGenerator.
+     *
+     * @param servletResponse The HttpServletResponse to write the JSON response to.
+     * @param writer The writer producing the JSON tokens.
+     */
+    protected fun writeJsonBody(servletResponse: HttpServletResponse, writer: JsonBodyWriter) {
+        // Create a generator directly on the response output stream, closing it flushes any buffered tokens
+        mapper.factory.createGenerator(servletResponse.outputStream).use { writer.write(it) }
+    }
+
+    /**
+     * Streams a JSON response body through a JsonGenerator, compressed with the coding the request accepts once the
+     * body outgrows the compression threshold.
+     *
+     * @param servletRequest The HttpServletRequest carrying the "Accept-Encoding" header.
+     * @param servletResponse The HttpServletResponse to write the JSON response to.
+     * @param writer The writer producing the JSON tokens.
+     */
+    protected fun writeJsonBody(servletRequest: HttpServletRequest, servletResponse: HttpServletResponse, writer: JsonBodyWriter) {
+        val coding = negotiate(servletRequest, servletResponse)
+        if (coding == null) {
+            writeJsonBody(servletResponse, writer)
+            return
+        }
+        // The threshold stream decides between identity and compression once it has seen enough of the body
+        mapper.factory.createGenerator(compression.open(servletResponse, coding)).use { writer.write(it) }
+    }
+
+    /**
+     * Streams the JSON request body through a JsonParser, so the body never has to be held in memory as a whole.
+     * Bodies sent with a "Content-Encoding" of gzip or deflate are decompressed on the fly.
+     *
+     * @param servletRequest The HttpServletRequest to read the body of.
+     * @param reader The reader consuming the JSON tokens.
+     * @return The result of the reader.
+     * @throws IOException If the body cannot be read or is not valid JSON.
+     * @throws IllegalArgumentException If the body uses an unsupported content coding.
+     */
+    @Throws(IOException::class)
+    protected fun <T> readJsonBody(servletRequest: HttpServletRequest, reader: JsonBodyReader<T>): T {
+        val body: InputStream = when (servletRequest.getHeader("Content-Encoding")?.trim()?.lowercase()) {
+            null, "", "identity" -> servletRequest.inputStream
+            "gzip", "x-gzip" -> GZIPInputStream(servletRequest.inputStream)
+            "deflate" -> InflaterInputStream(servletRequest.inputStream)
+            else -> throw IllegalArgumentException("unsupported content coding")
+        }
+        return mapper.factory.createParser(body).use { reader.read(it) }
+    }
+
+    /**
+     * Serializes the given subject as JSON into a byte array, e.g. to build a [CachedBody].
+     *
+     * @param subject The object to be serialized as JSON.
+     * @return The serialized JSON.
+     */
+    protected fun toJsonBytes(subject: Any?): ByteArray {
+        return mapper.writeValueAsBytes(subject)
+    }
+
+    /**
+     * Streams JSON tokens into a byte array through a JsonGenerator, e.g. to build a [CachedBody].
+     *
+     * @param writer The writer producing the JSON tokens.
+     * @return The serialized JSON.
+     */
+    protected fun toJsonBytes(writer: JsonBodyWriter): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        mapper.factory.createGenerator(bytes).use { writer.write(it) }
+        return bytes.toByteArray()
+    }
+
+    /**
+     * Writes a pre-serialized body to the provided HttpServletResponse, tagged with the body's ETag.
+     * When the request's "If-None-Match" header matches the ETag, a 304 (Not Modified) is sent without a body.
+     * Bodies above the compression threshold are sent in the coding the request accepts, compressed once per body.
+     *
+     * @param servletRequest The HttpServletRequest carrying the client's validators.
+     * @param servletResponse The HttpServletResponse to write the body to.
+     * @param body The pre-serialized body.
+     */
+    protected fun writeCachedBody(servletRequest: HttpServletRequest, servletResponse: HttpServletResponse, body: CachedBody) {
+        val coding = negotiate(servletRequest, servletResponse)?.takeIf { body.bytes.size >= compression.minimumSize }
+        // Always send the validator so clients can revalidate next time
+        servletResponse.setHeader("ETag", body.etag(coding))
+        // Check whether the client already holds this exact body
+        if (body.matches(servletRequest.getHeader("If-None-Match"))) {
+            // Set the response status to 304 (Not Modified) and skip the body
+            servletResponse.status = HttpServletResponse.SC_NOT_MODIFIED
+            return
+        }
+        // Write the cached, possibly compressed, bytes straight to the response output stream
+        val bytes = if (coding == null) body.bytes else body.encoded(coding, compression)
+        if (coding != null) {
+            servletResponse.setHeader("Content-Encoding", coding.token)
+        }
+        servletResponse.setContentLength(bytes.size)
+        servletResponse.outputStream.write(bytes)
+    }
+
+    /**
+     * Picks the coding for the response from the request's "Accept-Encoding" header. Marks the response as varying
+     * by that header whenever compression is enabled, since another client may get another representation.
+     *
+     * @return The coding, or null to send the body uncompressed.
+     */
+    private fun negotiate(servletRequest: HttpServletRequest, servletResponse: HttpServletResponse): ContentCoding? {
+        if (compression.minimumSize == Int.MAX_VALUE) {
+            return null
+        }
+        servletResponse.setHeader("Vary", "Accept-Encoding")
+        return compression.negotiate(servletRequest.getHeader("Accept-Encoding"))
+    }
+
+    private companion object {
+        /**
+         * The request attribute holding the path parameters of the matched route
+         */
+        const val PATH_PARAMETERS = "io.collective.restsupport.pathParameters"
+
+        /**
+         * Matches a request URI against a route's URI, where a "{name}" segment matches any single non-empty segment.
+         *
+         * @return The values of the path parameters by name, or null if the URI does not match.
+         */
+        fun match(uri: String, requestURI: String): Map<String, String>? {
+            if (!uri.contains('{')) {
+                return if (uri == requestURI) emptyMap() else null
+            }
+            val templateSegments = uri.split("/")
+            val requestSegments = requestURI.split("/")
+            if (templateSegments.size != requestSegments.size) {
+                return null
+            }
+            val parameters = HashMap<String, String>()
+            for (i in templateSegments.indices) {
+                val template = templateSegments[i]
+                val segment = requestSegments[i]
+                if (template.startsWith("{") && template.endsWith("}")) {
+                    if (segment.isEmpty()) {
+                        return null
+                    }
+                    parameters[template.substring(1, template.length - 1)] = segment
+                } else if (template != segment) {
+                    return null
+                }
+            }
+            return parameters
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package io.collective.restsupport
+
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Reads a response body while it streams in, so it never has to be held in memory as a whole.
+ *
+ * @param T The type of the value read from the body.
+ */
+fun interface BodyReader<T> {
+
+    /**
+     * Reads the body. The stream is closed by the caller once the reader returns.
+     *
+     * @param body The response body, decoded as received.
+     * @return The value read from the body, not null.
+     * @throws IOException If the body cannot be read.
+     */
+    @Throws(IOException::class)
+    fun read(body: InputStream): T
+}
@@ -0,0 +1,69 @@
+package io.collective.restsupport
+
+import java.security.MessageDigest
+import java.util.EnumMap
+
+/**
+ * A response body serialized ahead of time, along with a strong entity tag derived from its content.
+ * Compressed forms of the body are built on first use and kept, so each version is compressed once per coding.
+ *
+ * @property version The version of the data the body was built from, used by callers to detect stale bodies.
+ * @property bytes The serialized body.
+ */
+class CachedBody(val version: Long, val bytes: ByteArray) {
+
+    /**
+     * The strong entity tag of the body, a quoted digest of its bytes
+     */
+    val etag: String = "\"" + digest(bytes) + "\""
+
+    private val encodings = EnumMap<ContentCoding, ByteArray>(ContentCoding::class.java)
+
+    /**
+     * Returns the entity tag of the body in the given coding. Each coding is a different representation and gets its
+     * own strong tag.
+     *
+     * @param coding The coding, or null for the uncompressed body.
+     * @return The quoted entity tag.
+     */
+    fun etag(coding: ContentCoding?): String =
+        if (coding == null) etag else etag.dropLast(1) + "-" + coding.token + "\""
+
+    /**
+     * Returns the body compressed with the given coding, compressing it on first use.
+     *
+     * @param coding The coding to compress with.
+     * @param compression The compression settings to use on first use.
+     * @return The compressed body.
+     */
+    fun encoded(coding: ContentCoding, compression: ResponseCompression): ByteArray {
+        synchronized(encodings) {
+            return encodings.getOrPut(coding) { compression.encode(bytes, coding) }
+        }
+    }
+
+    /**
+     * Checks whether an "If-None-Match" header value matches this body's entity tag.
+     *
+     * @param ifNoneMatch The header value, possibly a comma separated list of entity tags or "*".
+     * @return true if the client already holds this body.
+     */
+    fun matches(ifNoneMatch: String?): Boolean {
+        if (ifNoneMatch == null) {
+            return false
+        }
+        // If-None-Match uses the weak comparison, so a "W/" prefix is ignored, and any coding of the body matches
+        val tags = listOf(etag) + ContentCoding.values().map { etag(it) }
+        return ifNoneMatch.split(",").map { it.trim().removePrefix("W/") }.any { it == "*" || it in tags }
+    }
+
+    private companion object {
+        /**
+         * Digests the bytes with SHA-256 and returns the first 128 bits as hex.
+         */
+        fun digest(bytes: ByteArray): String {
+            val hash = MessageDigest.getInstance("SHA-256").digest(bytes)
+            return hash.take(16).joinToString("") { String.format("%02x", it) }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.collective.restsupport
+
+/**
+ * The response to a conditional GET request.
+ *
+ * @param T The type of the value read from the body.
+ * @property body The value read from the representation, or null if the server answered "304 Not Modified".
+ * @property validators The validators to send with the next request for the representation.
+ */
+class ConditionalResponse<T>(val body: T?, val validators: Validators) {
+
+    /**
+     * Whether the representation is unchanged since the validators sent with the request were issued
+     */
+    val isNotModified: Boolean
+        get() = body == null
+}
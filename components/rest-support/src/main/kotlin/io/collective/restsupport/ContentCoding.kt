@@ -0,0 +1,19 @@
+package io.collective.restsupport
+
+/**
+ * The content codings a response body can be compressed with, in order of preference.
+ *
+ * @property token The token naming the coding in "Accept-Encoding" and "Content-Encoding" headers.
+ * @property nowrap Whether the coding holds raw deflate data, as opposed to the zlib format.
+ */
+enum class ContentCoding(val token: String, internal val nowrap: Boolean) {
+    /**
+     * Raw deflate data wrapped in a gzip header and trailer
+     */
+    GZIP("gzip", true),
+
+    /**
+     * Deflate data in the zlib format
+     */
+    DEFLATE("deflate", false)
+}
@@ -0,0 +1,34 @@
+package io.collective.restsupport
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.zip.Deflater
+
+/**
+ * A bounded pool of Deflaters, so compressing a response does not allocate a compressor and its native memory.
+ *
+ * @property level The compression level of the pooled Deflaters.
+ * @property nowrap Whether the pooled Deflaters produce raw deflate data.
+ * @param capacity The maximum number of idle Deflaters kept around.
+ */
+internal class DeflaterPool(private val level: Int, private val nowrap: Boolean, capacity: Int) {
+    private val idle = ArrayBlockingQueue<Deflater>(capacity)
+
+    /**
+     * Takes an idle Deflater from the pool, or creates one when the pool is empty.
+     *
+     * @return A Deflater ready for new input.
+     */
+    fun borrow(): Deflater = idle.poll() ?: Deflater(level, nowrap)
+
+    /**
+     * Returns a Deflater to the pool, releasing its native memory when the pool is full.
+     *
+     * @param deflater The Deflater to return, it must not be used afterwards.
+     */
+    fun release(deflater: Deflater) {
+        deflater.reset()
+        if (!idle.offer(deflater)) {
+            deflater.end()
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.collective.restsupport
+
+import java.io.OutputStream
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+
+/**
+ * Compresses everything written to it with a pooled Deflater, in the gzip or zlib format.
+ * Closing the stream finishes the compressed data and returns the Deflater to its pool, but leaves the underlying
+ * stream open.
+ *
+ * @param out The stream to write the compressed data to.
+ * @property coding The coding to produce.
+ * @property pool The pool to borrow the Deflater from.
+ */
+internal class DeflatingOutputStream(
+    private val out: OutputStream,
+    private val coding: ContentCoding,
+    private val pool: DeflaterPool
+) : OutputStream() {
+    private val deflater: Deflater = pool.borrow()
+    private val deflating = DeflaterOutputStream(out, deflater, BUFFER_SIZE)
+    private val crc = CRC32()
+    private var size = 0L
+    private var closed = false
+
+    init {
+        if (coding == ContentCoding.GZIP) {
+            // A fixed gzip header: magic, deflate method, no flags, no modification time, unknown operating system
+            out.write(GZIP_HEADER)
+        }
+    }
+
+    override fun write(b: Int) {
+        write(byteArrayOf(b.toByte()), 0, 1)
+    }
+
+    override fun write(b: ByteArray, off: Int, len: Int) {
+        if (coding == ContentCoding.GZIP) {
+            crc.update(b, off, len)
+            size += len
+        }
+        deflating.write(b, off, len)
+    }
+
+    override fun flush() {
+        deflating.flush()
+    }
+
+    override fun close() {
+        if (closed) {
+            return
+        }
+        closed = true
+        try {
+            deflating.finish()
+            if (coding == ContentCoding.GZIP) {
+                // The gzip trailer holds the checksum and length of the uncompressed data, little endian
+                writeIntLE(crc.value)
+                writeIntLE(size)
+            }
+            out.flush()
+        } finally {
+            pool.release(deflater)
+        }
+    }
+
+    private fun writeIntLE(value: Long) {
+        out.write((value and 0xff).toInt())
+        out.write((value shr 8 and 0xff).toInt())
+        out.write((value shr 16 and 0xff).toInt())
+        out.write((value shr 24 and 0xff).toInt())
+    }
+
+    private companion object {
+        const val BUFFER_SIZE = 8192
+        val GZIP_HEADER = byteArrayOf(0x1f, 0x8b.toByte(), Deflater.DEFLATED.toByte(), 0, 0, 0, 0, 0, 0, 0xff.toByte())
+    }
+}
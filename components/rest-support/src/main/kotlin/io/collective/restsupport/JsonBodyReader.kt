@@ -0,0 +1,20 @@
+package io.collective.restsupport
+
+import com.fasterxml.jackson.core.JsonParser
+import java.io.IOException
+
+/**
+ * Reads a JSON request body token by token through a Jackson JsonParser, without building an object graph first.
+ *
+ * @param T The type of the result.
+ */
+fun interface JsonBodyReader<T> {
+    /**
+     * Reads the body.
+     *
+     * @param parser The parser positioned before the first token of the body.
+     * @return The result of reading the body.
+     */
+    @Throws(IOException::class)
+    fun read(parser: JsonParser): T
+}
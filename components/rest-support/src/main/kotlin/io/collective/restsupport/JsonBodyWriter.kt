@@ -0,0 +1,17 @@
+package io.collective.restsupport
+
+import com.fasterxml.jackson.core.JsonGenerator
+import java.io.IOException
+
+/**
+ * Writes a JSON body token by token through a Jackson JsonGenerator, without building an object graph first.
+ */
+fun interface JsonBodyWriter {
+    /**
+     * Writes the body.
+     *
+     * @param generator The generator to write the JSON tokens to.
+     */
+    @Throws(IOException::class)
+    fun write(generator: JsonGenerator)
+}
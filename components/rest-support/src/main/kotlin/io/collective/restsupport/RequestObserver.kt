@@ -0,0 +1,20 @@
+package io.collective.restsupport
+
+/**
+ * Observes the conditional GET requests of a [RestTemplate], e.g. to record how long they take.
+ */
+fun interface RequestObserver {
+
+    /**
+     * Called once the server answered a request and its body, if any, was read, including when the server answered
+     * with an error. Requests that failed before an answer arrived are not observed.
+     *
+     * @param endpoint The URL of the endpoint requested.
+     * @param status The status the server answered with.
+     * @param responseNanos The time until the response headers arrived, covering resolving the host, connecting, and
+     * the server preparing its answer.
+     * @param totalNanos The time until the body was read, including the time spent by the reader of the body.
+     * @param bytes The number of bytes of the body read, as received.
+     */
+    fun completed(endpoint: String, status: Int, responseNanos: Long, totalNanos: Long, bytes: Long)
+}
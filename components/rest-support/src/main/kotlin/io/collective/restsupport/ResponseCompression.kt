@@ -0,0 +1,140 @@
+package io.collective.restsupport
+
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.zip.Deflater
+import javax.servlet.http.HttpServletResponse
+
+/**
+ * Negotiates and applies gzip or deflate compression to response bodies.
+ *
+ * Bodies smaller than [minimumSize] are sent as they are, since compressing them saves too little to pay for the
+ * work. Deflaters are pooled per coding and shared by all requests.
+ *
+ * @property minimumSize The smallest body, in bytes, worth compressing.
+ * @property level The Deflater compression level, from 1 (fastest) to 9 (smallest).
+ * @param poolSize The maximum number of idle Deflaters kept per coding.
+ */
+class ResponseCompression @JvmOverloads constructor(
+    val minimumSize: Int = 1024,
+    val level: Int = Deflater.DEFAULT_COMPRESSION,
+    poolSize: Int = 32
+) {
+    private val pools = ContentCoding.values().associateWith { DeflaterPool(level, it.nowrap, poolSize) }
+
+    /**
+     * Picks the coding to compress a response with from the request's "Accept-Encoding" header.
+     * Among the codings with the highest quality value, gzip is preferred.
+     *
+     * @param acceptEncoding The header value, may be null.
+     * @return The coding, or null to send the body uncompressed.
+     */
+    fun negotiate(acceptEncoding: String?): ContentCoding? {
+        if (acceptEncoding == null || minimumSize == Int.MAX_VALUE) {
+            return null
+        }
+        val qualities = HashMap<String, Double>()
+        for (element in acceptEncoding.split(",")) {
+            val parameters = element.split(";")
+            val token = parameters[0].trim().lowercase()
+            var quality = 1.0
+            for (parameter in parameters.drop(1)) {
+                val (name, value) = parameter.trim().split("=", limit = 2).let { it[0].trim() to it.getOrNull(1) }
+                if (name == "q") {
+                    quality = value?.trim()?.toDoubleOrNull() ?: 0.0
+                }
+            }
+            qualities[token] = quality
+        }
+        var best: ContentCoding? = null
+        var bestQuality = 0.0
+        for (coding in ContentCoding.values()) {
+            // An explicit entry wins over the wildcard, "q=0" rules a coding out
+            val quality = qualities[coding.token] ?: qualities["*"] ?: 0.0
+            if (quality > bestQuality) {
+                best = coding
+                bestQuality = quality
+            }
+        }
+        return best
+    }
+
+    /**
+     * Compresses a complete body with the given coding.
+     *
+     * @param bytes The body to compress.
+     * @param coding The coding to compress with.
+     * @return The compressed body.
+     */
+    fun encode(bytes: ByteArray, coding: ContentCoding): ByteArray {
+        val encoded = ByteArrayOutputStream(bytes.size / 4 + 64)
+        open(encoded, coding).use { it.write(bytes) }
+        return encoded.toByteArray()
+    }
+
+    /**
+     * Returns a stream that compresses what is written to it into the given stream.
+     * Closing it finishes the compressed data, but leaves the given stream open.
+     */
+    internal fun open(out: OutputStream, coding: ContentCoding): OutputStream =
+        DeflatingOutputStream(out, coding, pools.getValue(coding))
+
+    /**
+     * Returns a stream for a response body of unknown length. The first [minimumSize] bytes are held back; if the
+     * body ends before that it is sent uncompressed with a content length, otherwise the "Content-Encoding" header is
+     * set and the body is compressed from there on.
+     */
+    internal fun open(servletResponse: HttpServletResponse, coding: ContentCoding): OutputStream =
+        ThresholdOutputStream(servletResponse, coding)
+
+    private inner class ThresholdOutputStream(
+        private val servletResponse: HttpServletResponse,
+        private val coding: ContentCoding
+    ) : OutputStream() {
+        private var pending: ByteArrayOutputStream? = ByteArrayOutputStream()
+        private var compressing: OutputStream? = null
+
+        override fun write(b: Int) {
+            write(byteArrayOf(b.toByte()), 0, 1)
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            val target = compressing
+            if (target != null) {
+                target.write(b, off, len)
+                return
+            }
+            val buffer = pending!!
+            buffer.write(b, off, len)
+            if (buffer.size() >= minimumSize) {
+                // Large enough, commit to compressing and drain what was held back
+                servletResponse.setHeader("Content-Encoding", coding.token)
+                val started = open(servletResponse.outputStream, coding)
+                buffer.writeTo(started)
+                pending = null
+                compressing = started
+            }
+        }
+
+        override fun close() {
+            val target = compressing
+            if (target != null) {
+                target.close()
+                return
+            }
+            val buffer = pending ?: return
+            pending = null
+            // Too small to compress, send it as it is
+            servletResponse.setContentLength(buffer.size())
+            buffer.writeTo(servletResponse.outputStream)
+        }
+    }
+
+    companion object {
+        /**
+         * Never compresses
+         */
+        @JvmField
+        val DISABLED = ResponseCompression(Int.MAX_VALUE)
+    }
+}
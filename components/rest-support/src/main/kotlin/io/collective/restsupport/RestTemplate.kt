@@ -1,13 +1,25 @@
 package io.collective.restsupport
 
+import org.apache.http.HttpEntity
+import org.apache.http.HttpResponse
+import org.apache.http.HttpStatus
+import org.apache.http.client.HttpResponseException
+import org.apache.http.client.ResponseHandler
+import org.apache.http.client.config.RequestConfig
 import org.apache.http.client.methods.HttpGet
 import org.apache.http.client.methods.HttpPost
 import org.apache.http.client.methods.HttpUriRequest
 import org.apache.http.client.utils.URIBuilder
+import org.apache.http.entity.HttpEntityWrapper
 import org.apache.http.entity.StringEntity
 import org.apache.http.impl.client.BasicResponseHandler
+import org.apache.http.impl.client.CloseableHttpClient
 import org.apache.http.impl.client.HttpClients
 import org.apache.http.message.BasicNameValuePair
+import org.apache.http.util.EntityUtils
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.time.Duration
 
 /**
  * The RestTemplate class provides a simple HTTP client for making GET and POST requests to
@@ -16,11 +28,17 @@ import org.apache.http.message.BasicNameValuePair
  * The class supports performing GET requests with optional query parameters, specifying the
  * desired response format using the "Accept" header, and retrieving the response as a String.
  * It also supports performing POST requests with the ability to set the "Content-type" header
- * and send data in the request body.
+ * and send data in the request body. Conditional GET requests send back the validators of a
+ * previous response, so unchanged representations are not downloaded again.
  *
  * @constructor Creates a new instance of the RestTemplate class.
+ * @param timeout How long to wait to connect, and for each read of a response, or null to wait indefinitely.
+ * @param observer The observer of conditional GET requests, or null.
  */
-open class RestTemplate {
+open class RestTemplate @JvmOverloads constructor(
+    private val timeout: Duration? = null,
+    private val observer: RequestObserver? = null
+) {
 
     /**
      * Perform a GET request to the specified endpoint with optional query parameters.
@@ -40,6 +58,87 @@ open class RestTemplate {
         }
     }
 
+    /**
+     * Perform a conditional GET request to the specified endpoint, sending the given validators as the
+     * "If-None-Match" and "If-Modified-Since" headers.
+     *
+     * @param endpoint The URL of the endpoint to send the GET request to.
+     * @param accept The desired response format, specified using the "Accept" header.
+     * @param validators The validators of the representation fetched last, or null to fetch it unconditionally.
+     * @return The response, without a body if the server answered "304 Not Modified".
+     * @throws HttpResponseException If the server answered with any other status of 300 or above.
+     */
+    open fun getIfChanged(endpoint: String, accept: String, validators: Validators?): ConditionalResponse<String> =
+        conditional(endpoint, accept, validators) { entity -> EntityUtils.toString(entity) }
+
+    /**
+     * Perform a conditional GET request to the specified endpoint like [getIfChanged], handing the body to the given
+     * reader while it streams in instead of buffering it.
+     *
+     * @param endpoint The URL of the endpoint to send the GET request to.
+     * @param accept The desired response format, specified using the "Accept" header.
+     * @param validators The validators of the representation fetched last, or null to fetch it unconditionally.
+     * @param reader The reader of the body, not called if the server answered "304 Not Modified".
+     * @return The response, holding the value read from the body.
+     * @throws HttpResponseException If the server answered with any other status of 300 or above.
+     */
+    open fun <T> getIfChanged(endpoint: String, accept: String, validators: Validators?, reader: BodyReader<T>): ConditionalResponse<T> =
+        conditional(endpoint, accept, validators) { entity -> entity.content.use { reader.read(it) } }
+
+    /**
+     * Perform a conditional GET request to the specified endpoint like [getIfChanged], handing the body to the given
+     * reader while it streams in, along with the content type the server gave it.
+     *
+     * @param endpoint The URL of the endpoint to send the GET request to.
+     * @param accept The desired response format, specified using the "Accept" header.
+     * @param validators The validators of the representation fetched last, or null to fetch it unconditionally.
+     * @param reader The reader of the body, not called if the server answered "304 Not Modified".
+     * @return The response, holding the value read from the body.
+     * @throws HttpResponseException If the server answered with any other status of 300 or above.
+     */
+    open fun <T> getTypedIfChanged(endpoint: String, accept: String, validators: Validators?, reader: TypedBodyReader<T>): ConditionalResponse<T> =
+        conditional(endpoint, accept, validators) { entity -> entity.content.use { reader.read(it, entity.contentType?.value) } }
+
+    // Execute a conditional GET request, reading the body of a full response with the given block
+    private fun <T> conditional(endpoint: String, accept: String, validators: Validators?, read: (HttpEntity) -> T): ConditionalResponse<T> {
+        val request = HttpGet(endpoint).apply {
+            // Add the "Accept" header to specify the desired response format
+            addHeader("Accept", accept)
+            // Make the request conditional on the representation having changed
+            validators?.etag?.let { addHeader("If-None-Match", it) }
+            validators?.lastModified?.let { addHeader("If-Modified-Since", it) }
+        }
+        val start = System.nanoTime()
+        return client().use { client ->
+            client.execute(request, ResponseHandler { response ->
+                val responded = System.nanoTime()
+                val counted = CountedEntity(response.entity ?: StringEntity(""))
+                try {
+                    conditional(response, counted, validators, read)
+                } finally {
+                    observer?.completed(endpoint, response.statusLine.statusCode, responded - start, System.nanoTime() - start, counted.count)
+                }
+            })
+        }
+    }
+
+    // Read a response to a conditional request, keeping the previous validators unless the server sent new ones
+    private fun <T> conditional(response: HttpResponse, entity: HttpEntity, previous: Validators?, read: (HttpEntity) -> T): ConditionalResponse<T> {
+        val status = response.statusLine.statusCode
+        val etag = response.getFirstHeader("ETag")?.value
+        val lastModified = response.getFirstHeader("Last-Modified")?.value
+        if (status == HttpStatus.SC_NOT_MODIFIED) {
+            return ConditionalResponse(null, Validators(etag ?: previous?.etag, lastModified ?: previous?.lastModified))
+        }
+        if (status >= 300) {
+            EntityUtils.consume(response.entity)
+            throw HttpResponseException(status, response.statusLine.reasonPhrase)
+        }
+        // A full response replaces the validators entirely
+        val body = read(entity)
+        return ConditionalResponse(body, Validators(etag, lastModified))
+    }
+
     /**
      * Perform a GET request to the specified endpoint with optional query parameters.
      *
@@ -63,6 +162,37 @@ open class RestTemplate {
     // Execute an HTTP request using the provided block to build the request
     open fun execute(block: () -> HttpUriRequest): String {
         // Create an HttpClients instance and execute the request, returning the response as a String
-        return HttpClients.createDefault().execute(block(), BasicResponseHandler())
+        return client().execute(block(), BasicResponseHandler())
+    }
+
+    // Create a client applying the timeout, if any, so a slow server fails the request instead of holding the thread
+    private fun client(): CloseableHttpClient {
+        val millis = timeout?.toMillis()?.toInt() ?: return HttpClients.createDefault()
+        val config = RequestConfig.custom()
+            .setConnectTimeout(millis)
+            .setConnectionRequestTimeout(millis)
+            .setSocketTimeout(millis)
+            .build()
+        return HttpClients.custom().setDefaultRequestConfig(config).build()
     }
 }
+
+/**
+ * An entity counting the bytes read from its content, which is only read once.
+ */
+private class CountedEntity(entity: HttpEntity) : HttpEntityWrapper(entity) {
+    var count = 0L
+        private set
+
+    private val content by lazy {
+        object : FilterInputStream(wrappedEntity.content) {
+            override fun read(): Int = super.read().also { if (it != -1) count++ }
+
+            override fun read(b: ByteArray, off: Int, len: Int): Int = super.read(b, off, len).also { if (it > 0) count += it }
+
+            override fun skip(n: Long): Long = super.skip(n).also { count += it }
+        }
+    }
+
+    override fun getContent(): InputStream = content
+}
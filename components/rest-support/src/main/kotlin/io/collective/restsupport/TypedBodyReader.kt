@@ -0,0 +1,24 @@
+package io.collective.restsupport
+
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Reads a response body while it streams in like a [BodyReader], for readers that also need to know what the body
+ * claims to be, such as a reader of several formats.
+ *
+ * @param T The type of the value read from the body.
+ */
+fun interface TypedBodyReader<T> {
+
+    /**
+     * Reads the body. The stream is closed by the caller once the reader returns.
+     *
+     * @param body The response body, decoded as received.
+     * @param contentType The value of the "Content-Type" header, or null if the server sent none.
+     * @return The value read from the body, not null.
+     * @throws IOException If the body cannot be read.
+     */
+    @Throws(IOException::class)
+    fun read(body: InputStream, contentType: String?): T
+}
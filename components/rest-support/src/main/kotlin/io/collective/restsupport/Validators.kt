@@ -0,0 +1,18 @@
+package io.collective.restsupport
+
+/**
+ * The validators a server sent along with a representation, to be sent back on the next request for it so the server
+ * can answer "304 Not Modified" instead of sending the representation again.
+ *
+ * @property etag The value of the "ETag" header, or null if the server sent none.
+ * @property lastModified The value of the "Last-Modified" header, or null if the server sent none.
+ */
+data class Validators(val etag: String?, val lastModified: String?) {
+
+    /**
+     * Checks whether the server sent no validators, in which case requests cannot be made conditional.
+     *
+     * @return true if neither header was sent.
+     */
+    fun isEmpty() = etag == null && lastModified == null
+}
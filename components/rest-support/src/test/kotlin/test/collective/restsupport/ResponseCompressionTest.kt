@@ -0,0 +1,51 @@
+package test.collective.restsupport
+
+import io.collective.restsupport.CachedBody
+import io.collective.restsupport.ContentCoding
+import io.collective.restsupport.ResponseCompression
+import org.junit.Test
+import java.util.zip.GZIPInputStream
+import java.util.zip.InflaterInputStream
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class ResponseCompressionTest {
+    private val compression = ResponseCompression()
+    private val body = (1..200).joinToString(",", "[", "]") { """{"id":$it,"title":"title $it"}""" }.toByteArray()
+
+    @Test
+    fun negotiate() {
+        assertEquals(ContentCoding.GZIP, compression.negotiate("gzip, deflate, br"))
+        assertEquals(ContentCoding.DEFLATE, compression.negotiate("deflate"))
+        assertEquals(ContentCoding.DEFLATE, compression.negotiate("gzip;q=0.2, deflate;q=0.8"))
+        assertEquals(ContentCoding.GZIP, compression.negotiate("*"))
+        assertEquals(ContentCoding.DEFLATE, compression.negotiate("gzip;q=0, *"))
+        assertNull(compression.negotiate("identity"))
+        assertNull(compression.negotiate("GZIP;q=0"))
+        assertNull(compression.negotiate(null))
+        assertNull(ResponseCompression.DISABLED.negotiate("gzip"))
+    }
+
+    @Test
+    fun encode() {
+        val gzip = compression.encode(body, ContentCoding.GZIP)
+        val deflate = compression.encode(body, ContentCoding.DEFLATE)
+
+        assertTrue(gzip.size < body.size / 2)
+        assertEquals(String(body), String(GZIPInputStream(gzip.inputStream()).readBytes()))
+        assertEquals(String(body), String(InflaterInputStream(deflate.inputStream()).readBytes()))
+        // Pooled deflaters are reset between uses
+        assertEquals(gzip.toList(), compression.encode(body, ContentCoding.GZIP).toList())
+    }
+
+    @Test
+    fun cachedBody() {
+        val cached = CachedBody(1, body)
+
+        assertTrue(cached.encoded(ContentCoding.GZIP, compression) === cached.encoded(ContentCoding.GZIP, compression))
+        assertEquals(cached.etag.dropLast(1) + "-gzip\"", cached.etag(ContentCoding.GZIP))
+        assertTrue(cached.matches(cached.etag(ContentCoding.GZIP)))
+        assertTrue(cached.matches(cached.etag(null)))
+    }
+}
@@ -0,0 +1,123 @@
+package test.collective.restsupport
+
+import com.sun.net.httpserver.HttpServer
+import io.collective.restsupport.BodyReader
+import io.collective.restsupport.RequestObserver
+import io.collective.restsupport.RestTemplate
+import io.collective.restsupport.TypedBodyReader
+import io.collective.restsupport.Validators
+import org.apache.http.client.HttpResponseException
+import org.junit.After
+import org.junit.Test
+import java.net.InetSocketAddress
+import java.net.SocketTimeoutException
+import java.time.Duration
+import java.util.concurrent.Executors
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class RestTemplateTest {
+    private val server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+    private val endpoint get() = "http://localhost:${server.address.port}/feed"
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun conditionalGet() {
+        val lastModified = "Tue, 15 Oct 2019 12:00:00 GMT"
+        server.createContext("/feed") { exchange ->
+            val unchanged = exchange.requestHeaders.getFirst("If-None-Match") == "\"v1\""
+            exchange.responseHeaders.add("ETag", "\"v1\"")
+            if (unchanged) {
+                exchange.sendResponseHeaders(304, -1)
+            } else {
+                exchange.responseHeaders.add("Last-Modified", lastModified)
+                val body = "<rss/>".toByteArray()
+                exchange.sendResponseHeaders(200, body.size.toLong())
+                exchange.responseBody.write(body)
+            }
+            exchange.close()
+        }
+        server.start()
+
+        val first = RestTemplate().getIfChanged(endpoint, "application/xml", null)
+        assertFalse(first.isNotModified)
+        assertEquals("<rss/>", first.body)
+        assertEquals(Validators("\"v1\"", lastModified), first.validators)
+
+        val second = RestTemplate().getIfChanged(endpoint, "application/xml", first.validators)
+        assertTrue(second.isNotModified)
+        assertNull(second.body)
+        // Validators the 304 did not repeat are kept
+        assertEquals(first.validators, second.validators)
+    }
+
+    @Test
+    fun errorStatus() {
+        server.createContext("/feed") { exchange ->
+            exchange.sendResponseHeaders(503, -1)
+            exchange.close()
+        }
+        server.start()
+
+        val error = assertFailsWith<HttpResponseException> { RestTemplate().getIfChanged(endpoint, "application/xml", null) }
+        assertEquals(503, error.statusCode)
+    }
+
+    @Test
+    fun observed() {
+        server.createContext("/feed") { exchange ->
+            val body = "<rss>observed</rss>".toByteArray()
+            exchange.sendResponseHeaders(200, body.size.toLong())
+            exchange.responseBody.write(body)
+            exchange.close()
+        }
+        server.start()
+
+        val observed = mutableListOf<String>()
+        val template = RestTemplate(null, RequestObserver { endpoint, status, responseNanos, totalNanos, bytes ->
+            assertTrue(responseNanos in 1..totalNanos)
+            observed.add("$endpoint $status $bytes")
+        })
+        template.getIfChanged(endpoint, "application/xml", null, BodyReader { it.readBytes().size })
+        assertEquals(listOf("$endpoint 200 19"), observed)
+    }
+
+    @Test
+    fun typed() {
+        server.createContext("/feed") { exchange ->
+            val body = "{\"items\": []}".toByteArray()
+            exchange.responseHeaders.add("Content-Type", "application/feed+json; charset=utf-8")
+            exchange.sendResponseHeaders(200, body.size.toLong())
+            exchange.responseBody.write(body)
+            exchange.close()
+        }
+        server.start()
+
+        val response = RestTemplate().getTypedIfChanged(endpoint, "application/feed+json", null, TypedBodyReader { body, contentType ->
+            "$contentType ${body.readBytes().size}"
+        })
+        assertEquals("application/feed+json; charset=utf-8 13", response.body)
+    }
+
+    @Test
+    fun timeout() {
+        server.executor = Executors.newCachedThreadPool()
+        server.createContext("/feed") { exchange ->
+            Thread.sleep(2000)
+            exchange.sendResponseHeaders(200, -1)
+            exchange.close()
+        }
+        server.start()
+
+        assertFailsWith<SocketTimeoutException> {
+            RestTemplate(Duration.ofMillis(200)).getIfChanged(endpoint, "application/xml", null)
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.collective.rss;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the entries of an Atom feed one at a time while it streams in, the {@link FeedReader} of
+ * {@link FeedFormats#ATOM}.
+ * <p>
+ * Entries are read into the same fields of an {@link Item} as {@link RSSReader} reads: the id is the guid, the
+ * alternate link is the link, and the name of the first author is the creator and their email the author. Text of
+ * type "html" is kept as it is, text of type "xhtml" has its markup dropped. Every other element, dates, summaries, and
+ * contents included, is skipped without building its text.
+ * <p>
+ * A reader is not thread safe, but readers may be created concurrently.
+ */
+public final class AtomReader implements FeedReader {
+    private static final String ATOM = "http://www.w3.org/2005/Atom";
+
+    private final XMLStreamReader reader;
+
+    /**
+     * Constructs an AtomReader reading the feed from the given stream.
+     *
+     * @param in The stream of the feed, closed by the caller.
+     * @throws IOException If the stream does not start like an XML document.
+     */
+    public AtomReader(InputStream in) throws IOException {
+        try {
+            this.reader = RSSReader.FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw new IOException("malformed feed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Item next() throws IOException {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && isAtom("entry")) {
+                    return entry();
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IOException("malformed feed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Read the children of the entry element the reader is on, up to its end
+    private Item entry() throws XMLStreamException {
+        String title = null;
+        String creator = null;
+        String author = null;
+        String link = null;
+        String id = null;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return new Item(title, creator, author, link, id);
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if (!ATOM.equals(RSSReader.namespace(reader))) {
+                RSSReader.skip(reader);
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "title":
+                    title = RSSReader.text(reader);
+                    break;
+                case "id":
+                    id = RSSReader.text(reader);
+                    break;
+                case "link":
+                    // Links are empty elements, the entry links to itself with the alternate one, named or not
+                    String rel = reader.getAttributeValue(null, "rel");
+                    if (link == null && (rel == null || rel.equals("alternate"))) {
+                        link = reader.getAttributeValue(null, "href");
+                    }
+                    RSSReader.skip(reader);
+                    break;
+                case "author":
+                    if (creator == null && author == null) {
+                        String[] person = person();
+                        creator = person[0];
+                        author = person[1];
+                    } else {
+                        RSSReader.skip(reader);
+                    }
+                    break;
+                default:
+                    RSSReader.skip(reader);
+            }
+        }
+    }
+
+    // Read the name and email of the person element the reader is on, up to its end
+    private String[] person() throws XMLStreamException {
+        String[] person = new String[2];
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return person;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if (isAtom("name")) {
+                person[0] = RSSReader.text(reader);
+            } else if (isAtom("email")) {
+                person[1] = RSSReader.text(reader);
+            } else {
+                RSSReader.skip(reader);
+            }
+        }
+    }
+
+    private boolean isAtom(String name) {
+        return reader.getLocalName().equals(name) && ATOM.equals(RSSReader.namespace(reader));
+    }
+}
@@ -0,0 +1,48 @@
+package io.collective.rss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * A format of feed, recognized by its media types or by the first bytes of a feed, and read by a {@link FeedReader}.
+ * <p>
+ * Besides the formats of {@link FeedFormats}, formats can be provided as services: implementations listed in
+ * {@code META-INF/services/io.collective.rss.FeedFormat} are found with a {@link java.util.ServiceLoader}, and are
+ * tried before the built in ones. Formats must be thread safe.
+ */
+public interface FeedFormat {
+    /**
+     * Returns the name of the format, for logging.
+     *
+     * @return The name of the format.
+     */
+    String getName();
+
+    /**
+     * Returns the media types of feeds of the format, sent in the "Accept" header and matched against the
+     * "Content-Type" of responses. Types shared with other formats, such as "application/xml", are not listed, a feed
+     * served as one of those is recognized by its first bytes instead.
+     *
+     * @return The media types, lowercase and without parameters.
+     */
+    List<String> getMediaTypes();
+
+    /**
+     * Returns whether a feed starting with the given bytes looks like a feed of the format.
+     *
+     * @param head   The first bytes of the feed.
+     * @param length The number of bytes read, which is less than the length of head for short feeds.
+     * @return true if the feed is of the format.
+     */
+    boolean sniff(byte[] head, int length);
+
+    /**
+     * Opens a reader of a feed of the format.
+     *
+     * @param in The stream of the feed, closed by the caller.
+     * @return The reader.
+     * @throws IOException If the feed does not start like a feed of the format.
+     */
+    FeedReader open(InputStream in) throws IOException;
+}
@@ -0,0 +1,307 @@
+package io.collective.rss;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * The formats of feed that can be read, and the choice of a format for a feed.
+ * <p>
+ * A feed is read in the format its "Content-Type" names, unless its first bytes say otherwise: servers often send
+ * feeds as "application/xml" or "text/html", and sometimes as the wrong kind of feed. A format claimed by the content
+ * type is used when its first bytes agree, failing that the first format recognizing the first bytes is, failing that
+ * the claimed format is, and failing that the feed is read as RSS, the one format feeds were always read in.
+ * <p>
+ * The first bytes are peeked at through a buffer, so the reader of the format chosen still reads the feed from its
+ * start, and the feed is never held in memory as a whole.
+ */
+public final class FeedFormats {
+    /**
+     * The number of bytes peeked at, enough to get past the XML declaration and a comment or two
+     */
+    static final int HEAD = 1024;
+
+    private static final byte[] INSTRUCTION = ascii("<?");
+    private static final byte[] INSTRUCTION_END = ascii("?>");
+    private static final byte[] DECLARATION = ascii("<!");
+    private static final byte[] GREATER_THAN = ascii(">");
+    private static final byte[] JSON_FEED_VERSION = ascii("jsonfeed.org/version/");
+    private static final byte[] ESCAPED_JSON_FEED_VERSION = ascii("jsonfeed.org\\/version\\/");
+
+    /**
+     * RSS 2.0 and RSS 1.0 (RDF) feeds, read by {@link RSSReader}
+     */
+    public static final FeedFormat RSS = new BuiltIn("RSS", Arrays.asList("application/rss+xml", "application/rdf+xml"),
+            (head, length) -> isRoot(head, length, "rss") || isRoot(head, length, "RDF"), RSSReader::new);
+
+    /**
+     * Atom feeds, read by {@link AtomReader}
+     */
+    public static final FeedFormat ATOM = new BuiltIn("Atom", Collections.singletonList("application/atom+xml"),
+            (head, length) -> isRoot(head, length, "feed"), AtomReader::new);
+
+    /**
+     * JSON Feeds, read by {@link JsonFeedReader}. Any JSON document may be served as "application/json", error bodies
+     * included, so only a document whose first bytes name a JSON Feed version is recognized as one.
+     */
+    public static final FeedFormat JSON_FEED = new BuiltIn("JSON Feed", Collections.singletonList("application/feed+json"),
+            (head, length) -> {
+                int i = skipSpace(head, bom(head, length), length);
+                return i < length && head[i] == '{' && (RSSIndex.indexOf(head, i, length, JSON_FEED_VERSION) >= 0
+                        || RSSIndex.indexOf(head, i, length, ESCAPED_JSON_FEED_VERSION) >= 0);
+            }, JsonFeedReader::new);
+
+    /**
+     * The formats provided as services, followed by the built in formats
+     */
+    public static final FeedFormats DEFAULT = new FeedFormats(loaded());
+
+    private final List<FeedFormat> formats;
+    private final String accept;
+
+    /**
+     * Constructs FeedFormats choosing between the given formats, the earlier formats first.
+     *
+     * @param formats The formats.
+     */
+    public FeedFormats(List<FeedFormat> formats) {
+        this.formats = Collections.unmodifiableList(new ArrayList<>(formats));
+        Set<String> types = new LinkedHashSet<>();
+        for (FeedFormat format : formats) {
+            types.addAll(format.getMediaTypes());
+        }
+        // Generic types come last, a server that knows the feed for what it is should say so
+        this.accept = String.join(", ", types) + ", application/xml;q=0.9, text/xml;q=0.9, application/json;q=0.9, */*;q=0.8";
+    }
+
+    /**
+     * Returns the formats, the earlier formats first.
+     *
+     * @return The formats.
+     */
+    public List<FeedFormat> getFormats() {
+        return formats;
+    }
+
+    /**
+     * Returns the value of the "Accept" header asking for a feed of any of the formats.
+     *
+     * @return The "Accept" header value.
+     */
+    public String getAccept() {
+        return accept;
+    }
+
+    /**
+     * Chooses the format of a feed.
+     *
+     * @param contentType The value of the "Content-Type" header of the feed, or null if it has none.
+     * @param head        The first bytes of the feed.
+     * @param length      The number of bytes read.
+     * @return The format.
+     */
+    public FeedFormat select(String contentType, byte[] head, int length) {
+        String type = mediaType(contentType);
+        FeedFormat claimed = null;
+        for (FeedFormat format : formats) {
+            if (format.getMediaTypes().contains(type)) {
+                claimed = format;
+                break;
+            }
+        }
+        if (claimed != null && claimed.sniff(head, length)) {
+            return claimed;
+        }
+        for (FeedFormat format : formats) {
+            if (format.sniff(head, length)) {
+                return format;
+            }
+        }
+        return claimed != null ? claimed : RSS;
+    }
+
+    /**
+     * Opens a reader of a feed in the format chosen for it.
+     *
+     * @param in          The stream of the feed, closed by the caller.
+     * @param contentType The value of the "Content-Type" header of the feed, or null if it has none.
+     * @return The reader.
+     * @throws IOException If the feed cannot be read or does not start like a feed of the format.
+     */
+    public FeedReader open(InputStream in, String contentType) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, HEAD);
+        buffered.mark(HEAD);
+        byte[] head = new byte[HEAD];
+        int length = 0;
+        while (length < HEAD) {
+            int read = buffered.read(head, length, HEAD - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        buffered.reset();
+        return select(contentType, head, length).open(buffered);
+    }
+
+    // The media type of a content type, lowercase and without parameters
+    private static String mediaType(String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns whether the first element of an XML document, past its declaration, comments, and document type, has
+     * the given local name.
+     */
+    static boolean isRoot(byte[] head, int length, String name) {
+        int i = bom(head, length);
+        while (true) {
+            i = skipSpace(head, i, length);
+            if (i >= length || head[i] != '<') {
+                return false;
+            }
+            int end;
+            if (RSSIndex.startsWith(head, i, INSTRUCTION)) {
+                end = past(RSSIndex.indexOf(head, i, length, INSTRUCTION_END), INSTRUCTION_END);
+            } else if (RSSIndex.startsWith(head, i, RSSIndex.COMMENT)) {
+                end = past(RSSIndex.indexOf(head, i, length, RSSIndex.COMMENT_END), RSSIndex.COMMENT_END);
+            } else if (RSSIndex.startsWith(head, i, DECLARATION)) {
+                end = past(doctypeEnd(head, i, length), GREATER_THAN);
+            } else {
+                break;
+            }
+            if (end < 0) {
+                // Not past the prolog within the head
+                return false;
+            }
+            i = end;
+        }
+        int start = i + 1;
+        int end = start;
+        while (end < length && head[end] != '>' && head[end] != '/' && !isSpace(head[end])) {
+            if (head[end] == ':') {
+                start = end + 1;
+            }
+            end++;
+        }
+        return end < length && new String(head, start, end - start, StandardCharsets.US_ASCII).equals(name);
+    }
+
+    private static int past(int i, byte[] terminator) {
+        return i < 0 ? -1 : i + terminator.length;
+    }
+
+    // The offset of the '>' ending a document type declaration, internal subset included, or -1
+    private static int doctypeEnd(byte[] head, int i, int length) {
+        int brackets = 0;
+        for (int j = i; j < length; j++) {
+            if (head[j] == '[') {
+                brackets++;
+            } else if (head[j] == ']') {
+                brackets--;
+            } else if (head[j] == '>' && brackets == 0) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private static int bom(byte[] head, int length) {
+        return length >= 3 && (head[0] & 0xff) == 0xef && (head[1] & 0xff) == 0xbb && (head[2] & 0xff) == 0xbf ? 3 : 0;
+    }
+
+    private static int skipSpace(byte[] head, int i, int length) {
+        while (i < length && isSpace(head[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static List<FeedFormat> loaded() {
+        List<FeedFormat> formats = new ArrayList<>();
+        for (FeedFormat format : ServiceLoader.load(FeedFormat.class, FeedFormats.class.getClassLoader())) {
+            formats.add(format);
+        }
+        formats.add(RSS);
+        formats.add(ATOM);
+        formats.add(JSON_FEED);
+        return formats;
+    }
+
+    /**
+     * Recognizes the first bytes of a feed.
+     */
+    private interface Sniffer {
+        boolean sniff(byte[] head, int length);
+    }
+
+    /**
+     * Opens a reader of a feed.
+     */
+    private interface Opener {
+        FeedReader open(InputStream in) throws IOException;
+    }
+
+    /**
+     * A format built in to rss-support.
+     */
+    private static final class BuiltIn implements FeedFormat {
+        private final String name;
+        private final List<String> mediaTypes;
+        private final Sniffer sniffer;
+        private final Opener opener;
+
+        private BuiltIn(String name, List<String> mediaTypes, Sniffer sniffer, Opener opener) {
+            this.name = name;
+            this.mediaTypes = Collections.unmodifiableList(mediaTypes);
+            this.sniffer = sniffer;
+            this.opener = opener;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<String> getMediaTypes() {
+            return mediaTypes;
+        }
+
+        @Override
+        public boolean sniff(byte[] head, int length) {
+            return sniffer.sniff(head, length);
+        }
+
+        @Override
+        public FeedReader open(InputStream in) throws IOException {
+            return opener.open(in);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.collective.rss;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the items of a feed one at a time while it streams in, whatever the format of the feed.
+ * <p>
+ * Every format is read into the same fields of {@link Item}, the title, creator, author, link, and guid, so the items
+ * of an RSS feed, an Atom feed, and a JSON Feed can be handled alike. Publication dates and descriptions are skipped
+ * by every reader; {@link IndexedItem} decodes them on demand from a feed held in memory. Readers are not thread
+ * safe.
+ */
+public interface FeedReader extends Closeable {
+    /**
+     * Reads the next item of the feed.
+     *
+     * @return The item, or null after the last one.
+     * @throws IOException If the feed is malformed or cannot be read.
+     */
+    Item next() throws IOException;
+
+    /**
+     * Closes the reader, but not the stream it reads from.
+     *
+     * @throws IOException If the reader cannot be closed.
+     */
+    @Override
+    void close() throws IOException;
+}
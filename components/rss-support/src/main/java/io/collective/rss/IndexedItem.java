@@ -0,0 +1,191 @@
+package io.collective.rss;
+
+import java.nio.charset.Charset;
+
+/**
+ * An item of a feed held in memory, recording where its fields are in the bytes of the feed and decoding a field only
+ * when it is first asked for.
+ * <p>
+ * Indexing a feed costs a scan of its bytes, but no strings: an item whose description is never read never has it
+ * decoded, and the guid, which is small, can be read to tell items apart before anything else is decoded. Fields are
+ * decoded like {@link RSSReader} reads them: the text of nested elements is concatenated, CDATA sections are taken as
+ * they are, and character references and the predefined entities are resolved.
+ * <p>
+ * An item keeps the bytes of its feed from being collected for as long as it is referenced. Items may be read from
+ * several threads, at worst a field is decoded twice.
+ */
+public final class IndexedItem extends Item {
+    static final int TITLE = 0;
+    static final int CREATOR = 1;
+    static final int AUTHOR = 2;
+    static final int LINK = 3;
+    static final int GUID = 4;
+    static final int PUB_DATE = 5;
+    static final int DESCRIPTION = 6;
+    static final int FIELDS = 7;
+
+    private static final byte[] SEMICOLON = {';'};
+
+    private final byte[] feed;
+    private final Charset charset;
+    private final int start;
+    private final int end;
+
+    /**
+     * The start and end offset of the content of every field, -1 for a field the item does not have
+     */
+    private final int[] spans;
+
+    private final String[] decoded = new String[FIELDS];
+
+    IndexedItem(byte[] feed, Charset charset, int start, int end, int[] spans) {
+        this.feed = feed;
+        this.charset = charset;
+        this.start = start;
+        this.end = end;
+        this.spans = spans;
+    }
+
+    /**
+     * Returns the offset of the item element in the bytes of the feed.
+     *
+     * @return The offset of the start tag of the item.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the offset just past the item element in the bytes of the feed.
+     *
+     * @return The offset after the end tag of the item.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public String getTitle() {
+        return field(TITLE);
+    }
+
+    @Override
+    public String getCreator() {
+        return field(CREATOR);
+    }
+
+    @Override
+    public String getAuthor() {
+        return field(AUTHOR);
+    }
+
+    @Override
+    public String getLink() {
+        return field(LINK);
+    }
+
+    @Override
+    public String getGuid() {
+        return field(GUID);
+    }
+
+    @Override
+    public String getPubDate() {
+        return field(PUB_DATE);
+    }
+
+    @Override
+    public String getDescription() {
+        return field(DESCRIPTION);
+    }
+
+    private String field(int field) {
+        int from = spans[2 * field];
+        if (from < 0) {
+            return null;
+        }
+        String value = decoded[field];
+        if (value == null) {
+            value = decode(from, spans[2 * field + 1]);
+            decoded[field] = value;
+        }
+        return value;
+    }
+
+    // Decode the content of an element, the offsets being those of a well formed element as checked by RSSIndex
+    private String decode(int from, int to) {
+        int plain = from;
+        while (plain < to && feed[plain] != '<' && feed[plain] != '&') {
+            plain++;
+        }
+        if (plain == to) {
+            // Plain text, by far the most common
+            return new String(feed, from, to - from, charset);
+        }
+
+        StringBuilder text = new StringBuilder(to - from);
+        int run = from;
+        int i = from;
+        while (i < to) {
+            if (feed[i] == '<') {
+                text.append(new String(feed, run, i - run, charset));
+                if (RSSIndex.startsWith(feed, i, RSSIndex.CDATA)) {
+                    int close = RSSIndex.indexOf(feed, i, to, RSSIndex.CDATA_END);
+                    int content = i + RSSIndex.CDATA.length;
+                    text.append(new String(feed, content, close - content, charset));
+                    i = close + RSSIndex.CDATA_END.length;
+                } else if (RSSIndex.startsWith(feed, i, RSSIndex.COMMENT)) {
+                    i = RSSIndex.indexOf(feed, i, to, RSSIndex.COMMENT_END) + RSSIndex.COMMENT_END.length;
+                } else {
+                    // A nested tag, only its text is kept
+                    i = RSSIndex.tagEnd(feed, i, to) + 1;
+                }
+                run = i;
+            } else if (feed[i] == '&') {
+                int semicolon = RSSIndex.indexOf(feed, i, to, SEMICOLON);
+                String entity = semicolon < 0 ? null : entity(i + 1, semicolon);
+                if (entity == null) {
+                    // Not a reference after all, kept as it is
+                    i++;
+                    continue;
+                }
+                text.append(new String(feed, run, i - run, charset)).append(entity);
+                i = semicolon + 1;
+                run = i;
+            } else {
+                i++;
+            }
+        }
+        text.append(new String(feed, run, to - run, charset));
+        return text.toString();
+    }
+
+    private String entity(int from, int to) {
+        String name = new String(feed, from, to - from, charset);
+        switch (name) {
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "amp":
+                return "&";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+            default:
+                try {
+                    if (name.startsWith("#x") || name.startsWith("#X")) {
+                        return new String(Character.toChars(Integer.parseInt(name.substring(2), 16)));
+                    }
+                    if (name.startsWith("#")) {
+                        return new String(Character.toChars(Integer.parseInt(name.substring(1))));
+                    }
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                // Declared in a DTD, which is never resolved
+                return name.indexOf(' ') < 0 && name.indexOf('<') < 0 ? "" : null;
+        }
+    }
+}
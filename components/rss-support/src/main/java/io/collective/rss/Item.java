@@ -8,6 +8,29 @@ import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Item {
+    /**
+     * Constructs an empty Item, to be bound by Jackson.
+     */
+    public Item() {
+    }
+
+    /**
+     * Constructs an Item with the given fields, as read by a FeedReader.
+     *
+     * @param title   The title of the item.
+     * @param creator The creator of the item.
+     * @param author  The author of the item.
+     * @param link    The link of the item.
+     * @param guid    The globally unique identifier of the item.
+     */
+    public Item(String title, String creator, String author, String link, String guid) {
+        this.title = title;
+        this.creator = creator;
+        this.author = author;
+        this.link = link;
+        this.guid = guid;
+    }
+
     @JacksonXmlProperty(isAttribute = true, localName = "title")
     private String title;
 
@@ -41,6 +64,54 @@ public class Item {
      * @return The author of the item.
      */
     public String getAuthor() {
-        return creator;
+        return author;
+    }
+
+    @JacksonXmlProperty(localName = "link")
+    private String link;
+
+    /**
+     * Gets the link of the item.
+     *
+     * @return The link of the item.
+     */
+    public String getLink() {
+        return link;
+    }
+
+    @JacksonXmlProperty(localName = "guid")
+    private String guid;
+
+    /**
+     * Gets the globally unique identifier of the item.
+     *
+     * @return The guid of the item.
+     */
+    public String getGuid() {
+        return guid;
+    }
+
+    @JacksonXmlProperty(localName = "pubDate")
+    private String pubDate;
+
+    /**
+     * Gets the publication date of the item, as written in the feed.
+     *
+     * @return The publication date of the item.
+     */
+    public String getPubDate() {
+        return pubDate;
+    }
+
+    @JacksonXmlProperty(localName = "description")
+    private String description;
+
+    /**
+     * Gets the description of the item.
+     *
+     * @return The description of the item.
+     */
+    public String getDescription() {
+        return description;
     }
 }
@@ -0,0 +1,228 @@
+package io.collective.rss;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the items of a JSON Feed (https://jsonfeed.org/) one at a time while it streams in, the {@link FeedReader}
+ * of {@link FeedFormats#JSON_FEED}.
+ * <p>
+ * Items are read into the same fields of an {@link Item} as {@link RSSReader} reads: the id is the guid, the url, or
+ * the external url of items without one, is the link, and the name of the first author is the creator. Both version
+ * 1.0, with a single author, and version 1.1, with a list of authors, are read. Values of any other member, dates,
+ * summaries, and contents included, are skipped without being built.
+ * <p>
+ * A JSON document without a "version" naming a JSON Feed version is not a feed, however many items it lists, and is
+ * rejected rather than read as an empty feed: an error body must not be taken for a feed whose articles were all
+ * removed.
+ * <p>
+ * A reader is not thread safe, but readers may be created concurrently.
+ */
+public final class JsonFeedReader implements FeedReader {
+    private static final String VERSION = "https://jsonfeed.org/version/";
+
+    /**
+     * The factory is thread safe once configured, so it is shared
+     */
+    private static final JsonFactory FACTORY = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    private final JsonParser parser;
+
+    /**
+     * Whether the parser is inside the array of items, past the members of the feed before it
+     */
+    private boolean inItems;
+
+    /**
+     * Whether the version of the feed was read, it may follow the items
+     */
+    private boolean versioned;
+
+    private boolean done;
+
+    /**
+     * Constructs a JsonFeedReader reading the feed from the given stream.
+     *
+     * @param in The stream of the feed, closed by the caller.
+     * @throws IOException If the stream cannot be read.
+     */
+    public JsonFeedReader(InputStream in) throws IOException {
+        this.parser = FACTORY.createParser(in);
+    }
+
+    @Override
+    public Item next() throws IOException {
+        if (done) {
+            return null;
+        }
+        try {
+            if (!inItems && !findItems()) {
+                done = true;
+                return null;
+            }
+            JsonToken token = parser.nextToken();
+            while (token != null && token != JsonToken.END_ARRAY && token != JsonToken.START_OBJECT) {
+                // Not an item, skipped
+                parser.skipChildren();
+                token = parser.nextToken();
+            }
+            if (token == null) {
+                throw new IOException("malformed feed: unterminated items");
+            }
+            if (token == JsonToken.END_ARRAY) {
+                done = true;
+                if (!versioned) {
+                    findVersion();
+                }
+                return null;
+            }
+            return item();
+        } catch (JsonProcessingException e) {
+            throw new IOException("malformed feed: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    // Move into the array of items of the feed object, false if it has none
+    private boolean findItems() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("malformed feed: not a JSON object");
+        }
+        for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals("items") && value == JsonToken.START_ARRAY) {
+                inItems = true;
+                return true;
+            }
+            if (name.equals("version")) {
+                version();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (!versioned) {
+            throw new IOException("malformed feed: no JSON Feed version");
+        }
+        return false;
+    }
+
+    // Read the members of the feed object following its items, up to its version
+    private void findVersion() throws IOException {
+        for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (name.equals("version")) {
+                version();
+                return;
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("malformed feed: no JSON Feed version");
+    }
+
+    // Check the version the parser is on names a JSON Feed version
+    private void version() throws IOException {
+        String version = scalar();
+        if (version == null || !version.startsWith(VERSION)) {
+            throw new IOException("malformed feed: not a JSON Feed version " + version);
+        }
+        versioned = true;
+    }
+
+    // Read the members of the item object the parser is on, up to its end
+    private Item item() throws IOException {
+        String title = null;
+        String creator = null;
+        String url = null;
+        String externalUrl = null;
+        String id = null;
+        for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "id":
+                    id = scalar();
+                    break;
+                case "title":
+                    title = scalar();
+                    break;
+                case "url":
+                    url = scalar();
+                    break;
+                case "external_url":
+                    externalUrl = scalar();
+                    break;
+                case "author":
+                    if (creator == null) {
+                        creator = authorName();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "authors":
+                    if (creator == null && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                        creator = firstAuthorName();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new Item(title, creator, null, url != null ? url : externalUrl, id);
+    }
+
+    // The value the parser is on as text, or null if it is not a string, number, or boolean, which is skipped
+    private String scalar() throws IOException {
+        if (parser.getCurrentToken().isScalarValue() && parser.getCurrentToken() != JsonToken.VALUE_NULL) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    // The name of the author object the parser is on, or null
+    private String authorName() throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String name = null;
+        for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String member = parser.getCurrentName();
+            parser.nextToken();
+            if (member.equals("name")) {
+                name = scalar();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return name;
+    }
+
+    // The name of the first author of the array the parser is on, or null
+    private String firstAuthorName() throws IOException {
+        String name = null;
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token == null) {
+                throw new IOException("malformed feed: unterminated authors");
+            }
+            String author = authorName();
+            if (name == null) {
+                name = author;
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,469 @@
+package io.collective.rss;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Indexes the items of an RSS feed held in memory, for reading their fields with {@link IndexedItem}.
+ * <p>
+ * The feed is scanned once, checking that its elements nest and noting where the items and their fields are, without
+ * building a string for anything but namespace declarations. The items found are the same as an {@link RSSReader}
+ * reads: elements named "item" in any namespace, whose fields are the children sharing the namespace prefix of the
+ * item, and the Dublin Core creator. Where an item has a field twice the last one counts.
+ * <p>
+ * Only the structure of the feed is checked: a feed the index accepts may still be rejected by an XML parser, for
+ * example for an unknown entity, which the index reads as nothing. Feeds are read as UTF-8 unless declared ISO-8859-1
+ * or US-ASCII; UTF-16 feeds are rejected.
+ */
+public final class RSSIndex {
+    static final byte[] CDATA = ascii("<![CDATA[");
+    static final byte[] CDATA_END = ascii("]]>");
+    static final byte[] COMMENT = ascii("<!--");
+    static final byte[] COMMENT_END = ascii("-->");
+
+    private static final String DUBLIN_CORE = "http://purl.org/dc/elements/1.1/";
+    private static final byte[] DECLARATION = ascii("<?xml");
+    private static final byte[] INSTRUCTION_END = ascii("?>");
+    private static final byte[] ENCODING = ascii("encoding");
+    private static final byte[] XMLNS = ascii("xmlns:");
+
+    private static final byte[] ITEM = ascii("item");
+    private static final byte[] CREATOR = ascii("creator");
+
+    /**
+     * The local names of the fields read from the namespace of the item, by field
+     */
+    private static final byte[][] NAMES = new byte[IndexedItem.FIELDS][];
+
+    static {
+        NAMES[IndexedItem.TITLE] = ascii("title");
+        NAMES[IndexedItem.AUTHOR] = ascii("author");
+        NAMES[IndexedItem.LINK] = ascii("link");
+        NAMES[IndexedItem.GUID] = ascii("guid");
+        NAMES[IndexedItem.PUB_DATE] = ascii("pubDate");
+        NAMES[IndexedItem.DESCRIPTION] = ascii("description");
+    }
+
+    private RSSIndex() {
+    }
+
+    /**
+     * Indexes the items of a feed. The bytes are referenced by the items rather than copied, so they must not be
+     * changed afterwards.
+     *
+     * @param feed The bytes of the feed.
+     * @return The items of the feed in order.
+     * @throws IOException If the feed is malformed or in an unsupported encoding.
+     */
+    public static List<IndexedItem> index(byte[] feed) throws IOException {
+        return new Scan(feed).items();
+    }
+
+    /**
+     * The state of a single scan of a feed.
+     */
+    private static final class Scan {
+        private final byte[] feed;
+        private final List<IndexedItem> items = new ArrayList<>();
+        private Charset charset;
+
+        /**
+         * The start and end of the qualified name of every open element, outermost first
+         */
+        private int[] open = new int[32];
+        private int depth;
+
+        /**
+         * The namespace prefixes declared by open elements, each with the depth of its element
+         */
+        private final List<Binding> bindings = new ArrayList<>();
+
+        // The item being scanned, if any
+        private int itemDepth = -1;
+        private int itemStart;
+        private int[] spans;
+
+        // The field being scanned, if any
+        private int field = -1;
+        private int fieldStart;
+
+        private Scan(byte[] feed) {
+            this.feed = feed;
+        }
+
+        private List<IndexedItem> items() throws IOException {
+            int i = 0;
+            if (feed.length >= 3 && (feed[0] & 0xff) == 0xef && (feed[1] & 0xff) == 0xbb && (feed[2] & 0xff) == 0xbf) {
+                // A UTF-8 byte order mark
+                i = 3;
+            }
+            if (feed.length >= 2 && ((feed[0] & 0xff) == 0xfe || (feed[0] & 0xff) == 0xff || feed[0] == 0 || feed[1] == 0)) {
+                throw new IOException("malformed feed: UTF-16 feeds are not supported");
+            }
+            charset = charset(i);
+
+            boolean root = false;
+            int n = feed.length;
+            while (i < n) {
+                if (feed[i] != '<') {
+                    i++;
+                } else if (startsWith(feed, i, COMMENT)) {
+                    i = past(i, COMMENT_END, "unterminated comment");
+                } else if (startsWith(feed, i, CDATA)) {
+                    if (depth == 0) {
+                        throw malformed("CDATA outside of an element", i);
+                    }
+                    i = past(i, CDATA_END, "unterminated CDATA section");
+                } else if (i + 1 < n && feed[i + 1] == '?') {
+                    i = past(i, INSTRUCTION_END, "unterminated processing instruction");
+                } else if (i + 1 < n && feed[i + 1] == '!') {
+                    if (depth > 0 || root) {
+                        throw malformed("unexpected declaration", i);
+                    }
+                    i = doctype(i);
+                } else if (i + 1 < n && feed[i + 1] == '/') {
+                    i = end(i);
+                } else {
+                    if (depth == 0 && root) {
+                        throw malformed("more than one root element", i);
+                    }
+                    root = true;
+                    i = start(i);
+                }
+            }
+            if (!root) {
+                throw malformed("no root element", n);
+            }
+            if (depth > 0) {
+                throw malformed("unclosed element " + name(depth - 1), n);
+            }
+            return items;
+        }
+
+        // Read the encoding of the XML declaration at the given offset, if there is one
+        private Charset charset(int i) throws IOException {
+            if (!startsWith(feed, i, DECLARATION)) {
+                return StandardCharsets.UTF_8;
+            }
+            int end = indexOf(feed, i, feed.length, INSTRUCTION_END);
+            if (end < 0) {
+                throw malformed("unterminated XML declaration", i);
+            }
+            int encoding = indexOf(feed, i, end, ENCODING);
+            if (encoding < 0) {
+                return StandardCharsets.UTF_8;
+            }
+            int quote = encoding + ENCODING.length;
+            while (quote < end && feed[quote] != '"' && feed[quote] != '\'') {
+                quote++;
+            }
+            int close = quote + 1;
+            while (close < end && feed[close] != feed[quote]) {
+                close++;
+            }
+            if (close >= end) {
+                throw malformed("malformed XML declaration", i);
+            }
+            String name = new String(feed, quote + 1, close - quote - 1, StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            switch (name) {
+                case "UTF-8":
+                case "UTF8":
+                    return StandardCharsets.UTF_8;
+                case "ISO-8859-1":
+                case "LATIN1":
+                    return StandardCharsets.ISO_8859_1;
+                case "US-ASCII":
+                case "ASCII":
+                    return StandardCharsets.US_ASCII;
+                default:
+                    throw new IOException("malformed feed: unsupported encoding " + name);
+            }
+        }
+
+        // Move past a document type declaration, internal subset included
+        private int doctype(int i) throws IOException {
+            int brackets = 0;
+            byte quote = 0;
+            for (int j = i + 2; j < feed.length; j++) {
+                byte b = feed[j];
+                if (quote != 0) {
+                    if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '[') {
+                    brackets++;
+                } else if (b == ']') {
+                    brackets--;
+                } else if (b == '>' && brackets == 0) {
+                    return j + 1;
+                } else if (brackets > 0 && startsWith(feed, j, COMMENT)) {
+                    j = past(j, COMMENT_END, "unterminated comment") - 1;
+                }
+            }
+            throw malformed("unterminated declaration", i);
+        }
+
+        private int start(int i) throws IOException {
+            int nameEnd = nameEnd(i + 1);
+            if (nameEnd == i + 1) {
+                throw malformed("missing element name", i);
+            }
+            int close = tagEnd(feed, i, feed.length);
+            if (close < 0) {
+                throw malformed("unterminated start tag", i);
+            }
+            boolean empty = feed[close - 1] == '/';
+
+            push(i + 1, nameEnd);
+            int colon = colon(i + 1, nameEnd);
+            int local = colon < 0 ? i + 1 : colon + 1;
+            if (indexOf(feed, nameEnd, close, XMLNS) >= 0) {
+                declare(nameEnd, close);
+            }
+
+            if (itemDepth < 0) {
+                if (equals(local, nameEnd, ITEM)) {
+                    itemDepth = depth;
+                    itemStart = i;
+                    spans = new int[2 * IndexedItem.FIELDS];
+                    Arrays.fill(spans, -1);
+                }
+            } else if (depth == itemDepth + 1) {
+                field = field(i + 1, colon, local, nameEnd);
+                fieldStart = close + 1;
+            }
+
+            if (empty) {
+                closed(close + 1, close + 1);
+            }
+            return close + 1;
+        }
+
+        private int end(int i) throws IOException {
+            int nameEnd = nameEnd(i + 2);
+            int close = tagEnd(feed, i, feed.length);
+            if (close < 0) {
+                throw malformed("unterminated end tag", i);
+            }
+            if (depth == 0) {
+                throw malformed("unexpected end tag", i);
+            }
+            int from = open[2 * (depth - 1)];
+            int to = open[2 * (depth - 1) + 1];
+            if (!equals(from, to, i + 2, nameEnd)) {
+                throw malformed("end tag " + new String(feed, i + 2, nameEnd - i - 2, charset) + " does not match " + name(depth - 1), i);
+            }
+            closed(i, close + 1);
+            return close + 1;
+        }
+
+        // Pop the innermost element, whose content ends at the given offset and which ends just before the other
+        private void closed(int contentEnd, int end) {
+            if (depth == itemDepth + 1 && field >= 0) {
+                spans[2 * field] = fieldStart;
+                spans[2 * field + 1] = contentEnd;
+                field = -1;
+            } else if (depth == itemDepth) {
+                items.add(new IndexedItem(feed, charset, itemStart, end, spans));
+                itemDepth = -1;
+                spans = null;
+            }
+            while (!bindings.isEmpty() && bindings.get(bindings.size() - 1).depth == depth) {
+                bindings.remove(bindings.size() - 1);
+            }
+            depth--;
+        }
+
+        // The field a direct child of the item is, or -1 if it is not one
+        private int field(int from, int colon, int local, int nameEnd) {
+            if (colon > 0 && equals(local, nameEnd, CREATOR)
+                    && DUBLIN_CORE.equals(namespace(new String(feed, from, colon - from, charset)))) {
+                return IndexedItem.CREATOR;
+            }
+            // The fields share the prefix of the item, which stands for sharing its namespace
+            int item = open[2 * (itemDepth - 1)];
+            int itemColon = colon(item, open[2 * (itemDepth - 1) + 1]);
+            if (!equals(from, colon < 0 ? from : colon, item, itemColon < 0 ? item : itemColon)) {
+                return -1;
+            }
+            for (int i = 0; i < NAMES.length; i++) {
+                if (NAMES[i] != null && equals(local, nameEnd, NAMES[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Record the namespace prefixes declared by the attributes of a start tag
+        private void declare(int from, int to) throws IOException {
+            int i = indexOf(feed, from, to, XMLNS);
+            while (i >= 0) {
+                int nameStart = i + XMLNS.length;
+                int nameEnd = nameEnd(nameStart);
+                int quote = nameEnd;
+                while (quote < to && feed[quote] != '"' && feed[quote] != '\'') {
+                    quote++;
+                }
+                int close = quote + 1;
+                while (close < to && feed[close] != feed[quote]) {
+                    close++;
+                }
+                if (close >= to) {
+                    throw malformed("malformed namespace declaration", i);
+                }
+                bindings.add(new Binding(depth,
+                        new String(feed, nameStart, nameEnd - nameStart, charset),
+                        new String(feed, quote + 1, close - quote - 1, charset)));
+                i = indexOf(feed, close, to, XMLNS);
+            }
+        }
+
+        private String namespace(String prefix) {
+            for (int i = bindings.size() - 1; i >= 0; i--) {
+                if (bindings.get(i).prefix.equals(prefix)) {
+                    return bindings.get(i).namespace;
+                }
+            }
+            return null;
+        }
+
+        private void push(int from, int to) {
+            if (2 * depth + 2 > open.length) {
+                open = Arrays.copyOf(open, 2 * open.length);
+            }
+            open[2 * depth] = from;
+            open[2 * depth + 1] = to;
+            depth++;
+        }
+
+        private int nameEnd(int i) {
+            while (i < feed.length && !isSpace(feed[i]) && feed[i] != '>' && feed[i] != '/' && feed[i] != '=') {
+                i++;
+            }
+            return i;
+        }
+
+        private int colon(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (feed[i] == ':') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean equals(int from, int to, byte[] name) {
+            if (to - from != name.length) {
+                return false;
+            }
+            return startsWith(feed, from, name);
+        }
+
+        private boolean equals(int from, int to, int otherFrom, int otherTo) {
+            if (to - from != otherTo - otherFrom) {
+                return false;
+            }
+            for (int i = 0; i < to - from; i++) {
+                if (feed[from + i] != feed[otherFrom + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int past(int i, byte[] terminator, String unterminated) throws IOException {
+            int end = indexOf(feed, i, feed.length, terminator);
+            if (end < 0) {
+                throw malformed(unterminated, i);
+            }
+            return end + terminator.length;
+        }
+
+        private String name(int level) {
+            return new String(feed, open[2 * level], open[2 * level + 1] - open[2 * level], charset);
+        }
+
+        private IOException malformed(String message, int offset) {
+            return new IOException("malformed feed: " + message + " at offset " + offset);
+        }
+    }
+
+    /**
+     * A namespace prefix declared by an element.
+     */
+    private static final class Binding {
+        private final int depth;
+        private final String prefix;
+        private final String namespace;
+
+        private Binding(int depth, String prefix, String namespace) {
+            this.depth = depth;
+            this.prefix = prefix;
+            this.namespace = namespace;
+        }
+    }
+
+    /**
+     * Returns whether the bytes at the given offset start with the given ones.
+     */
+    static boolean startsWith(byte[] feed, int i, byte[] s) {
+        if (i + s.length > feed.length) {
+            return false;
+        }
+        for (int j = 0; j < s.length; j++) {
+            if (feed[i + j] != s[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the given bytes between two offsets, or -1 if there is none.
+     */
+    static int indexOf(byte[] feed, int from, int to, byte[] s) {
+        int last = Math.min(to, feed.length) - s.length;
+        for (int i = from; i <= last; i++) {
+            if (feed[i] == s[0] && startsWith(feed, i, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the '>' closing the tag at the given offset, skipping any in quoted attribute values, or -1
+     * if the tag is not closed before the given end.
+     */
+    static int tagEnd(byte[] feed, int i, int to) {
+        byte quote = 0;
+        for (int j = i + 1; j < to; j++) {
+            byte b = feed[j];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,149 @@
+package io.collective.rss;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the items of an RSS feed one at a time while it streams in, the {@link FeedReader} of {@link FeedFormats#RSS}.
+ * <p>
+ * Unlike binding the feed to an {@link RSS} with an XmlMapper, the reader never holds more than the item it is reading,
+ * so the memory used does not grow with the size of the feed. Only the fields of {@link Item} are read, every other
+ * element, descriptions included, is skipped without building its text.
+ * <p>
+ * A reader is not thread safe, but readers may be created concurrently.
+ */
+public final class RSSReader implements FeedReader {
+    private static final String DUBLIN_CORE = "http://purl.org/dc/elements/1.1/";
+
+    /**
+     * The factory is thread safe once configured, and expensive to look up, so it is shared with the other XML readers
+     */
+    static final XMLInputFactory FACTORY = factory();
+
+    private final XMLStreamReader reader;
+
+    /**
+     * Constructs an RSSReader reading the feed from the given stream.
+     *
+     * @param in The stream of the feed, closed by the caller.
+     * @throws IOException If the stream does not start like an XML document.
+     */
+    public RSSReader(InputStream in) throws IOException {
+        try {
+            this.reader = FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw new IOException("malformed feed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Item next() throws IOException {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("item")) {
+                    return item();
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IOException("malformed feed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Read the children of the item element the reader is on, up to its end
+    private Item item() throws XMLStreamException {
+        // The fields of an item share its namespace, none for RSS 2.0 and the RSS 1.0 namespace for RSS 1.0
+        String namespace = namespace();
+        String title = null;
+        String creator = null;
+        String author = null;
+        String link = null;
+        String guid = null;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return new Item(title, creator, author, link, guid);
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = reader.getLocalName();
+            if (name.equals("creator") && DUBLIN_CORE.equals(namespace())) {
+                creator = text(reader);
+            } else if (!namespace.equals(namespace())) {
+                skip(reader);
+            } else if (name.equals("title")) {
+                title = text(reader);
+            } else if (name.equals("link")) {
+                link = text(reader);
+            } else if (name.equals("guid")) {
+                guid = text(reader);
+            } else if (name.equals("author")) {
+                author = text(reader);
+            } else {
+                skip(reader);
+            }
+        }
+    }
+
+    private String namespace() {
+        return namespace(reader);
+    }
+
+    static String namespace(XMLStreamReader reader) {
+        String namespace = reader.getNamespaceURI();
+        return namespace == null ? "" : namespace;
+    }
+
+    // Read the text of the element the reader is on, including the text of any nested elements, up to its end
+    static String text(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+        return text.toString();
+    }
+
+    // Move past the end of the element the reader is on without keeping anything
+    static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static XMLInputFactory factory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        // Feeds come from the internet, never resolve DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
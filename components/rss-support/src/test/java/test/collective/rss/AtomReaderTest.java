@@ -0,0 +1,56 @@
+package test.collective.rss;
+
+import io.collective.rss.AtomReader;
+import io.collective.rss.Item;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AtomReaderTest {
+    @Test
+    public void entries() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                + "<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:media=\"http://search.yahoo.com/mrss/\">"
+                + "<title>Feed</title><id>urn:feed</id><author><name>Not an entry</name></author>"
+                + "<entry><title type=\"html\">Tom &amp;lt;3 Jerry</title><media:title>Not the title</media:title>"
+                + "<link rel=\"edit\" href=\"https://one/edit\"/><link href=\"https://one/\"/><link rel=\"alternate\" href=\"https://other/\"/>"
+                + "<id>urn:one</id><updated>2023-01-02T00:00:00Z</updated><published>2023-01-01T00:00:00Z</published>"
+                + "<author><name>Jerry</name><email>jerry@example.com</email></author><author><name>Tom</name></author>"
+                + "<content type=\"xhtml\"><div xmlns=\"http://www.w3.org/1999/xhtml\">A <b>nested</b> content</div></content></entry>"
+                + "<entry><title>Two</title><id>urn:two</id><updated>2023-01-03T00:00:00Z</updated>"
+                + "<summary>The summary</summary><content>The content</content></entry>"
+                + "</feed>";
+        try (AtomReader reader = new AtomReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            Item one = reader.next();
+            assertEquals("Tom &lt;3 Jerry", one.getTitle());
+            assertEquals("https://one/", one.getLink());
+            assertEquals("urn:one", one.getGuid());
+            assertEquals("Jerry", one.getCreator());
+            assertEquals("jerry@example.com", one.getAuthor());
+            // Dates and contents are skipped, as by every reader
+            assertNull(one.getPubDate());
+            assertNull(one.getDescription());
+
+            Item two = reader.next();
+            assertEquals("Two", two.getTitle());
+            assertNull(two.getLink());
+            assertNull(two.getDescription());
+
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformed() throws IOException {
+        String xml = "<feed xmlns=\"http://www.w3.org/2005/Atom\"><entry><title>One</entry></feed>";
+        try (AtomReader reader = new AtomReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            reader.next();
+        }
+    }
+}
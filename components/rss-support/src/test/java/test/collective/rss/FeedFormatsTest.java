@@ -0,0 +1,191 @@
+package test.collective.rss;
+
+import io.collective.rss.FeedFormat;
+import io.collective.rss.FeedFormats;
+import io.collective.rss.FeedReader;
+import io.collective.rss.Item;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FeedFormatsTest {
+    private static final String RSS = "<?xml version=\"1.0\"?>\n<!-- generated -->\n<!DOCTYPE rss [<!ENTITY nbsp \"&#160;\">]>"
+            + "<rss><channel><item><title>One</title><guid>1</guid></item></channel></rss>";
+    private static final String RDF = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns=\"http://purl.org/rss/1.0/\">"
+            + "<item><title>One</title><link>1</link></item></rdf:RDF>";
+    private static final String ATOM = "\uFEFF<feed xmlns=\"http://www.w3.org/2005/Atom\"><entry><title>One</title><id>1</id></entry></feed>";
+    private static final String JSON = "  {\"version\": \"https://jsonfeed.org/version/1.1\", \"items\": [{\"id\": \"1\", \"title\": \"One\"}]}";
+
+    @Test
+    public void select() {
+        FeedFormats formats = new FeedFormats(Arrays.asList(FeedFormats.RSS, FeedFormats.ATOM, FeedFormats.JSON_FEED));
+
+        // Sniffed when the content type says nothing
+        assertSame(FeedFormats.RSS, select(formats, null, RSS));
+        assertSame(FeedFormats.RSS, select(formats, "text/xml", RDF));
+        assertSame(FeedFormats.ATOM, select(formats, "application/xml; charset=utf-8", ATOM));
+        assertSame(FeedFormats.JSON_FEED, select(formats, "text/plain", JSON));
+
+        // The content type is believed unless the first bytes say otherwise
+        assertSame(FeedFormats.ATOM, select(formats, "Application/Atom+XML", ATOM));
+        assertSame(FeedFormats.ATOM, select(formats, "application/rss+xml", ATOM));
+        assertSame(FeedFormats.JSON_FEED, select(formats, "application/feed+json", "not even JSON"));
+        assertSame(FeedFormats.RSS, select(formats, "text/html", "<html/>"));
+
+        // Any JSON may be served as application/json, only a JSON Feed version makes it a feed
+        assertSame(FeedFormats.JSON_FEED, select(formats, "application/json", JSON));
+        assertSame(FeedFormats.JSON_FEED, select(formats, "application/json", "{\"version\": \"https:\\/\\/jsonfeed.org\\/version\\/1\"}"));
+        assertSame(FeedFormats.RSS, select(formats, "application/json", "{\"error\": \"not found\"}"));
+
+        assertEquals("application/rss+xml, application/rdf+xml, application/atom+xml, application/feed+json,"
+                + " application/xml;q=0.9, text/xml;q=0.9, application/json;q=0.9, */*;q=0.8", formats.getAccept());
+    }
+
+    @Test
+    public void sameItems() throws IOException {
+        String rss = "<rss xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><channel><item><title>One</title><link>https://one/</link>"
+                + "<guid>1</guid><dc:creator>Jerry</dc:creator><pubDate>Sun, 01 Jan 2023 00:00:00 GMT</pubDate>"
+                + "<description>The description</description></item></channel></rss>";
+        String atom = "<feed xmlns=\"http://www.w3.org/2005/Atom\"><entry><title>One</title><link href=\"https://one/\"/><id>1</id>"
+                + "<author><name>Jerry</name></author><published>2023-01-01T00:00:00Z</published>"
+                + "<summary>The description</summary></entry></feed>";
+        String json = "{\"version\": \"https://jsonfeed.org/version/1.1\", \"items\": [{\"id\": \"1\", \"url\": \"https://one/\","
+                + " \"title\": \"One\", \"authors\": [{\"name\": \"Jerry\"}], \"date_published\": \"2023-01-01T00:00:00Z\","
+                + " \"summary\": \"The description\"}]}";
+        // Every field of every format is read alike, dates and descriptions are skipped by all of them
+        for (String feed : new String[]{RSS, ATOM, JSON, rss, atom, json}) {
+            List<Item> items = read(feed, null);
+            assertEquals(1, items.size());
+            Item item = items.get(0);
+            boolean full = feed.contains("https://one/");
+            assertEquals("One", item.getTitle());
+            assertEquals(full ? "Jerry" : null, item.getCreator());
+            assertNull(item.getAuthor());
+            assertEquals(full ? "https://one/" : null, item.getLink());
+            assertEquals("1", item.getGuid());
+            assertNull(item.getPubDate());
+            assertNull(item.getDescription());
+        }
+        assertEquals("1", read(RDF, "application/rdf+xml").get(0).getLink());
+    }
+
+    @Test
+    public void errorBody() {
+        // An error served as JSON fails to parse rather than reading as a feed without items
+        for (String contentType : new String[]{"application/json", "application/feed+json"}) {
+            try {
+                read("{\"error\": \"not found\"}", contentType);
+                fail("read the error served as " + contentType);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().startsWith("malformed feed"));
+            }
+        }
+    }
+
+    @Test
+    public void loadedFormat() throws IOException {
+        // Listed in META-INF/services of the test resources, and tried before the built in formats
+        FeedFormat lines = FeedFormats.DEFAULT.getFormats().get(0);
+        assertTrue(lines instanceof LinesFormat);
+        assertTrue(FeedFormats.DEFAULT.getAccept().startsWith("text/x-feed-lines, application/rss+xml"));
+
+        // Chosen by its content type, and by its first bytes
+        assertSame(lines, select(FeedFormats.DEFAULT, "text/x-feed-lines", LinesFormat.HEADER + "1 One\n"));
+        assertSame(lines, select(FeedFormats.DEFAULT, "text/plain", LinesFormat.HEADER + "1 One\n"));
+        assertSame(lines, select(FeedFormats.DEFAULT, null, LinesFormat.HEADER));
+        assertSame(FeedFormats.RSS, select(FeedFormats.DEFAULT, "text/x-feed-lines", RSS));
+
+        List<Item> items = read(LinesFormat.HEADER + "1 One\n2 Two\n", null);
+        assertEquals(2, items.size());
+        assertEquals("2", items.get(1).getGuid());
+        assertEquals("Two", items.get(1).getTitle());
+    }
+
+    @Test
+    public void longFeed() throws IOException {
+        // Read past the bytes peeked at
+        StringBuilder feed = new StringBuilder("<rss><channel>");
+        for (int i = 0; i < 1_000; i++) {
+            feed.append("<item><title>").append(i).append("</title></item>");
+        }
+        List<Item> items = read(feed.append("</channel></rss>").toString(), "application/rss+xml");
+
+        assertEquals(1_000, items.size());
+        assertEquals("999", items.get(999).getTitle());
+    }
+
+    private Object select(FeedFormats formats, String contentType, String feed) {
+        byte[] bytes = feed.getBytes(StandardCharsets.UTF_8);
+        return formats.select(contentType, bytes, bytes.length);
+    }
+
+    private List<Item> read(String feed, String contentType) throws IOException {
+        List<Item> items = new ArrayList<>();
+        try (FeedReader reader = FeedFormats.DEFAULT.open(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)), contentType)) {
+            for (Item item = reader.next(); item != null; item = reader.next()) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * A format provided as a service: a header line followed by one item per line, its guid and title.
+     */
+    public static final class LinesFormat implements FeedFormat {
+        static final String HEADER = "#lines\n";
+
+        @Override
+        public String getName() {
+            return "Lines";
+        }
+
+        @Override
+        public List<String> getMediaTypes() {
+            return Collections.singletonList("text/x-feed-lines");
+        }
+
+        @Override
+        public boolean sniff(byte[] head, int length) {
+            return new String(head, 0, length, StandardCharsets.US_ASCII).startsWith(HEADER);
+        }
+
+        @Override
+        public FeedReader open(InputStream in) throws IOException {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            if (!(lines.readLine() + "\n").equals(HEADER)) {
+                throw new IOException("malformed feed: no header");
+            }
+            return new FeedReader() {
+                @Override
+                public Item next() throws IOException {
+                    String line = lines.readLine();
+                    if (line == null) {
+                        return null;
+                    }
+                    int space = line.indexOf(' ');
+                    return new Item(line.substring(space + 1), null, null, null, line.substring(0, space));
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
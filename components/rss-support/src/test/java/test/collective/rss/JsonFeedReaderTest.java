@@ -0,0 +1,95 @@
+package test.collective.rss;
+
+import io.collective.rss.Item;
+import io.collective.rss.JsonFeedReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonFeedReaderTest {
+    @Test
+    public void items() throws IOException {
+        String json = "{\"version\": \"https://jsonfeed.org/version/1.1\", \"title\": \"Feed\","
+                + " \"authors\": [{\"name\": \"Not an item\"}], \"extensions\": {\"items\": [{\"id\": \"nested\"}]},"
+                + " \"items\": ["
+                + "{\"id\": \"1\", \"url\": \"https://one/\", \"title\": \"Tom & Jerry\", \"_ext\": {\"title\": \"Not the title\"},"
+                + " \"authors\": [{\"name\": \"Jerry\", \"url\": \"https://jerry/\"}, {\"name\": \"Tom\"}],"
+                + " \"date_published\": \"2023-01-01T00:00:00Z\", \"content_html\": \"<p>Content</p>\", \"tags\": [\"a\", \"b\"]},"
+                + "{\"id\": 2, \"external_url\": \"https://two/\", \"author\": {\"name\": \"Tom\"},"
+                + " \"content_text\": \"Text\", \"summary\": \"Summary\", \"title\": null},"
+                + "\"not an item\""
+                + "]}";
+        try (JsonFeedReader reader = new JsonFeedReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+            Item one = reader.next();
+            assertEquals("1", one.getGuid());
+            assertEquals("https://one/", one.getLink());
+            assertEquals("Tom & Jerry", one.getTitle());
+            assertEquals("Jerry", one.getCreator());
+            // Dates and contents are skipped, as by every reader
+            assertNull(one.getPubDate());
+            assertNull(one.getDescription());
+
+            Item two = reader.next();
+            assertEquals("2", two.getGuid());
+            assertEquals("https://two/", two.getLink());
+            assertNull(two.getTitle());
+            assertEquals("Tom", two.getCreator());
+            assertNull(two.getDescription());
+
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void noItems() throws IOException {
+        try (JsonFeedReader reader = reader("{\"version\": \"https://jsonfeed.org/version/1\"}")) {
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void versionAfterItems() throws IOException {
+        try (JsonFeedReader reader = reader("{\"items\": [{\"id\": \"1\"}], \"version\": \"https://jsonfeed.org/version/1.1\"}")) {
+            assertEquals("1", reader.next().getGuid());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void notAFeed() throws IOException {
+        String[] documents = {
+                "{\"error\": \"not found\"}",
+                "{\"version\": \"1\", \"items\": []}",
+                "{\"items\": [{\"id\": \"1\"}]}",
+        };
+        for (String json : documents) {
+            try (JsonFeedReader reader = reader(json)) {
+                while (reader.next() != null) {
+                    // Read to the end
+                }
+                fail("read " + json);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().startsWith("malformed feed"));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformed() throws IOException {
+        try (JsonFeedReader reader = reader("{\"version\": \"https://jsonfeed.org/version/1\", \"items\": [{\"id\": \"1\", \"title\" \"One\"}]}")) {
+            reader.next();
+        }
+    }
+
+    private JsonFeedReader reader(String json) throws IOException {
+        return new JsonFeedReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,205 @@
+package test.collective.rss;
+
+import io.collective.rss.IndexedItem;
+import io.collective.rss.Item;
+import io.collective.rss.RSSIndex;
+import io.collective.rss.RSSReader;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RSSIndexTest {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void sameAsReader() throws IOException {
+        byte[] xml = getClass().getResourceAsStream("/infoq.xml").readAllBytes();
+        List<IndexedItem> indexed = RSSIndex.index(xml);
+
+        try (RSSReader reader = new RSSReader(new ByteArrayInputStream(xml))) {
+            for (IndexedItem item : indexed) {
+                Item streamed = reader.next();
+                assertEquals(streamed.getTitle(), item.getTitle());
+                assertEquals(streamed.getLink(), item.getLink());
+                assertEquals(streamed.getGuid(), item.getGuid());
+                assertEquals(streamed.getCreator(), item.getCreator());
+                assertEquals(streamed.getAuthor(), item.getAuthor());
+            }
+            assertNull(reader.next());
+        }
+        assertEquals(15, indexed.size());
+        assertTrue(indexed.get(0).getPubDate() != null);
+        assertTrue(indexed.get(0).getDescription() != null);
+    }
+
+    @Test
+    public void namespacesAndNesting() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<!DOCTYPE rss [<!ENTITY nbsp \"&#160;\"> <!-- ]> -->]>"
+                + "<rss xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:media=\"http://search.yahoo.com/mrss/\">"
+                + "<channel><title>Feed</title>"
+                + "<item><title><![CDATA[Tom & <Jerry>]]></title><media:title>Not the title</media:title>"
+                + "<description><p class=\"a>b\">A <b>nested</b><!-- not this --> description</p></description>"
+                + "<dc:creator>Jerry</dc:creator><author>tom@example.com</author><guid isPermaLink=\"false\">one</guid></item>"
+                + "<item><title>Two &amp; thr&#101;e &#x2014; caf\u00e9 &nbsp;& more</title><link>https://two/</link><guid/></item>"
+                + "</channel></rss>";
+        List<IndexedItem> items = RSSIndex.index(xml.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, items.size());
+        IndexedItem one = items.get(0);
+        assertEquals("Tom & <Jerry>", one.getTitle());
+        assertEquals("A nested description", one.getDescription());
+        assertEquals("Jerry", one.getCreator());
+        assertEquals("tom@example.com", one.getAuthor());
+        assertEquals("one", one.getGuid());
+        assertNull(one.getLink());
+        assertTrue(xml.substring(one.getStart(), one.getEnd()).startsWith("<item>"));
+        assertTrue(xml.substring(one.getStart(), one.getEnd()).endsWith("</item>"));
+
+        IndexedItem two = items.get(1);
+        assertEquals("Two & three \u2014 caf\u00e9 & more", two.getTitle());
+        assertEquals("https://two/", two.getLink());
+        assertEquals("", two.getGuid());
+    }
+
+    @Test
+    public void rss1() throws IOException {
+        String xml = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns=\"http://purl.org/rss/1.0/\">"
+                + "<channel><title>Feed</title></channel>"
+                + "<item rdf:about=\"https://one/\"><title>One</title><rdf:title>Not the title</rdf:title><link>https://one/</link></item>"
+                + "</rdf:RDF>";
+
+        List<IndexedItem> items = RSSIndex.index(xml.getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, items.size());
+        assertEquals("One", items.get(0).getTitle());
+        assertEquals("https://one/", items.get(0).getLink());
+    }
+
+    @Test
+    public void latin1() throws IOException {
+        byte[] xml = "<?xml version='1.0' encoding='ISO-8859-1'?><rss><channel><item><title>caf\u00e9</title></item></channel></rss>"
+                .getBytes(StandardCharsets.ISO_8859_1);
+
+        assertEquals("caf\u00e9", RSSIndex.index(xml).get(0).getTitle());
+    }
+
+    @Test
+    public void malformed() {
+        String[] feeds = {
+                "",
+                "<rss><channel><item><title>One</item></channel></rss>",
+                "<rss><channel><item><title>One</title></item></channel>",
+                "<rss><channel></channel></rss><rss/>",
+                "<rss><channel><item><title><![CDATA[One</title></item></channel></rss>",
+                "<rss><channel><!-- never closed </channel></rss>",
+                "<rss><channel><item title=\"never closed></item></channel></rss>",
+                "<?xml version=\"1.0\" encoding=\"EBCDIC\"?><rss/>",
+                "</rss>",
+        };
+        for (String feed : feeds) {
+            try {
+                RSSIndex.index(feed.getBytes(StandardCharsets.UTF_8));
+                fail("indexed " + feed);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().startsWith("malformed feed"));
+            }
+        }
+    }
+
+    @Test
+    @Ignore
+    public void allocationBenchmark() throws IOException {
+        // A feed of several megabytes, whose items are mostly seen before
+        StringBuilder builder = new StringBuilder("<rss xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><channel><title>Feed</title>");
+        for (int i = 0; i < 5_000; i++) {
+            builder.append("<item><title>Presentation: InfraCoding with Terraform ").append(i).append("</title>")
+                    .append("<link>https://www.infoq.com/presentations/").append(i).append("/</link>")
+                    .append("<description>");
+            for (int j = 0; j < 10; j++) {
+                builder.append("&lt;p&gt;Peter Souter discusses some approaches for testing Infrastructure-as-code.&lt;/p&gt;");
+            }
+            builder.append("</description><dc:creator>Peter Souter</dc:creator>")
+                    .append("<guid>https://www.infoq.com/presentations/").append(i).append("/</guid></item>");
+        }
+        byte[] xml = builder.append("</channel></rss>").toString().getBytes(StandardCharsets.UTF_8);
+        Set<String> seen = new HashSet<>();
+        for (IndexedItem item : RSSIndex.index(xml)) {
+            seen.add(item.getGuid());
+        }
+        int iterations = 20;
+
+        for (int i = 0; i < iterations; i++) {
+            streamed(xml, seen);
+            indexed(xml, seen);
+        }
+
+        long streamed = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            streamed(xml, seen);
+        }
+        long streamedNanos = System.nanoTime() - start;
+        streamed = allocatedBytes() - streamed;
+
+        long indexed = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            indexed(xml, seen);
+        }
+        long indexedNanos = System.nanoTime() - start;
+        indexed = allocatedBytes() - indexed;
+
+        logger.info("feed of {} bytes", xml.length);
+        logger.info("streamed feed: {} bytes/feed, {} us/feed", streamed / iterations, streamedNanos / iterations / 1000);
+        logger.info("indexed feed: {} bytes/feed, {} us/feed", indexed / iterations, indexedNanos / iterations / 1000);
+        assertTrue(indexed < streamed);
+    }
+
+    /**
+     * Reads every item, as a reader must to find the new ones.
+     */
+    private int streamed(byte[] xml, Set<String> seen) throws IOException {
+        int count = 0;
+        try (RSSReader reader = new RSSReader(new ByteArrayInputStream(xml))) {
+            for (Item item = reader.next(); item != null; item = reader.next()) {
+                if (!seen.contains(item.getGuid())) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decodes only the guid of every item, and the rest of the new ones.
+     */
+    private int indexed(byte[] xml, Set<String> seen) throws IOException {
+        int count = 0;
+        for (IndexedItem item : RSSIndex.index(xml)) {
+            if (!seen.contains(item.getGuid())) {
+                item.getTitle();
+                item.getLink();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
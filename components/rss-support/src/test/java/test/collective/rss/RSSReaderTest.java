@@ -0,0 +1,189 @@
+package test.collective.rss;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import io.collective.rss.Item;
+import io.collective.rss.RSS;
+import io.collective.rss.RSSReader;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RSSReaderTest {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void items() throws IOException {
+        List<Item> items = read(getClass().getResourceAsStream("/infoq.xml"));
+
+        assertEquals(15, items.size());
+        assertEquals("Presentation: InfraCoding with Terraform: Writing Tests for Infrastructure-as-Code", items.get(0).getTitle());
+        assertTrue(items.get(0).getLink().startsWith("https://www.infoq.com/presentations/iac-terraform-testing/?utm_campaign=infoq_content&utm_source"));
+        assertTrue(items.get(0).getGuid().startsWith("https://www.infoq.com/presentations/iac-terraform-testing/"));
+    }
+
+    @Test
+    public void sameAsMapper() throws IOException {
+        byte[] xml = getClass().getResourceAsStream("/infoq.xml").readAllBytes();
+        List<Item> mapped = new XmlMapper().readValue(xml, RSS.class).getChannel().getItem();
+        List<Item> streamed = read(new ByteArrayInputStream(xml));
+
+        assertEquals(mapped.size(), streamed.size());
+        for (int i = 0; i < mapped.size(); i++) {
+            assertEquals(mapped.get(i).getTitle(), streamed.get(i).getTitle());
+            assertEquals(mapped.get(i).getLink(), streamed.get(i).getLink());
+            assertEquals(mapped.get(i).getGuid(), streamed.get(i).getGuid());
+            assertEquals(mapped.get(i).getCreator(), streamed.get(i).getCreator());
+        }
+    }
+
+    @Test
+    public void namespacesAndNesting() throws IOException {
+        String xml = "<rss xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:media=\"http://search.yahoo.com/mrss/\">"
+                + "<channel><title>Feed</title>"
+                + "<item><title><![CDATA[Tom & Jerry]]></title><media:title>Not the title</media:title>"
+                + "<description><p>A <b>nested</b> description</p></description>"
+                + "<dc:creator>Jerry</dc:creator><guid isPermaLink=\"false\">one</guid></item>"
+                + "<item><title>Two &amp; three</title><link>https://two/</link></item>"
+                + "</channel></rss>";
+        try (RSSReader reader = new RSSReader(stream(xml))) {
+            Item one = reader.next();
+            assertEquals("Tom & Jerry", one.getTitle());
+            assertEquals("Jerry", one.getCreator());
+            assertEquals("one", one.getGuid());
+            assertNull(one.getLink());
+
+            Item two = reader.next();
+            assertEquals("Two & three", two.getTitle());
+            assertEquals("https://two/", two.getLink());
+
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void rss1() throws IOException {
+        String xml = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns=\"http://purl.org/rss/1.0/\">"
+                + "<channel><title>Feed</title></channel>"
+                + "<item rdf:about=\"https://one/\"><title>One</title><link>https://one/</link></item>"
+                + "</rdf:RDF>";
+
+        List<Item> items = read(stream(xml));
+        assertEquals(1, items.size());
+        assertEquals("One", items.get(0).getTitle());
+        assertEquals("https://one/", items.get(0).getLink());
+    }
+
+    @Test(expected = IOException.class)
+    public void malformed() throws IOException {
+        read(stream("<rss><channel><item><title>One</item></channel></rss>"));
+    }
+
+    @Test
+    public void externalEntities() {
+        try {
+            List<Item> items = read(stream("<!DOCTYPE rss [<!ENTITY secret SYSTEM \"file:///etc/passwd\">]>"
+                    + "<rss><channel><item><title>&secret;</title></item></channel></rss>"));
+            // Parsers may drop the unresolved entity instead of failing, but never read the file
+            assertTrue(items.isEmpty() || !items.get(0).getTitle().contains("root"));
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    @Ignore
+    public void allocationBenchmark() throws IOException {
+        // A feed of several megabytes and thousands of items
+        StringBuilder builder = new StringBuilder("<rss xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><channel><title>Feed</title>");
+        for (int i = 0; i < 5_000; i++) {
+            builder.append("<item><title>Presentation: InfraCoding with Terraform ").append(i).append("</title>")
+                    .append("<link>https://www.infoq.com/presentations/").append(i).append("/</link>")
+                    .append("<description>");
+            for (int j = 0; j < 10; j++) {
+                builder.append("&lt;p&gt;Peter Souter discusses some approaches for testing Infrastructure-as-code.&lt;/p&gt;");
+            }
+            builder.append("</description><dc:creator>Peter Souter</dc:creator>")
+                    .append("<guid>https://www.infoq.com/presentations/").append(i).append("/</guid></item>");
+        }
+        byte[] xml = builder.append("</channel></rss>").toString().getBytes(StandardCharsets.UTF_8);
+        int iterations = 20;
+
+        for (int i = 0; i < iterations; i++) {
+            mapped(xml);
+            streamed(xml);
+        }
+
+        long mapped = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            mapped(xml);
+        }
+        long mappedNanos = System.nanoTime() - start;
+        mapped = allocatedBytes() - mapped;
+
+        long streamed = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            streamed(xml);
+        }
+        long streamedNanos = System.nanoTime() - start;
+        streamed = allocatedBytes() - streamed;
+
+        logger.info("feed of {} bytes", xml.length);
+        logger.info("mapped feed: {} bytes/feed, {} us/feed", mapped / iterations, mappedNanos / iterations / 1000);
+        logger.info("streamed feed: {} bytes/feed, {} us/feed", streamed / iterations, streamedNanos / iterations / 1000);
+        assertTrue(streamed < mapped);
+    }
+
+    /**
+     * Binds the feed the way the endpoint worker used to, buffered in a String with a new XmlMapper.
+     */
+    private int mapped(byte[] xml) throws IOException {
+        String response = new String(xml, StandardCharsets.UTF_8);
+        return new XmlMapper().readValue(response, RSS.class).getChannel().getItem().size();
+    }
+
+    /**
+     * Reads the feed item by item, keeping none of them.
+     */
+    private int streamed(byte[] xml) throws IOException {
+        int count = 0;
+        try (RSSReader reader = new RSSReader(new ByteArrayInputStream(xml))) {
+            while (reader.next() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<Item> read(InputStream in) throws IOException {
+        List<Item> items = new ArrayList<>();
+        try (RSSReader reader = new RSSReader(in)) {
+            for (Item item = reader.next(); item != null; item = reader.next()) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
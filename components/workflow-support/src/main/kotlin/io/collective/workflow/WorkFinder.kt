@@ -20,4 +20,13 @@ interface WorkFinder<T> {
      * @param info The task to be marked as completed.
      */
     fun markCompleted(info: T)
+
+    /**
+     * Marks the specified task as failed. Does nothing unless overridden.
+     *
+     * @param info The task that failed.
+     * @param cause The error the task failed with.
+     */
+    fun markFailed(info: T, cause: Throwable) {
+    }
 }
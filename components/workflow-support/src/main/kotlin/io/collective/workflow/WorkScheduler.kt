@@ -82,6 +82,13 @@ class WorkScheduler<T>(private val finder: WorkFinder<T>, private val workers: M
                     } catch (e: Throwable) {
                         // Log an error message if unable to complete the task
                         logger.error("unable to complete work", e)
+
+                        // Let the finder know, so it can retry the task later
+                        try {
+                            finder.markFailed(it, e)
+                        } catch (f: Throwable) {
+                            logger.error("unable to mark work failed", f)
+                        }
                     }
                 }
             }